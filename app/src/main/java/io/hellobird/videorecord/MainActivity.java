@@ -1,18 +1,18 @@
 package io.hellobird.videorecord;
 
 import android.Manifest;
-import android.app.Activity;
 import android.os.Bundle;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
 import io.hellobird.videorecord.lib.RecordControllerLayout;
 import io.hellobird.videorecord.lib.RecordView;
 import io.hellobird.videorecord.lib.camera.open.CameraFacing;
 
-public class MainActivity extends Activity {
+public class MainActivity extends AppCompatActivity {
 
     RecordView mRecordView;
     RecordControllerLayout mController;
@@ -29,6 +29,8 @@ public class MainActivity extends Activity {
         mController.bindRecordView(mRecordView);
         mController.setDuration(0, 90);
         mRecordView.setCameraFacing(CameraFacing.FRONT);
+        // 相机随生命周期打开与关闭，录制在相机线程结束
+        mRecordView.bindLifecycle(this);
         mController.setOnRecordListener(new RecordControllerLayout.OnRecordListener() {
             @Override
             public void onStartRecord() {
@@ -58,6 +60,5 @@ public class MainActivity extends Activity {
     protected void onPause() {
         super.onPause();
         mController.cancelRecord();
-        mRecordView.closeCamera();
     }
 }
\ No newline at end of file
@@ -1,42 +0,0 @@
-package io.hellobird.videorecord.lib;
-
-/*******************************************************************
- * Config.java  2019-11-26
- * <P>
- * 参数配置<br/>
- * <br/>
- * </p>
- *
- * @author:zhoupeng
- *
- ******************************************************************/
-public interface Config {
-
-    String KEY_DECODE_1D_PRODUCT = "preferences_decode_1D_product";
-    String KEY_DECODE_1D_INDUSTRIAL = "preferences_decode_1D_industrial";
-    String KEY_DECODE_QR = "preferences_decode_QR";
-    String KEY_DECODE_DATA_MATRIX = "preferences_decode_Data_Matrix";
-    String KEY_DECODE_AZTEC = "preferences_decode_Aztec";
-    String KEY_DECODE_PDF417 = "preferences_decode_PDF417";
-
-    String KEY_CUSTOM_PRODUCT_SEARCH = "preferences_custom_product_search";
-
-    String KEY_PLAY_BEEP = "preferences_play_beep";
-    String KEY_VIBRATE = "preferences_vibrate";
-    String KEY_COPY_TO_CLIPBOARD = "preferences_copy_to_clipboard";
-    String KEY_FRONT_LIGHT_MODE = "preferences_front_light_mode";
-    String KEY_BULK_MODE = "preferences_bulk_mode";
-    String KEY_REMEMBER_DUPLICATES = "preferences_remember_duplicates";
-    String KEY_ENABLE_HISTORY = "preferences_history";
-    String KEY_SUPPLEMENTAL = "preferences_supplemental";
-    String KEY_AUTO_FOCUS = "preferences_auto_focus";
-    String KEY_INVERT_SCAN = "preferences_invert_scan";
-    String KEY_SEARCH_COUNTRY = "preferences_search_country";
-    String KEY_DISABLE_AUTO_ORIENTATION = "preferences_orientation";
-
-    String KEY_DISABLE_CONTINUOUS_FOCUS = "preferences_disable_continuous_focus";
-    String KEY_DISABLE_EXPOSURE = "preferences_disable_exposure";
-    String KEY_DISABLE_METERING = "preferences_disable_metering";
-    String KEY_DISABLE_BARCODE_SCENE_MODE = "preferences_disable_barcode_scene_mode";
-    String KEY_AUTO_OPEN_WEB = "preferences_auto_open_web";
-}
@@ -0,0 +1,469 @@
+package io.hellobird.videorecord.lib;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hellobird.videorecord.lib.camera.CameraArbiter;
+import io.hellobird.videorecord.lib.camera.CameraFrameSource;
+import io.hellobird.videorecord.lib.camera.CameraLease;
+import io.hellobird.videorecord.lib.camera.OffscreenPreview;
+import io.hellobird.videorecord.lib.camera.RecorderConfig;
+import io.hellobird.videorecord.lib.camera.open.CameraFacing;
+import io.hellobird.videorecord.lib.camera.open.OpenCamera;
+import io.hellobird.videorecord.lib.codec.CodecRecorder;
+import io.hellobird.videorecord.lib.codec.MediaMuxerSink;
+import io.hellobird.videorecord.lib.codec.RecoverySidecarSink;
+import io.hellobird.videorecord.lib.storage.OutputFileManager;
+
+/*******************************************************************
+ * HeadlessRecorder.java  2026-10-19
+ * <P>
+ * 没有可见界面的录制：相机预览输出到 {@link OffscreenPreview}，屏幕关闭或应用进入后台后继续录制，
+ * 一般由 {@link RecordService} 持有<br/>
+ * {@link RecordView#attachPreview(HeadlessRecorder)} 后控件只显示预览，添加与移除预览不影响相机与录制<br/>
+ * 使用 MediaCodec 编码（API 18+），不录制音频。录制时持有 CPU 唤醒锁<br/>
+ * 所有方法在主线程调用，回调在主线程<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public final class HeadlessRecorder {
+
+    private static final String TAG = "HeadlessRecorder";
+
+    /**
+     * 1KB大小，与 {@link RecordView} 的码率单位相同
+     */
+    private static final int KB = 1024 * 8;
+
+    private final Context mContext;
+
+    private final CameraArbiter mCameraArbiter;
+
+    private final RecordStateMachine mState = new RecordStateMachine();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 需要显示预览的窗口，离屏预览重新创建后会重新添加
+     */
+    private final List<Surface> mPreviewSurfaces = new ArrayList<>();
+
+    private OutputFileManager mOutputFileManager;
+
+    private CameraFacing mCameraFacing = CameraFacing.BACK;
+
+    private RecorderConfig mRecorderConfig = RecorderConfig.DEFAULT;
+
+    private int mFrameRate = RecordView.DEFAULT_FRAME_RATE;
+
+    /**
+     * 码率，单位为kb/s
+     */
+    private int mBitRate = RecordView.DEFAULT_BIT_RATE;
+
+    private OffscreenPreview mPreview;
+
+    private CameraLease mCameraLease;
+
+    private CodecRecorder mCodecRecorder;
+
+    private File mSessionFile;
+
+    private PowerManager.WakeLock mWakeLock;
+
+    private RecordView.OnRecordFinishedListener mOnRecordFinishedListener;
+
+    private RecordView.OnRecordErrorListener mOnRecordErrorListener;
+
+    public HeadlessRecorder(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mCameraArbiter = CameraArbiter.getInstance(mContext);
+        mOutputFileManager = new OutputFileManager(new File(mContext.getExternalCacheDir(), "record"));
+    }
+
+    /**
+     * 打开相机并开始离屏预览，相机被其他 {@link RecordView} 使用时会被取走
+     */
+    @MainThread
+    public void open() {
+        if (mCameraLease != null) {
+            return;
+        }
+        try {
+            ensurePreview();
+        } catch (RuntimeException e) {
+            reportError(RecordError.Type.CAMERA_FAILURE, e, false);
+            return;
+        }
+        mState.reset();
+        mState.transition(RecordState.IDLE, RecordState.OPENING);
+        mCameraLease = mCameraArbiter.acquire(mCameraFacing, mPreview.getSurfaceTexture(), mRecorderConfig, mCameraCallback);
+    }
+
+    /**
+     * 结束录制，释放相机与离屏预览
+     */
+    @MainThread
+    public void close() {
+        stopRecord();
+        if (mCameraLease != null) {
+            mCameraLease.release();
+            mCameraLease = null;
+        }
+        mState.reset();
+        if (mPreview != null) {
+            // 排在相机线程关闭相机之后释放，否则相机还在向 SurfaceTexture 输出
+            final OffscreenPreview preview = mPreview;
+            mPreview = null;
+            mCameraArbiter.getCameraHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    preview.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * 开始录制，需要已经开始预览
+     *
+     * @return 是否已开始录制
+     */
+    @MainThread
+    public boolean startRecord() {
+        if (!mState.transition(RecordState.PREVIEWING, RecordState.STARTING)) {
+            Log.w(TAG, "Reject startRecord in state " + mState.get());
+            return false;
+        }
+        boolean started = startCodecRecord();
+        if (started) {
+            acquireWakeLock();
+        }
+        mState.transition(RecordState.STARTING, started ? RecordState.RECORDING : RecordState.PREVIEWING);
+        return started;
+    }
+
+    private boolean startCodecRecord() {
+        OpenCamera openCamera = mCameraLease != null && mCameraLease.isValid()
+                ? mCameraArbiter.getCameraManager().getOpenCamera() : null;
+        if (openCamera == null) {
+            return false;
+        }
+        if (!mOutputFileManager.hasFreeSpace(0)) {
+            reportError(RecordError.Type.STORAGE_FULL, null, false);
+            return false;
+        }
+        File file = mOutputFileManager.newSessionFile();
+        if (file == null) {
+            reportError(RecordError.Type.STORAGE_FAILURE, null, false);
+            return false;
+        }
+        final Camera camera = openCamera.getCamera();
+        // 相机只在相机线程调用，录制器设置回调与归还缓冲区也转到相机线程
+        final Camera.Size[] size = new Camera.Size[1];
+        mCameraArbiter.runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                size[0] = camera.getParameters().getPreviewSize();
+            }
+        });
+        int orientation = openCamera.getOrientation();
+        CodecRecorder codecRecorder = new CodecRecorder(new CameraFrameSource(camera, size[0].width, size[0].height,
+                mCameraArbiter.getCameraHandler()));
+        codecRecorder.setVideoParams(mFrameRate, mBitRate * KB);
+        codecRecorder.setOnErrorListener(mCodecErrorListener);
+        try {
+            codecRecorder.start(new RecoverySidecarSink(new MediaMuxerSink(file.getAbsolutePath(), orientation, 1),
+                    file, mFrameRate, orientation));
+        } catch (IOException | RuntimeException e) {
+            reportError(RecordError.typeOfException(e, RecordError.Type.ENCODER_FAILURE), e, false);
+            mOutputFileManager.finishSession(file, true);
+            return false;
+        }
+        mCodecRecorder = codecRecorder;
+        mSessionFile = file;
+        return true;
+    }
+
+    /**
+     * 结束录制，返回时文件已经写完
+     */
+    @MainThread
+    public void stopRecord() {
+        if (!mState.transition(RecordState.RECORDING, RecordState.STOPPING)) {
+            return;
+        }
+        finishRecord();
+        mState.transition(RecordState.STOPPING, RecordState.PREVIEWING);
+    }
+
+    private void finishRecord() {
+        CodecRecorder codecRecorder = mCodecRecorder;
+        final File file = mSessionFile;
+        mCodecRecorder = null;
+        mSessionFile = null;
+        boolean complete = true;
+        if (codecRecorder != null) {
+            try {
+                codecRecorder.stop();
+            } catch (IOException e) {
+                // 文件没有正常结束，按中断的录制处理
+                reportError(RecordError.Type.STORAGE_FAILURE, e, false);
+                complete = false;
+            }
+        }
+        releaseWakeLock();
+        if (file == null) {
+            return;
+        }
+        final RecordView.OnRecordFinishedListener listener = mOnRecordFinishedListener;
+        Runnable notifyFinished = listener == null ? null : new Runnable() {
+            @Override
+            public void run() {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onRecordFinished(file, null, null);
+                    }
+                });
+            }
+        };
+        if (complete) {
+            mOutputFileManager.finishSession(file, false, notifyFinished);
+        } else {
+            mOutputFileManager.finishInterruptedSession(file, notifyFinished);
+        }
+    }
+
+    /**
+     * 添加预览窗口，在 SurfaceHolder.Callback.surfaceCreated 中调用
+     *
+     * @param surface 窗口
+     */
+    @MainThread
+    public void addPreviewSurface(@NonNull Surface surface) {
+        if (!mPreviewSurfaces.contains(surface)) {
+            mPreviewSurfaces.add(surface);
+        }
+        if (mPreview != null) {
+            mPreview.addWindow(surface);
+        }
+    }
+
+    /**
+     * 移除预览窗口，返回后不再绘制，在 SurfaceHolder.Callback.surfaceDestroyed 中调用
+     *
+     * @param surface 窗口
+     */
+    @MainThread
+    public void removePreviewSurface(@NonNull Surface surface) {
+        mPreviewSurfaces.remove(surface);
+        if (mPreview != null) {
+            mPreview.removeWindow(surface);
+        }
+    }
+
+    private void ensurePreview() {
+        if (mPreview != null) {
+            return;
+        }
+        mPreview = new OffscreenPreview();
+        for (Surface surface : mPreviewSurfaces) {
+            mPreview.addWindow(surface);
+        }
+    }
+
+    private void acquireWakeLock() {
+        if (mWakeLock == null) {
+            PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+            mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "videorecord:" + TAG);
+            mWakeLock.setReferenceCounted(false);
+        }
+        mWakeLock.acquire();
+    }
+
+    private void releaseWakeLock() {
+        if (mWakeLock != null) {
+            mWakeLock.release();
+        }
+    }
+
+    private void reportError(RecordError.Type type, @Nullable Throwable cause, boolean interrupted) {
+        RecordError error = new RecordError(type, RecordError.NO_CODE, cause, interrupted, SystemClock.elapsedRealtime());
+        Log.w(TAG, "Record error " + type, cause);
+        if (mOnRecordErrorListener != null) {
+            mOnRecordErrorListener.onRecordError(error);
+        }
+    }
+
+    /**
+     * 录制状态，可以在任意线程调用
+     *
+     * @return
+     */
+    public RecordState getRecordState() {
+        return mState.get();
+    }
+
+    /**
+     * 添加录制状态监听，状态变化在主线程回调
+     *
+     * @param listener
+     */
+    public void addOnRecordStateChangeListener(RecordView.OnRecordStateChangeListener listener) {
+        mState.addListener(listener);
+    }
+
+    public void removeOnRecordStateChangeListener(RecordView.OnRecordStateChangeListener listener) {
+        mState.removeListener(listener);
+    }
+
+    /**
+     * 设置录制结束的回调，文件写完后在主线程回调
+     *
+     * @param listener
+     */
+    public void setOnRecordFinishedListener(@Nullable RecordView.OnRecordFinishedListener listener) {
+        mOnRecordFinishedListener = listener;
+    }
+
+    /**
+     * 设置错误回调，相机被取走或出错时录制已经结束
+     *
+     * @param listener
+     */
+    public void setOnRecordErrorListener(@Nullable RecordView.OnRecordErrorListener listener) {
+        mOnRecordErrorListener = listener;
+    }
+
+    /**
+     * 设置输出文件管理，用于指定输出目录
+     *
+     * @param outputFileManager
+     */
+    public void setOutputFileManager(@NonNull OutputFileManager outputFileManager) {
+        mOutputFileManager = outputFileManager;
+    }
+
+    public OutputFileManager getOutputFileManager() {
+        return mOutputFileManager;
+    }
+
+    /**
+     * 设置摄像头方向，下次打开相机时生效
+     *
+     * @param facing
+     */
+    public void setCameraFacing(@NonNull CameraFacing facing) {
+        mCameraFacing = facing;
+    }
+
+    public CameraFacing getCameraFacing() {
+        return mCameraFacing;
+    }
+
+    /**
+     * 设置相机参数配置，下次打开相机时生效
+     *
+     * @param config
+     */
+    public void setRecorderConfig(@NonNull RecorderConfig config) {
+        mRecorderConfig = config;
+    }
+
+    /**
+     * 设置帧数与码率，下次开始录制时生效
+     *
+     * @param frameRate 帧数
+     * @param bitRate   码率，单位为kb/s
+     */
+    public void setVideoParams(int frameRate, int bitRate) {
+        mFrameRate = frameRate;
+        mBitRate = bitRate;
+    }
+
+    private final CodecRecorder.OnErrorListener mCodecErrorListener = new CodecRecorder.OnErrorListener() {
+        @Override
+        public void onError(CodecRecorder recorder, Exception e) {
+            if (recorder != mCodecRecorder) {
+                return;
+            }
+            reportError(RecordError.typeOfException(e, RecordError.Type.ENCODER_FAILURE), e, true);
+            // 保留已经写入的部分
+            stopRecord();
+        }
+    };
+
+    private final CameraArbiter.Callback mCameraCallback = new CameraArbiter.Callback() {
+        @Override
+        public void onCameraAcquired(CameraLease lease) {
+            if (lease == mCameraLease) {
+                mState.transition(RecordState.OPENING, RecordState.PREVIEWING);
+            }
+        }
+
+        @Override
+        public void onCameraEvicted(CameraLease lease) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            // 相机交给其他持有者前结束录制
+            boolean recording = mState.get() == RecordState.RECORDING;
+            finishRecord();
+            mCameraLease = null;
+            mState.reset();
+            if (recording) {
+                reportError(RecordError.Type.CAMERA_IN_USE, null, true);
+            }
+        }
+
+        @Override
+        public void onCameraError(CameraLease lease, Exception e) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            mCameraLease.release();
+            mCameraLease = null;
+            mState.reset();
+            reportError(RecordError.typeOfException(e, RecordError.Type.CAMERA_FAILURE), e, false);
+        }
+
+        @Override
+        public void onCameraDisconnected(CameraLease lease, int error) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            boolean recording = mState.get() == RecordState.RECORDING;
+            finishRecord();
+            mCameraLease.release();
+            mCameraLease = null;
+            mState.reset();
+            RecordError.Type type = RecordError.typeOfCameraError(error);
+            reportError(type, null, recording);
+            if (type != RecordError.Type.PERMISSION_DENIED) {
+                // 没有界面可以操作，直接重新打开相机，出错的相机在重新请求时关闭
+                open();
+            }
+        }
+    };
+}
@@ -0,0 +1,126 @@
+package io.hellobird.videorecord.lib;
+
+/*******************************************************************
+ * HighSpeedInfo.java  2026-10-19
+ * <P>
+ * 高帧率录制参数，录制开始前可通过 {@link RecordView#getHighSpeedInfo()} 获取<br/>
+ * 设备不支持请求的帧数时，会退回到可用的最高帧数<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class HighSpeedInfo {
+
+    /**
+     * 请求的采集帧数
+     */
+    private final int mRequestedFrameRate;
+
+    /**
+     * 实际采集帧数
+     */
+    private final int mCaptureFrameRate;
+
+    /**
+     * 输出视频帧数，慢动作时小于采集帧数
+     */
+    private final int mOutputFrameRate;
+
+    /**
+     * 输出视频码率，单位 bit/s
+     */
+    private final int mBitRate;
+
+    /**
+     * 是否使用系统 QUALITY_HIGH_SPEED_* 质量
+     */
+    private final boolean mHighSpeedProfile;
+
+    HighSpeedInfo(int requestedFrameRate, int captureFrameRate, int outputFrameRate, int bitRate,
+                  boolean highSpeedProfile) {
+        mRequestedFrameRate = requestedFrameRate;
+        mCaptureFrameRate = captureFrameRate;
+        mOutputFrameRate = outputFrameRate;
+        mBitRate = bitRate;
+        mHighSpeedProfile = highSpeedProfile;
+    }
+
+    /**
+     * 获取请求的采集帧数
+     *
+     * @return
+     */
+    public int getRequestedFrameRate() {
+        return mRequestedFrameRate;
+    }
+
+    /**
+     * 获取实际采集帧数
+     *
+     * @return
+     */
+    public int getCaptureFrameRate() {
+        return mCaptureFrameRate;
+    }
+
+    /**
+     * 获取输出视频帧数
+     *
+     * @return
+     */
+    public int getOutputFrameRate() {
+        return mOutputFrameRate;
+    }
+
+    /**
+     * 获取输出视频码率，单位 bit/s
+     *
+     * @return
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 是否使用系统高速录制质量
+     *
+     * @return
+     */
+    public boolean isHighSpeedProfile() {
+        return mHighSpeedProfile;
+    }
+
+    /**
+     * 是否为慢动作输出
+     *
+     * @return
+     */
+    public boolean isSlowMotion() {
+        return mCaptureFrameRate > mOutputFrameRate;
+    }
+
+    /**
+     * 是否退回到了低于请求的帧数
+     *
+     * @return
+     */
+    public boolean isFallback() {
+        return mCaptureFrameRate < mRequestedFrameRate;
+    }
+
+    /**
+     * 慢动作倍数，实时输出为1
+     *
+     * @return
+     */
+    public float getSlowMotionFactor() {
+        return mCaptureFrameRate / (float) mOutputFrameRate;
+    }
+
+    @Override
+    public String toString() {
+        return "HighSpeedInfo{requested=" + mRequestedFrameRate + ", capture=" + mCaptureFrameRate
+                + ", output=" + mOutputFrameRate + ", bitRate=" + mBitRate + ", profile=" + mHighSpeedProfile + '}';
+    }
+}
@@ -0,0 +1,310 @@
+package io.hellobird.videorecord.lib;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.hellobird.videorecord.lib.codec.SampleSink;
+import io.hellobird.videorecord.lib.codec.SegmentingSink;
+import io.hellobird.videorecord.lib.storage.Segment;
+import io.hellobird.videorecord.lib.storage.SegmentIndex;
+
+/*******************************************************************
+ * LoopRecorder.java  2026-10-19
+ * <P>
+ * 循环录制（行车记录仪模式），通过 {@link RecordView#setLoopRecorder(LoopRecorder)} 启用<br/>
+ * 录制内容按固定时长切分为连续的分段，总大小超过配额时删除最旧的分段，受保护的分段不会被删除<br/>
+ * 分段索引的读写都在后台线程，编码线程切换分段时不等待磁盘<br/>
+ * 使用 MediaCodec 录制，需要 API 18，目前只录制视频<br/>
+ * 每个实例持有一个后台线程与打开的索引日志，不再使用时必须调用 {@link #release()}；同一个目录同时只能有一个未释放的实例<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class LoopRecorder {
+
+    private static final String TAG = "LoopRecorder";
+
+    /**
+     * 默认分段时长
+     */
+    public static final long DEFAULT_SEGMENT_DURATION_MS = 60 * 1000;
+
+    /**
+     * 默认配额
+     */
+    public static final long DEFAULT_QUOTA_BYTES = 2L * 1024 * 1024 * 1024;
+
+    /**
+     * 未释放的实例使用的目录，同一个目录的日志只能由一个实例追加
+     */
+    private static final Set<String> sDirectories = new HashSet<>();
+
+    private final SegmentIndex mIndex;
+
+    private final String mDirectoryPath;
+
+    private final HandlerThread mIndexThread;
+
+    private final Handler mIndexHandler;
+
+    private boolean mReleased;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile long mSegmentDurationMs = DEFAULT_SEGMENT_DURATION_MS;
+
+    private volatile long mQuotaBytes = DEFAULT_QUOTA_BYTES;
+
+    /**
+     * 正在录制的分段序号，-1表示没有
+     */
+    private volatile long mCurrentSeq = -1;
+
+    /**
+     * 上一个分段序号，-1表示没有
+     */
+    private volatile long mPreviousSeq = -1;
+
+    private OnSegmentListener mOnSegmentListener;
+
+    public interface OnSegmentListener {
+        /**
+         * 分段写完并已按配额清理，主线程回调
+         *
+         * @param segment 分段
+         */
+        void onSegmentFinished(Segment segment);
+    }
+
+    /**
+     * @param directory 分段目录，只应保存分段文件
+     * @throws IllegalStateException 目录正在被另一个未释放的实例使用
+     */
+    public LoopRecorder(@NonNull File directory) {
+        mDirectoryPath = directory.getAbsolutePath();
+        synchronized (sDirectories) {
+            if (!sDirectories.add(mDirectoryPath)) {
+                throw new IllegalStateException("Directory in use by another LoopRecorder: " + mDirectoryPath);
+            }
+        }
+        mIndex = new SegmentIndex(directory);
+        mIndexThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mIndexThread.start();
+        mIndexHandler = new Handler(mIndexThread.getLooper());
+        // 提前读取索引，开始录制时不需要等待
+        mIndexHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mIndex.open();
+                    mIndex.evict(mQuotaBytes, -1);
+                } catch (IOException e) {
+                    Log.w(TAG, "Segment index failed to open", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 释放后台线程并关闭索引日志，之后目录可以交给新的实例。需要先结束录制，释放后不能再使用<br/>
+     * 会等待已经提交的索引更新写完
+     */
+    public synchronized void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        mIndexHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mIndex.close();
+                // 之前提交的任务已经执行完
+                mIndexThread.quit();
+            }
+        });
+        try {
+            mIndexThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (sDirectories) {
+            sDirectories.remove(mDirectoryPath);
+        }
+    }
+
+    /**
+     * 设置分段时长，下次开始录制时生效，实际在之后的第一个关键帧切分
+     *
+     * @param segmentDurationMs 毫秒
+     */
+    public void setSegmentDurationMs(long segmentDurationMs) {
+        if (segmentDurationMs <= 0) {
+            throw new IllegalArgumentException("Segment duration must be positive: " + segmentDurationMs);
+        }
+        mSegmentDurationMs = segmentDurationMs;
+    }
+
+    public long getSegmentDurationMs() {
+        return mSegmentDurationMs;
+    }
+
+    /**
+     * 设置配额，每个分段完成后检查
+     *
+     * @param quotaBytes 字节数
+     */
+    public void setQuotaBytes(long quotaBytes) {
+        mQuotaBytes = quotaBytes;
+    }
+
+    public long getQuotaBytes() {
+        return mQuotaBytes;
+    }
+
+    public void setOnSegmentListener(@Nullable OnSegmentListener listener) {
+        mOnSegmentListener = listener;
+    }
+
+    /**
+     * 保护正在录制与上一个分段，例如检测到碰撞时调用
+     */
+    public void protectRecent() {
+        final long current = mCurrentSeq;
+        final long previous = mPreviousSeq;
+        mIndexHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                protect(current);
+                protect(previous);
+            }
+        });
+    }
+
+    /**
+     * 保护指定分段
+     *
+     * @param sequence 分段序号
+     */
+    public void protect(final long sequence) {
+        if (sequence < 0) {
+            return;
+        }
+        if (Looper.myLooper() != mIndexHandler.getLooper()) {
+            mIndexHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    protect(sequence);
+                }
+            });
+            return;
+        }
+        try {
+            if (mIndex.protect(sequence)) {
+                Log.i(TAG, "Protected segment " + sequence);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot protect segment " + sequence, e);
+        }
+    }
+
+    /**
+     * 获取所有分段，按录制顺序排列
+     *
+     * @return 副本
+     */
+    public List<Segment> getSegments() {
+        return mIndex.getSegments();
+    }
+
+    /**
+     * 正在录制的分段序号
+     *
+     * @return 没有时返回-1
+     */
+    public long getCurrentSequence() {
+        return mCurrentSeq;
+    }
+
+    /**
+     * 创建本次录制的输出端
+     *
+     * @param orientation 旋转角度
+     * @return
+     */
+    @RequiresApi(18)
+    SampleSink newSink(int orientation) {
+        return new SegmentingSink(mSegmentCallback, orientation, mSegmentDurationMs);
+    }
+
+    private final SegmentingSink.Callback mSegmentCallback = new SegmentingSink.Callback() {
+        @Override
+        public File onSegmentStart() throws IOException {
+            final Segment segment = mIndex.allocate(System.currentTimeMillis());
+            mPreviousSeq = mCurrentSeq;
+            mCurrentSeq = segment.getSequence();
+            mIndexHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mIndex.begin(segment);
+                    } catch (IOException e) {
+                        // 下次打开索引时会按文件收录
+                        Log.w(TAG, "Cannot record segment " + segment.getSequence(), e);
+                    }
+                }
+            });
+            return segment.getFile();
+        }
+
+        @Override
+        public void onSegmentFinished(File file, final long durationUs) {
+            final long sequence = SegmentIndex.sequenceOf(file);
+            if (mCurrentSeq == sequence) {
+                // 录制已结束，最后一个分段成为上一个分段
+                mPreviousSeq = sequence;
+                mCurrentSeq = -1;
+            }
+            mIndexHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    finishSegment(sequence, durationUs / 1000);
+                }
+            });
+        }
+    };
+
+    private void finishSegment(long sequence, long durationMs) {
+        final Segment segment;
+        try {
+            mIndex.finish(sequence, durationMs);
+            mIndex.evict(mQuotaBytes, mCurrentSeq);
+            segment = mIndex.get(sequence);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot finish segment " + sequence, e);
+            return;
+        }
+        final OnSegmentListener listener = mOnSegmentListener;
+        if (listener != null && segment != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onSegmentFinished(segment);
+                }
+            });
+        }
+    }
+}
@@ -4,12 +4,16 @@ import android.graphics.Point;
 import android.hardware.Camera;
 import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
+import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.List;
 
+import io.hellobird.videorecord.lib.mp4.RecoveryInfo;
+
 /*******************************************************************
  * MediaRecorderFactory.java  2020-03-17
  * <P>
@@ -22,6 +26,28 @@ import java.util.List;
  ******************************************************************/
 public final class MediaRecorderFactory {
 
+    /**
+     * 延时摄影质量，按分辨率从高到低排列
+     */
+    private static final int[] TIME_LAPSE_QUALITIES = {
+            CamcorderProfile.QUALITY_TIME_LAPSE_1080P,
+            CamcorderProfile.QUALITY_TIME_LAPSE_720P,
+            CamcorderProfile.QUALITY_TIME_LAPSE_480P,
+            CamcorderProfile.QUALITY_TIME_LAPSE_CIF,
+            CamcorderProfile.QUALITY_TIME_LAPSE_QVGA,
+            CamcorderProfile.QUALITY_TIME_LAPSE_QCIF,
+    };
+
+    /**
+     * 高速录制质量，Android 5.0 开始提供
+     */
+    private static final int[] HIGH_SPEED_QUALITIES = {
+            CamcorderProfile.QUALITY_HIGH_SPEED_2160P,
+            CamcorderProfile.QUALITY_HIGH_SPEED_1080P,
+            CamcorderProfile.QUALITY_HIGH_SPEED_720P,
+            CamcorderProfile.QUALITY_HIGH_SPEED_480P,
+    };
+
     /**
      * 使用系统指定质量参数生成 MediaRecorder
      *
@@ -31,23 +57,29 @@ public final class MediaRecorderFactory {
      */
     public static MediaRecorder newSystemConfigInstance(Camera camera, int camcorderProfile) {
         MediaRecorder mediaRecorder = new MediaRecorder();
-        mediaRecorder.setCamera(camera);
-        //设置视频录制过程中所录制的音频来自手机的麦克风
-        mediaRecorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
-        //设置视频源为摄像头
-        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.DEFAULT);
-        CamcorderProfile profile = null;
-        if (CamcorderProfile.hasProfile(camcorderProfile)) {
-            profile = CamcorderProfile.get(camcorderProfile);
-        } else if (CamcorderProfile.hasProfile(CamcorderProfile.QUALITY_720P)) {
-            profile = CamcorderProfile.get(CamcorderProfile.QUALITY_720P);
-        } else if (CamcorderProfile.hasProfile(CamcorderProfile.QUALITY_480P)) {
-            profile = CamcorderProfile.get(CamcorderProfile.QUALITY_480P);
-        }
-        if (profile != null) {
-            mediaRecorder.setProfile(profile);
+        try {
+            mediaRecorder.setCamera(camera);
+            //设置视频录制过程中所录制的音频来自手机的麦克风
+            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
+            //设置视频源为摄像头
+            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.DEFAULT);
+            CamcorderProfile profile = null;
+            if (CamcorderProfile.hasProfile(camcorderProfile)) {
+                profile = CamcorderProfile.get(camcorderProfile);
+            } else if (CamcorderProfile.hasProfile(CamcorderProfile.QUALITY_720P)) {
+                profile = CamcorderProfile.get(CamcorderProfile.QUALITY_720P);
+            } else if (CamcorderProfile.hasProfile(CamcorderProfile.QUALITY_480P)) {
+                profile = CamcorderProfile.get(CamcorderProfile.QUALITY_480P);
+            }
+            if (profile != null) {
+                mediaRecorder.setProfile(profile);
+            }
+            return mediaRecorder;
+        } catch (RuntimeException e) {
+            // 配置失败时释放，否则录制器会一直占用相机
+            mediaRecorder.release();
+            throw e;
         }
-        return mediaRecorder;
     }
 
     /**
@@ -64,31 +96,221 @@ public final class MediaRecorderFactory {
     public static MediaRecorder newCustomConfigInstance(@NonNull Camera camera, @NonNull Camera.Parameters parameters, int resolutionX, int resolutionY,
                                                         int frameRate, int bitRate) {
         MediaRecorder mediaRecorder = new MediaRecorder();
-        mediaRecorder.setCamera(camera);
-        //设置视频录制过程中所录制的音频来自手机的麦克风
-        mediaRecorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
-        //设置视频源为摄像头
-        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.DEFAULT);
-        //设置视频录制的输出文件为MP4
-        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.DEFAULT);
-        //计算视频尺寸
-        if (resolutionX > 0 && resolutionY > 0) {
-            Point point = findCloseSizeValue(parameters, new Point(resolutionX, resolutionY));
-            mediaRecorder.setVideoSize(point.x, point.y);
+        try {
+            mediaRecorder.setCamera(camera);
+            //设置视频录制过程中所录制的音频来自手机的麦克风
+            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
+            //设置视频源为摄像头
+            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.DEFAULT);
+            //设置视频录制的输出文件为MP4
+            mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.DEFAULT);
+            //计算视频尺寸
+            if (resolutionX > 0 && resolutionY > 0) {
+                Point point = findCloseSizeValue(parameters, new Point(resolutionX, resolutionY));
+                mediaRecorder.setVideoSize(point.x, point.y);
+            }
+            //设置帧数
+            if (frameRate>0) {
+                mediaRecorder.setVideoFrameRate(findCloseFrameRate(parameters, frameRate));
+            }
+            //设置音频编码方式为AAC
+            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.DEFAULT);
+            //设置录制的视频编码为MPEG_4_SP
+            mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.DEFAULT);
+            //设置编码帧率，此项会严重影响适配质量，基准数字越高，质量越好
+            if (bitRate > 0) {
+                mediaRecorder.setVideoEncodingBitRate(bitRate);
+            }
+            return mediaRecorder;
+        } catch (RuntimeException e) {
+            // 配置失败时释放，否则录制器会一直占用相机
+            mediaRecorder.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 生成延时摄影 MediaRecorder，不录制音频
+     *
+     * @param camera          相机
+     * @param profile         延时摄影质量，通过 {@link #findTimeLapseProfile(int, int, int)} 获取
+     * @param captureInterval 采集间隔，单位毫秒
+     * @return
+     */
+    public static MediaRecorder newTimeLapseInstance(@NonNull Camera camera, @NonNull CamcorderProfile profile,
+                                                     long captureInterval) {
+        MediaRecorder mediaRecorder = new MediaRecorder();
+        try {
+            mediaRecorder.setCamera(camera);
+            //延时摄影只有视频源
+            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
+            mediaRecorder.setProfile(profile);
+            mediaRecorder.setCaptureRate(1000.0 / captureInterval);
+            return mediaRecorder;
+        } catch (RuntimeException e) {
+            // 配置失败时释放，否则录制器会一直占用相机
+            mediaRecorder.release();
+            throw e;
         }
-        //设置帧数
-        if (frameRate>0) {
-            mediaRecorder.setVideoFrameRate(findCloseFrameRate(parameters, frameRate));
+    }
+
+    /**
+     * 寻找分辨率最接近的延时摄影质量
+     *
+     * @param cameraId 相机ID
+     * @param width    目标宽度
+     * @param height   目标高度
+     * @return 设备不支持延时摄影时返回null
+     */
+    @Nullable
+    public static CamcorderProfile findTimeLapseProfile(int cameraId, int width, int height) {
+        long targetPixels = (long) width * height;
+        CamcorderProfile result = null;
+        long minOffset = Long.MAX_VALUE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_TIME_LAPSE_2160P)) {
+            result = CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_TIME_LAPSE_2160P);
+            minOffset = Math.abs(targetPixels - (long) result.videoFrameWidth * result.videoFrameHeight);
         }
-        //设置音频编码方式为AAC
-        mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.DEFAULT);
-        //设置录制的视频编码为MPEG_4_SP
-        mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.DEFAULT);
-        //设置编码帧率，此项会严重影响适配质量，基准数字越高，质量越好
-        if (bitRate > 0) {
+        for (int quality : TIME_LAPSE_QUALITIES) {
+            if (!CamcorderProfile.hasProfile(cameraId, quality)) {
+                continue;
+            }
+            CamcorderProfile profile = CamcorderProfile.get(cameraId, quality);
+            long offset = Math.abs(targetPixels - (long) profile.videoFrameWidth * profile.videoFrameHeight);
+            if (offset < minOffset) {
+                minOffset = offset;
+                result = profile;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 生成高帧率 MediaRecorder
+     *
+     * @param camera          相机
+     * @param parameters      相机参数
+     * @param profile         高速录制质量，为空时使用自定义参数
+     * @param resolutionX     视频宽度，profile 不为空时忽略
+     * @param resolutionY     视频高度，profile 不为空时忽略
+     * @param captureRate     采集帧数
+     * @param outputFrameRate 输出帧数，小于采集帧数时输出慢动作，此时不录制音频
+     * @param bitRate         码率，单位 bit/s
+     * @return
+     */
+    public static MediaRecorder newHighSpeedInstance(@NonNull Camera camera, @NonNull Camera.Parameters parameters,
+                                                     @Nullable CamcorderProfile profile, int resolutionX, int resolutionY,
+                                                     int captureRate, int outputFrameRate, int bitRate) {
+        boolean slowMotion = captureRate > outputFrameRate;
+        MediaRecorder mediaRecorder = new MediaRecorder();
+        try {
+            mediaRecorder.setCamera(camera);
+            if (!slowMotion) {
+                mediaRecorder.setAudioSource(MediaRecorder.AudioSource.DEFAULT);
+            }
+            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
+            if (profile != null) {
+                mediaRecorder.setOutputFormat(profile.fileFormat);
+                mediaRecorder.setVideoSize(profile.videoFrameWidth, profile.videoFrameHeight);
+            } else {
+                mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+                Point point = findCloseSizeValue(parameters, new Point(resolutionX, resolutionY));
+                mediaRecorder.setVideoSize(point.x, point.y);
+            }
+            mediaRecorder.setVideoFrameRate(outputFrameRate);
+            if (slowMotion) {
+                // 采集帧数大于输出帧数，播放时即为慢动作
+                mediaRecorder.setCaptureRate(captureRate);
+            } else {
+                mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+            }
+            mediaRecorder.setVideoEncoder(profile != null ? profile.videoCodec : MediaRecorder.VideoEncoder.H264);
             mediaRecorder.setVideoEncodingBitRate(bitRate);
+            return mediaRecorder;
+        } catch (RuntimeException e) {
+            // 配置失败时释放，否则录制器会一直占用相机
+            mediaRecorder.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 寻找高速录制质量，优先选择帧数满足要求且分辨率最接近的
+     *
+     * @param cameraId  相机ID
+     * @param frameRate 目标帧数
+     * @param width     目标宽度
+     * @param height    目标高度
+     * @return 设备不支持高速录制时返回null
+     */
+    @Nullable
+    public static CamcorderProfile findHighSpeedProfile(int cameraId, int frameRate, int width, int height) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        long targetPixels = (long) width * height;
+        CamcorderProfile result = null;
+        long minOffset = Long.MAX_VALUE;
+        for (int quality : HIGH_SPEED_QUALITIES) {
+            if (!CamcorderProfile.hasProfile(cameraId, quality)) {
+                continue;
+            }
+            CamcorderProfile profile = CamcorderProfile.get(cameraId, quality);
+            long offset = Math.abs(targetPixels - (long) profile.videoFrameWidth * profile.videoFrameHeight);
+            if (result == null) {
+                result = profile;
+                minOffset = offset;
+                continue;
+            }
+            boolean fast = profile.videoFrameRate >= frameRate;
+            boolean resultFast = result.videoFrameRate >= frameRate;
+            if (fast != resultFast) {
+                if (fast) {
+                    result = profile;
+                    minOffset = offset;
+                }
+            } else if (fast ? offset < minOffset : profile.videoFrameRate > result.videoFrameRate) {
+                result = profile;
+                minOffset = offset;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * MediaRecorder 视频编码对应的 MIME，用于保存修复信息
+     *
+     * @param videoEncoder {@link MediaRecorder.VideoEncoder}
+     * @return 不是 H.264/H.265 或未知时返回null
+     */
+    @Nullable
+    public static String videoMimeOf(int videoEncoder) {
+        switch (videoEncoder) {
+            case MediaRecorder.VideoEncoder.H264:
+                return RecoveryInfo.MIME_AVC;
+            case MediaRecorder.VideoEncoder.HEVC:
+                return RecoveryInfo.MIME_HEVC;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 相机预览支持的最高帧数
+     *
+     * @param parameters 相机参数
+     * @return
+     */
+    public static int findMaxFrameRate(Camera.Parameters parameters) {
+        int maxRate = 0;
+        List<int[]> rangeList = parameters.getSupportedPreviewFpsRange();
+        if (rangeList != null) {
+            for (int[] range : rangeList) {
+                maxRate = Math.max(maxRate, range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+            }
         }
-        return mediaRecorder;
+        return maxRate / 1000;
     }
 
     /**
@@ -1,10 +1,10 @@
 package io.hellobird.videorecord.lib;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -62,24 +62,29 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
     private int mMaxDuration;
 
     /**
-     * 开始录制时间
+     * 开始录制时间，基于 {@link SystemClock#elapsedRealtime()}，0表示未在录制
      */
     private long mStartTime;
 
     /**
-     * 主线程handler
+     * 是否显示十分之一秒
      */
-    private Handler mHandler;
+    private boolean mShowTenths;
 
     /**
-     * 回调
+     * 时间格式化缓存，避免每次刷新创建字符串
      */
-    private OnRecordListener mOnRecordListener;
+    private final char[] mTimeBuffer = new char[16];
 
     /**
-     * 上次点击按钮事件
+     * 当前显示的时间，单位为秒或十分之一秒
      */
-    private long mLastClickTime;
+    private long mDisplayedUnits = -1;
+
+    /**
+     * 回调
+     */
+    private OnRecordListener mOnRecordListener;
 
 
     public RecordControllerLayout(@NonNull Context context) {
@@ -98,7 +103,6 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
         mTvTime = layoutController.findViewById(R.id.tv_time);
         mBtnStart.setOnClickListener(this);
         mBtnReverse.setOnClickListener(this);
-        mHandler = new Handler(Looper.getMainLooper());
     }
 
     /**
@@ -112,6 +116,14 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
             return;
         }
         mRecordView = recordView;
+        mRecordView.addOnRecordStateChangeListener(mRecordStateListener);
+        // 最大录制时长由录制器判断，不依赖界面刷新
+        mRecordView.setOnMaxDurationReachedListener(new RecordView.OnMaxDurationReachedListener() {
+            @Override
+            public void onMaxDurationReached() {
+                stopRecord(false);
+            }
+        });
     }
 
     /**
@@ -147,6 +159,24 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
     }
 
 
+    /**
+     * 是否显示十分之一秒
+     *
+     * @return
+     */
+    public boolean isShowTenths() {
+        return mShowTenths;
+    }
+
+    /**
+     * 设置是否显示十分之一秒，如 01:23.4
+     *
+     * @param showTenths
+     */
+    public void setShowTenths(boolean showTenths) {
+        this.mShowTenths = showTenths;
+    }
+
     /**
      * 获取录制监听接口
      *
@@ -167,25 +197,20 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
 
     @Override
     public void onClick(View v) {
-        // 防止点击过快
-        if (System.currentTimeMillis() - mLastClickTime < 2000){
-            return;
-        }
-        mLastClickTime = System.currentTimeMillis();
         if (mRecordView == null) {
             Log.w("RecordControllerLayout", "请先绑定 RecordView");
             return;
         }
+        // 由 RecordView 的状态机决定命令是否可以执行，不再需要防抖
+        RecordState state = mRecordView.getRecordState();
         if (v.getId() == R.id.btn_start) {
-            if (mRecordView.isRecording()) {
+            if (state == RecordState.RECORDING) {
                 stopRecord(false);
-                mBtnReverse.setVisibility(VISIBLE);
-            } else {
+            } else if (state == RecordState.PREVIEWING) {
                 startRecord();
-                mBtnReverse.setVisibility(GONE);
             }
         } else if (v.getId() == R.id.btn_reverse){
-            if (mRecordView.isRecording()){
+            if (state != RecordState.PREVIEWING && state != RecordState.IDLE){
                 return;
             }
             CameraFacing facing = mRecordView.getCameraFacing();
@@ -206,22 +231,25 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
         if (mRecordView.isRecording()) {
             return;
         }
+        mRecordView.setMaxDuration(mMaxDuration > 0 ? mMaxDuration * 1000 : 0);
         if (mRecordView.startRecord()) {
-            mStartTime = System.currentTimeMillis();
+            mStartTime = SystemClock.elapsedRealtime();
             mBtnStart.setImageResource(R.drawable.button_stop_record);
+            mBtnReverse.setVisibility(GONE);
             if (mOnRecordListener != null) {
                 mOnRecordListener.onStartRecord();
             }
             // 开始计时
-            mHandler.removeCallbacks(mDurationCounter);
-            mHandler.post(mDurationCounter);
+            mDisplayedUnits = -1;
+            Choreographer.getInstance().removeFrameCallback(mDurationCounter);
+            Choreographer.getInstance().postFrameCallback(mDurationCounter);
         } else {
             Toast.makeText(getContext(), R.string.recording_error, Toast.LENGTH_SHORT).show();
         }
     }
 
     /**
-     * 强制结束录制
+     * 强制结束录制，录制文件在相机线程结束，不阻塞主线程
      */
     public void cancelRecord() {
         stopRecord(true);
@@ -231,20 +259,25 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
      * 结束录制
      */
     private void stopRecord(boolean isCancel) {
-        // 如果不是正在录制状态，则不处理
-        if (!mRecordView.isRecording()) {
+        // 如果不是正在录制状态，则不处理。RecordView 可能已经随生命周期自行结束，这里以计时状态为准
+        if (mStartTime == 0) {
             return;
         }
-        long duration = System.currentTimeMillis() - mStartTime;
+        long duration = SystemClock.elapsedRealtime() - mStartTime;
         // 如果不是取消录制，且当前录制时间小于指定时间，则提示
         if (!isCancel && mMinDuration > 0 && (duration < mMinDuration * 1000)) {
             Toast.makeText(getContext(), getContext().getString(R.string.record_min_duration_hint, mMinDuration),
                     Toast.LENGTH_SHORT).show();
             return;
         }
-        mRecordView.stopRecord();
-        mBtnStart.setImageResource(R.drawable.button_start_record);
-        mTvTime.setText("");
+        // 先清除计时状态，状态监听据此区分是否为外部结束
+        mStartTime = 0;
+        if (isCancel) {
+            mRecordView.cancelRecord();
+        } else {
+            mRecordView.stopRecord();
+        }
+        resetRecordUi();
         if (mOnRecordListener != null) {
             if (isCancel) {
                 mOnRecordListener.onCancelRecord();
@@ -252,54 +285,101 @@ public class RecordControllerLayout extends FrameLayout implements View.OnClickL
                 mOnRecordListener.onStopRecord(duration);
             }
         }
+    }
+
+    /**
+     * 恢复到未录制的界面
+     */
+    private void resetRecordUi() {
+        mBtnStart.setImageResource(R.drawable.button_start_record);
+        mBtnReverse.setVisibility(VISIBLE);
+        mTvTime.setText("");
         // 停止计时
-        mHandler.removeCallbacks(mDurationCounter);
+        Choreographer.getInstance().removeFrameCallback(mDurationCounter);
     }
 
     /**
-     * 录制时长计时器
+     * 录制被 RecordView 自行结束时（生命周期、相机被取走等）同步界面
      */
-    private Runnable mDurationCounter = new Runnable() {
+    private final RecordView.OnRecordStateChangeListener mRecordStateListener = new RecordView.OnRecordStateChangeListener() {
         @Override
-        public void run() {
-            long duration = System.currentTimeMillis() - mStartTime;
-            mTvTime.setText(formatTime(duration));
-            // 如果已经超过最大录制时长
-            if (mMaxDuration > 0 && duration >= mMaxDuration * 1000) {
-                stopRecord(false);
-            } else {
-                // 继续计时
-                mHandler.postDelayed(this, 1000);
+        public void onRecordStateChanged(RecordState oldState, RecordState newState) {
+            if (mStartTime == 0 || newState == RecordState.STARTING || newState == RecordState.RECORDING) {
+                return;
+            }
+            RecordState state = mRecordView.getRecordState();
+            if (state == RecordState.STARTING || state == RecordState.RECORDING) {
+                // 过时的变化，已经重新开始录制
+                return;
+            }
+            mStartTime = 0;
+            resetRecordUi();
+            if (mOnRecordListener != null) {
+                mOnRecordListener.onCancelRecord();
             }
         }
     };
 
     /**
-     * 输出格式化的时间
+     * 录制时长计时器，随屏幕刷新执行，只在显示的数字变化时更新文字
+     */
+    private final Choreographer.FrameCallback mDurationCounter = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mStartTime == 0) {
+                return;
+            }
+            long duration = SystemClock.elapsedRealtime() - mStartTime;
+            long unit = mShowTenths ? 100 : 1000;
+            long units = duration / unit;
+            if (units != mDisplayedUnits) {
+                mDisplayedUnits = units;
+                int length = formatTime(duration, mTimeBuffer);
+                mTvTime.setText(mTimeBuffer, 0, length);
+            }
+            // 下一个显示单位开始时再刷新
+            Choreographer.getInstance().postFrameCallbackDelayed(this, unit - duration % unit);
+        }
+    };
+
+    /**
+     * 将时间格式化为 mm:ss 或 mm:ss.t
      *
      * @param duration 当前时长
-     * @return
+     * @param out      输出缓存
+     * @return 字符数
      */
-    private String formatTime(long duration) {
+    private int formatTime(long duration, char[] out) {
         // 获得总秒数
         long seconds = duration / 1000;
-        if (seconds >= 60) {
-            long mintues = seconds / 60;
-            seconds = seconds - mintues * 60;
-            return formatUnit(mintues) + ":" + formatUnit(seconds);
-        } else {
-            return "00:" + formatUnit(seconds);
+        long minutes = seconds / 60;
+        seconds = seconds - minutes * 60;
+        int pos = writeDigits(minutes, 2, out, 0);
+        out[pos++] = ':';
+        pos = writeDigits(seconds, 2, out, pos);
+        if (mShowTenths) {
+            out[pos++] = '.';
+            out[pos++] = (char) ('0' + duration % 1000 / 100);
         }
+        return pos;
     }
 
     /**
-     * 不足10的数字会补0
+     * 写入数字，不足位数会补0
      *
-     * @param number
-     * @return
+     * @return 写入后的位置
      */
-    private String formatUnit(long number) {
-        return number >= 10 ? String.valueOf(number) : "0" + number;
+    private static int writeDigits(long number, int minDigits, char[] out, int pos) {
+        int digits = 1;
+        for (long n = number / 10; n > 0; n /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            out[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return pos + digits;
     }
 
     public interface OnRecordListener {
@@ -0,0 +1,216 @@
+package io.hellobird.videorecord.lib;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/*******************************************************************
+ * RecordError.java  2026-10-19
+ * <P>
+ * 相机与录制器的错误，通过 {@link RecordView.OnRecordErrorListener} 与 {@link RecordMetrics} 输出<br/>
+ * 由相机错误码、MediaRecorder 错误码或异常归类为 {@link Type}，归类方法不依赖系统类，可以直接测试<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class RecordError {
+
+    /**
+     * 与 Camera.CAMERA_ERROR_* 相同
+     */
+    static final int CAMERA_ERROR_UNKNOWN = 1;
+    static final int CAMERA_ERROR_EVICTED = 2;
+    static final int CAMERA_ERROR_DISABLED = 3;
+    static final int CAMERA_ERROR_SERVER_DIED = 100;
+
+    /**
+     * 与 MediaRecorder.MEDIA_ERROR_SERVER_DIED 相同
+     */
+    static final int MEDIA_ERROR_SERVER_DIED = 100;
+
+    /**
+     * MediaRecorder 错误的 extra 为负的 errno，ENOSPC 为28
+     */
+    private static final int ERROR_NO_SPACE = -28;
+
+    /**
+     * 没有错误码
+     */
+    public static final int NO_CODE = 0;
+
+    public enum Type {
+        /**
+         * 相机被其他应用占用或被优先级更高的应用取走
+         */
+        CAMERA_IN_USE,
+
+        /**
+         * 相机服务断开，需要重新打开相机
+         */
+        CAMERA_DISCONNECTED,
+
+        /**
+         * 其他相机错误
+         */
+        CAMERA_FAILURE,
+
+        /**
+         * 没有相机或录音权限，或相机被系统策略禁用
+         */
+        PERMISSION_DENIED,
+
+        /**
+         * MediaRecorder 出错，包括媒体服务断开
+         */
+        RECORDER_FAILURE,
+
+        /**
+         * MediaCodec 编码或写入出错
+         */
+        ENCODER_FAILURE,
+
+        /**
+         * 存储空间不足
+         */
+        STORAGE_FULL,
+
+        /**
+         * 输出文件无法创建或写入
+         */
+        STORAGE_FAILURE,
+
+        /**
+         * 设置的录制方式不能同时使用，例如高帧率录制同时加密，没有开始录制
+         */
+        UNSUPPORTED_CONFIGURATION
+    }
+
+    private final Type mType;
+
+    private final int mCode;
+
+    private final Throwable mCause;
+
+    private final boolean mInterrupted;
+
+    private final long mTimeMs;
+
+    /**
+     * @param type        错误类型
+     * @param code        相机或 MediaRecorder 的错误码，没有时为 {@link #NO_CODE}
+     * @param cause       异常，没有时为null
+     * @param interrupted 是否中断了正在进行的录制
+     * @param timeMs      发生时间，SystemClock.elapsedRealtime()
+     */
+    public RecordError(@NonNull Type type, int code, @Nullable Throwable cause, boolean interrupted, long timeMs) {
+        mType = type;
+        mCode = code;
+        mCause = cause;
+        mInterrupted = interrupted;
+        mTimeMs = timeMs;
+    }
+
+    /**
+     * 归类 Camera.ErrorCallback 的错误码
+     *
+     * @param error Camera.CAMERA_ERROR_*
+     * @return
+     */
+    public static Type typeOfCameraError(int error) {
+        switch (error) {
+            case CAMERA_ERROR_SERVER_DIED:
+                return Type.CAMERA_DISCONNECTED;
+            case CAMERA_ERROR_EVICTED:
+                return Type.CAMERA_IN_USE;
+            case CAMERA_ERROR_DISABLED:
+                return Type.PERMISSION_DENIED;
+            default:
+                return Type.CAMERA_FAILURE;
+        }
+    }
+
+    /**
+     * 归类 MediaRecorder.OnErrorListener 的错误
+     *
+     * @param what  MediaRecorder.MEDIA_RECORDER_ERROR_UNKNOWN 或 MediaRecorder.MEDIA_ERROR_SERVER_DIED
+     * @param extra 附加错误码
+     * @return
+     */
+    public static Type typeOfRecorderError(int what, int extra) {
+        if (what != MEDIA_ERROR_SERVER_DIED && extra == ERROR_NO_SPACE) {
+            return Type.STORAGE_FULL;
+        }
+        return Type.RECORDER_FAILURE;
+    }
+
+    /**
+     * 归类异常，依次检查异常链中的权限、存储空间与相机占用错误
+     *
+     * @param e        异常
+     * @param fallback 无法归类时的类型
+     * @return
+     */
+    public static Type typeOfException(@NonNull Throwable e, @NonNull Type fallback) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SecurityException) {
+                return Type.PERMISSION_DENIED;
+            }
+            String message = t.getMessage();
+            if (message == null) {
+                continue;
+            }
+            if (message.contains("ENOSPC") || message.contains("No space left")) {
+                return Type.STORAGE_FULL;
+            }
+            // Camera.open 的错误信息
+            if (message.contains("Fail to connect to camera service")) {
+                return Type.CAMERA_IN_USE;
+            }
+        }
+        return fallback;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * 相机或 MediaRecorder 的错误码
+     *
+     * @return 没有时为 {@link #NO_CODE}
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    @Nullable
+    public Throwable getCause() {
+        return mCause;
+    }
+
+    /**
+     * 是否中断了正在进行的录制，已录制的部分会正常结束并通过 {@link RecordView.OnRecordFinishedListener} 返回
+     *
+     * @return
+     */
+    public boolean isInterrupted() {
+        return mInterrupted;
+    }
+
+    /**
+     * 发生时间，SystemClock.elapsedRealtime()
+     *
+     * @return
+     */
+    public long getTimeMs() {
+        return mTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordError{type=" + mType
+                + ", code=" + mCode
+                + ", interrupted=" + mInterrupted
+                + ", cause=" + mCause + '}';
+    }
+}
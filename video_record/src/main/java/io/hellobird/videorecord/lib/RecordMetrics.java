@@ -0,0 +1,46 @@
+package io.hellobird.videorecord.lib;
+
+import io.hellobird.videorecord.lib.codec.BitrateAdjustment;
+import io.hellobird.videorecord.lib.codec.BitrateEstimate;
+
+/*******************************************************************
+ * RecordMetrics.java  2026-10-19
+ * <P>
+ * 录制过程的统计数据输出，由使用者转发到日志或统计平台<br/>
+ * 所有方法在主线程回调，不要在回调中执行耗时操作<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public interface RecordMetrics {
+
+    /**
+     * 自适应码率调整了编码器码率
+     *
+     * @param adjustment 调整内容与当时的测量值
+     */
+    void onBitrateAdjusted(BitrateAdjustment adjustment);
+
+    /**
+     * 自动码率时开始录制使用的码率
+     *
+     * @param estimate 码率以及计算时的尺寸、帧数与画面复杂度
+     */
+    void onBitrateChosen(BitrateEstimate estimate);
+
+    /**
+     * 相机或录制器出错
+     *
+     * @param error 错误类型与原因
+     */
+    void onRecordError(RecordError error);
+
+    /**
+     * 出错后自动恢复到预览，用于统计平均恢复时间
+     *
+     * @param error          触发恢复的错误
+     * @param recoveryTimeMs 从出错到重新开始预览的时间
+     */
+    void onErrorRecovered(RecordError error, long recoveryTimeMs);
+}
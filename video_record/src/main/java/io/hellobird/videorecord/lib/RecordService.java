@@ -0,0 +1,148 @@
+package io.hellobird.videorecord.lib;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+/*******************************************************************
+ * RecordService.java  2026-10-19
+ * <P>
+ * 后台录制的前台服务，持有 {@link HeadlessRecorder}，界面退出后相机与录制继续<br/>
+ * 通过 {@link #start(Context)} 启动后 bindService 取得录制器，通知栏提供停止按钮<br/>
+ * 需要 API 18，低版本启动后直接结束<br/>
+ * 子类可以重写 {@link #onCreateNotification()} 自定义通知，子类需要在应用的 AndroidManifest 中声明<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public class RecordService extends Service {
+
+    private static final String TAG = "RecordService";
+
+    /**
+     * 关闭相机并结束服务
+     */
+    public static final String ACTION_STOP = "io.hellobird.videorecord.action.STOP_RECORD";
+
+    private static final String CHANNEL_ID = "record_service";
+
+    private static final int NOTIFICATION_ID = 0x7265;
+
+    private final LocalBinder mBinder = new LocalBinder();
+
+    private HeadlessRecorder mRecorder;
+
+    /**
+     * 以前台服务启动
+     *
+     * @param context
+     */
+    public static void start(@NonNull Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, RecordService.class));
+    }
+
+    /**
+     * 结束录制并停止服务
+     *
+     * @param context
+     */
+    public static void stop(@NonNull Context context) {
+        context.startService(new Intent(context, RecordService.class).setAction(ACTION_STOP));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            mRecorder = new HeadlessRecorder(this);
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // startForegroundService 之后必须调用 startForeground，即使马上结束
+        startForeground(NOTIFICATION_ID, onCreateNotification());
+        if (mRecorder == null) {
+            Log.w(TAG, "Background record requires API 18");
+            stopSelf();
+        } else if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            mRecorder.close();
+            stopForeground(true);
+            stopSelf();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (mRecorder != null) {
+            mRecorder.close();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * 录制器，API 18 以下为null
+     *
+     * @return
+     */
+    @Nullable
+    public HeadlessRecorder getRecorder() {
+        return mRecorder;
+    }
+
+    /**
+     * 前台服务的通知，默认使用应用图标并带停止按钮
+     *
+     * @return
+     */
+    @NonNull
+    protected Notification onCreateNotification() {
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.record_service_channel), NotificationManager.IMPORTANCE_LOW));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        PendingIntent stop = PendingIntent.getService(this, 0,
+                new Intent(this, getClass()).setAction(ACTION_STOP), flags);
+        return builder.setSmallIcon(getApplicationInfo().icon)
+                .setContentTitle(getString(R.string.record_service_running))
+                .setOngoing(true)
+                .addAction(0, getString(R.string.record_service_stop), stop)
+                .build();
+    }
+
+    public class LocalBinder extends Binder {
+
+        public RecordService getService() {
+            return RecordService.this;
+        }
+    }
+}
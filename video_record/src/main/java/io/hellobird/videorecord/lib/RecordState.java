@@ -0,0 +1,73 @@
+package io.hellobird.videorecord.lib;
+
+/*******************************************************************
+ * RecordState.java  2026-10-19
+ * <P>
+ * 录制状态<br/>
+ * IDLE → OPENING → PREVIEWING → STARTING → RECORDING → STOPPING → PREVIEWING<br/>
+ * 任意状态都可以回到 IDLE（关闭相机、相机被取走或出错）<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public enum RecordState {
+
+    /**
+     * 相机未打开
+     */
+    IDLE,
+
+    /**
+     * 正在打开相机
+     */
+    OPENING,
+
+    /**
+     * 预览中，可以开始录制
+     */
+    PREVIEWING,
+
+    /**
+     * 正在开始录制
+     */
+    STARTING,
+
+    /**
+     * 录制中
+     */
+    RECORDING,
+
+    /**
+     * 正在结束录制，文件写完后回到 PREVIEWING
+     */
+    STOPPING;
+
+    /**
+     * 是否允许从当前状态切换到目标状态
+     *
+     * @param next 目标状态
+     * @return
+     */
+    public boolean canTransitionTo(RecordState next) {
+        if (next == IDLE) {
+            return true;
+        }
+        switch (this) {
+            case IDLE:
+                return next == OPENING;
+            case OPENING:
+                return next == PREVIEWING;
+            case PREVIEWING:
+                return next == OPENING || next == STARTING;
+            case STARTING:
+                return next == RECORDING || next == PREVIEWING;
+            case RECORDING:
+                return next == STOPPING;
+            case STOPPING:
+                return next == PREVIEWING;
+            default:
+                return false;
+        }
+    }
+}
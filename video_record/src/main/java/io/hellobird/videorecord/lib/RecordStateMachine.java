@@ -0,0 +1,126 @@
+package io.hellobird.videorecord.lib;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*******************************************************************
+ * RecordStateMachine.java  2026-10-19
+ * <P>
+ * 录制状态机，状态切换为原子操作，可以在任意线程读取与切换<br/>
+ * 状态变化统一在主线程回调：主线程的切换同步回调，其他线程的切换排队到主线程；每次切换带序号，
+ * 排队的回调晚于之后的切换到达时丢弃，监听收到的状态变化总是按切换顺序，最后一次回调的新状态就是当前状态<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class RecordStateMachine {
+
+    private static final String TAG = "RecordStateMachine";
+
+    private final AtomicReference<RecordState> mState = new AtomicReference<>(RecordState.IDLE);
+
+    private final CopyOnWriteArrayList<RecordView.OnRecordStateChangeListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 切换序号，与状态一起在锁内更新
+     */
+    private long mSequence;
+
+    /**
+     * 最后一次回调的切换序号，只在主线程读写
+     */
+    private long mDispatchedSequence;
+
+    /**
+     * 获取当前状态
+     *
+     * @return
+     */
+    RecordState get() {
+        return mState.get();
+    }
+
+    /**
+     * 只有当前状态为 from 时才切换到 to
+     *
+     * @param from 期望的当前状态
+     * @param to   目标状态
+     * @return 是否切换成功
+     */
+    boolean transition(RecordState from, RecordState to) {
+        if (!from.canTransitionTo(to)) {
+            Log.w(TAG, "Illegal transition " + from + " -> " + to);
+            return false;
+        }
+        long sequence;
+        synchronized (this) {
+            if (!mState.compareAndSet(from, to)) {
+                return false;
+            }
+            sequence = ++mSequence;
+        }
+        dispatch(from, to, sequence);
+        return true;
+    }
+
+    /**
+     * 无条件回到 IDLE
+     *
+     * @return 之前的状态
+     */
+    RecordState reset() {
+        RecordState previous;
+        long sequence;
+        synchronized (this) {
+            previous = mState.getAndSet(RecordState.IDLE);
+            sequence = ++mSequence;
+        }
+        if (previous != RecordState.IDLE) {
+            dispatch(previous, RecordState.IDLE, sequence);
+        }
+        return previous;
+    }
+
+    void addListener(RecordView.OnRecordStateChangeListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    void removeListener(RecordView.OnRecordStateChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void dispatch(final RecordState oldState, final RecordState newState, final long sequence) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyListeners(oldState, newState, sequence);
+        } else {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListeners(oldState, newState, sequence);
+                }
+            });
+        }
+    }
+
+    private void notifyListeners(RecordState oldState, RecordState newState, long sequence) {
+        if (sequence < mDispatchedSequence) {
+            // 之后的切换已经回调，这次变化已经过时
+            Log.i(TAG, "Drop stale transition " + oldState + " -> " + newState);
+            return;
+        }
+        mDispatchedSequence = sequence;
+        for (RecordView.OnRecordStateChangeListener listener : mListeners) {
+            listener.onRecordStateChanged(oldState, newState);
+        }
+    }
+}
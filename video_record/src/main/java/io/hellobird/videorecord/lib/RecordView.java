@@ -4,8 +4,14 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.res.TypedArray;
+import android.graphics.Point;
 import android.hardware.Camera;
+import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -13,14 +19,58 @@ import android.view.SurfaceView;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.OnLifecycleEvent;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
+import javax.crypto.SecretKey;
+
+import io.hellobird.videorecord.lib.camera.CameraArbiter;
+import io.hellobird.videorecord.lib.camera.CameraConfigurationUtils;
+import io.hellobird.videorecord.lib.camera.CameraFrameSource;
+import io.hellobird.videorecord.lib.camera.CameraLease;
 import io.hellobird.videorecord.lib.camera.CameraManager;
+import io.hellobird.videorecord.lib.camera.RecorderConfig;
 import io.hellobird.videorecord.lib.camera.open.CameraFacing;
+import io.hellobird.videorecord.lib.camera.open.OpenCamera;
+import io.hellobird.videorecord.lib.codec.BitrateAdjustment;
+import io.hellobird.videorecord.lib.codec.BitrateEstimate;
+import io.hellobird.videorecord.lib.codec.BitrateGovernor;
+import io.hellobird.videorecord.lib.codec.CodecRecorder;
+import io.hellobird.videorecord.lib.codec.EncoderSettings;
+import io.hellobird.videorecord.lib.codec.FrameDecimator;
+import io.hellobird.videorecord.lib.codec.HlsSink;
+import io.hellobird.videorecord.lib.codec.KeyframeIndexSink;
+import io.hellobird.videorecord.lib.codec.MediaMuxerSink;
+import io.hellobird.videorecord.lib.codec.Mp4WriterSink;
+import io.hellobird.videorecord.lib.codec.Nv21Scaler;
+import io.hellobird.videorecord.lib.codec.RecoverySidecarSink;
+import io.hellobird.videorecord.lib.codec.SampleSink;
+import io.hellobird.videorecord.lib.codec.SceneComplexity;
+import io.hellobird.videorecord.lib.codec.SceneComplexitySampler;
+import io.hellobird.videorecord.lib.codec.TeeSink;
+import io.hellobird.videorecord.lib.codec.ThermalMonitor;
+import io.hellobird.videorecord.lib.mp4.KeyframeIndex;
+import io.hellobird.videorecord.lib.mp4.RecoveryInfo;
+import io.hellobird.videorecord.lib.snapshot.SnapshotFrameSource;
+import io.hellobird.videorecord.lib.snapshot.SnapshotQueue;
+import io.hellobird.videorecord.lib.snapshot.YuvJpegEncoder;
+import io.hellobird.videorecord.lib.storage.ContentManifest;
+import io.hellobird.videorecord.lib.storage.EncryptedFileChannel;
+import io.hellobird.videorecord.lib.storage.HashingFileChannel;
+import io.hellobird.videorecord.lib.storage.OutputFileManager;
 
 /*******************************************************************
  * RecordView.java  2020-03-16
@@ -32,13 +82,18 @@ import io.hellobird.videorecord.lib.camera.open.CameraFacing;
  * @author:zhoupeng
  *
  ******************************************************************/
-public class RecordView extends SurfaceView {
+public class RecordView extends SurfaceView implements LifecycleObserver {
 
     /**
      * 1KB大小
      */
     private static final int KB = 1024 * 8;
 
+    /**
+     * 代理文件名后缀，加在扩展名前
+     */
+    private static final String PROXY_SUFFIX = "_proxy";
+
     /**
      * 后置相机
      */
@@ -68,31 +123,157 @@ public class RecordView extends SurfaceView {
      * 默认码率，512 KB
      */
     public static final int DEFAULT_BIT_RATE = 512;
+
+    /**
+     * 自动码率，按分辨率、帧数与画面复杂度计算
+     */
+    public static final int BIT_RATE_AUTO = -1;
+
+    /**
+     * 慢动作输出帧数
+     */
+    public static final int DEFAULT_SLOW_MOTION_FRAME_RATE = 30;
+
+    /**
+     * 自动恢复时重新打开相机的最大次数，每次内部还会按退避间隔重试
+     */
+    private static final int MAX_RECOVERY_ATTEMPTS = 3;
+
+    /**
+     * 自动恢复时两次重新打开相机的间隔
+     */
+    private static final long RECOVERY_RETRY_DELAY_MS = 1000;
+
+    /**
+     * 同时等待编码的快照数，超过时拒绝新的快照
+     */
+    private static final int SNAPSHOT_QUEUE_SIZE = 3;
+
     /**
-     * 相机管理类
+     * 预览帧快照的 JPEG 质量
+     */
+    private static final int SNAPSHOT_JPEG_QUALITY = 90;
+
+    /**
+     * 相机管理类，进程内共享，只有持有 {@link #mCameraLease} 时才能使用
      */
     private CameraManager mCameraManager;
 
+    /**
+     * 相机仲裁者
+     */
+    private CameraArbiter mCameraArbiter;
+
+    /**
+     * 当前相机使用权
+     */
+    private CameraLease mCameraLease;
+
+    /**
+     * 相机状态回调
+     */
+    private OnCameraListener mOnCameraListener;
+
+    /**
+     * 错误回调，设置后不再弹出默认提示
+     */
+    private OnRecordErrorListener mOnRecordErrorListener;
+
+    /**
+     * 出错后是否自动恢复
+     */
+    private boolean mAutoRecover = true;
+
+    /**
+     * 正在恢复的错误，回到预览时清除，只在主线程读写
+     */
+    private RecordError mPendingRecovery;
+
+    /**
+     * 本次恢复已经重新打开相机失败的次数
+     */
+    private int mRecoveryAttempts;
+
+    /**
+     * 最大录制时长，单位毫秒，0表示不限制
+     */
+    private int mMaxDuration;
+
+    /**
+     * 到达最大录制时长回调
+     */
+    private OnMaxDurationReachedListener mOnMaxDurationReachedListener;
+
+    /**
+     * 录制结束、文件写完后的回调
+     */
+    private OnRecordFinishedListener mOnRecordFinishedListener;
+
+    /**
+     * 绑定的生命周期，绑定后相机随生命周期自动打开与关闭
+     */
+    private Lifecycle mLifecycle;
+
     /**
      * 媒体录制类
      */
     private MediaRecorder mVideoRecorder;
 
+    /**
+     * MediaCodec 录制类，设备不支持系统延时摄影时使用
+     */
+    private CodecRecorder mCodecRecorder;
+
+    /**
+     * 本次录制写入时计算摘要的文件，未开启时为空
+     */
+    private HashingFileChannel mHashingChannel;
+
+    /**
+     * 本次录制的代理文件，未输出时为空
+     */
+    private File mProxyFile;
+
     /**
      * Surface是否已打开
      */
-    private boolean mSurfaceEnable;
+    private volatile boolean mSurfaceEnable;
+
+    /**
+     * 录制状态
+     */
+    private final RecordStateMachine mState = new RecordStateMachine();
 
     /**
-     * 是否正在录制
+     * 相机打开过程中收到的开始录制命令，相机打开后执行，只在主线程读写
      */
-    private boolean mRecording;
+    private boolean mPendingStart;
 
     /**
-     * 输出路径
+     * 主线程 Handler，其他线程的命令排队到这里执行
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 输出路径，未指定时为最近一次录制的文件
      */
     private String mOutFilePath;
 
+    /**
+     * 是否通过 {@link #setOutFilePath(String)} 指定了固定的输出路径
+     */
+    private boolean mFixedOutFile;
+
+    /**
+     * 输出文件管理，未指定输出路径时每次录制生成新文件
+     */
+    private OutputFileManager mOutputFileManager;
+
+    /**
+     * 本次录制由 {@link #mOutputFileManager} 生成的文件
+     */
+    private File mSessionFile;
+
     /**
      * 是否自动打开相机，如果是true，需要确保有 CAMERA 与 RECORD_AUDIO 权限，否则会报错
      */
@@ -117,11 +298,157 @@ public class RecordView extends SurfaceView {
      * 码率，单位是 KB，此单位控制视频1秒钟的体积大小，在分辨率固定的情况下，码率越大画质越好，码率越小画质越差
      */
     private int mBitRate;
+
+    /**
+     * 预览画面复杂度，自动码率时使用
+     */
+    private final SceneComplexity mSceneComplexity = new SceneComplexity();
+
+    /**
+     * 自动码率时在预览中取样
+     */
+    private final SceneComplexitySampler mComplexitySampler = new SceneComplexitySampler(mSceneComplexity);
+
+    /**
+     * 最近一次录制的自动码率，未使用自动码率时为空
+     */
+    private BitrateEstimate mBitrateEstimate;
+
+    /**
+     * 延时摄影采集间隔，单位毫秒，0表示正常录制
+     */
+    private long mTimeLapseInterval;
+
+    /**
+     * 高帧率录制的采集帧数，0表示正常录制
+     */
+    private int mHighSpeedFrameRate;
+
+    /**
+     * 高帧率录制是否输出为慢动作
+     */
+    private boolean mSlowMotion;
+
+    /**
+     * 高帧率录制前的预览帧数范围，结束录制后恢复，未修改时为空
+     */
+    private int[] mRestorePreviewFpsRange;
+
+    /**
+     * 循环录制，不为空时按分段录制
+     */
+    private LoopRecorder mLoopRecorder;
+
+    /**
+     * 输出文件加密密钥，不为空时使用 MediaCodec 录制并加密写入
+     */
+    private SecretKey mEncryptionKey;
+
+    /**
+     * 写入时计算文件摘要的分块大小，0表示不计算
+     */
+    private int mContentHashChunkSize;
+
+    /**
+     * 自适应码率下限，单位与 {@link #mBitRate} 相同
+     */
+    private int mMinAdaptiveBitRate;
+
+    /**
+     * 自适应码率上限，0表示使用固定码率
+     */
+    private int mMaxAdaptiveBitRate;
+
+    /**
+     * MediaCodec 编码参数，null 表示按录制模式选择录制器
+     */
+    private EncoderSettings mEncoderSettings;
+
+    /**
+     * 本次录制的温度监听，API 29+ 开启自适应码率时有效
+     */
+    private ThermalMonitor mThermalMonitor;
+
+    /**
+     * 录制统计数据输出
+     */
+    private RecordMetrics mRecordMetrics;
+
+    /**
+     * 代理文件的短边，0表示不输出代理文件
+     */
+    private int mProxyShortEdge;
+
+    /**
+     * 代理文件码率，单位与 {@link #mBitRate} 相同
+     */
+    private int mProxyBitRate;
+
+    /**
+     * 是否在输出文件旁写入关键帧索引
+     */
+    private boolean mKeyframeIndexEnabled;
+
+    /**
+     * HLS 输出目录，null表示不输出
+     */
+    private File mHlsDirectory;
+
+    /**
+     * HLS 分段时长
+     */
+    private long mHlsSegmentDurationMs;
+
+    /**
+     * HLS 播放列表保留的分段数
+     */
+    private int mHlsWindowSize;
+
+    /**
+     * 快照编码队列，第一次拍照时创建
+     */
+    private SnapshotQueue mSnapshotQueue;
+
+    /**
+     * 本次录制从预览帧取快照，未在录制时为空
+     */
+    private SnapshotFrameSource mSnapshotSource;
+
+    /**
+     * 本次录制是否可以在录制时调用 takePicture，只在 MediaRecorder 录制时使用
+     */
+    private boolean mVideoSnapshotSupported;
+
+    /**
+     * 本次录制的画面旋转角度，写入快照
+     */
+    private int mSnapshotOrientation;
+
+    /**
+     * 是否有未返回的 takePicture，只在主线程读写
+     */
+    private boolean mTakingPicture;
+
+    /**
+     * 快照回调
+     */
+    private OnSnapshotListener mOnSnapshotListener;
+
     /**
      * 指定相机位置
      */
     private CameraFacing mCameraFacing = CameraFacing.FRONT;
 
+    /**
+     * 相机参数配置
+     */
+    private RecorderConfig mRecorderConfig = RecorderConfig.DEFAULT;
+
+    /**
+     * 作为后台录制的预览窗口时的录制器，不为null时控件不打开相机
+     */
+    private HeadlessRecorder mPreviewHost;
+
     public RecordView(Context context) {
         this(context, null);
     }
@@ -134,9 +461,13 @@ public class RecordView extends SurfaceView {
         super(context, attrs, defStyleAttr);
         initAttrs(attrs);
         getHolder().addCallback(mCallBack);
-        mCameraManager = new CameraManager(getContext().getApplicationContext());
-        //指定默认路径
-        mOutFilePath = context.getExternalCacheDir().getAbsolutePath() + File.separator + "temp.mp4";
+        mCameraArbiter = CameraArbiter.getInstance(getContext());
+        mCameraManager = mCameraArbiter.getCameraManager();
+        //默认输出目录，每次录制生成新文件
+        mOutputFileManager = new OutputFileManager(new File(context.getExternalCacheDir(), "record"));
+        mOutputFileManager.scheduleCleanup();
+        mState.addListener(mComplexitySamplingListener);
+        mState.addListener(mRecoveryListener);
     }
 
     /**
@@ -152,6 +483,9 @@ public class RecordView extends SurfaceView {
         mFrameRate = typedArray.getInteger(R.styleable.RecordView_frameRate, DEFAULT_FRAME_RATE);
         mAutoOpen = typedArray.getBoolean(R.styleable.RecordView_autoOpen, false);
         mBitRate = typedArray.getInteger(R.styleable.RecordView_bitRate, DEFAULT_BIT_RATE);
+        mTimeLapseInterval = typedArray.getInteger(R.styleable.RecordView_timeLapseInterval, 0);
+        mHighSpeedFrameRate = typedArray.getInteger(R.styleable.RecordView_highSpeedFrameRate, 0);
+        mSlowMotion = typedArray.getBoolean(R.styleable.RecordView_slowMotion, false);
         typedArray.recycle();
     }
 
@@ -161,8 +495,9 @@ public class RecordView extends SurfaceView {
      * @param camera
      */
     private void resizeWithCamera(Camera camera) {
-        if (camera != null && camera.getParameters() != null) {
-            Camera.Size size = camera.getParameters().getPreviewSize();
+        Camera.Parameters parameters = camera != null ? getCameraParameters(camera) : null;
+        if (parameters != null) {
+            Camera.Size size = parameters.getPreviewSize();
             int sizeWith = size.width > size.height ? size.height : size.width;
             int sizeHeight = size.width + size.height - sizeWith;
             // 算出宽高比
@@ -178,159 +513,1443 @@ public class RecordView extends SurfaceView {
     }
 
     /**
-     * 打开相机
+     * 打开相机，可以在任意线程调用，录制过程中调用会被忽略
      */
     public void openCamera() {
+        if (!isMainThread()) {
+            mMainHandler.post(mOpenCameraCommand);
+            return;
+        }
         // 打开相机前确认是否有权限
         if (ContextCompat.checkSelfPermission(getContext(), Manifest.permission.CAMERA) == PackageManager.PERMISSION_DENIED) {
-            Toast.makeText(getContext(), R.string.open_camera_error, Toast.LENGTH_SHORT).show();
+            reportError(newError(RecordError.Type.PERMISSION_DENIED, RecordError.NO_CODE, null, false),
+                    R.string.open_camera_error);
+            return;
+        }
+        if (mPreviewHost != null) {
+            Log.w("RecordView", "Reject openCamera while attached to HeadlessRecorder");
             return;
         }
         if (mSurfaceEnable) {
-            // 先关闭之前的相机
-            closeCamera();
-            try {
-                mCameraManager.openDriver(getHolder(), mCameraFacing);
-//                resizeWithCamera(mCameraManager.getCamera());
-                // 开始预览
-                mCameraManager.startPreview();
-            } catch (Exception e) {
-                e.printStackTrace();
-                Toast.makeText(getContext(), R.string.open_camera_error, Toast.LENGTH_SHORT).show();
+            RecordState state = mState.get();
+            if (state == RecordState.STARTING || state == RecordState.RECORDING || state == RecordState.STOPPING) {
+                Log.w("RecordView", "Reject openCamera in state " + state);
+                return;
             }
+            // 先释放之前的使用权，相机不会被关闭，方向相同时直接复用
+            releaseCamera();
+            mState.transition(RecordState.IDLE, RecordState.OPENING);
+            // 相机在相机线程打开，完成后回调 mCameraCallback
+            mCameraLease = mCameraArbiter.acquire(mCameraFacing, getHolder(), mRecorderConfig, mCameraCallback);
         }
     }
 
     /**
-     * 关闭相机
+     * 关闭相机，释放使用权后相机会保持打开一小段时间，方便其他 RecordView 直接使用<br/>
+     * 正在进行的录制会在相机线程结束，不阻塞调用线程
      */
     public void closeCamera() {
-        if (mCameraManager != null) {
-            mCameraManager.stopPreview();
-            mCameraManager.closeDriver();
+        if (!isMainThread()) {
+            mMainHandler.post(mCloseCameraCommand);
+            return;
         }
+        // 不再需要相机，停止自动恢复
+        mMainHandler.removeCallbacks(mRecoverCommand);
+        mPendingRecovery = null;
+        releaseCamera();
     }
 
     /**
-     * 开始录制
+     * 作为后台录制的预览窗口，控件释放自己的相机，只显示录制器的画面<br/>
+     * 控件的录制方法在解绑前无效，解绑或窗口销毁不影响后台录制
      *
-     * @return 是否已开始录制
+     * @param recorder 后台录制器，一般从 {@link RecordService#getRecorder()} 取得
      */
-    public boolean startRecord() {
-        // 录制前确认是否有权限
-        if (ContextCompat.checkSelfPermission(getContext(), Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_DENIED) {
-            Toast.makeText(getContext(), R.string.start_record_error, Toast.LENGTH_SHORT).show();
-            return false;
+    @MainThread
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public void attachPreview(@NonNull HeadlessRecorder recorder) {
+        if (mPreviewHost == recorder) {
+            return;
         }
-        // 先停止之前的
-        stopRecord();
-        Camera camera = mCameraManager.getCamera();
-        if (camera != null) {
-            mRecording = true;
-            // 先获取相机当前参数，如果unlock后获取会报错
-            Camera.Parameters parameters = camera.getParameters();
-            // 解锁相机
-            camera.unlock();
-            mVideoRecorder = MediaRecorderFactory.newCustomConfigInstance(camera, parameters, mVideoWidth, mVideoHeight,
-                    mFrameRate, mBitRate * KB);
-            //设置输出文件
-            File file = new File(mOutFilePath);
-            if (file.exists()) {
-                file.delete();
-            }
-            mVideoRecorder.setOutputFile(mOutFilePath);
-            //设置旋转
-            int cameraOrientation = mCameraManager.getOpenCamera().getOrientation();
-            mVideoRecorder.setOrientationHint(cameraOrientation);
-            mVideoRecorder.setPreviewDisplay(getHolder().getSurface());
-            try {
-                mVideoRecorder.prepare();
-                mVideoRecorder.start();
-                return true;
-            } catch (Exception e) {
-                e.printStackTrace();
-                camera.lock();
-            }
-        } else {
-            Log.w("RecordView", "========== open camera first =========");
+        detachPreview();
+        closeCamera();
+        mPreviewHost = recorder;
+        if (mSurfaceEnable) {
+            recorder.addPreviewSurface(getHolder().getSurface());
         }
-        mRecording = false;
-        return false;
     }
 
     /**
-     * 结束录制
+     * 不再显示后台录制的画面，之后可以重新打开相机
      */
-    public void stopRecord() {
-        if (mRecording) {
-            try {
-                mVideoRecorder.stop();
-                mVideoRecorder.reset();
-                mVideoRecorder.release();
-            } catch (Exception e) {
-            }
-            Camera camera = mCameraManager.getCamera();
-            if (camera != null) {
-                camera.lock();
-            }
-            mRecording = false;
+    @MainThread
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public void detachPreview() {
+        HeadlessRecorder recorder = mPreviewHost;
+        mPreviewHost = null;
+        if (recorder != null && mSurfaceEnable) {
+            recorder.removePreviewSurface(getHolder().getSurface());
+        }
+    }
+
+    private void releaseCamera() {
+        mPendingStart = false;
+        if (mCameraLease != null) {
+            cancelRecord();
+            mCameraLease.release();
+            mCameraLease = null;
         }
+        mState.reset();
     }
 
     /**
-     * 是否正在录制
+     * 绑定生命周期，onResume 时自动打开相机，onPause 时在相机线程结束录制并释放相机，onDestroy 时自动解绑
      *
-     * @return
+     * @param owner 生命周期持有者，一般为 Activity 或 Fragment
      */
-    public boolean isRecording() {
-        return mRecording;
+    public void bindLifecycle(@NonNull LifecycleOwner owner) {
+        if (mLifecycle != null) {
+            mLifecycle.removeObserver(this);
+        }
+        mLifecycle = owner.getLifecycle();
+        mLifecycle.addObserver(this);
     }
 
-    public SurfaceHolder.Callback mCallBack = new SurfaceHolder.Callback() {
-        @Override
-        public void surfaceCreated(SurfaceHolder holder) {
-            mSurfaceEnable = true;
-            if (mAutoOpen) {
-                openCamera();
-            }
+    @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
+    public void onLifecycleResume() {
+        if (mSurfaceEnable) {
+            openCamera();
         }
+    }
 
-        @Override
-        public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-        }
+    @OnLifecycleEvent(Lifecycle.Event.ON_PAUSE)
+    public void onLifecyclePause() {
+        closeCamera();
+    }
 
-        @Override
-        public void surfaceDestroyed(SurfaceHolder holder) {
-            mSurfaceEnable = false;
-            closeCamera();
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    public void onLifecycleDestroy() {
+        if (mLifecycle != null) {
+            mLifecycle.removeObserver(this);
+            mLifecycle = null;
         }
-    };
+    }
 
     /**
-     * 获取视频输出路径
-     *
-     * @return
+     * Surface 创建后是否应该打开相机
      */
-    public String getOutFilePath() {
-        return mOutFilePath;
+    private boolean shouldOpenOnSurfaceCreated() {
+        if (mLifecycle != null) {
+            return mLifecycle.getCurrentState().isAtLeast(Lifecycle.State.RESUMED);
+        }
+        return mAutoOpen;
     }
 
     /**
-     * 设置视频输出路径
+     * 获取当前持有的相机
      *
-     * @param outFilePath
+     * @return 未持有或相机未打开时返回null
      */
-    public void setOutFilePath(String outFilePath) {
-        this.mOutFilePath = outFilePath;
+    @Nullable
+    private OpenCamera getOwnedCamera() {
+        if (mCameraLease == null || !mCameraLease.isValid()) {
+            return null;
+        }
+        return mCameraManager.getOpenCamera();
     }
 
     /**
-     * View创建后是否自动打开预览
+     * 开始录制，只有在预览状态下才会被接受，相机正在打开时会在打开后自动开始<br/>
+     * 在非主线程调用时命令排队到主线程执行<br/>
+     * 录制方式按以下顺序选择：加密、计算摘要、代理文件、HLS、关键帧索引需要 MediaCodec 编码，设置了任意一项时使用 MediaCodec 录制，
+     * 同时设置的延时摄影在编码器输入端抽帧；否则循环录制优先于延时摄影，延时摄影优先于高帧率录制；
+     * 以上都没有设置时，自适应码率或编码参数使用 MediaCodec 录制，否则使用 MediaRecorder 录制<br/>
+     * 不能同时使用的设置（循环录制自己写入分段，高帧率录制需要 MediaRecorder，都不能与上述需要 MediaCodec 输出的设置同时生效）不开始录制，
+     * 输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}
      *
-     * @return
+     * @return 主线程调用时表示是否已开始录制（相机正在打开时表示已排队），其他线程调用时表示命令是否被接受
      */
-    public boolean isAutoOpen() {
-        return mAutoOpen;
+    public boolean startRecord() {
+        RecordState state = mState.get();
+        if (!isMainThread()) {
+            if (state != RecordState.PREVIEWING && state != RecordState.OPENING) {
+                return false;
+            }
+            mMainHandler.post(mStartRecordCommand);
+            return true;
+        }
+        if (state == RecordState.OPENING) {
+            mPendingStart = true;
+            return true;
+        }
+        if (!mState.transition(RecordState.PREVIEWING, RecordState.STARTING)) {
+            Log.w("RecordView", "Reject startRecord in state " + state);
+            return false;
+        }
+        mBitrateEstimate = null;
+        mSnapshotSource = null;
+        // 上次录制结束时没有返回的 takePicture 不再等待
+        mTakingPicture = false;
+        boolean started;
+        String conflict = findUnsupportedConfiguration();
+        if (conflict != null) {
+            reportError(newError(RecordError.Type.UNSUPPORTED_CONFIGURATION, RecordError.NO_CODE,
+                    new IllegalStateException(conflict), false), R.string.unsupported_config_error);
+            started = false;
+        } else {
+            started = startOnCameraThread();
+        }
+        if (started) {
+            startThermalMonitor();
+            if (mBitrateEstimate != null && mRecordMetrics != null) {
+                mRecordMetrics.onBitrateChosen(mBitrateEstimate);
+            }
+        } else {
+            mThermalMonitor = null;
+            mSnapshotSource = null;
+        }
+        mState.transition(RecordState.STARTING, started ? RecordState.RECORDING : RecordState.PREVIEWING);
+        return started;
+    }
+
+    /**
+     * 在相机线程选择录制方式并开始，主线程等待结果。相机与使用相机的 MediaRecorder 只在相机线程调用，
+     * 期间的错误转到主线程输出
+     *
+     * @return 是否已开始录制
+     */
+    private boolean startOnCameraThread() {
+        final boolean[] started = new boolean[1];
+        mCameraArbiter.runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                prepareSnapshot();
+                if (needsCodecOutput() || ((mMaxAdaptiveBitRate > 0 || mEncoderSettings != null)
+                        && mLoopRecorder == null && mHighSpeedFrameRate <= 0)) {
+                    started[0] = startCodecOutputRecord();
+                } else if (mLoopRecorder != null) {
+                    started[0] = startLoopRecord();
+                } else if (mTimeLapseInterval > 0) {
+                    started[0] = startTimeLapseRecord();
+                } else if (mHighSpeedFrameRate > 0) {
+                    started[0] = startHighSpeedRecord();
+                } else {
+                    started[0] = startNormalRecord();
+                }
+            }
+        });
+        return started[0];
+    }
+
+    /**
+     * 是否设置了只能由 {@link #startCodecOutputRecord()} 输出的功能
+     */
+    private boolean needsCodecOutput() {
+        return mEncryptionKey != null || mContentHashChunkSize > 0 || mProxyShortEdge > 0 || mHlsDirectory != null
+                || mKeyframeIndexEnabled;
+    }
+
+    /**
+     * 检查录制设置能否同时使用
+     *
+     * @return 不能同时使用的原因，可以时返回null
+     */
+    @Nullable
+    private String findUnsupportedConfiguration() {
+        if (mLoopRecorder != null && needsCodecOutput()) {
+            // 循环录制的分段由 LoopRecorder 写入
+            return "Loop record can not be encrypted, hashed, proxied, segmented to HLS or keyframe indexed";
+        }
+        // 循环录制与延时摄影优先时不会使用高帧率录制
+        boolean highSpeed = mHighSpeedFrameRate > 0 && mLoopRecorder == null && mTimeLapseInterval <= 0;
+        if (highSpeed && needsCodecOutput()) {
+            return "High speed record can not be encrypted, hashed, proxied, segmented to HLS or keyframe indexed";
+        }
+        if (highSpeed && (mMaxAdaptiveBitRate > 0 || mEncoderSettings != null)) {
+            return "High speed record can not use adaptive bit rate or encoder settings";
+        }
+        return null;
+    }
+
+    /**
+     * 使用 MediaRecorder 正常录制
+     *
+     * @return 是否已开始录制
+     */
+    private boolean startNormalRecord() {
+        // 录制前确认是否有权限
+        if (ContextCompat.checkSelfPermission(getContext(), Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_DENIED) {
+            reportError(newError(RecordError.Type.PERMISSION_DENIED, RecordError.NO_CODE, null, false),
+                    R.string.start_record_error);
+            return false;
+        }
+        OpenCamera openCamera = getOwnedCamera();
+        if (openCamera != null) {
+            Camera camera = openCamera.getCamera();
+            // 先获取相机当前参数，如果unlock后获取会报错
+            Camera.Parameters parameters = camera.getParameters();
+            int bitRate = normalRecordBitRate(parameters);
+            //准备输出文件
+            if (!prepareOutFile(bitRate, true)) {
+                return false;
+            }
+            // 解锁相机
+            camera.unlock();
+            try {
+                mVideoRecorder = MediaRecorderFactory.newCustomConfigInstance(camera, parameters, mVideoWidth, mVideoHeight,
+                        mFrameRate, bitRate);
+                //设置输出文件
+                mVideoRecorder.setOutputFile(mOutFilePath);
+                applyRecorderListeners(mVideoRecorder);
+                //设置旋转
+                int cameraOrientation = openCamera.getOrientation();
+                mVideoRecorder.setOrientationHint(cameraOrientation);
+                mVideoRecorder.setPreviewDisplay(getHolder().getSurface());
+                mVideoRecorder.prepare();
+                mVideoRecorder.start();
+                // 默认编码器的格式未知，修复时需要参考文件
+                writeRecoveryInfo(null, mVideoWidth, mVideoHeight, mFrameRate, cameraOrientation);
+                return true;
+            } catch (Exception e) {
+                reportStartFailure(e, RecordError.Type.RECORDER_FAILURE);
+                abandonVideoRecorder(camera);
+            }
+        } else {
+            Log.w("RecordView", "========== open camera first =========");
+        }
+        return false;
+    }
+
+    /**
+     * 开始延时摄影，不录制音频。优先使用系统延时摄影质量，不支持时在编码器输入端抽帧
+     *
+     * @return 是否已开始录制
+     */
+    private boolean startTimeLapseRecord() {
+        OpenCamera openCamera = getOwnedCamera();
+        if (openCamera == null) {
+            Log.w("RecordView", "========== open camera first =========");
+            return false;
+        }
+        Camera camera = openCamera.getCamera();
+        CamcorderProfile profile = MediaRecorderFactory.findTimeLapseProfile(openCamera.getIndex(), mVideoWidth, mVideoHeight);
+        if (profile != null) {
+            if (!prepareOutFile(profile.videoBitRate, true)) {
+                return false;
+            }
+            camera.unlock();
+            try {
+                mVideoRecorder = MediaRecorderFactory.newTimeLapseInstance(camera, profile, mTimeLapseInterval);
+                mVideoRecorder.setOutputFile(mOutFilePath);
+                applyRecorderListeners(mVideoRecorder);
+                mVideoRecorder.setOrientationHint(openCamera.getOrientation());
+                mVideoRecorder.setPreviewDisplay(getHolder().getSurface());
+                mVideoRecorder.prepare();
+                mVideoRecorder.start();
+                writeRecoveryInfo(MediaRecorderFactory.videoMimeOf(profile.videoCodec), profile.videoFrameWidth,
+                        profile.videoFrameHeight, profile.videoFrameRate, openCamera.getOrientation());
+                return true;
+            } catch (Exception e) {
+                reportStartFailure(e, RecordError.Type.RECORDER_FAILURE);
+                abandonVideoRecorder(camera);
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Camera.Size size = camera.getParameters().getPreviewSize();
+            int bitRate = videoBitRate(size.width, size.height, mFrameRate);
+            // MediaMuxer 打开文件时会清空，不做预分配
+            if (!prepareOutFile(bitRate, false)) {
+                return false;
+            }
+            CodecRecorder codecRecorder = newCodecRecorder(camera, size, bitRate);
+            codecRecorder.setFrameDecimator(new FrameDecimator(mTimeLapseInterval, mFrameRate));
+            try {
+                int orientation = openCamera.getOrientation();
+                // 编码器输出格式确定后保存修复信息
+                codecRecorder.start(new RecoverySidecarSink(new MediaMuxerSink(mOutFilePath, orientation, 1),
+                        new File(mOutFilePath), mFrameRate, orientation));
+                mCodecRecorder = codecRecorder;
+                return true;
+            } catch (Exception e) {
+                reportStartFailure(e, RecordError.Type.ENCODER_FAILURE);
+                abandonOutFile();
+            }
+        } else {
+            Log.w("RecordView", "========== time lapse not supported =========");
+        }
+        return false;
+    }
+
+    /**
+     * 开始加密、计算摘要、同时输出代理文件、HLS 或关键帧索引、自适应码率或指定编码参数的录制，使用 MediaCodec 编码，不录制音频<br/>
+     * MediaRecorder 自己写文件并且只有一路编码，因此不使用它；加密与计算摘要时由 {@link Mp4WriterSink} 写入。延时摄影在编码器输入端抽帧
+     *
+     * @return 是否已开始录制
+     */
+    private boolean startCodecOutputRecord() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Log.w("RecordView", "========== codec record not supported =========");
+            return false;
+        }
+        OpenCamera openCamera = getOwnedCamera();
+        if (openCamera == null) {
+            Log.w("RecordView", "========== open camera first =========");
+            return false;
+        }
+        Camera camera = openCamera.getCamera();
+        Camera.Size size = camera.getParameters().getPreviewSize();
+        int bitRate = videoBitRate(size.width, size.height, mFrameRate);
+        // 文件创建时会清空，不做预分配
+        if (!prepareOutFile(bitRate, false)) {
+            return false;
+        }
+        int orientation = openCamera.getOrientation();
+        CodecRecorder codecRecorder = newCodecRecorder(camera, size, bitRate);
+        if (mTimeLapseInterval > 0) {
+            codecRecorder.setFrameDecimator(new FrameDecimator(mTimeLapseInterval, mFrameRate));
+        }
+        HashingFileChannel hashingChannel = null;
+        // 交给录制器之前创建的文件与输出端，失败时在这里关闭
+        FileChannel channel = null;
+        SampleSink sink = null;
+        SampleSink proxySink = null;
+        boolean handedOff = false;
+        try {
+            if (mEncryptionKey != null || mContentHashChunkSize > 0) {
+                channel = new RandomAccessFile(mOutFilePath, "rw").getChannel();
+                if (mContentHashChunkSize > 0) {
+                    // 在加密之下计算，摘要对应磁盘上的内容
+                    hashingChannel = new HashingFileChannel(channel, mContentHashChunkSize);
+                    channel = hashingChannel;
+                }
+                if (mEncryptionKey != null) {
+                    channel = EncryptedFileChannel.create(channel, mEncryptionKey);
+                } else {
+                    channel.truncate(0);
+                }
+                // 只有 MediaMuxer 的文件可以按码流修复，不保存修复信息
+                sink = new Mp4WriterSink(channel, orientation, 1);
+            } else {
+                sink = new MediaMuxerSink(mOutFilePath, orientation, 1);
+                sink = new RecoverySidecarSink(sink, new File(mOutFilePath), mFrameRate, orientation);
+            }
+            if (mKeyframeIndexEnabled) {
+                sink = new KeyframeIndexSink(sink, new File(mOutFilePath));
+            }
+            if (mHlsDirectory != null) {
+                // 与主文件同名，每次录制一个播放列表
+                String name = new File(mOutFilePath).getName();
+                int dot = name.lastIndexOf('.');
+                // 0表示每帧都是关键帧；小于0时只有第一帧是关键帧，分段无法切分，超出的分段只记录日志
+                float iFrameInterval = (mEncoderSettings != null ? mEncoderSettings : EncoderSettings.DEFAULT)
+                        .getIFrameInterval();
+                sink = new TeeSink(sink, new HlsSink(mHlsDirectory, dot > 0 ? name.substring(0, dot) : name,
+                        mHlsSegmentDurationMs, (long) Math.ceil(Math.max(iFrameInterval, 0) * 1000),
+                        mHlsWindowSize));
+            }
+            if (mProxyShortEdge > 0) {
+                int[] proxySize = Nv21Scaler.fitShortEdge(size.width, size.height, mProxyShortEdge);
+                codecRecorder.setProxyParams(proxySize[0], proxySize[1], mProxyBitRate * KB);
+                proxySink = newProxySink(orientation);
+            }
+            // 开始失败时录制器自己关闭两个输出端
+            handedOff = true;
+            codecRecorder.start(sink, proxySink);
+            if (mProxyFile != null && !codecRecorder.isProxyRecording()) {
+                // 编码器实例不足，只录制主文件
+                discardProxyFile();
+            }
+            mCodecRecorder = codecRecorder;
+            mHashingChannel = hashingChannel;
+            return true;
+        } catch (Exception e) {
+            if (!handedOff) {
+                // 先关闭再删除文件；输出端已经创建时由它关闭文件
+                if (sink != null) {
+                    closeQuietly(sink);
+                } else if (channel != null) {
+                    closeQuietly(channel);
+                }
+                if (proxySink != null) {
+                    closeQuietly(proxySink);
+                }
+            }
+            reportStartFailure(e, RecordError.Type.ENCODER_FAILURE);
+            abandonOutFile();
+        }
+        return false;
+    }
+
+    private static void closeQuietly(SampleSink sink) {
+        try {
+            sink.close();
+        } catch (IOException | RuntimeException e) {
+            Log.w("RecordView", "Output failed to close", e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.w("RecordView", "File failed to close", e);
+        }
+    }
+
+    /**
+     * 创建代理文件的输出端，设置了密钥时同样加密
+     *
+     * @return 文件无法创建时返回null
+     */
+    @Nullable
+    private SampleSink newProxySink(int orientation) throws IOException {
+        File master = new File(mOutFilePath);
+        if (mSessionFile != null) {
+            mProxyFile = mOutputFileManager.newCompanionFile(mSessionFile, PROXY_SUFFIX);
+        } else {
+            mProxyFile = OutputFileManager.companionOf(master, PROXY_SUFFIX);
+        }
+        if (mProxyFile == null) {
+            return null;
+        }
+        if (mEncryptionKey != null) {
+            return new Mp4WriterSink(EncryptedFileChannel.create(mProxyFile, mEncryptionKey), orientation, 1);
+        }
+        return new MediaMuxerSink(mProxyFile.getAbsolutePath(), orientation, 1);
+    }
+
+    private void discardProxyFile() {
+        if (mProxyFile == null) {
+            return;
+        }
+        if (mSessionFile != null) {
+            mOutputFileManager.finishSession(mProxyFile, true);
+        } else {
+            mProxyFile.delete();
+        }
+        mProxyFile = null;
+    }
+
+    /**
+     * 创建 MediaCodec 录制器，设置帧率、码率、最长时间、编码参数与自适应码率
+     *
+     * @param bitRate 码率，单位 bit/s
+     */
+    private CodecRecorder newCodecRecorder(Camera camera, Camera.Size size, int bitRate) {
+        // 快照从录制器的预览帧中取得
+        CodecRecorder codecRecorder = mSnapshotSource != null ? new CodecRecorder(mSnapshotSource)
+                : new CodecRecorder(newCameraFrameSource(camera, size));
+        codecRecorder.setVideoParams(mFrameRate, bitRate);
+        codecRecorder.setMaxDuration(mMaxDuration, mCodecInfoListener);
+        codecRecorder.setOnErrorListener(mCodecErrorListener);
+        if (mEncoderSettings != null) {
+            codecRecorder.setEncoderSettings(mEncoderSettings);
+        }
+        applyBitrateGovernor(codecRecorder, bitRate);
+        return codecRecorder;
+    }
+
+    /**
+     * 开启自适应码率时给录制器设置码率调整器
+     *
+     * @param bitRate 开始时的码率，单位 bit/s
+     */
+    private void applyBitrateGovernor(CodecRecorder codecRecorder, int bitRate) {
+        if (mMaxAdaptiveBitRate <= 0) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            Log.w("RecordView", "========== adaptive bit rate not supported =========");
+            return;
+        }
+        BitrateGovernor governor = new BitrateGovernor(mMinAdaptiveBitRate * KB, mMaxAdaptiveBitRate * KB,
+                bitRate, mFrameRate);
+        codecRecorder.setBitrateGovernor(governor, mBitrateAdjustedListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            mThermalMonitor = new ThermalMonitor(getContext(), governor);
+        }
+    }
+
+    private void startThermalMonitor() {
+        if (mThermalMonitor != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            mThermalMonitor.start();
+        }
+    }
+
+    private void stopThermalMonitor() {
+        if (mThermalMonitor != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            mThermalMonitor.stop();
+        }
+        mThermalMonitor = null;
+    }
+
+    /**
+     * 开始循环录制，使用 MediaCodec 按分段写入，不录制音频
+     *
+     * @return 是否已开始录制
+     */
+    private boolean startLoopRecord() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Log.w("RecordView", "========== loop record not supported =========");
+            return false;
+        }
+        OpenCamera openCamera = getOwnedCamera();
+        if (openCamera == null) {
+            Log.w("RecordView", "========== open camera first =========");
+            return false;
+        }
+        Camera camera = openCamera.getCamera();
+        Camera.Size size = camera.getParameters().getPreviewSize();
+        int bitRate = videoBitRate(size.width, size.height, mFrameRate);
+        CodecRecorder codecRecorder = newCodecRecorder(camera, size, bitRate);
+        try {
+            codecRecorder.start(mLoopRecorder.newSink(openCamera.getOrientation()));
+            mCodecRecorder = codecRecorder;
+            return true;
+        } catch (Exception e) {
+            reportStartFailure(e, RecordError.Type.ENCODER_FAILURE);
+        }
+        return false;
+    }
+
+    /**
+     * 开始高帧率录制，慢动作时不录制音频
+     *
+     * @return 是否已开始录制
+     */
+    private boolean startHighSpeedRecord() {
+        if (!mSlowMotion && ContextCompat.checkSelfPermission(getContext(), Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_DENIED) {
+            reportError(newError(RecordError.Type.PERMISSION_DENIED, RecordError.NO_CODE, null, false),
+                    R.string.start_record_error);
+            return false;
+        }
+        OpenCamera openCamera = getOwnedCamera();
+        if (openCamera == null) {
+            Log.w("RecordView", "========== open camera first =========");
+            return false;
+        }
+        Camera camera = openCamera.getCamera();
+        Camera.Parameters parameters = camera.getParameters();
+        CamcorderProfile profile = findHighSpeedProfile(openCamera);
+        HighSpeedInfo info = resolveHighSpeedInfo(profile, parameters);
+        Log.i("RecordView", "High speed record: " + info);
+        // 预览帧数需要跟上采集帧数，相机会被复用，结束录制后恢复原来的范围
+        int[] previewFpsRange = new int[2];
+        parameters.getPreviewFpsRange(previewFpsRange);
+        CameraConfigurationUtils.setHighSpeedPreviewFPS(parameters, info.getCaptureFrameRate());
+        try {
+            camera.setParameters(parameters);
+            mRestorePreviewFpsRange = previewFpsRange;
+        } catch (RuntimeException e) {
+            Log.w("RecordView", "Camera rejected high speed fps range", e);
+        }
+        if (!prepareOutFile(info.getBitRate(), true)) {
+            restorePreviewFpsRange(camera, mRestorePreviewFpsRange);
+            mRestorePreviewFpsRange = null;
+            return false;
+        }
+        camera.unlock();
+        try {
+            mVideoRecorder = MediaRecorderFactory.newHighSpeedInstance(camera, parameters,
+                    info.isHighSpeedProfile() ? profile : null, mVideoWidth, mVideoHeight,
+                    info.getCaptureFrameRate(), info.getOutputFrameRate(), info.getBitRate());
+            mVideoRecorder.setOutputFile(mOutFilePath);
+            applyRecorderListeners(mVideoRecorder);
+            mVideoRecorder.setOrientationHint(openCamera.getOrientation());
+            mVideoRecorder.setPreviewDisplay(getHolder().getSurface());
+            mVideoRecorder.prepare();
+            mVideoRecorder.start();
+            if (info.isHighSpeedProfile()) {
+                writeRecoveryInfo(MediaRecorderFactory.videoMimeOf(profile.videoCodec), profile.videoFrameWidth,
+                        profile.videoFrameHeight, info.getOutputFrameRate(), openCamera.getOrientation());
+            } else {
+                writeRecoveryInfo(RecoveryInfo.MIME_AVC, mVideoWidth, mVideoHeight, info.getOutputFrameRate(),
+                        openCamera.getOrientation());
+            }
+            return true;
+        } catch (Exception e) {
+            reportStartFailure(e, RecordError.Type.RECORDER_FAILURE);
+            abandonVideoRecorder(camera);
+        }
+        return false;
+    }
+
+    @Nullable
+    private CamcorderProfile findHighSpeedProfile(OpenCamera openCamera) {
+        return MediaRecorderFactory.findHighSpeedProfile(openCamera.getIndex(), mHighSpeedFrameRate, mVideoWidth, mVideoHeight);
+    }
+
+    /**
+     * 根据设备能力计算实际的高帧率参数，不支持请求帧数时退回到可用的最高帧数
+     */
+    private HighSpeedInfo resolveHighSpeedInfo(@Nullable CamcorderProfile profile, Camera.Parameters parameters) {
+        int available = MediaRecorderFactory.findMaxFrameRate(parameters);
+        if (profile != null) {
+            available = Math.max(available, profile.videoFrameRate);
+        }
+        int captureRate = available > 0 ? Math.min(mHighSpeedFrameRate, available) : mFrameRate;
+        int outputRate = mSlowMotion ? Math.min(DEFAULT_SLOW_MOTION_FRAME_RATE, captureRate) : captureRate;
+        boolean useProfile = profile != null && profile.videoFrameRate >= captureRate;
+        int bitRate;
+        if (useProfile) {
+            bitRate = profile.videoBitRate;
+        } else if (mBitRate == BIT_RATE_AUTO) {
+            Point size = findVideoSize(parameters);
+            bitRate = videoBitRate(size.x, size.y, outputRate);
+        } else {
+            // 保持每帧数据量不变，码率随输出帧数放大
+            bitRate = (int) ((long) mBitRate * KB * outputRate / Math.max(mFrameRate, 1));
+        }
+        return new HighSpeedInfo(mHighSpeedFrameRate, captureRate, outputRate, bitRate, useProfile);
+    }
+
+    /**
+     * MediaRecorder 实际使用的视频尺寸
+     */
+    private Point findVideoSize(Camera.Parameters parameters) {
+        if (mVideoWidth > 0 && mVideoHeight > 0) {
+            return MediaRecorderFactory.findCloseSizeValue(parameters, new Point(mVideoWidth, mVideoHeight));
+        }
+        Camera.Size size = parameters.getPreviewSize();
+        return new Point(size.width, size.height);
+    }
+
+    /**
+     * MediaRecorder 正常录制的码率，按实际使用的尺寸与帧数计算
+     */
+    private int normalRecordBitRate(Camera.Parameters parameters) {
+        if (mBitRate != BIT_RATE_AUTO) {
+            return mBitRate * KB;
+        }
+        Point size = findVideoSize(parameters);
+        return videoBitRate(size.x, size.y, MediaRecorderFactory.findCloseFrameRate(parameters, mFrameRate));
+    }
+
+    /**
+     * 计算视频码率，自动码率时按尺寸、帧数与预览画面复杂度计算并记录
+     *
+     * @return 单位 bit/s
+     */
+    private int videoBitRate(int width, int height, int frameRate) {
+        if (mBitRate != BIT_RATE_AUTO) {
+            return mBitRate * KB;
+        }
+        mBitrateEstimate = BitrateEstimate.compute(width, height, frameRate, mSceneComplexity.getComplexity(),
+                DEFAULT_BIT_RATE * KB);
+        return mBitrateEstimate.getBitRate();
+    }
+
+    /**
+     * 自动码率时在预览中估计画面复杂度，开始录制前停止，回到预览后继续
+     */
+    private final OnRecordStateChangeListener mComplexitySamplingListener = new OnRecordStateChangeListener() {
+        @Override
+        public void onRecordStateChanged(RecordState oldState, RecordState newState) {
+            updateComplexitySampler();
+        }
+    };
+
+    private void updateComplexitySampler() {
+        OpenCamera openCamera = getOwnedCamera();
+        if (mBitRate == BIT_RATE_AUTO && mState.get() == RecordState.PREVIEWING && openCamera != null) {
+            if (!mComplexitySampler.isRunning()) {
+                Camera camera = openCamera.getCamera();
+                mComplexitySampler.start(newCameraFrameSource(camera, getCameraParameters(camera).getPreviewSize()));
+            }
+        } else {
+            mComplexitySampler.stop();
+        }
+    }
+
+    /**
+     * 设置录制器的错误与信息回调，由录制器判断最大录制时长与剩余空间
+     */
+    private void applyRecorderListeners(MediaRecorder recorder) {
+        recorder.setOnErrorListener(mRecorderErrorListener);
+        recorder.setOnInfoListener(mRecorderInfoListener);
+        if (mMaxDuration > 0) {
+            recorder.setMaxDuration(mMaxDuration);
+        }
+        long writableBytes = mFixedOutFile ? -1 : mOutputFileManager.getWritableBytes();
+        if (writableBytes > 0) {
+            // 在写满存储前结束，文件可以正常写完。预分配的部分已经计入文件长度
+            recorder.setMaxFileSize(writableBytes + new File(mOutFilePath).length());
+        }
+    }
+
+    /**
+     * 录制器到达最大录制时长，先交给监听处理，然后确保录制结束
+     */
+    private void onMaxDurationReached() {
+        if (mState.get() != RecordState.RECORDING) {
+            return;
+        }
+        if (mOnMaxDurationReachedListener != null) {
+            mOnMaxDurationReachedListener.onMaxDurationReached();
+        }
+        stopRecord();
+    }
+
+    /**
+     * 录制中存储空间用完，录制器已经停止写入，结束录制并保留文件
+     */
+    private void onStorageFull() {
+        if (mState.get() != RecordState.RECORDING) {
+            return;
+        }
+        reportError(newError(RecordError.Type.STORAGE_FULL, RecordError.NO_CODE, null, true),
+                R.string.storage_full_stopped);
+        stopRecord();
+    }
+
+    /**
+     * 录制器在相机线程创建，回调在相机线程，转到主线程处理
+     */
+    private final MediaRecorder.OnInfoListener mRecorderInfoListener = new MediaRecorder.OnInfoListener() {
+        @Override
+        public void onInfo(final MediaRecorder mr, final int what, int extra) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mr != mVideoRecorder) {
+                        return;
+                    }
+                    if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
+                        onMaxDurationReached();
+                    } else if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED) {
+                        onStorageFull();
+                    }
+                }
+            });
+        }
+    };
+
+    private final MediaRecorder.OnErrorListener mRecorderErrorListener = new MediaRecorder.OnErrorListener() {
+        @Override
+        public void onError(final MediaRecorder mr, final int what, final int extra) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mr == mVideoRecorder) {
+                        onRecordingFailed(newError(RecordError.typeOfRecorderError(what, extra), what, null, true));
+                    }
+                }
+            });
+        }
+    };
+
+    private final CodecRecorder.OnErrorListener mCodecErrorListener = new CodecRecorder.OnErrorListener() {
+        @Override
+        public void onError(CodecRecorder recorder, Exception e) {
+            if (recorder == mCodecRecorder) {
+                onRecordingFailed(newError(RecordError.typeOfException(e, RecordError.Type.ENCODER_FAILURE),
+                        RecordError.NO_CODE, e, true));
+            }
+        }
+    };
+
+    private final CodecRecorder.OnBitrateAdjustedListener mBitrateAdjustedListener = new CodecRecorder.OnBitrateAdjustedListener() {
+        @Override
+        public void onBitrateAdjusted(CodecRecorder recorder, BitrateAdjustment adjustment) {
+            if (mRecordMetrics != null) {
+                mRecordMetrics.onBitrateAdjusted(adjustment);
+            }
+        }
+    };
+
+    private final CodecRecorder.OnMaxDurationReachedListener mCodecInfoListener = new CodecRecorder.OnMaxDurationReachedListener() {
+        @Override
+        public void onMaxDurationReached(CodecRecorder recorder) {
+            if (recorder == mCodecRecorder) {
+                RecordView.this.onMaxDurationReached();
+            }
+        }
+    };
+
+    /**
+     * 准备本次录制的输出文件。指定了固定路径时删除上一次的文件，
+     * 否则检查剩余空间并生成新文件，设置了最大时长时按预估大小预分配
+     *
+     * @param bitRate     视频码率，单位 bit/s，用于预估文件大小
+     * @param preallocate 是否预分配
+     * @return 是否可以开始录制
+     */
+    private boolean prepareOutFile(int bitRate, boolean preallocate) {
+        if (mFixedOutFile) {
+            File file = new File(mOutFilePath);
+            if (file.exists()) {
+                file.delete();
+            }
+            return true;
+        }
+        long expectedBytes = mMaxDuration > 0 ? OutputFileManager.estimateSize(bitRate, mMaxDuration) : 0;
+        if (!mOutputFileManager.hasFreeSpace(expectedBytes)) {
+            reportError(newError(RecordError.Type.STORAGE_FULL, RecordError.NO_CODE, null, false),
+                    R.string.storage_full_error);
+            return false;
+        }
+        File file = mOutputFileManager.newSessionFile();
+        if (file == null) {
+            reportError(newError(RecordError.Type.STORAGE_FAILURE, RecordError.NO_CODE, null, false),
+                    R.string.recording_error);
+            return false;
+        }
+        if (preallocate && expectedBytes > 0) {
+            mOutputFileManager.preallocate(file, expectedBytes);
+        }
+        mSessionFile = file;
+        mOutFilePath = file.getAbsolutePath();
+        return true;
+    }
+
+    /**
+     * 在输出文件旁保存 MediaRecorder 录制的修复信息，录制中进程退出时可以用
+     * {@link io.hellobird.videorecord.lib.mp4.Mp4Recovery} 修复，正常结束时删除
+     *
+     * @param videoMime 视频编码，未知时为null
+     */
+    private void writeRecoveryInfo(@Nullable String videoMime, int width, int height, int frameRate, int orientation) {
+        if (mSessionFile == null) {
+            return;
+        }
+        RecoveryInfo info = new RecoveryInfo.Builder()
+                .setVideoMime(videoMime)
+                .setVideoSize(width, height)
+                .setFrameRate(Math.max(frameRate, 1))
+                .setOrientation(orientation)
+                .build();
+        mOutputFileManager.writeRecoveryInfo(mSessionFile, info);
+    }
+
+    /**
+     * MediaRecorder 开始录制失败，释放录制器、重新锁定相机并删除本次生成的文件
+     */
+    private void abandonVideoRecorder(Camera camera) {
+        if (mVideoRecorder != null) {
+            mVideoRecorder.reset();
+            mVideoRecorder.release();
+            mVideoRecorder = null;
+        }
+        try {
+            camera.lock();
+        } catch (RuntimeException e) {
+            Log.w("RecordView", "Camera failed to lock", e);
+        }
+        restorePreviewFpsRange(camera, mRestorePreviewFpsRange);
+        mRestorePreviewFpsRange = null;
+        abandonOutFile();
+    }
+
+    /**
+     * 恢复高帧率录制前的预览帧数范围，相机需要已经锁定
+     *
+     * @param range 之前的范围，为空时不修改
+     */
+    private static void restorePreviewFpsRange(Camera camera, @Nullable int[] range) {
+        if (camera == null || range == null) {
+            return;
+        }
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            parameters.setPreviewFpsRange(range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                    range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+            camera.setParameters(parameters);
+        } catch (RuntimeException e) {
+            Log.w("RecordView", "Camera failed to restore preview fps range", e);
+        }
+    }
+
+    /**
+     * 开始录制失败，删除本次生成的文件
+     */
+    private void abandonOutFile() {
+        discardProxyFile();
+        if (mSessionFile != null) {
+            mOutputFileManager.finishSession(mSessionFile, true);
+            mSessionFile = null;
+        }
+    }
+
+    private static RecordError newError(RecordError.Type type, int code, @Nullable Throwable cause, boolean interrupted) {
+        return new RecordError(type, code, cause, interrupted, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 输出错误到统计与错误回调，没有设置回调时弹出提示。在相机线程开始录制时出错，转到主线程输出
+     *
+     * @param message 没有设置回调时的提示，0表示不提示
+     */
+    private void reportError(final RecordError error, final int message) {
+        if (!isMainThread()) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    reportError(error, message);
+                }
+            });
+            return;
+        }
+        Log.w("RecordView", "Record error " + error.getType(), error.getCause());
+        if (mRecordMetrics != null) {
+            mRecordMetrics.onRecordError(error);
+        }
+        if (mOnRecordErrorListener != null) {
+            mOnRecordErrorListener.onRecordError(error);
+        } else if (message != 0) {
+            Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * 开始录制失败，按异常归类后输出。是否提示由 {@link #startRecord()} 的调用者根据返回值决定
+     */
+    private void reportStartFailure(Exception e, RecordError.Type fallback) {
+        reportError(newError(RecordError.typeOfException(e, fallback), RecordError.NO_CODE, e, false), 0);
+    }
+
+    /**
+     * 录制中录制器出错，结束录制并保留已经写入的部分。出错的录制器可能无法及时响应，在相机线程结束
+     */
+    private void onRecordingFailed(RecordError error) {
+        if (mState.get() != RecordState.RECORDING) {
+            return;
+        }
+        reportError(error, R.string.recording_error);
+        if (mAutoRecover && error.getType() != RecordError.Type.STORAGE_FULL) {
+            beginRecovery(error);
+        }
+        cancelRecord(null);
+    }
+
+    /**
+     * 开始恢复，回到预览时由 {@link #mRecoveryListener} 输出恢复时间。恢复过程中的新错误计入同一次恢复
+     */
+    private void beginRecovery(RecordError error) {
+        if (mPendingRecovery == null) {
+            mPendingRecovery = error;
+            mRecoveryAttempts = 0;
+        }
+    }
+
+    /**
+     * 回到预览时恢复完成
+     */
+    private final OnRecordStateChangeListener mRecoveryListener = new OnRecordStateChangeListener() {
+        @Override
+        public void onRecordStateChanged(RecordState oldState, RecordState newState) {
+            RecordError error = mPendingRecovery;
+            if (newState != RecordState.PREVIEWING || error == null) {
+                return;
+            }
+            mPendingRecovery = null;
+            long recoveryTimeMs = SystemClock.elapsedRealtime() - error.getTimeMs();
+            Log.i("RecordView", "Recovered from " + error.getType() + " in " + recoveryTimeMs + "ms");
+            if (mRecordMetrics != null) {
+                mRecordMetrics.onErrorRecovered(error, recoveryTimeMs);
+            }
+            if (mOnRecordErrorListener != null) {
+                mOnRecordErrorListener.onErrorRecovered(error);
+            }
+        }
+    };
+
+    /**
+     * 结束录制时录制器出错，例如录制时间过短，在主线程输出
+     */
+    private final StopErrorReporter mStopErrorReporter = new StopErrorReporter() {
+        @Override
+        public void onStopFailed(RecordError.Type type, Exception e) {
+            reportError(newError(type, RecordError.NO_CODE, e, false), 0);
+        }
+    };
+
+    /**
+     * 结束录制，在主线程调用时返回时文件已经写完，在其他线程调用时命令排队到主线程执行<br/>
+     * 录制器在相机线程结束，主线程等待
+     */
+    public void stopRecord() {
+        if (!isMainThread()) {
+            mMainHandler.post(mStopRecordCommand);
+            return;
+        }
+        Runnable teardown = detachRecorder(mStopErrorReporter);
+        if (teardown != null) {
+            mCameraArbiter.runOnCameraThread(teardown);
+        }
+    }
+
+    /**
+     * 结束录制，在相机线程写完文件，不阻塞调用线程。文件写完前状态为 {@link RecordState#STOPPING}
+     */
+    public void cancelRecord() {
+        if (!isMainThread()) {
+            mMainHandler.post(mCancelRecordCommand);
+            return;
+        }
+        cancelRecord(mStopErrorReporter);
+    }
+
+    /**
+     * @param reporter 结束失败时的输出，录制因错误中断时为null，不重复输出
+     */
+    private void cancelRecord(@Nullable StopErrorReporter reporter) {
+        Runnable teardown = detachRecorder(reporter);
+        if (teardown != null) {
+            mCameraArbiter.getCameraHandler().post(teardown);
+        }
+    }
+
+    /**
+     * 将录制器从控件上分离，控件立即回到未录制状态
+     *
+     * @param reporter 结束失败时的输出
+     * @return 结束录制的任务，未在录制时返回null
+     */
+    @Nullable
+    private Runnable detachRecorder(@Nullable StopErrorReporter reporter) {
+        if (!mState.transition(RecordState.RECORDING, RecordState.STOPPING)) {
+            return null;
+        }
+        stopThermalMonitor();
+        cancelSnapshots();
+        // 循环录制的分段由 LoopRecorder 管理，不回调
+        File outputFile = mLoopRecorder == null && mOutFilePath != null ? new File(mOutFilePath) : null;
+        Runnable teardown = new RecorderTeardown(mVideoRecorder, mCodecRecorder, mCameraManager.getCamera(), mState,
+                mOutputFileManager, mSessionFile, outputFile, mProxyFile, mHashingChannel, mRestorePreviewFpsRange,
+                mOnRecordFinishedListener, reporter);
+        mRestorePreviewFpsRange = null;
+        mVideoRecorder = null;
+        mCodecRecorder = null;
+        mProxyFile = null;
+        mHashingChannel = null;
+        mSessionFile = null;
+        return teardown;
+    }
+
+    /**
+     * 录制时拍照，不中断录制，只在录制状态下接受<br/>
+     * MediaRecorder 录制且相机支持录制时拍照时调用 takePicture，取得相机输出的 JPEG，同一时间只能有一张；
+     * MediaCodec 录制时从预览帧取下一帧编码为 JPEG，尺寸为预览尺寸，连拍时每帧一张<br/>
+     * MediaRecorder 录制但相机不支持录制时拍照时不能拍照：相机已解锁交给媒体服务，应用收不到预览帧<br/>
+     * 编码与写入在后台线程，最多 {@link #SNAPSHOT_QUEUE_SIZE} 张等待写入，超过时拒绝，不影响录制的帧。结果通过 {@link OnSnapshotListener} 返回
+     *
+     * @param output 输出文件
+     * @return 是否已接受，未在录制、相机不支持、等待写入的快照已满或上一张 takePicture 未返回时返回false
+     */
+    @MainThread
+    public boolean takeSnapshot(@NonNull File output) {
+        RecordState state = mState.get();
+        if (state != RecordState.RECORDING || mSnapshotSource == null) {
+            Log.w("RecordView", "Reject takeSnapshot in state " + state);
+            return false;
+        }
+        if (mVideoRecorder != null) {
+            if (!mVideoSnapshotSupported) {
+                Log.w("RecordView", "Video snapshot not supported while MediaRecorder owns the camera");
+                return false;
+            }
+            return takeVideoSnapshot(output);
+        }
+        return mSnapshotSource.requestSnapshot(output);
+    }
+
+    /**
+     * 录制时调用 takePicture，相机继续录制，不需要重新开始预览
+     */
+    private boolean takeVideoSnapshot(final File output) {
+        OpenCamera openCamera = getOwnedCamera();
+        if (mTakingPicture || openCamera == null) {
+            return false;
+        }
+        final SnapshotQueue queue = getSnapshotQueue();
+        if (!queue.tryAcquire()) {
+            return false;
+        }
+        final int orientation = mSnapshotOrientation;
+        final Camera camera = openCamera.getCamera();
+        // 相机线程打开的相机，结果也在相机线程回调
+        final Camera.PictureCallback callback = new Camera.PictureCallback() {
+            @Override
+            public void onPictureTaken(byte[] data, Camera camera) {
+                mMainHandler.post(mPictureTakenCommand);
+                if (data != null) {
+                    queue.submitJpeg(data, orientation, output);
+                } else {
+                    queue.release();
+                    mSnapshotCallback.onSnapshotFailed(output, new IOException("Camera returned no picture"));
+                }
+            }
+        };
+        try {
+            mCameraArbiter.runOnCameraThread(new Runnable() {
+                @Override
+                public void run() {
+                    camera.takePicture(null, null, callback);
+                }
+            });
+            mTakingPicture = true;
+            return true;
+        } catch (RuntimeException e) {
+            Log.w("RecordView", "Camera failed to take picture while recording", e);
+            queue.release();
+            return false;
+        }
+    }
+
+    private final Runnable mPictureTakenCommand = new Runnable() {
+        @Override
+        public void run() {
+            mTakingPicture = false;
+        }
+    };
+
+    /**
+     * 开始录制前准备本次录制的快照，录制器从同一个帧来源取帧，在相机线程调用
+     */
+    private void prepareSnapshot() {
+        OpenCamera openCamera = getOwnedCamera();
+        if (openCamera == null) {
+            return;
+        }
+        Camera camera = openCamera.getCamera();
+        // MediaRecorder 录制时相机已解锁，需要在开始前取得参数
+        Camera.Parameters parameters = camera.getParameters();
+        Camera.Size size = parameters.getPreviewSize();
+        mVideoSnapshotSupported = parameters.isVideoSnapshotSupported();
+        mSnapshotOrientation = openCamera.getOrientation();
+        mSnapshotSource = new SnapshotFrameSource(newCameraFrameSource(camera, size), getSnapshotQueue(),
+                mSnapshotOrientation);
+    }
+
+    /**
+     * 相机预览帧来源，设置回调与归还缓冲区在相机线程执行，编码线程与主线程都可以调用
+     */
+    private CameraFrameSource newCameraFrameSource(Camera camera, Camera.Size size) {
+        return new CameraFrameSource(camera, size.width, size.height, mCameraArbiter.getCameraHandler());
+    }
+
+    /**
+     * 在相机线程读取相机参数，主线程等待
+     */
+    private Camera.Parameters getCameraParameters(final Camera camera) {
+        final Camera.Parameters[] parameters = new Camera.Parameters[1];
+        mCameraArbiter.runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                parameters[0] = camera.getParameters();
+            }
+        });
+        return parameters[0];
+    }
+
+    /**
+     * 录制结束，取消还没有取得帧的快照
+     */
+    private void cancelSnapshots() {
+        if (mSnapshotSource == null) {
+            return;
+        }
+        List<File> cancelled = mSnapshotSource.cancel();
+        mSnapshotSource = null;
+        for (File file : cancelled) {
+            mSnapshotCallback.onSnapshotFailed(file, new IOException("Recording stopped before snapshot"));
+        }
+    }
+
+    private SnapshotQueue getSnapshotQueue() {
+        if (mSnapshotQueue == null) {
+            mSnapshotQueue = new SnapshotQueue(SNAPSHOT_QUEUE_SIZE, new YuvJpegEncoder(SNAPSHOT_JPEG_QUALITY));
+            mSnapshotQueue.setCallback(mSnapshotCallback);
+        }
+        return mSnapshotQueue;
+    }
+
+    /**
+     * 快照结果转到主线程回调
+     */
+    private final SnapshotQueue.Callback mSnapshotCallback = new SnapshotQueue.Callback() {
+        @Override
+        public void onSnapshotTaken(final File file) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mOnSnapshotListener != null) {
+                        mOnSnapshotListener.onSnapshotTaken(file);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onSnapshotFailed(final File file, final Exception e) {
+            Log.w("RecordView", "Snapshot failed " + file, e);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mOnSnapshotListener != null) {
+                        mOnSnapshotListener.onSnapshotFailed(file, e);
+                    }
+                }
+            });
+        }
+    };
+
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * 是否正在录制，包括正在开始录制
+     *
+     * @return
+     */
+    public boolean isRecording() {
+        RecordState state = mState.get();
+        return state == RecordState.STARTING || state == RecordState.RECORDING;
+    }
+
+    /**
+     * 获取录制状态，可以在任意线程调用
+     *
+     * @return
+     */
+    public RecordState getRecordState() {
+        return mState.get();
+    }
+
+    /**
+     * 添加录制状态监听，状态变化在主线程回调
+     *
+     * @param listener
+     */
+    public void addOnRecordStateChangeListener(OnRecordStateChangeListener listener) {
+        mState.addListener(listener);
+    }
+
+    /**
+     * 移除录制状态监听
+     *
+     * @param listener
+     */
+    public void removeOnRecordStateChangeListener(OnRecordStateChangeListener listener) {
+        mState.removeListener(listener);
+    }
+
+    private final Runnable mOpenCameraCommand = new Runnable() {
+        @Override
+        public void run() {
+            openCamera();
+        }
+    };
+
+    private final Runnable mCloseCameraCommand = new Runnable() {
+        @Override
+        public void run() {
+            closeCamera();
+        }
+    };
+
+    private final Runnable mStartRecordCommand = new Runnable() {
+        @Override
+        public void run() {
+            startRecord();
+        }
+    };
+
+    private final Runnable mStopRecordCommand = new Runnable() {
+        @Override
+        public void run() {
+            stopRecord();
+        }
+    };
+
+    private final Runnable mCancelRecordCommand = new Runnable() {
+        @Override
+        public void run() {
+            cancelRecord();
+        }
+    };
+
+    private final Runnable mRecoverCommand = new Runnable() {
+        @Override
+        public void run() {
+            if (mPendingRecovery != null) {
+                openCamera();
+            }
+        }
+    };
+
+    private final SurfaceHolder.Callback mCallBack = new SurfaceHolder.Callback() {
+        @Override
+        public void surfaceCreated(SurfaceHolder holder) {
+            mSurfaceEnable = true;
+            if (mPreviewHost != null) {
+                mPreviewHost.addPreviewSurface(holder.getSurface());
+            } else if (shouldOpenOnSurfaceCreated()) {
+                openCamera();
+            }
+        }
+
+        @Override
+        public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        }
+
+        @Override
+        public void surfaceDestroyed(SurfaceHolder holder) {
+            mSurfaceEnable = false;
+            if (mPreviewHost != null) {
+                // 返回前停止绘制，窗口销毁后不能再使用
+                mPreviewHost.removePreviewSurface(holder.getSurface());
+            } else {
+                closeCamera();
+            }
+        }
+    };
+
+    /**
+     * 获取视频输出路径，未指定路径时为最近一次录制的文件
+     *
+     * @return 还没有录制过时可能为null
+     */
+    public String getOutFilePath() {
+        return mOutFilePath;
+    }
+
+    /**
+     * 设置固定的视频输出路径，每次录制会覆盖上一次的文件<br/>
+     * 传入null时恢复为由 {@link #getOutputFileManager()} 每次生成新文件
+     *
+     * @param outFilePath
+     */
+    public void setOutFilePath(@Nullable String outFilePath) {
+        this.mOutFilePath = outFilePath;
+        this.mFixedOutFile = outFilePath != null;
+    }
+
+    /**
+     * 获取输出文件管理，可以设置配额与保留空间
+     *
+     * @return
+     */
+    public OutputFileManager getOutputFileManager() {
+        return mOutputFileManager;
+    }
+
+    /**
+     * 设置输出文件管理，用于指定输出目录
+     *
+     * @param outputFileManager
+     */
+    public void setOutputFileManager(@NonNull OutputFileManager outputFileManager) {
+        this.mOutputFileManager = outputFileManager;
+    }
+
+    /**
+     * View创建后是否自动打开预览
+     *
+     * @return
+     */
+    public boolean isAutoOpen() {
+        return mAutoOpen;
     }
 
     /**
@@ -338,80 +1957,211 @@ public class RecordView extends SurfaceView {
      *
      * @param autoOpen
      */
-    public void setAutoOpen(boolean autoOpen) {
-        this.mAutoOpen = autoOpen;
+    public void setAutoOpen(boolean autoOpen) {
+        this.mAutoOpen = autoOpen;
+    }
+
+    /**
+     * 获取输出视频参考宽度，仅做参考，以最终相机支持尺寸为准
+     *
+     * @return
+     */
+    public int getVideoWidth() {
+        return mVideoWidth;
+    }
+
+    /**
+     * 设置输出视频参考宽度
+     *
+     * @param videoWidth
+     */
+    public void setVideoWidth(int videoWidth) {
+        this.mVideoWidth = videoWidth;
+    }
+
+    /**
+     * 获取输出视频参考高度，仅做参考，以最终相机支持尺寸为准
+     *
+     * @return
+     */
+    public int getVideoHeight() {
+        return mVideoHeight;
+    }
+
+    /**
+     * 设置输出视频参考高度
+     *
+     * @param videoHeight
+     */
+    public void setVideoHeight(int videoHeight) {
+        this.mVideoHeight = videoHeight;
+    }
+
+    /**
+     * 获取帧率
+     *
+     * @return
+     */
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * 设置帧率
+     *
+     * @param frameRate
+     */
+    public void setFrameRate(int frameRate) {
+        this.mFrameRate = frameRate;
+    }
+
+    /**
+     * 获取码率，单位为kb/s，表示一秒钟视频的大小
+     *
+     * @return 自动码率时返回 {@link #BIT_RATE_AUTO}
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 设置码率，单位为kb/s，表示一秒钟视频的大小<br/>
+     * 设置为 {@link #BIT_RATE_AUTO} 时按实际使用的分辨率、帧数与预览画面复杂度计算，
+     * 结果通过 {@link #getBitrateEstimate()} 与 {@link RecordMetrics#onBitrateChosen(BitrateEstimate)} 获取
+     *
+     * @param bitRate
+     */
+    public void setBitRate(int bitRate) {
+        this.mBitRate = bitRate;
+        updateComplexitySampler();
+    }
+
+    /**
+     * 获取最近一次录制的自动码率
+     *
+     * @return 未使用自动码率时返回null
+     */
+    @Nullable
+    public BitrateEstimate getBitrateEstimate() {
+        return mBitrateEstimate;
+    }
+
+    /**
+     * 获取最大录制时长，单位毫秒，0表示不限制
+     *
+     * @return
+     */
+    public int getMaxDuration() {
+        return mMaxDuration;
+    }
+
+    /**
+     * 设置最大录制时长，由录制器判断，到达后自动结束录制。开始录制前设置有效
+     *
+     * @param maxDuration 单位毫秒，<=0表示不限制
+     */
+    public void setMaxDuration(int maxDuration) {
+        this.mMaxDuration = Math.max(maxDuration, 0);
+    }
+
+    /**
+     * 设置到达最大录制时长的回调，回调返回后录制会被结束
+     *
+     * @param listener
+     */
+    public void setOnMaxDurationReachedListener(OnMaxDurationReachedListener listener) {
+        this.mOnMaxDurationReachedListener = listener;
     }
 
     /**
-     * 获取输出视频参考宽度，仅做参考，以最终相机支持尺寸为准
+     * 设置录制结束的回调，文件写完后在主线程回调，循环录制时不回调，下次开始录制时生效
      *
-     * @return
+     * @param listener
      */
-    public int getVideoWidth() {
-        return mVideoWidth;
+    public void setOnRecordFinishedListener(OnRecordFinishedListener listener) {
+        this.mOnRecordFinishedListener = listener;
     }
 
     /**
-     * 设置输出视频参考宽度
+     * 获取延时摄影采集间隔，单位毫秒，0表示正常录制
      *
-     * @param videoWidth
+     * @return
      */
-    public void setVideoWidth(int videoWidth) {
-        this.mVideoWidth = videoWidth;
+    public long getTimeLapseInterval() {
+        return mTimeLapseInterval;
     }
 
     /**
-     * 获取输出视频参考高度，仅做参考，以最终相机支持尺寸为准
+     * 设置延时摄影采集间隔，开始录制前设置有效
      *
-     * @return
+     * @param timeLapseInterval 采集间隔，单位毫秒，<=0表示正常录制
      */
-    public int getVideoHeight() {
-        return mVideoHeight;
+    public void setTimeLapseInterval(long timeLapseInterval) {
+        this.mTimeLapseInterval = Math.max(timeLapseInterval, 0);
     }
 
     /**
-     * 设置输出视频参考高度
+     * 获取延时摄影输出参数，需要先打开相机
      *
-     * @param videoHeight
+     * @return 未开启延时摄影或相机未打开时返回null
      */
-    public void setVideoHeight(int videoHeight) {
-        this.mVideoHeight = videoHeight;
+    @Nullable
+    public TimeLapseInfo getTimeLapseInfo() {
+        OpenCamera openCamera = getOwnedCamera();
+        if (mTimeLapseInterval <= 0 || openCamera == null) {
+            return null;
+        }
+        CamcorderProfile profile = MediaRecorderFactory.findTimeLapseProfile(openCamera.getIndex(), mVideoWidth, mVideoHeight);
+        if (profile != null) {
+            return new TimeLapseInfo(mTimeLapseInterval, profile.videoFrameRate, profile.videoBitRate, true);
+        }
+        Camera.Size size = getCameraParameters(openCamera.getCamera()).getPreviewSize();
+        return new TimeLapseInfo(mTimeLapseInterval, mFrameRate, videoBitRate(size.width, size.height, mFrameRate), false);
     }
 
     /**
-     * 获取帧率
+     * 获取高帧率录制的采集帧数，0表示正常录制
      *
      * @return
      */
-    public int getFrameRate() {
-        return mFrameRate;
+    public int getHighSpeedFrameRate() {
+        return mHighSpeedFrameRate;
     }
 
     /**
-     * 设置帧率
+     * 高帧率录制是否输出为慢动作
      *
-     * @param frameRate
+     * @return
      */
-    public void setFrameRate(int frameRate) {
-        this.mFrameRate = frameRate;
+    public boolean isSlowMotion() {
+        return mSlowMotion;
     }
 
     /**
-     * 获取码率，单位为kb/s，表示一秒钟视频的大小
+     * 设置高帧率录制，开始录制前设置有效，与延时摄影同时设置时以延时摄影为准<br/>
+     * 使用 MediaRecorder 录制，同时设置加密、计算摘要、代理文件、HLS、关键帧索引、自适应码率或编码参数时不开始录制，
+     * 输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}
      *
-     * @return
+     * @param frameRate  采集帧数，如60、120，<=0表示正常录制
+     * @param slowMotion true 输出为 {@link #DEFAULT_SLOW_MOTION_FRAME_RATE} 帧的慢动作，false 按采集帧数实时输出
      */
-    public int getBitRate() {
-        return mBitRate;
+    public void setHighSpeedFrameRate(int frameRate, boolean slowMotion) {
+        this.mHighSpeedFrameRate = Math.max(frameRate, 0);
+        this.mSlowMotion = slowMotion;
     }
 
     /**
-     * 设置码率，单位为kb/s，表示一秒钟视频的大小
+     * 获取高帧率录制的实际参数，需要先打开相机。设备达不到请求帧数时，返回可用的最高帧数
      *
-     * @param bitRate
+     * @return 未开启高帧率录制或相机未打开时返回null
      */
-    public void setBitRate(int bitRate) {
-        this.mBitRate = bitRate;
+    @Nullable
+    public HighSpeedInfo getHighSpeedInfo() {
+        OpenCamera openCamera = getOwnedCamera();
+        if (mHighSpeedFrameRate <= 0 || openCamera == null) {
+            return null;
+        }
+        return resolveHighSpeedInfo(findHighSpeedProfile(openCamera), getCameraParameters(openCamera.getCamera()));
     }
 
     /**
@@ -432,14 +2182,238 @@ public class RecordView extends SurfaceView {
         return mCameraFacing;
     }
 
+    /**
+     * 设置循环录制，下次开始录制时生效，优先于延时摄影与高帧率录制<br/>
+     * 不能与加密、计算摘要、代理文件、HLS、关键帧索引同时使用，
+     * 同时设置时不开始录制并输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}
+     *
+     * @param loopRecorder 为空时恢复正常录制
+     */
+    public void setLoopRecorder(@Nullable LoopRecorder loopRecorder) {
+        mLoopRecorder = loopRecorder;
+    }
+
+    /**
+     * 获取循环录制
+     *
+     * @return
+     */
+    @Nullable
+    public LoopRecorder getLoopRecorder() {
+        return mLoopRecorder;
+    }
+
+    /**
+     * 设置输出文件加密密钥，下次开始录制时生效，优先于其他录制方式，不能与循环录制同时使用，
+     * 同时设置时不开始录制并输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}<br/>
+     * 输出文件使用 {@link EncryptedFileChannel} 格式，播放时使用
+     * {@link io.hellobird.videorecord.lib.storage.EncryptedMediaDataSource}
+     *
+     * @param key AES 密钥，为空时输出明文文件
+     */
+    public void setEncryptionKey(@Nullable SecretKey key) {
+        mEncryptionKey = key;
+    }
+
+    /**
+     * 获取输出文件加密密钥
+     *
+     * @return
+     */
+    @Nullable
+    public SecretKey getEncryptionKey() {
+        return mEncryptionKey;
+    }
+
+    /**
+     * 设置写入时计算文件摘要，结果通过 {@link OnRecordFinishedListener} 返回，上传前不需要再读取文件<br/>
+     * 下次开始录制时生效，与加密录制相同使用 MediaCodec 编码，不录制音频，不能与循环录制同时使用，
+     * 同时设置时不开始录制并输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}
+     *
+     * @param chunkSize 分块大小，例如 {@link HashingFileChannel#DEFAULT_CHUNK_SIZE}，0表示不计算
+     */
+    public void setContentHashChunkSize(int chunkSize) {
+        mContentHashChunkSize = Math.max(chunkSize, 0);
+    }
+
+    /**
+     * 获取计算文件摘要的分块大小，0表示不计算
+     *
+     * @return
+     */
+    public int getContentHashChunkSize() {
+        return mContentHashChunkSize;
+    }
+
+    /**
+     * 开启自适应码率：录制中存储写入变慢、编码器积压或设备温度升高时降低码率，恢复后逐步提高，
+     * 从 {@link #setBitRate(int)} 设置的码率开始。调整记录通过 {@link #setRecordMetrics(RecordMetrics)} 输出<br/>
+     * 下次开始录制时生效，使用 MediaCodec 编码（API 19+），不录制音频；温度状态需要 API 29+
+     *
+     * @param minBitRate 码率下限，单位为kb/s
+     * @param maxBitRate 码率上限，单位为kb/s，0表示使用固定码率
+     */
+    public void setAdaptiveBitRate(int minBitRate, int maxBitRate) {
+        if (maxBitRate > 0 && (minBitRate <= 0 || minBitRate > maxBitRate)) {
+            throw new IllegalArgumentException("Invalid bit rate range " + minBitRate + "-" + maxBitRate);
+        }
+        mMinAdaptiveBitRate = minBitRate;
+        mMaxAdaptiveBitRate = Math.max(maxBitRate, 0);
+    }
+
+    /**
+     * 获取自适应码率下限，单位为kb/s
+     *
+     * @return
+     */
+    public int getMinAdaptiveBitRate() {
+        return mMinAdaptiveBitRate;
+    }
+
+    /**
+     * 获取自适应码率上限，单位为kb/s，0表示使用固定码率
+     *
+     * @return
+     */
+    public int getMaxAdaptiveBitRate() {
+        return mMaxAdaptiveBitRate;
+    }
+
+    /**
+     * 设置 MediaCodec 编码参数：码率模式（CBR/VBR/CQ）、关键帧间隔与 H.264 profile/level<br/>
+     * 设备不支持时换成最接近的可用参数，恒定质量模式下自适应码率不生效<br/>
+     * 下次开始录制时生效，使用 MediaCodec 编码（API 18+），不录制音频；循环录制与时间流逝录制也会使用这些参数
+     *
+     * @param settings null 表示使用默认录制器
+     */
+    public void setEncoderSettings(@Nullable EncoderSettings settings) {
+        mEncoderSettings = settings;
+    }
+
+    /**
+     * 获取 MediaCodec 编码参数
+     *
+     * @return
+     */
+    @Nullable
+    public EncoderSettings getEncoderSettings() {
+        return mEncoderSettings;
+    }
+
+    /**
+     * 设置录制统计数据输出，主线程回调
+     *
+     * @param metrics
+     */
+    public void setRecordMetrics(@Nullable RecordMetrics metrics) {
+        mRecordMetrics = metrics;
+    }
+
+    /**
+     * 设置同时录制的代理文件，与主文件使用同一路预览数据，码率独立设置，结束后通过 {@link OnRecordFinishedListener} 返回<br/>
+     * 下次开始录制时生效，使用 MediaCodec 编码，不录制音频，不能与循环录制同时使用，
+     * 同时设置时不开始录制并输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}；编码器实例不足时只录制主文件
+     *
+     * @param shortEdge 代理文件短边，例如360，0表示不输出代理文件
+     * @param bitRate   代理文件码率，单位为kb/s
+     */
+    public void setProxyParams(int shortEdge, int bitRate) {
+        mProxyShortEdge = Math.max(shortEdge, 0);
+        mProxyBitRate = bitRate;
+    }
+
+    /**
+     * 设置录制时在输出文件旁写入关键帧索引 {@link KeyframeIndex}，用于快速定位与跳转，不需要解码视频<br/>
+     * 下次开始录制时生效，与加密录制相同使用 MediaCodec 编码，不录制音频，不能与循环录制同时使用，
+     * 同时设置时不开始录制并输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}
+     *
+     * @param enabled 是否写入
+     */
+    public void setKeyframeIndexEnabled(boolean enabled) {
+        mKeyframeIndexEnabled = enabled;
+    }
+
+    public boolean isKeyframeIndexEnabled() {
+        return mKeyframeIndexEnabled;
+    }
+
+    /**
+     * 设置同时输出 HLS，录制过程中 .ts 分段与 .m3u8 播放列表写入指定目录，由 HTTP 服务提供给播放端即可边录边播<br/>
+     * 播放列表与主文件同名。下次开始录制时生效，使用 MediaCodec 编码，不录制音频，不能与循环录制同时使用，
+     * 同时设置时不开始录制并输出 {@link RecordError.Type#UNSUPPORTED_CONFIGURATION}
+     *
+     * @param directory         输出目录，null表示不输出
+     * @param segmentDurationMs 分段时长，在之后的第一个关键帧切分，关键帧间隔最好能整除分段时长
+     * @param windowSize        播放列表保留的分段数，0表示全部保留
+     */
+    public void setHlsOutput(@Nullable File directory, long segmentDurationMs, int windowSize) {
+        if (directory != null && segmentDurationMs <= 0) {
+            throw new IllegalArgumentException("Segment duration must be positive: " + segmentDurationMs);
+        }
+        mHlsDirectory = directory;
+        mHlsSegmentDurationMs = segmentDurationMs;
+        mHlsWindowSize = windowSize;
+    }
+
+    /**
+     * 获取 HLS 输出目录
+     *
+     * @return null表示不输出
+     */
+    @Nullable
+    public File getHlsDirectory() {
+        return mHlsDirectory;
+    }
+
+    /**
+     * 获取代理文件短边，0表示不输出代理文件
+     *
+     * @return
+     */
+    public int getProxyShortEdge() {
+        return mProxyShortEdge;
+    }
+
+    /**
+     * 获取代理文件码率，单位为kb/s
+     *
+     * @return
+     */
+    public int getProxyBitRate() {
+        return mProxyBitRate;
+    }
+
+    /**
+     * 设置相机参数配置，下次打开相机时生效
+     *
+     * @param config 不可变配置，可以使用 {@link RecorderConfig} 中的预设
+     */
+    public void setRecorderConfig(@NonNull RecorderConfig config) {
+        mRecorderConfig = config;
+    }
+
+    /**
+     * 获取相机参数配置
+     *
+     * @return
+     */
+    public RecorderConfig getRecorderConfig() {
+        return mRecorderConfig;
+    }
+
     /**
      * 设置闪光灯
      *
      * @param isOpen true 打开，false 关闭
      */
-    public void setTorch(boolean isOpen) {
-        if (mCameraManager != null) {
-            mCameraManager.setTorch(isOpen);
+    public void setTorch(final boolean isOpen) {
+        if (getOwnedCamera() != null) {
+            mCameraArbiter.runOnCameraThread(new Runnable() {
+                @Override
+                public void run() {
+                    mCameraManager.setTorch(isOpen);
+                }
+            });
         }
     }
 
@@ -449,6 +2423,377 @@ public class RecordView extends SurfaceView {
      * @return true 打开，false 关闭
      */
     public boolean getTorchState() {
-        return mCameraManager != null && mCameraManager.getTorchState();
+        if (getOwnedCamera() == null) {
+            return false;
+        }
+        final boolean[] state = new boolean[1];
+        mCameraArbiter.runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                state[0] = mCameraManager.getTorchState();
+            }
+        });
+        return state[0];
+    }
+
+    /**
+     * 设置相机状态回调
+     *
+     * @param onCameraListener
+     */
+    public void setOnCameraListener(OnCameraListener onCameraListener) {
+        this.mOnCameraListener = onCameraListener;
+    }
+
+    /**
+     * 设置快照回调
+     *
+     * @param listener
+     */
+    public void setOnSnapshotListener(@Nullable OnSnapshotListener listener) {
+        mOnSnapshotListener = listener;
+    }
+
+    /**
+     * 设置错误回调，设置后不再弹出默认提示
+     *
+     * @param listener
+     */
+    public void setOnRecordErrorListener(@Nullable OnRecordErrorListener listener) {
+        this.mOnRecordErrorListener = listener;
+    }
+
+    /**
+     * 设置出错后是否自动恢复，默认开启：<br/>
+     * 相机服务断开或相机被取走时结束录制并保留已录制的部分，然后重新打开相机；<br/>
+     * 录制器或编码器出错时结束录制并保留已录制的部分，回到预览；<br/>
+     * 存储空间不足或没有权限时只结束录制，不恢复。<br/>
+     * 恢复时间通过 {@link RecordMetrics#onErrorRecovered(RecordError, long)} 输出
+     *
+     * @param autoRecover
+     */
+    public void setAutoRecover(boolean autoRecover) {
+        this.mAutoRecover = autoRecover;
+        if (!autoRecover) {
+            mMainHandler.removeCallbacks(mRecoverCommand);
+            mPendingRecovery = null;
+        }
+    }
+
+    /**
+     * 出错后是否自动恢复
+     *
+     * @return
+     */
+    public boolean isAutoRecover() {
+        return mAutoRecover;
+    }
+
+    private final CameraArbiter.Callback mCameraCallback = new CameraArbiter.Callback() {
+        @Override
+        public void onCameraAcquired(CameraLease lease) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            mState.transition(RecordState.OPENING, RecordState.PREVIEWING);
+            if (mOnCameraListener != null) {
+                mOnCameraListener.onCameraOpened();
+            }
+            if (mPendingStart) {
+                mPendingStart = false;
+                startRecord();
+            }
+        }
+
+        @Override
+        public void onCameraEvicted(CameraLease lease) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            // 相机即将交给其他持有者，先结束录制。结束任务先于新持有者的打开任务进入相机线程
+            cancelRecord();
+            mCameraLease = null;
+            mPendingStart = false;
+            // 相机交给了其他持有者，不再恢复
+            mMainHandler.removeCallbacks(mRecoverCommand);
+            mPendingRecovery = null;
+            mState.reset();
+            if (mOnCameraListener != null) {
+                mOnCameraListener.onCameraEvicted();
+            }
+        }
+
+        @Override
+        public void onCameraError(CameraLease lease, Exception e) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            mCameraLease.release();
+            mCameraLease = null;
+            mPendingStart = false;
+            mState.reset();
+            reportError(newError(RecordError.typeOfException(e, RecordError.Type.CAMERA_FAILURE), RecordError.NO_CODE,
+                    e, false), R.string.open_camera_error);
+            if (mPendingRecovery != null) {
+                if (++mRecoveryAttempts < MAX_RECOVERY_ATTEMPTS) {
+                    mMainHandler.postDelayed(mRecoverCommand, RECOVERY_RETRY_DELAY_MS);
+                } else {
+                    Log.w("RecordView", "Give up recovering from " + mPendingRecovery.getType());
+                    mPendingRecovery = null;
+                }
+            }
+            if (mOnCameraListener != null) {
+                mOnCameraListener.onCameraError(e);
+            }
+        }
+
+        @Override
+        public void onCameraDisconnected(CameraLease lease, int error) {
+            if (lease != mCameraLease) {
+                return;
+            }
+            RecordError recordError = newError(RecordError.typeOfCameraError(error), error, null,
+                    mState.get() == RecordState.RECORDING);
+            reportError(recordError, recordError.isInterrupted() ? R.string.recording_error : R.string.open_camera_error);
+            // 先结束录制并保留已录制的部分，出错的相机在重新请求时关闭
+            cancelRecord(null);
+            releaseCamera();
+            if (mAutoRecover && recordError.getType() != RecordError.Type.PERMISSION_DENIED) {
+                beginRecovery(recordError);
+                openCamera();
+            } else if (mOnCameraListener != null) {
+                mOnCameraListener.onCameraError(new IOException("Camera error " + error));
+            }
+        }
+    };
+
+    /**
+     * 结束录制并释放录制器，不持有控件引用，可以在任意线程执行
+     */
+    private static final class RecorderTeardown implements Runnable {
+
+        private final MediaRecorder mVideoRecorder;
+
+        private final CodecRecorder mCodecRecorder;
+
+        private final Camera mCamera;
+
+        private final RecordStateMachine mState;
+
+        private final OutputFileManager mOutputFileManager;
+
+        private final File mSessionFile;
+
+        private final File mOutputFile;
+
+        private final File mProxyFile;
+
+        private final HashingFileChannel mHashingChannel;
+
+        private final int[] mPreviewFpsRange;
+
+        private final OnRecordFinishedListener mListener;
+
+        private final StopErrorReporter mStopErrorReporter;
+
+        RecorderTeardown(MediaRecorder videoRecorder, CodecRecorder codecRecorder, Camera camera, RecordStateMachine state,
+                         OutputFileManager outputFileManager, @Nullable File sessionFile, @Nullable File outputFile,
+                         @Nullable File proxyFile, @Nullable HashingFileChannel hashingChannel,
+                         @Nullable int[] previewFpsRange, @Nullable OnRecordFinishedListener listener,
+                         @Nullable StopErrorReporter stopErrorReporter) {
+            mVideoRecorder = videoRecorder;
+            mCodecRecorder = codecRecorder;
+            mCamera = camera;
+            mState = state;
+            mOutputFileManager = outputFileManager;
+            mSessionFile = sessionFile;
+            mOutputFile = outputFile;
+            mProxyFile = proxyFile;
+            mHashingChannel = hashingChannel;
+            mPreviewFpsRange = previewFpsRange;
+            mListener = listener;
+            mStopErrorReporter = stopErrorReporter;
+        }
+
+        @Override
+        public void run() {
+            // 代理编码中途失败时文件不完整，不再保留
+            boolean proxyComplete = mCodecRecorder != null && mCodecRecorder.isProxyRecording();
+            boolean complete = finish();
+            final File proxyFile = mProxyFile != null && proxyComplete ? mProxyFile : null;
+            if (mProxyFile != null) {
+                if (mSessionFile != null) {
+                    mOutputFileManager.finishSession(mProxyFile, !proxyComplete);
+                } else if (!proxyComplete) {
+                    mProxyFile.delete();
+                }
+            }
+            Runnable notifyFinished = null;
+            if (mListener != null && mOutputFile != null) {
+                // 关闭文件时已经补算了回写的分块；没有正常结束时摘要不对应可用的文件
+                final ContentManifest manifest = complete && mHashingChannel != null
+                        ? mHashingChannel.getManifest() : null;
+                notifyFinished = new Runnable() {
+                    @Override
+                    public void run() {
+                        new Handler(Looper.getMainLooper()).post(new Runnable() {
+                            @Override
+                            public void run() {
+                                mListener.onRecordFinished(mOutputFile, proxyFile, manifest);
+                            }
+                        });
+                    }
+                };
+            }
+            if (mSessionFile != null && !complete) {
+                // 录制器没有正常结束，按修复信息补写索引后再回调
+                mOutputFileManager.finishInterruptedSession(mSessionFile, notifyFinished);
+            } else if (mSessionFile != null) {
+                // 截掉预分配的空间并按配额清理旧文件，在后台线程执行，完成后再回调
+                mOutputFileManager.finishSession(mSessionFile, false, notifyFinished);
+            } else if (notifyFinished != null) {
+                notifyFinished.run();
+            }
+            // 期间相机被关闭时状态已经是 IDLE，这里不会切换
+            mState.transition(RecordState.STOPPING, RecordState.PREVIEWING);
+        }
+
+        /**
+         * @return 文件是否正常结束
+         */
+        private boolean finish() {
+            if (mCodecRecorder != null) {
+                try {
+                    mCodecRecorder.stop();
+                    return true;
+                } catch (IOException e) {
+                    // moov 没有写入或加密、摘要文件关闭失败
+                    Log.w("RecordView", "Output failed to finish", e);
+                    reportStopFailure(RecordError.Type.STORAGE_FAILURE, e);
+                    return false;
+                }
+            }
+            boolean complete = true;
+            if (mVideoRecorder != null) {
+                try {
+                    mVideoRecorder.stop();
+                } catch (final RuntimeException e) {
+                    // 录制时间过短时没有有效数据，媒体服务断开时文件没有写完
+                    Log.w("RecordView", "MediaRecorder failed to stop", e);
+                    complete = false;
+                    reportStopFailure(RecordError.Type.RECORDER_FAILURE, e);
+                } finally {
+                    mVideoRecorder.reset();
+                    mVideoRecorder.release();
+                }
+            }
+            if (mCamera != null) {
+                try {
+                    mCamera.lock();
+                } catch (RuntimeException e) {
+                    Log.w("RecordView", "Camera failed to lock", e);
+                }
+                restorePreviewFpsRange(mCamera, mPreviewFpsRange);
+            }
+            return complete;
+        }
+
+        private void reportStopFailure(final RecordError.Type type, final Exception e) {
+            if (mStopErrorReporter != null) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mStopErrorReporter.onStopFailed(type, e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 结束录制失败的输出，主线程回调
+     */
+    private interface StopErrorReporter {
+        void onStopFailed(RecordError.Type type, Exception e);
+    }
+
+    public interface OnRecordStateChangeListener {
+        /**
+         * 录制状态变化，主线程回调
+         *
+         * @param oldState 之前的状态
+         * @param newState 当前状态
+         */
+        void onRecordStateChanged(RecordState oldState, RecordState newState);
+    }
+
+    public interface OnRecordFinishedListener {
+        /**
+         * 录制结束，文件已经写完，主线程回调
+         *
+         * @param file      输出文件
+         * @param proxyFile 同时录制的代理文件，未开启或代理编码失败时为null
+         * @param manifest  写入时计算的文件摘要，未开启、计算失败或文件没有正常结束时为null
+         */
+        void onRecordFinished(File file, @Nullable File proxyFile, @Nullable ContentManifest manifest);
+    }
+
+    public interface OnMaxDurationReachedListener {
+        /**
+         * 到达最大录制时长，主线程回调
+         */
+        void onMaxDurationReached();
+    }
+
+    public interface OnCameraListener {
+        /**
+         * 相机已打开并开始预览
+         */
+        void onCameraOpened();
+
+        /**
+         * 相机被其他 RecordView 取走
+         */
+        void onCameraEvicted();
+
+        /**
+         * 相机打开失败
+         *
+         * @param e 错误
+         */
+        void onCameraError(Exception e);
+    }
+
+    public interface OnSnapshotListener {
+        /**
+         * 快照已写入，主线程回调
+         *
+         * @param file 输出文件
+         */
+        void onSnapshotTaken(File file);
+
+        /**
+         * 快照失败或录制结束时还没有取得，没有写入文件，主线程回调
+         *
+         * @param file 输出文件
+         * @param e    错误
+         */
+        void onSnapshotFailed(File file, Exception e);
+    }
+
+    public interface OnRecordErrorListener {
+        /**
+         * 相机或录制器出错，主线程回调
+         *
+         * @param error 错误类型与原因，录制被中断时已录制的部分会通过 {@link OnRecordFinishedListener} 返回
+         */
+        void onRecordError(RecordError error);
+
+        /**
+         * 自动恢复完成，已重新开始预览，主线程回调
+         *
+         * @param error 触发恢复的错误
+         */
+        void onErrorRecovered(RecordError error);
     }
 }
@@ -0,0 +1,104 @@
+package io.hellobird.videorecord.lib;
+
+/*******************************************************************
+ * TimeLapseInfo.java  2026-10-19
+ * <P>
+ * 延时摄影参数，录制开始前可通过 {@link RecordView#getTimeLapseInfo()} 获取<br/>
+ * <br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class TimeLapseInfo {
+
+    /**
+     * 采集间隔，单位毫秒
+     */
+    private final long mCaptureIntervalMs;
+
+    /**
+     * 输出视频帧数
+     */
+    private final int mOutputFrameRate;
+
+    /**
+     * 输出视频码率，单位 bit/s
+     */
+    private final int mBitRate;
+
+    /**
+     * 是否由系统 MediaRecorder 完成抽帧，false 表示在编码器输入端抽帧
+     */
+    private final boolean mNativeCaptureRate;
+
+    TimeLapseInfo(long captureIntervalMs, int outputFrameRate, int bitRate, boolean nativeCaptureRate) {
+        mCaptureIntervalMs = captureIntervalMs;
+        mOutputFrameRate = outputFrameRate;
+        mBitRate = bitRate;
+        mNativeCaptureRate = nativeCaptureRate;
+    }
+
+    /**
+     * 获取采集间隔，单位毫秒
+     *
+     * @return
+     */
+    public long getCaptureIntervalMs() {
+        return mCaptureIntervalMs;
+    }
+
+    /**
+     * 获取输出视频帧数
+     *
+     * @return
+     */
+    public int getOutputFrameRate() {
+        return mOutputFrameRate;
+    }
+
+    /**
+     * 获取输出视频码率，单位 bit/s
+     *
+     * @return
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 是否使用系统 MediaRecorder 的 captureRate
+     *
+     * @return
+     */
+    public boolean isNativeCaptureRate() {
+        return mNativeCaptureRate;
+    }
+
+    /**
+     * 计算录制指定时长后得到的视频时长
+     *
+     * @param recordDurationMs 实际录制时长，单位毫秒
+     * @return 输出视频时长，单位毫秒
+     */
+    public long getOutputDurationMs(long recordDurationMs) {
+        long frames = recordDurationMs / mCaptureIntervalMs;
+        return frames * 1000 / mOutputFrameRate;
+    }
+
+    /**
+     * 估算录制指定时长后的文件大小，不含容器开销
+     *
+     * @param recordDurationMs 实际录制时长，单位毫秒
+     * @return 文件大小，单位字节
+     */
+    public long estimateOutputSize(long recordDurationMs) {
+        return getOutputDurationMs(recordDurationMs) * mBitRate / 8 / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeLapseInfo{interval=" + mCaptureIntervalMs + "ms, fps=" + mOutputFrameRate
+                + ", bitRate=" + mBitRate + ", native=" + mNativeCaptureRate + '}';
+    }
+}
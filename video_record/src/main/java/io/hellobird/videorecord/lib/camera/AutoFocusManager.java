@@ -16,11 +16,8 @@
 
 package io.hellobird.videorecord.lib.camera;
 
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.hardware.Camera;
 import android.os.AsyncTask;
-import android.preference.PreferenceManager;
 import android.util.Log;
 
 import java.util.ArrayList;
@@ -46,9 +43,8 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
   private final Camera camera;
   private AsyncTask<?,?,?> outstandingTask;
 
-  AutoFocusManager(Context context, Camera camera) {
+  AutoFocusManager(Camera camera) {
     this.camera = camera;
-    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
     String currentFocusMode = camera.getParameters().getFocusMode();
     useAutoFocus = FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
     Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + useAutoFocus);
@@ -121,7 +117,10 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
       } catch (InterruptedException e) {
         // continue
       }
-      start();
+      // Cancelled by stop(): the camera may already be released
+      if (!isCancelled()) {
+        start();
+      }
       return null;
     }
   }
@@ -0,0 +1,397 @@
+package io.hellobird.videorecord.lib.camera;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.CountDownLatch;
+
+import io.hellobird.videorecord.lib.camera.open.CameraFacing;
+import io.hellobird.videorecord.lib.camera.open.OpenCamera;
+
+/*******************************************************************
+ * CameraArbiter.java  2026-10-19
+ * <P>
+ * 进程内唯一的相机仲裁者，多个 RecordView 通过它轮流使用同一个相机<br/>
+ * 相机的打开与关闭在独立的相机线程执行；使用权释放后相机会保持打开一段时间，
+ * 下一个持有者只需要切换 Surface，不用重新打开相机<br/>
+ * 相机被其他进程占用时按退避间隔重试，超过次数后通过回调报告错误<br/>
+ * 相机服务断开等运行中的错误通过 {@link Callback#onCameraDisconnected(CameraLease, int)} 通知当前持有者，
+ * 出错的相机在下一次请求时关闭并重新打开<br/>
+ * 相机只能在打开它的相机线程调用，包括交给 MediaRecorder 与拍照，持有者通过 {@link #runOnCameraThread(Runnable)} 执行<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@SuppressWarnings("deprecation") // camera APIs
+public final class CameraArbiter {
+
+    private static final String TAG = "CameraArbiter";
+
+    /**
+     * 默认保持打开时间
+     */
+    public static final long DEFAULT_KEEP_ALIVE_MS = 1500;
+
+    /**
+     * 打开相机的最大尝试次数
+     */
+    private static final int MAX_OPEN_ATTEMPTS = 4;
+
+    /**
+     * 第一次重试的等待时间，之后每次翻倍
+     */
+    private static final long OPEN_RETRY_DELAY_MS = 150;
+
+    private static CameraArbiter sInstance;
+
+    private final CameraManager mCameraManager;
+
+    private final Handler mCameraHandler;
+
+    private final Handler mMainHandler;
+
+    /**
+     * 当前持有者，只在主线程读写
+     */
+    private CameraLease mCurrentLease;
+
+    private long mKeepAliveMs = DEFAULT_KEEP_ALIVE_MS;
+
+    /**
+     * 报告过错误的相机，只在相机线程读写
+     */
+    private Camera mFailedCamera;
+
+    public interface Callback {
+        /**
+         * 相机已打开并开始预览，主线程回调
+         *
+         * @param lease 使用权
+         */
+        void onCameraAcquired(CameraLease lease);
+
+        /**
+         * 相机被其他持有者取走，回调返回前需要停止对相机的使用，主线程回调
+         *
+         * @param lease 已失效的使用权
+         */
+        void onCameraEvicted(CameraLease lease);
+
+        /**
+         * 重试后仍无法打开相机，主线程回调
+         *
+         * @param lease 使用权
+         * @param e     最后一次的错误
+         */
+        void onCameraError(CameraLease lease, Exception e);
+
+        /**
+         * 使用中的相机出错，例如相机服务断开，相机已不可用，需要重新请求，主线程回调
+         *
+         * @param lease 使用权
+         * @param error Camera.CAMERA_ERROR_*
+         */
+        void onCameraDisconnected(CameraLease lease, int error);
+    }
+
+    /**
+     * 获取进程内唯一实例
+     *
+     * @param context
+     * @return
+     */
+    public static synchronized CameraArbiter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CameraArbiter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private CameraArbiter(Context context) {
+        mCameraManager = new CameraManager(context);
+        HandlerThread cameraThread = new HandlerThread(TAG);
+        cameraThread.start();
+        mCameraHandler = new Handler(cameraThread.getLooper());
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * 使用默认配置请求相机
+     *
+     * @see #acquire(CameraFacing, SurfaceHolder, RecorderConfig, Callback)
+     */
+    @MainThread
+    public CameraLease acquire(@NonNull CameraFacing facing, @NonNull SurfaceHolder holder, @NonNull Callback callback) {
+        return acquire(facing, holder, RecorderConfig.DEFAULT, callback);
+    }
+
+    /**
+     * 请求使用相机，当前持有者会先收到 {@link Callback#onCameraEvicted(CameraLease)}
+     *
+     * @param facing   相机方向
+     * @param holder   预览 Surface
+     * @param config   相机参数配置，打开相机时应用
+     * @param callback 回调
+     * @return 使用权，相机打开后回调 {@link Callback#onCameraAcquired(CameraLease)}
+     */
+    @MainThread
+    public CameraLease acquire(@NonNull CameraFacing facing, @NonNull SurfaceHolder holder,
+                               @NonNull RecorderConfig config, @NonNull Callback callback) {
+        return acquire(new CameraLease(this, facing, holder, null, config, callback));
+    }
+
+    /**
+     * 请求使用相机，预览输出到离屏的 SurfaceTexture，用于没有可见界面的后台录制
+     *
+     * @param facing   相机方向
+     * @param texture  预览输出
+     * @param config   相机参数配置，打开相机时应用
+     * @param callback 回调
+     * @return 使用权，相机打开后回调 {@link Callback#onCameraAcquired(CameraLease)}
+     * @see #acquire(CameraFacing, SurfaceHolder, RecorderConfig, Callback)
+     */
+    @MainThread
+    public CameraLease acquire(@NonNull CameraFacing facing, @NonNull SurfaceTexture texture,
+                               @NonNull RecorderConfig config, @NonNull Callback callback) {
+        return acquire(new CameraLease(this, facing, null, texture, config, callback));
+    }
+
+    private CameraLease acquire(CameraLease lease) {
+        CameraLease previous = mCurrentLease;
+        mCurrentLease = lease;
+        if (previous != null && previous.invalidate()) {
+            // 同步通知，保证之前的持有者在相机被切换前停止录制
+            previous.getCallback().onCameraEvicted(previous);
+        }
+        mCameraHandler.removeCallbacks(mCloseRunnable);
+        postAttach(lease, 1, 0);
+        return lease;
+    }
+
+    /**
+     * 释放使用权，相机保持打开 {@link #setKeepAliveMs(long)} 后关闭
+     *
+     * @param lease 使用权
+     */
+    @MainThread
+    public void release(@NonNull CameraLease lease) {
+        if (!lease.invalidate() || lease != mCurrentLease) {
+            return;
+        }
+        mCurrentLease = null;
+        mCameraHandler.post(mStopPreviewRunnable);
+        mCameraHandler.postDelayed(mCloseRunnable, mKeepAliveMs);
+    }
+
+    /**
+     * 立即关闭相机，当前持有者会收到 {@link Callback#onCameraEvicted(CameraLease)}
+     */
+    @MainThread
+    public void closeNow() {
+        CameraLease previous = mCurrentLease;
+        mCurrentLease = null;
+        if (previous != null && previous.invalidate()) {
+            previous.getCallback().onCameraEvicted(previous);
+        }
+        mCameraHandler.removeCallbacks(mCloseRunnable);
+        mCameraHandler.post(mCloseRunnable);
+    }
+
+    /**
+     * 设置释放后相机保持打开的时间
+     *
+     * @param keepAliveMs 毫秒，0表示立即关闭
+     */
+    public void setKeepAliveMs(long keepAliveMs) {
+        mKeepAliveMs = Math.max(keepAliveMs, 0);
+    }
+
+    /**
+     * 获取共享的相机管理类
+     *
+     * @return
+     */
+    public CameraManager getCameraManager() {
+        return mCameraManager;
+    }
+
+    /**
+     * 获取相机线程的 Handler，相机的耗时操作应在此线程执行
+     *
+     * @return
+     */
+    public Handler getCameraHandler() {
+        return mCameraHandler;
+    }
+
+    /**
+     * 在相机线程执行并等待完成，已在相机线程时直接执行。相机线程不会等待主线程，可以在主线程调用；
+     * 排在之前提交给相机线程的任务之后执行
+     *
+     * @param task 任务，抛出的异常在调用线程重新抛出
+     */
+    public void runOnCameraThread(@NonNull final Runnable task) {
+        if (Looper.myLooper() == mCameraHandler.getLooper()) {
+            task.run();
+            return;
+        }
+        final RuntimeException[] error = new RuntimeException[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    error[0] = e;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // 任务已经提交，等它完成后再恢复中断状态
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    private void postAttach(final CameraLease lease, final int attempt, long delayMs) {
+        mCameraHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                attach(lease, attempt);
+            }
+        }, delayMs);
+    }
+
+    /**
+     * 在相机线程打开相机或切换 Surface
+     */
+    private void attach(final CameraLease lease, int attempt) {
+        if (!lease.isValid()) {
+            // 已被后来的请求取代
+            return;
+        }
+        try {
+            OpenCamera current = mCameraManager.getOpenCamera();
+            if (current != null && current.getCamera() == mFailedCamera) {
+                // 出错的相机不能再使用，直接关闭
+                mCameraManager.closeDriver();
+                current = null;
+            }
+            mFailedCamera = null;
+            mCameraManager.stopPreview();
+            if (current != null && current.getFacing() != lease.getFacing()) {
+                mCameraManager.closeDriver();
+            }
+            if (mCameraManager.isOpen()) {
+                Log.i(TAG, "Reusing open camera for new holder");
+            }
+            mCameraManager.setConfig(lease.getConfig());
+            Camera camera;
+            if (lease.getTexture() != null) {
+                camera = mCameraManager.openDriver(lease.getTexture(), lease.getFacing());
+            } else {
+                camera = mCameraManager.openDriver(lease.getHolder(), lease.getFacing());
+            }
+            camera.setErrorCallback(mErrorCallback);
+            mCameraManager.startPreview();
+        } catch (final Exception e) {
+            if (attempt < MAX_OPEN_ATTEMPTS && lease.isValid()) {
+                long delay = OPEN_RETRY_DELAY_MS << (attempt - 1);
+                Log.w(TAG, "Open camera failed, retry #" + attempt + " in " + delay + "ms", e);
+                postAttach(lease, attempt + 1, delay);
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (lease.isValid()) {
+                        lease.getCallback().onCameraError(lease, e);
+                    }
+                }
+            });
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (lease.isValid()) {
+                    lease.getCallback().onCameraAcquired(lease);
+                }
+            }
+        });
+    }
+
+    /**
+     * 相机错误在打开相机的相机线程回调。不在这里关闭相机，持有者还要结束录制，下一次请求时再关闭
+     */
+    private final Camera.ErrorCallback mErrorCallback = new Camera.ErrorCallback() {
+        @Override
+        public void onError(final int error, Camera camera) {
+            if (camera != mCameraManager.getCamera() || camera == mFailedCamera) {
+                return;
+            }
+            Log.w(TAG, "Camera error " + error);
+            mFailedCamera = camera;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    CameraLease lease = mCurrentLease;
+                    if (lease != null && lease.isValid()) {
+                        lease.getCallback().onCameraDisconnected(lease, error);
+                    }
+                }
+            });
+        }
+    };
+
+    private final Runnable mStopPreviewRunnable = new Runnable() {
+        @Override
+        public void run() {
+            stopPreviewQuietly();
+        }
+    };
+
+    private final Runnable mCloseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            stopPreviewQuietly();
+            mCameraManager.closeDriver();
+            mFailedCamera = null;
+        }
+    };
+
+    /**
+     * 出错的相机停止预览时可能抛出异常，不影响之后关闭相机
+     */
+    private void stopPreviewQuietly() {
+        try {
+            mCameraManager.stopPreview();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to stop preview", e);
+        }
+    }
+}
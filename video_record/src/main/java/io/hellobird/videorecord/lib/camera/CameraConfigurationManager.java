@@ -17,16 +17,13 @@
 package io.hellobird.videorecord.lib.camera;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Point;
 import android.hardware.Camera;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.Display;
 import android.view.Surface;
 import android.view.WindowManager;
 
-import io.hellobird.videorecord.lib.Config;
 import io.hellobird.videorecord.lib.camera.open.CameraFacing;
 import io.hellobird.videorecord.lib.camera.open.OpenCamera;
 
@@ -40,6 +37,7 @@ final class CameraConfigurationManager {
     private static final String TAG = "CameraConfiguration";
 
     private final Context context;
+    private RecorderConfig config;
     private int cwNeededRotation;
     private int cwRotationFromDisplayToCamera;
     private Point screenResolution;
@@ -47,8 +45,17 @@ final class CameraConfigurationManager {
     private Point bestPreviewSize;
     private Point previewSizeOnScreen;
 
-    CameraConfigurationManager(Context context) {
+    CameraConfigurationManager(Context context, RecorderConfig config) {
         this.context = context;
+        this.config = config;
+    }
+
+    void setConfig(RecorderConfig config) {
+        this.config = config;
+    }
+
+    RecorderConfig getConfig() {
+        return config;
     }
 
     /**
@@ -154,27 +161,22 @@ final class CameraConfigurationManager {
             Log.w(TAG, "In camera config safe mode -- most settings will not be honored");
         }
 
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        RecorderConfig theConfig = config;
 
-        initializeTorch(parameters, prefs, safeMode);
+        doSetTorch(parameters, theConfig, theConfig.isTorch(), safeMode);
 
         CameraConfigurationUtils.setFocus(
                 parameters,
-                prefs.getBoolean(Config.KEY_AUTO_FOCUS, true),
-                prefs.getBoolean(Config.KEY_DISABLE_CONTINUOUS_FOCUS, false),
+                theConfig.isAutoFocus(),
+                !theConfig.isContinuousFocus(),
                 safeMode);
 
         if (!safeMode) {
-            if (prefs.getBoolean(Config.KEY_INVERT_SCAN, false)) {
-                CameraConfigurationUtils.setInvertColor(parameters);
-            }
-
-            if (!prefs.getBoolean(Config.KEY_DISABLE_BARCODE_SCENE_MODE, true)) {
-                CameraConfigurationUtils.setBarcodeSceneMode(parameters);
+            if (theConfig.isStabilization()) {
+                CameraConfigurationUtils.setVideoStabilization(parameters);
             }
 
-            if (!prefs.getBoolean(Config.KEY_DISABLE_METERING, true)) {
-                CameraConfigurationUtils.setVideoStabilization(parameters);
+            if (theConfig.isMetering()) {
                 CameraConfigurationUtils.setFocusArea(parameters);
                 CameraConfigurationUtils.setMetering(parameters);
             }
@@ -236,19 +238,13 @@ final class CameraConfigurationManager {
 
     void setTorch(Camera camera, boolean newSetting) {
         Camera.Parameters parameters = camera.getParameters();
-        doSetTorch(parameters, newSetting, false);
+        doSetTorch(parameters, config, newSetting, false);
         camera.setParameters(parameters);
     }
 
-    private void initializeTorch(Camera.Parameters parameters, SharedPreferences prefs, boolean safeMode) {
-        boolean currentSetting = FrontLightMode.readPref(prefs) == FrontLightMode.ON;
-        doSetTorch(parameters, currentSetting, safeMode);
-    }
-
-    private void doSetTorch(Camera.Parameters parameters, boolean newSetting, boolean safeMode) {
+    private static void doSetTorch(Camera.Parameters parameters, RecorderConfig config, boolean newSetting, boolean safeMode) {
         CameraConfigurationUtils.setTorch(parameters, newSetting);
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        if (!safeMode && !prefs.getBoolean(Config.KEY_DISABLE_EXPOSURE, true)) {
+        if (!safeMode && config.isExposure()) {
             CameraConfigurationUtils.setBestExposure(parameters, newSetting);
         }
     }
@@ -165,6 +165,50 @@ public final class CameraConfigurationUtils {
         }
     }
 
+    /**
+     * Selects the preview FPS range whose maximum is closest to, but not above, the requested high
+     * frame rate, preferring fixed ranges so the sensor really runs at that rate.
+     *
+     * @return the maximum FPS of the selected range, or 0 if no range was reported
+     */
+    public static int setHighSpeedPreviewFPS(Camera.Parameters parameters, int targetFPS) {
+        List<int[]> supportedPreviewFpsRanges = parameters.getSupportedPreviewFpsRange();
+        Log.i(TAG, "Supported FPS ranges: " + toString(supportedPreviewFpsRanges));
+        if (supportedPreviewFpsRanges == null || supportedPreviewFpsRanges.isEmpty()) {
+            return 0;
+        }
+        int target = targetFPS * 1000;
+        int[] bestRange = null;
+        for (int[] fpsRange : supportedPreviewFpsRanges) {
+            int thisMin = fpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            int thisMax = fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            if (bestRange == null) {
+                bestRange = fpsRange;
+                continue;
+            }
+            int bestMax = bestRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            boolean fits = thisMax <= target;
+            boolean bestFits = bestMax <= target;
+            if (fits != bestFits) {
+                // Prefer any range not above the target
+                if (fits) {
+                    bestRange = fpsRange;
+                }
+            } else if (thisMax != bestMax) {
+                // Both fit: take the faster one. Neither fits: take the slower one
+                if ((thisMax > bestMax) == fits) {
+                    bestRange = fpsRange;
+                }
+            } else if (thisMin > bestRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX]) {
+                bestRange = fpsRange;
+            }
+        }
+        Log.i(TAG, "Setting high speed FPS range to " + Arrays.toString(bestRange));
+        parameters.setPreviewFpsRange(bestRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                bestRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        return bestRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000;
+    }
+
     public static void setFocusArea(Camera.Parameters parameters) {
         if (parameters.getMaxNumFocusAreas() > 0) {
             Log.i(TAG, "Old focus areas: " + toString(parameters.getFocusAreas()));
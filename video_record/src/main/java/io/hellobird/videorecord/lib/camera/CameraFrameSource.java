@@ -0,0 +1,143 @@
+package io.hellobird.videorecord.lib.camera;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+/*******************************************************************
+ * CameraFrameSource.java  2026-10-19
+ * <P>
+ * 相机预览帧来源，采集时间为回调时的 System.nanoTime()<br/>
+ * 相机需要已经开始预览，同一时间只能有一个预览回调<br/>
+ * 指定了相机线程时，设置回调与归还缓冲区在相机线程执行，可以在任意线程调用；
+ * 在其他线程调用时按调用顺序排队，返回时还没有生效<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@SuppressWarnings("deprecation") // camera APIs
+public final class CameraFrameSource implements FrameSource, Camera.PreviewCallback {
+
+    private static final String TAG = "CameraFrameSource";
+
+    private final Camera mCamera;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final Handler mCameraHandler;
+
+    private volatile FrameCallback mCallback;
+
+    /**
+     * 使用相机当前的预览尺寸，需要在使用相机的线程创建与调用
+     *
+     * @param camera 相机
+     */
+    public CameraFrameSource(Camera camera) {
+        this(camera, camera.getParameters().getPreviewSize());
+    }
+
+    private CameraFrameSource(Camera camera, Camera.Size size) {
+        this(camera, size.width, size.height);
+    }
+
+    /**
+     * 需要在使用相机的线程调用
+     *
+     * @param camera 相机
+     * @param width  预览宽度
+     * @param height 预览高度
+     */
+    public CameraFrameSource(Camera camera, int width, int height) {
+        this(camera, width, height, null);
+    }
+
+    /**
+     * @param camera        相机
+     * @param width         预览宽度
+     * @param height        预览高度
+     * @param cameraHandler 使用相机的线程，例如 {@link CameraArbiter#getCameraHandler()}，为空时在调用线程直接调用相机
+     */
+    public CameraFrameSource(Camera camera, int width, int height, @Nullable Handler cameraHandler) {
+        mCamera = camera;
+        mWidth = width;
+        mHeight = height;
+        mCameraHandler = cameraHandler;
+    }
+
+    /**
+     * 相机
+     *
+     * @return
+     */
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void setFrameCallback(@Nullable FrameCallback callback) {
+        mCallback = callback;
+        final Camera.PreviewCallback previewCallback = callback != null ? this : null;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mCamera.setPreviewCallbackWithBuffer(previewCallback);
+            }
+        });
+    }
+
+    @Override
+    public void addBuffer(final byte[] buffer) {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mCamera.addCallbackBuffer(buffer);
+            }
+        });
+    }
+
+    /**
+     * 在相机线程调用时直接执行，否则排队到相机线程。排队执行时相机可能已经释放，只记录日志
+     */
+    private void runOnCameraThread(final Runnable task) {
+        if (mCameraHandler == null || Looper.myLooper() == mCameraHandler.getLooper()) {
+            task.run();
+            return;
+        }
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Camera call failed", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        FrameCallback callback = mCallback;
+        if (data == null || callback == null) {
+            return;
+        }
+        callback.onFrame(data, System.nanoTime() / 1000);
+    }
+}
@@ -0,0 +1,113 @@
+package io.hellobird.videorecord.lib.camera;
+
+import android.graphics.SurfaceTexture;
+import android.view.SurfaceHolder;
+
+import io.hellobird.videorecord.lib.camera.open.CameraFacing;
+
+/*******************************************************************
+ * CameraLease.java  2026-10-19
+ * <P>
+ * 相机使用权，由 {@link CameraArbiter} 发放，同一时间只有一个有效<br/>
+ * 被其他持有者取代或释放后失效<br/>
+ * 预览输出到 SurfaceHolder 或离屏的 SurfaceTexture，二者只有一个不为空<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class CameraLease {
+
+    private final CameraArbiter mArbiter;
+
+    private final CameraFacing mFacing;
+
+    private final SurfaceHolder mHolder;
+
+    private final SurfaceTexture mTexture;
+
+    private final RecorderConfig mConfig;
+
+    private final CameraArbiter.Callback mCallback;
+
+    /**
+     * 主线程修改，相机线程读取
+     */
+    private volatile boolean mValid = true;
+
+    CameraLease(CameraArbiter arbiter, CameraFacing facing, SurfaceHolder holder, SurfaceTexture texture,
+                RecorderConfig config, CameraArbiter.Callback callback) {
+        mArbiter = arbiter;
+        mFacing = facing;
+        mHolder = holder;
+        mTexture = texture;
+        mConfig = config;
+        mCallback = callback;
+    }
+
+    /**
+     * 是否仍然持有相机
+     *
+     * @return
+     */
+    public boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * 获取共享的相机管理类，只有在持有期间才能操作
+     *
+     * @return
+     */
+    public CameraManager getCameraManager() {
+        return mArbiter.getCameraManager();
+    }
+
+    /**
+     * 获取请求的相机方向
+     *
+     * @return
+     */
+    public CameraFacing getFacing() {
+        return mFacing;
+    }
+
+    /**
+     * 获取请求的相机参数配置
+     *
+     * @return
+     */
+    public RecorderConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * 释放使用权，相机会保持打开一段时间，方便下一个持有者直接使用
+     */
+    public void release() {
+        mArbiter.release(this);
+    }
+
+    SurfaceHolder getHolder() {
+        return mHolder;
+    }
+
+    SurfaceTexture getTexture() {
+        return mTexture;
+    }
+
+    CameraArbiter.Callback getCallback() {
+        return mCallback;
+    }
+
+    /**
+     * 使其失效
+     *
+     * @return 之前是否有效
+     */
+    boolean invalidate() {
+        boolean wasValid = mValid;
+        mValid = false;
+        return wasValid;
+    }
+}
@@ -19,6 +19,7 @@ package io.hellobird.videorecord.lib.camera;
 import android.content.Context;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -43,7 +44,6 @@ public final class CameraManager {
     private static final String TAG = CameraManager.class.getSimpleName();
 
 
-    private final Context context;
     private final CameraConfigurationManager configManager;
     private OpenCamera camera;
     private AutoFocusManager autoFocusManager;
@@ -56,8 +56,29 @@ public final class CameraManager {
 
 
     public CameraManager(Context context) {
-        this.context = context;
-        this.configManager = new CameraConfigurationManager(context);
+        this(context, RecorderConfig.DEFAULT);
+    }
+
+    public CameraManager(Context context, RecorderConfig config) {
+        this.configManager = new CameraConfigurationManager(context, config);
+    }
+
+    /**
+     * 设置相机参数配置，下次打开相机时生效
+     *
+     * @param config 不可变配置
+     */
+    public synchronized void setConfig(RecorderConfig config) {
+        configManager.setConfig(config);
+    }
+
+    /**
+     * 获取当前相机参数配置
+     *
+     * @return
+     */
+    public synchronized RecorderConfig getConfig() {
+        return configManager.getConfig();
     }
 
     /**
@@ -67,6 +88,24 @@ public final class CameraManager {
      * @throws IOException Indicates the camera driver failed to open.
      */
     public synchronized Camera openDriver(SurfaceHolder holder, CameraFacing cameraFacing) throws IOException {
+        Camera cameraObject = openAndConfigure(cameraFacing);
+        cameraObject.setPreviewDisplay(holder);
+        return cameraObject;
+    }
+
+    /**
+     * Opens the camera driver and draws preview frames into an offscreen texture.
+     *
+     * @param texture The texture which the camera will draw preview frames into.
+     * @throws IOException Indicates the camera driver failed to open.
+     */
+    public synchronized Camera openDriver(SurfaceTexture texture, CameraFacing cameraFacing) throws IOException {
+        Camera cameraObject = openAndConfigure(cameraFacing);
+        cameraObject.setPreviewTexture(texture);
+        return cameraObject;
+    }
+
+    private Camera openAndConfigure(CameraFacing cameraFacing) throws IOException {
         OpenCamera theCamera = camera;
         if (theCamera == null) {
             theCamera = OpenCameraInterface.open(requestedCameraId, cameraFacing);
@@ -108,9 +147,7 @@ public final class CameraManager {
                 }
             }
         }
-        cameraObject.setPreviewDisplay(holder);
-
-        return camera.getCamera();
+        return cameraObject;
     }
 
     /**
@@ -140,6 +177,15 @@ public final class CameraManager {
         return camera;
     }
 
+    /**
+     * 当前相机的预览帧来源，需要已经开始预览
+     *
+     * @return 相机未打开时返回null
+     */
+    public synchronized FrameSource newFrameSource() {
+        return camera == null ? null : new CameraFrameSource(camera.getCamera());
+    }
+
     public synchronized boolean isOpen() {
         return camera != null;
     }
@@ -148,6 +194,12 @@ public final class CameraManager {
      * Closes the camera driver if still in use.
      */
     public synchronized void closeDriver() {
+        if (autoFocusManager != null) {
+            autoFocusManager.stop();
+            autoFocusManager = null;
+        }
+        // 出错的相机可能没有先停止预览
+        previewing = false;
         if (camera != null) {
             camera.getCamera().release();
             camera = null;
@@ -165,7 +217,7 @@ public final class CameraManager {
         if (theCamera != null && !previewing) {
             theCamera.getCamera().startPreview();
             previewing = true;
-            autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
+            autoFocusManager = new AutoFocusManager(theCamera.getCamera());
         }
     }
 
@@ -198,7 +250,7 @@ public final class CameraManager {
             }
             configManager.setTorch(theCamera.getCamera(), newSetting);
             if (wasAutoFocusManager) {
-                autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
+                autoFocusManager = new AutoFocusManager(theCamera.getCamera());
                 autoFocusManager.start();
             }
         }
@@ -0,0 +1,55 @@
+package io.hellobird.videorecord.lib.camera;
+
+import androidx.annotation.Nullable;
+
+/*******************************************************************
+ * FrameSource.java  2026-10-19
+ * <P>
+ * NV21 预览帧来源，与 Camera.setPreviewCallbackWithBuffer 相同使用调用者提供的缓存：
+ * 有空闲缓存时写入并回调，没有时丢弃该帧，回调方处理完后通过 {@link #addBuffer(byte[])} 归还<br/>
+ * {@link CameraFrameSource} 来自相机预览，{@link SyntheticFrameSource} 生成测试画面，不需要相机<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public interface FrameSource {
+
+    /**
+     * 帧宽度
+     *
+     * @return
+     */
+    int getWidth();
+
+    /**
+     * 帧高度
+     *
+     * @return
+     */
+    int getHeight();
+
+    /**
+     * 设置帧回调，为空时停止回调并清空已添加的缓存
+     *
+     * @param callback 回调
+     */
+    void setFrameCallback(@Nullable FrameCallback callback);
+
+    /**
+     * 添加或归还缓存，大小不小于 宽 * 高 * 3 / 2
+     *
+     * @param buffer 缓存
+     */
+    void addBuffer(byte[] buffer);
+
+    interface FrameCallback {
+        /**
+         * 收到一帧，在帧来源的线程回调
+         *
+         * @param data        NV21 数据，处理完后需要归还
+         * @param timestampUs 采集时间，单位微秒，单调递增
+         */
+        void onFrame(byte[] data, long timestampUs);
+    }
+}
@@ -0,0 +1,442 @@
+package io.hellobird.videorecord.lib.camera;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/*******************************************************************
+ * OffscreenPreview.java  2026-10-19
+ * <P>
+ * 离屏预览：相机输出到自己的 SurfaceTexture，不依赖可见的 SurfaceView，界面关闭后仍然可以录制<br/>
+ * 每一帧都会取出，需要显示时绘制到通过 {@link #addWindow(Surface)} 添加的窗口，
+ * 添加与移除窗口不影响相机，正在进行的录制不会中断<br/>
+ * OpenGL 在独立的线程执行，所有方法可以在任意线程调用<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public final class OffscreenPreview implements SurfaceTexture.OnFrameAvailableListener {
+
+    private static final String TAG = "OffscreenPreview";
+
+    private static final String VERTEX_SHADER = ""
+            + "uniform mat4 uTexMatrix;\n"
+            + "attribute vec4 aPosition;\n"
+            + "attribute vec4 aTextureCoord;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main() {\n"
+            + "    gl_Position = aPosition;\n"
+            + "    vTextureCoord = (uTexMatrix * aTextureCoord).xy;\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER = ""
+            + "#extension GL_OES_EGL_image_external : require\n"
+            + "precision mediump float;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "uniform samplerExternalOES sTexture;\n"
+            + "void main() {\n"
+            + "    gl_FragColor = texture2D(sTexture, vTextureCoord);\n"
+            + "}\n";
+
+    /**
+     * 全屏矩形，每个顶点为 x, y, s, t
+     */
+    private static final float[] QUAD = {
+            -1f, -1f, 0f, 0f,
+            1f, -1f, 1f, 0f,
+            -1f, 1f, 0f, 1f,
+            1f, 1f, 1f, 1f,
+    };
+
+    private final HandlerThread mThread;
+
+    private final Handler mHandler;
+
+    private final float[] mTexMatrix = new float[16];
+
+    private final FloatBuffer mQuad;
+
+    /**
+     * 显示窗口，只在 OpenGL 线程读写
+     */
+    private final List<Window> mWindows = new ArrayList<>();
+
+    private EGLDisplay mDisplay = EGL14.EGL_NO_DISPLAY;
+
+    private EGLContext mContext = EGL14.EGL_NO_CONTEXT;
+
+    private EGLConfig mConfig;
+
+    /**
+     * 没有窗口时用于取帧的 1x1 离屏 Surface
+     */
+    private EGLSurface mPbuffer = EGL14.EGL_NO_SURFACE;
+
+    private int mProgram;
+
+    private int mTextureId;
+
+    private SurfaceTexture mSurfaceTexture;
+
+    private volatile long mFrameCount;
+
+    private static final class Window {
+        final Surface surface;
+        final EGLSurface eglSurface;
+
+        Window(Surface surface, EGLSurface eglSurface) {
+            this.surface = surface;
+            this.eglSurface = eglSurface;
+        }
+    }
+
+    /**
+     * 创建 OpenGL 线程与 SurfaceTexture，返回时已经可以使用
+     *
+     * @throws RuntimeException OpenGL 初始化失败
+     */
+    public OffscreenPreview() {
+        mQuad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mQuad.put(QUAD).position(0);
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        final RuntimeException[] error = new RuntimeException[1];
+        runSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    setUp();
+                } catch (RuntimeException e) {
+                    error[0] = e;
+                    tearDown();
+                }
+            }
+        });
+        if (error[0] != null) {
+            mThread.quitSafely();
+            throw error[0];
+        }
+    }
+
+    /**
+     * 相机预览输出，交给 Camera.setPreviewTexture
+     *
+     * @return
+     */
+    public SurfaceTexture getSurfaceTexture() {
+        return mSurfaceTexture;
+    }
+
+    /**
+     * 已经取出的帧数
+     *
+     * @return
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 添加显示窗口，从下一帧开始绘制
+     *
+     * @param surface 窗口，例如 SurfaceHolder.getSurface()
+     */
+    public void addWindow(@NonNull final Surface surface) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mDisplay == EGL14.EGL_NO_DISPLAY || findWindow(surface) >= 0 || !surface.isValid()) {
+                    return;
+                }
+                int[] attributes = {EGL14.EGL_NONE};
+                EGLSurface eglSurface = EGL14.eglCreateWindowSurface(mDisplay, mConfig, surface, attributes, 0);
+                if (eglSurface == null || eglSurface == EGL14.EGL_NO_SURFACE) {
+                    Log.w(TAG, "Failed to create window surface: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                    return;
+                }
+                mWindows.add(new Window(surface, eglSurface));
+            }
+        });
+    }
+
+    /**
+     * 移除显示窗口，返回后不再绘制，可以在 SurfaceHolder.Callback.surfaceDestroyed 中调用
+     *
+     * @param surface 之前添加的窗口
+     */
+    public void removeWindow(@NonNull final Surface surface) {
+        runSync(new Runnable() {
+            @Override
+            public void run() {
+                int index = findWindow(surface);
+                if (index >= 0) {
+                    releaseWindow(mWindows.remove(index));
+                }
+            }
+        });
+    }
+
+    /**
+     * 释放 OpenGL 资源与线程，相机需要先停止使用 {@link #getSurfaceTexture()}
+     */
+    public void release() {
+        if (!mThread.isAlive()) {
+            return;
+        }
+        runSync(new Runnable() {
+            @Override
+            public void run() {
+                tearDown();
+            }
+        });
+        mThread.quitSafely();
+    }
+
+    /**
+     * SurfaceTexture 在 OpenGL 线程创建，帧回调也在这个线程
+     */
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        if (surfaceTexture != mSurfaceTexture || mDisplay == EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+        // 没有窗口时也要取出，否则相机会停止输出
+        makeCurrent(mPbuffer);
+        surfaceTexture.updateTexImage();
+        mFrameCount++;
+        if (mWindows.isEmpty()) {
+            return;
+        }
+        surfaceTexture.getTransformMatrix(mTexMatrix);
+        for (int i = mWindows.size() - 1; i >= 0; i--) {
+            Window window = mWindows.get(i);
+            if (!draw(window.eglSurface)) {
+                // 窗口已经销毁但还没有移除
+                Log.w(TAG, "Drop window: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                releaseWindow(mWindows.remove(i));
+            }
+        }
+        makeCurrent(mPbuffer);
+    }
+
+    private boolean draw(EGLSurface surface) {
+        if (!makeCurrent(surface)) {
+            return false;
+        }
+        int[] size = new int[2];
+        EGL14.eglQuerySurface(mDisplay, surface, EGL14.EGL_WIDTH, size, 0);
+        EGL14.eglQuerySurface(mDisplay, surface, EGL14.EGL_HEIGHT, size, 1);
+        GLES20.glViewport(0, 0, size[0], size[1]);
+        GLES20.glUseProgram(mProgram);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTextureId);
+        GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(mProgram, "uTexMatrix"), 1, false, mTexMatrix, 0);
+        int position = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        int textureCoord = GLES20.glGetAttribLocation(mProgram, "aTextureCoord");
+        mQuad.position(0);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 16, mQuad);
+        GLES20.glEnableVertexAttribArray(position);
+        mQuad.position(2);
+        GLES20.glVertexAttribPointer(textureCoord, 2, GLES20.GL_FLOAT, false, 16, mQuad);
+        GLES20.glEnableVertexAttribArray(textureCoord);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLES20.glDisableVertexAttribArray(position);
+        GLES20.glDisableVertexAttribArray(textureCoord);
+        return EGL14.eglSwapBuffers(mDisplay, surface);
+    }
+
+    private void setUp() {
+        mDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (mDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(mDisplay, version, 0, version, 1)) {
+            mDisplay = EGL14.EGL_NO_DISPLAY;
+            throw new IllegalStateException("Unable to initialize EGL");
+        }
+        int[] configAttributes = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT | EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] count = new int[1];
+        if (!EGL14.eglChooseConfig(mDisplay, configAttributes, 0, configs, 0, 1, count, 0) || count[0] == 0) {
+            throw new IllegalStateException("No EGL config");
+        }
+        mConfig = configs[0];
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        mContext = EGL14.eglCreateContext(mDisplay, mConfig, EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        if (mContext == null || mContext == EGL14.EGL_NO_CONTEXT) {
+            mContext = EGL14.EGL_NO_CONTEXT;
+            throw new IllegalStateException("Unable to create EGL context");
+        }
+        int[] pbufferAttributes = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+        mPbuffer = EGL14.eglCreatePbufferSurface(mDisplay, mConfig, pbufferAttributes, 0);
+        if (mPbuffer == null || mPbuffer == EGL14.EGL_NO_SURFACE) {
+            mPbuffer = EGL14.EGL_NO_SURFACE;
+            throw new IllegalStateException("Unable to create pbuffer");
+        }
+        if (!makeCurrent(mPbuffer)) {
+            throw new IllegalStateException("eglMakeCurrent failed");
+        }
+        mProgram = createProgram();
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        mTextureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTextureId);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        mSurfaceTexture = new SurfaceTexture(mTextureId);
+        mSurfaceTexture.setOnFrameAvailableListener(this);
+    }
+
+    private void tearDown() {
+        for (Window window : mWindows) {
+            releaseWindow(window);
+        }
+        mWindows.clear();
+        if (mSurfaceTexture != null) {
+            mSurfaceTexture.setOnFrameAvailableListener(null);
+            mSurfaceTexture.release();
+        }
+        if (mDisplay == EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+        if (mContext != EGL14.EGL_NO_CONTEXT && makeCurrent(mPbuffer)) {
+            if (mProgram != 0) {
+                GLES20.glDeleteProgram(mProgram);
+            }
+            if (mTextureId != 0) {
+                GLES20.glDeleteTextures(1, new int[]{mTextureId}, 0);
+            }
+        }
+        EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        if (mPbuffer != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(mDisplay, mPbuffer);
+        }
+        if (mContext != EGL14.EGL_NO_CONTEXT) {
+            EGL14.eglDestroyContext(mDisplay, mContext);
+        }
+        EGL14.eglReleaseThread();
+        EGL14.eglTerminate(mDisplay);
+        mPbuffer = EGL14.EGL_NO_SURFACE;
+        mContext = EGL14.EGL_NO_CONTEXT;
+        mDisplay = EGL14.EGL_NO_DISPLAY;
+    }
+
+    private boolean makeCurrent(EGLSurface surface) {
+        return EGL14.eglMakeCurrent(mDisplay, surface, surface, mContext);
+    }
+
+    private int findWindow(Surface surface) {
+        for (int i = 0; i < mWindows.size(); i++) {
+            if (mWindows.get(i).surface == surface) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void releaseWindow(Window window) {
+        if (EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW).equals(window.eglSurface)) {
+            makeCurrent(mPbuffer);
+        }
+        EGL14.eglDestroySurface(mDisplay, window.eglSurface);
+    }
+
+    private static int createProgram() {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IllegalStateException("Failed to link program: " + log);
+        }
+        return program;
+    }
+
+    private static int loadShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("Failed to compile shader: " + log);
+        }
+        return shader;
+    }
+
+    /**
+     * 在 OpenGL 线程执行并等待完成
+     */
+    private void runSync(final Runnable task) {
+        if (Thread.currentThread() == mThread) {
+            task.run();
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean posted = mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        if (!posted) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
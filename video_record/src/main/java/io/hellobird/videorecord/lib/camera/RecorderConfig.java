@@ -0,0 +1,262 @@
+package io.hellobird.videorecord.lib.camera;
+
+/*******************************************************************
+ * RecorderConfig.java  2026-10-19
+ * <P>
+ * 相机参数配置，创建后不可修改，可以在任意线程读取<br/>
+ * 打开相机与切换闪光灯时直接读取字段，不再访问 SharedPreferences<br/>
+ * 通过 {@link Builder} 创建，或使用预设 {@link #DEFAULT}、{@link #STABILIZED}、{@link #LOW_LIGHT}、{@link #FIXED_FOCUS}<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class RecorderConfig {
+
+    /**
+     * 默认配置：自动对焦并优先连续对焦，不调整曝光与测光
+     */
+    public static final RecorderConfig DEFAULT = new Builder().build();
+
+    /**
+     * 防抖：在默认配置上打开视频防抖与中心测光
+     */
+    public static final RecorderConfig STABILIZED = new Builder()
+            .setStabilization(true)
+            .setMetering(true)
+            .build();
+
+    /**
+     * 弱光：打开闪光灯时自动降低曝光补偿，并使用中心测光
+     */
+    public static final RecorderConfig LOW_LIGHT = new Builder()
+            .setExposure(true)
+            .setMetering(true)
+            .build();
+
+    /**
+     * 固定焦点：不自动对焦，适合翻拍或固定机位
+     */
+    public static final RecorderConfig FIXED_FOCUS = new Builder()
+            .setAutoFocus(false)
+            .build();
+
+    private final boolean mAutoFocus;
+
+    private final boolean mContinuousFocus;
+
+    private final boolean mTorch;
+
+    private final boolean mExposure;
+
+    private final boolean mMetering;
+
+    private final boolean mStabilization;
+
+    private RecorderConfig(Builder builder) {
+        mAutoFocus = builder.mAutoFocus;
+        mContinuousFocus = builder.mContinuousFocus;
+        mTorch = builder.mTorch;
+        mExposure = builder.mExposure;
+        mMetering = builder.mMetering;
+        mStabilization = builder.mStabilization;
+    }
+
+    /**
+     * 是否自动对焦
+     *
+     * @return
+     */
+    public boolean isAutoFocus() {
+        return mAutoFocus;
+    }
+
+    /**
+     * 自动对焦时是否优先使用连续对焦
+     *
+     * @return
+     */
+    public boolean isContinuousFocus() {
+        return mContinuousFocus;
+    }
+
+    /**
+     * 打开相机时是否打开闪光灯
+     *
+     * @return
+     */
+    public boolean isTorch() {
+        return mTorch;
+    }
+
+    /**
+     * 是否根据闪光灯状态调整曝光补偿
+     *
+     * @return
+     */
+    public boolean isExposure() {
+        return mExposure;
+    }
+
+    /**
+     * 是否设置中心对焦与测光区域
+     *
+     * @return
+     */
+    public boolean isMetering() {
+        return mMetering;
+    }
+
+    /**
+     * 是否打开视频防抖
+     *
+     * @return
+     */
+    public boolean isStabilization() {
+        return mStabilization;
+    }
+
+    /**
+     * 以当前配置为基础创建 Builder
+     *
+     * @return
+     */
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecorderConfig)) {
+            return false;
+        }
+        RecorderConfig that = (RecorderConfig) o;
+        return mAutoFocus == that.mAutoFocus
+                && mContinuousFocus == that.mContinuousFocus
+                && mTorch == that.mTorch
+                && mExposure == that.mExposure
+                && mMetering == that.mMetering
+                && mStabilization == that.mStabilization;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mAutoFocus ? 1 : 0;
+        result = 31 * result + (mContinuousFocus ? 1 : 0);
+        result = 31 * result + (mTorch ? 1 : 0);
+        result = 31 * result + (mExposure ? 1 : 0);
+        result = 31 * result + (mMetering ? 1 : 0);
+        result = 31 * result + (mStabilization ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RecorderConfig{autoFocus=" + mAutoFocus
+                + ", continuousFocus=" + mContinuousFocus
+                + ", torch=" + mTorch
+                + ", exposure=" + mExposure
+                + ", metering=" + mMetering
+                + ", stabilization=" + mStabilization + '}';
+    }
+
+    public static final class Builder {
+
+        private boolean mAutoFocus = true;
+
+        private boolean mContinuousFocus = true;
+
+        private boolean mTorch;
+
+        private boolean mExposure;
+
+        private boolean mMetering;
+
+        private boolean mStabilization;
+
+        public Builder() {
+        }
+
+        private Builder(RecorderConfig config) {
+            mAutoFocus = config.mAutoFocus;
+            mContinuousFocus = config.mContinuousFocus;
+            mTorch = config.mTorch;
+            mExposure = config.mExposure;
+            mMetering = config.mMetering;
+            mStabilization = config.mStabilization;
+        }
+
+        /**
+         * 设置是否自动对焦，默认 true
+         *
+         * @param autoFocus
+         * @return
+         */
+        public Builder setAutoFocus(boolean autoFocus) {
+            mAutoFocus = autoFocus;
+            return this;
+        }
+
+        /**
+         * 设置是否优先连续对焦，默认 true
+         *
+         * @param continuousFocus
+         * @return
+         */
+        public Builder setContinuousFocus(boolean continuousFocus) {
+            mContinuousFocus = continuousFocus;
+            return this;
+        }
+
+        /**
+         * 设置打开相机时是否打开闪光灯，默认 false
+         *
+         * @param torch
+         * @return
+         */
+        public Builder setTorch(boolean torch) {
+            mTorch = torch;
+            return this;
+        }
+
+        /**
+         * 设置是否根据闪光灯调整曝光补偿，默认 false
+         *
+         * @param exposure
+         * @return
+         */
+        public Builder setExposure(boolean exposure) {
+            mExposure = exposure;
+            return this;
+        }
+
+        /**
+         * 设置是否使用中心对焦与测光区域，默认 false
+         *
+         * @param metering
+         * @return
+         */
+        public Builder setMetering(boolean metering) {
+            mMetering = metering;
+            return this;
+        }
+
+        /**
+         * 设置是否打开视频防抖，默认 false
+         *
+         * @param stabilization
+         * @return
+         */
+        public Builder setStabilization(boolean stabilization) {
+            mStabilization = stabilization;
+            return this;
+        }
+
+        public RecorderConfig build() {
+            return new RecorderConfig(this);
+        }
+    }
+}
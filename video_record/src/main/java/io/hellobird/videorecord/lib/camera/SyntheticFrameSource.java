@@ -0,0 +1,292 @@
+package io.hellobird.videorecord.lib.camera;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/*******************************************************************
+ * SyntheticFrameSource.java  2026-10-19
+ * <P>
+ * 生成测试画面的帧来源，不需要相机，可以在 JVM 或 Robolectric 中驱动整个录制流程<br/>
+ * 画面是向右滚动的条纹加一个斜向移动的方块，每帧内容只由帧序号决定；第 n 帧的采集时间为 起始时间 + n * 1000000 / 帧数，没有误差累积<br/>
+ * 测试中用 {@link #emitFrame()} 逐帧驱动，结果可以重复；{@link #start()} 在独立线程按帧数实时输出，用于测量吞吐量与延迟<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class SyntheticFrameSource implements FrameSource {
+
+    /**
+     * 条纹每帧移动的像素
+     */
+    private static final int STRIPE_SPEED = 4;
+
+    /**
+     * 方块每帧移动的像素
+     */
+    private static final int BOX_SPEED = 6;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mFrameRate;
+
+    private final ArrayDeque<byte[]> mBuffers = new ArrayDeque<>();
+
+    private volatile FrameCallback mCallback;
+
+    private volatile long mStartTimestampUs;
+
+    /**
+     * 下一帧序号
+     */
+    private long mFrameIndex;
+
+    /**
+     * 有回调但没有空闲缓存而丢弃的帧数
+     */
+    private long mDroppedFrames;
+
+    private Thread mThread;
+
+    private volatile boolean mRunning;
+
+    /**
+     * @param width     宽度，偶数
+     * @param height    高度，偶数
+     * @param frameRate 帧数
+     */
+    public SyntheticFrameSource(int width, int height, int frameRate) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid frame " + width + "x" + height + "@" + frameRate);
+        }
+        mWidth = width;
+        mHeight = height;
+        mFrameRate = frameRate;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * 设置第0帧的采集时间，默认0
+     *
+     * @param startTimestampUs 单位微秒
+     */
+    public void setStartTimestampUs(long startTimestampUs) {
+        mStartTimestampUs = startTimestampUs;
+    }
+
+    /**
+     * 第 index 帧的采集时间
+     *
+     * @param index 帧序号
+     * @return 单位微秒
+     */
+    public long getTimestampUs(long index) {
+        return mStartTimestampUs + index * 1000000L / mFrameRate;
+    }
+
+    @Override
+    public void setFrameCallback(@Nullable FrameCallback callback) {
+        mCallback = callback;
+        if (callback == null) {
+            synchronized (this) {
+                mBuffers.clear();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addBuffer(byte[] buffer) {
+        if (buffer.length < mWidth * mHeight * 3 / 2) {
+            throw new IllegalArgumentException("Buffer too small: " + buffer.length);
+        }
+        mBuffers.add(buffer);
+    }
+
+    /**
+     * 生成下一帧，写入空闲缓存并回调。没有回调时只前进时间
+     *
+     * @return 是否已回调，没有回调或没有空闲缓存时返回false
+     */
+    public boolean emitFrame() {
+        FrameCallback callback = mCallback;
+        byte[] buffer;
+        long index;
+        synchronized (this) {
+            index = mFrameIndex++;
+            if (callback == null) {
+                return false;
+            }
+            buffer = mBuffers.poll();
+            if (buffer == null) {
+                mDroppedFrames++;
+                return false;
+            }
+        }
+        drawPattern(buffer, mWidth, mHeight, index);
+        callback.onFrame(buffer, getTimestampUs(index));
+        return true;
+    }
+
+    /**
+     * 连续生成多帧
+     *
+     * @param count 帧数
+     * @return 已回调的帧数
+     */
+    public int emitFrames(int count) {
+        int delivered = 0;
+        for (int i = 0; i < count; i++) {
+            if (emitFrame()) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 已生成的帧数，包括丢弃的帧
+     *
+     * @return
+     */
+    public synchronized long getFrameCount() {
+        return mFrameIndex;
+    }
+
+    /**
+     * 没有空闲缓存而丢弃的帧数
+     *
+     * @return
+     */
+    public synchronized long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * 在独立线程按帧数实时输出，回调在该线程
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runRealtime();
+            }
+        }, "SyntheticFrameSource");
+        mThread.start();
+    }
+
+    /**
+     * 停止实时输出，等待输出线程结束
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            mRunning = false;
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    private void runRealtime() {
+        long startNs = System.nanoTime();
+        long frames = 0;
+        while (mRunning) {
+            // 按累计帧数计算下一帧的时间，不累积休眠误差
+            long delayNs = startNs + frames * 1000000000L / mFrameRate - System.nanoTime();
+            if (delayNs > 0) {
+                try {
+                    Thread.sleep(delayNs / 1000000, (int) (delayNs % 1000000));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            if (!mRunning) {
+                break;
+            }
+            emitFrame();
+            frames++;
+        }
+    }
+
+    /**
+     * 绘制第 index 帧，NV21 格式
+     *
+     * @param nv21   输出，大小不小于 宽 * 高 * 3 / 2
+     * @param width  宽度，偶数
+     * @param height 高度，偶数
+     * @param index  帧序号
+     */
+    public static void drawPattern(byte[] nv21, int width, int height, long index) {
+        int stripeShift = (int) (index * STRIPE_SPEED % 64);
+        int boxSize = Math.max(Math.min(width, height) / 4, 2) & ~1;
+        int boxLeft = bounce(index * BOX_SPEED, width - boxSize);
+        int boxTop = bounce(index * BOX_SPEED, height - boxSize);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            boolean boxRow = y >= boxTop && y < boxTop + boxSize;
+            for (int x = 0; x < width; x++) {
+                int luma;
+                if (boxRow && x >= boxLeft && x < boxLeft + boxSize) {
+                    luma = 235;
+                } else {
+                    // 64像素一个周期的锯齿条纹
+                    luma = 16 + ((x - stripeShift) & 63) * 3;
+                }
+                nv21[row + x] = (byte) luma;
+            }
+        }
+        // 色度是固定的横向与纵向渐变
+        int chroma = width * height;
+        for (int y = 0; y < height / 2; y++) {
+            byte v = (byte) (64 + y * 128 / (height / 2));
+            int row = chroma + y * width;
+            for (int x = 0; x < width; x += 2) {
+                nv21[row + x] = v;
+                nv21[row + x + 1] = (byte) (64 + x * 64 / width);
+            }
+        }
+    }
+
+    /**
+     * 在0到 range 之间往返
+     */
+    private static int bounce(long position, int range) {
+        if (range <= 0) {
+            return 0;
+        }
+        long period = position % (2L * range);
+        return (int) (period <= range ? period : 2L * range - period);
+    }
+}
@@ -0,0 +1,121 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * BitrateAdjustment.java  2026-10-19
+ * <P>
+ * {@link BitrateGovernor} 的一次码率调整，以及做出调整时的测量值<br/>
+ * <br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class BitrateAdjustment {
+
+    /**
+     * 写入延时或编码器积压，降低码率
+     */
+    public static final int REASON_CONGESTION = 1;
+
+    /**
+     * 设备温度升高，降低码率
+     */
+    public static final int REASON_THERMAL = 2;
+
+    /**
+     * 持续空闲，恢复码率
+     */
+    public static final int REASON_RECOVERY = 3;
+
+    private final long mElapsedUs;
+
+    private final int mFromBitRate;
+
+    private final int mToBitRate;
+
+    private final int mReason;
+
+    private final long mWriteLatencyUs;
+
+    private final int mQueueDepth;
+
+    private final int mDroppedFrames;
+
+    private final int mThermalStatus;
+
+    BitrateAdjustment(long elapsedUs, int fromBitRate, int toBitRate, int reason, long writeLatencyUs,
+                      int queueDepth, int droppedFrames, int thermalStatus) {
+        mElapsedUs = elapsedUs;
+        mFromBitRate = fromBitRate;
+        mToBitRate = toBitRate;
+        mReason = reason;
+        mWriteLatencyUs = writeLatencyUs;
+        mQueueDepth = queueDepth;
+        mDroppedFrames = droppedFrames;
+        mThermalStatus = thermalStatus;
+    }
+
+    /**
+     * 调整时的录制时长，单位微秒
+     */
+    public long getElapsedUs() {
+        return mElapsedUs;
+    }
+
+    /**
+     * 调整前码率，单位 bit/s
+     */
+    public int getFromBitRate() {
+        return mFromBitRate;
+    }
+
+    /**
+     * 调整后码率，单位 bit/s
+     */
+    public int getToBitRate() {
+        return mToBitRate;
+    }
+
+    /**
+     * 调整原因，{@link #REASON_CONGESTION}、{@link #REASON_THERMAL} 或 {@link #REASON_RECOVERY}
+     */
+    public int getReason() {
+        return mReason;
+    }
+
+    /**
+     * 统计周期内写入一帧的平均耗时，单位微秒
+     */
+    public long getWriteLatencyUs() {
+        return mWriteLatencyUs;
+    }
+
+    /**
+     * 已送入编码器还没有输出的帧数
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    /**
+     * 统计周期内编码器没有空闲输入丢弃的帧数
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * 设备温度状态，与 PowerManager.THERMAL_STATUS_* 相同
+     */
+    public int getThermalStatus() {
+        return mThermalStatus;
+    }
+
+    @Override
+    public String toString() {
+        String reason = mReason == REASON_CONGESTION ? "congestion" : mReason == REASON_THERMAL ? "thermal" : "recovery";
+        return "BitrateAdjustment{" + mFromBitRate + " -> " + mToBitRate + ", reason=" + reason
+                + ", at=" + mElapsedUs / 1000 + "ms, writeLatency=" + mWriteLatencyUs + "us, queueDepth=" + mQueueDepth
+                + ", dropped=" + mDroppedFrames + ", thermal=" + mThermalStatus + "}";
+    }
+}
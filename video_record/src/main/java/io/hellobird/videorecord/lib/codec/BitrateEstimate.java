@@ -0,0 +1,121 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * BitrateEstimate.java  2026-10-19
+ * <P>
+ * 按每像素比特数计算的自动码率<br/>
+ * 码率 = 宽 × 高 × 帧数 × 每像素比特数。每像素比特数按画面复杂度在 0.07 到 0.28 之间取值，
+ * 对应静止、一般与剧烈运动的画面，复杂度每增加0.5翻倍；帧数越高相邻帧越接近，以30帧为准按帧数比例的1/4次方修正<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class BitrateEstimate {
+
+    /**
+     * 静止画面的每像素比特数
+     */
+    private static final float BASE_BITS_PER_PIXEL = 0.07f;
+
+    /**
+     * 帧数修正的参考帧数
+     */
+    private static final int REFERENCE_FRAME_RATE = 30;
+
+    /**
+     * 最低码率，单位 bit/s
+     */
+    private static final int MIN_BIT_RATE = 64 * 1000;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mFrameRate;
+
+    private final float mComplexity;
+
+    private final float mBitsPerPixel;
+
+    private final int mBitRate;
+
+    private final int mReferenceBitRate;
+
+    private BitrateEstimate(int width, int height, int frameRate, float complexity, float bitsPerPixel, int bitRate,
+                            int referenceBitRate) {
+        mWidth = width;
+        mHeight = height;
+        mFrameRate = frameRate;
+        mComplexity = complexity;
+        mBitsPerPixel = bitsPerPixel;
+        mBitRate = bitRate;
+        mReferenceBitRate = referenceBitRate;
+    }
+
+    /**
+     * 计算码率
+     *
+     * @param width            视频宽度
+     * @param height           视频高度
+     * @param frameRate        帧数
+     * @param complexity       画面复杂度，0到1，见 {@link SceneComplexity}
+     * @param referenceBitRate 不使用自动码率时的码率，单位 bit/s，只用于统计节省的空间
+     * @return
+     */
+    public static BitrateEstimate compute(int width, int height, int frameRate, float complexity, int referenceBitRate) {
+        if (width <= 0 || height <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid video " + width + "x" + height + "@" + frameRate);
+        }
+        complexity = Math.max(0f, Math.min(complexity, 1f));
+        double bitsPerPixel = BASE_BITS_PER_PIXEL * Math.pow(4, complexity)
+                * Math.pow((double) REFERENCE_FRAME_RATE / frameRate, 0.25);
+        long bitRate = Math.round((double) width * height * frameRate * bitsPerPixel);
+        bitRate = Math.max(MIN_BIT_RATE, Math.min(bitRate, Integer.MAX_VALUE));
+        return new BitrateEstimate(width, height, frameRate, complexity, (float) bitsPerPixel, (int) bitRate,
+                referenceBitRate);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * 计算时使用的画面复杂度
+     */
+    public float getComplexity() {
+        return mComplexity;
+    }
+
+    public float getBitsPerPixel() {
+        return mBitsPerPixel;
+    }
+
+    /**
+     * 自动码率，单位 bit/s
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 不使用自动码率时的码率，单位 bit/s
+     */
+    public int getReferenceBitRate() {
+        return mReferenceBitRate;
+    }
+
+    @Override
+    public String toString() {
+        return "BitrateEstimate{" + mWidth + "x" + mHeight + "@" + mFrameRate + ", complexity=" + mComplexity
+                + ", bpp=" + mBitsPerPixel + ", bitRate=" + mBitRate + ", reference=" + mReferenceBitRate + "}";
+    }
+}
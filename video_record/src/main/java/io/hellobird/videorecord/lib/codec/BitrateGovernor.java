@@ -0,0 +1,266 @@
+package io.hellobird.videorecord.lib.codec;
+
+import androidx.annotation.Nullable;
+
+/*******************************************************************
+ * BitrateGovernor.java  2026-10-19
+ * <P>
+ * 录制中按存储写入速度、编码器积压与设备温度调整码率<br/>
+ * 每个统计周期根据写入一帧的平均耗时、编码器中未输出的帧数以及丢帧数判断是否拥塞：拥塞时立即降低码率，
+ * 之后等待两个周期让新码率生效；连续多个周期空闲才逐步恢复，两个阈值之间保持不变，避免码率来回跳动<br/>
+ * 温度升高时按温度限制码率上限，温度恢复后同样按空闲周期逐步恢复<br/>
+ * 只在编码线程使用，{@link #setThermalStatus(int)} 可以在任意线程调用<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class BitrateGovernor {
+
+    /**
+     * 温度状态，与 PowerManager.THERMAL_STATUS_* 相同
+     */
+    public static final int THERMAL_STATUS_NONE = 0;
+
+    public static final int THERMAL_STATUS_LIGHT = 1;
+
+    public static final int THERMAL_STATUS_MODERATE = 2;
+
+    public static final int THERMAL_STATUS_SEVERE = 3;
+
+    /**
+     * 统计周期，单位微秒
+     */
+    public static final long WINDOW_US = 1000000;
+
+    /**
+     * 降低码率的比例
+     */
+    private static final float DECREASE_FACTOR = 0.75f;
+
+    /**
+     * 恢复码率的比例
+     */
+    private static final float INCREASE_FACTOR = 1.1f;
+
+    /**
+     * 连续空闲多少个周期后恢复码率
+     */
+    private static final int RECOVERY_WINDOWS = 5;
+
+    /**
+     * 降低码率后多少个周期内不再因拥塞降低，编码器中积压的帧还是原来的码率
+     */
+    private static final int COOLDOWN_WINDOWS = 2;
+
+    /**
+     * 编码器中平均未输出帧数达到这个值认为拥塞
+     */
+    private static final int CONGESTED_QUEUE_DEPTH = 4;
+
+    /**
+     * 编码器中平均未输出帧数不超过这个值认为空闲
+     */
+    private static final int IDLE_QUEUE_DEPTH = 2;
+
+    private final int mMinBitRate;
+
+    private final int mMaxBitRate;
+
+    /**
+     * 写入一帧平均耗时超过这个值认为拥塞，为帧间隔的一半
+     */
+    private final long mCongestedLatencyUs;
+
+    /**
+     * 写入一帧平均耗时低于这个值认为空闲，为帧间隔的1/8
+     */
+    private final long mIdleLatencyUs;
+
+    private int mBitRate;
+
+    private volatile int mThermalStatus = THERMAL_STATUS_NONE;
+
+    private int mIdleWindows;
+
+    private int mCooldownWindows;
+
+    /**
+     * 当前统计周期的开始时间，-1表示还没有开始
+     */
+    private long mWindowStartUs = -1;
+
+    private long mWindowFrames;
+
+    private long mWindowQueueDepth;
+
+    private int mWindowDropped;
+
+    private long mWindowWriteNs;
+
+    private long mWindowWrites;
+
+    private long mLastTotalWriteNs;
+
+    private long mLastTotalWrites;
+
+    /**
+     * @param minBitRate     最低码率，单位 bit/s
+     * @param maxBitRate     最高码率，单位 bit/s
+     * @param initialBitRate 开始时的码率，会限制在最低与最高之间
+     * @param frameRate      帧数，用于计算写入耗时的阈值
+     */
+    public BitrateGovernor(int minBitRate, int maxBitRate, int initialBitRate, int frameRate) {
+        if (minBitRate <= 0 || maxBitRate < minBitRate) {
+            throw new IllegalArgumentException("Invalid bit rate range " + minBitRate + "-" + maxBitRate);
+        }
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid frame rate " + frameRate);
+        }
+        mMinBitRate = minBitRate;
+        mMaxBitRate = maxBitRate;
+        mBitRate = clamp(initialBitRate);
+        long frameIntervalUs = 1000000L / frameRate;
+        mCongestedLatencyUs = frameIntervalUs / 2;
+        mIdleLatencyUs = frameIntervalUs / 8;
+    }
+
+    public int getMinBitRate() {
+        return mMinBitRate;
+    }
+
+    public int getMaxBitRate() {
+        return mMaxBitRate;
+    }
+
+    /**
+     * 当前码率，单位 bit/s
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 更新设备温度状态，下一个统计周期生效
+     *
+     * @param thermalStatus PowerManager.THERMAL_STATUS_*
+     */
+    public void setThermalStatus(int thermalStatus) {
+        mThermalStatus = thermalStatus;
+    }
+
+    public int getThermalStatus() {
+        return mThermalStatus;
+    }
+
+    /**
+     * 记录一帧，统计周期结束时计算是否需要调整码率
+     *
+     * @param elapsedUs    录制时长，单位微秒
+     * @param dropped      是否因为编码器没有空闲输入丢弃
+     * @param queueDepth   已送入编码器还没有输出的帧数
+     * @param totalWriteNs 开始录制以来写入输出端的总耗时，单位纳秒
+     * @param totalWrites  开始录制以来写入输出端的帧数
+     * @return 需要调整时返回调整内容，调用者需要把新码率设置给编码器
+     */
+    @Nullable
+    public BitrateAdjustment onFrame(long elapsedUs, boolean dropped, int queueDepth, long totalWriteNs, long totalWrites) {
+        if (mWindowStartUs < 0) {
+            mWindowStartUs = elapsedUs;
+        }
+        mWindowFrames++;
+        mWindowQueueDepth += queueDepth;
+        if (dropped) {
+            mWindowDropped++;
+        }
+        mWindowWriteNs += totalWriteNs - mLastTotalWriteNs;
+        mWindowWrites += totalWrites - mLastTotalWrites;
+        mLastTotalWriteNs = totalWriteNs;
+        mLastTotalWrites = totalWrites;
+        if (elapsedUs - mWindowStartUs < WINDOW_US) {
+            return null;
+        }
+        long writeLatencyUs = mWindowWrites > 0 ? mWindowWriteNs / mWindowWrites / 1000 : 0;
+        int averageQueueDepth = (int) ((mWindowQueueDepth + mWindowFrames / 2) / mWindowFrames);
+        int droppedFrames = mWindowDropped;
+        mWindowStartUs = elapsedUs;
+        mWindowFrames = 0;
+        mWindowQueueDepth = 0;
+        mWindowDropped = 0;
+        mWindowWriteNs = 0;
+        mWindowWrites = 0;
+        return evaluate(elapsedUs, writeLatencyUs, averageQueueDepth, droppedFrames);
+    }
+
+    /**
+     * 根据一个统计周期的测量值计算码率
+     *
+     * @param elapsedUs      录制时长，单位微秒
+     * @param writeLatencyUs 写入一帧的平均耗时，单位微秒
+     * @param queueDepth     编码器中平均未输出的帧数
+     * @param droppedFrames  丢帧数
+     * @return 需要调整时返回调整内容
+     */
+    @Nullable
+    public BitrateAdjustment evaluate(long elapsedUs, long writeLatencyUs, int queueDepth, int droppedFrames) {
+        int thermalStatus = mThermalStatus;
+        boolean coolingDown = mCooldownWindows > 0;
+        if (coolingDown) {
+            mCooldownWindows--;
+        }
+        boolean congested = droppedFrames > 0 || writeLatencyUs > mCongestedLatencyUs
+                || queueDepth >= CONGESTED_QUEUE_DEPTH;
+        boolean idle = droppedFrames == 0 && writeLatencyUs < mIdleLatencyUs && queueDepth <= IDLE_QUEUE_DEPTH;
+        int ceiling = thermalCeiling(thermalStatus);
+        int target = mBitRate;
+        int reason = 0;
+        if (mBitRate > ceiling) {
+            target = ceiling;
+            reason = BitrateAdjustment.REASON_THERMAL;
+        } else if (congested) {
+            mIdleWindows = 0;
+            if (!coolingDown) {
+                target = clamp((int) (mBitRate * DECREASE_FACTOR));
+                reason = BitrateAdjustment.REASON_CONGESTION;
+            }
+        } else if (idle && thermalStatus >= THERMAL_STATUS_LIGHT) {
+            // 温度略高时保持当前码率，降温后重新计数
+            mIdleWindows = 0;
+        } else if (idle) {
+            if (++mIdleWindows >= RECOVERY_WINDOWS) {
+                target = Math.min(clamp((int) Math.ceil(mBitRate * INCREASE_FACTOR)), ceiling);
+                reason = BitrateAdjustment.REASON_RECOVERY;
+            }
+        } else {
+            mIdleWindows = 0;
+        }
+        if (target == mBitRate) {
+            return null;
+        }
+        BitrateAdjustment adjustment = new BitrateAdjustment(elapsedUs, mBitRate, target, reason, writeLatencyUs,
+                queueDepth, droppedFrames, thermalStatus);
+        if (target < mBitRate) {
+            mCooldownWindows = COOLDOWN_WINDOWS;
+        }
+        mIdleWindows = 0;
+        mBitRate = target;
+        return adjustment;
+    }
+
+    /**
+     * 温度对应的码率上限
+     */
+    private int thermalCeiling(int thermalStatus) {
+        if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+            return mMinBitRate;
+        }
+        if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+            return mMinBitRate + (mMaxBitRate - mMinBitRate) / 2;
+        }
+        return mMaxBitRate;
+    }
+
+    private int clamp(int bitRate) {
+        return Math.max(mMinBitRate, Math.min(bitRate, mMaxBitRate));
+    }
+}
@@ -0,0 +1,730 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.hardware.Camera;
+import android.media.MediaCodecInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+
+import io.hellobird.videorecord.lib.camera.CameraFrameSource;
+import io.hellobird.videorecord.lib.camera.FrameSource;
+
+/*******************************************************************
+ * CodecRecorder.java  2026-10-19
+ * <P>
+ * 基于 MediaCodec 的录制器，从相机预览回调取帧，在独立线程编码并写入 MP4<br/>
+ * 与 MediaRecorder 不同，录制时相机不需要 unlock，预览数据可以同时被其他功能使用<br/>
+ * 帧来自 {@link FrameSource}，测试时可以使用 {@link io.hellobird.videorecord.lib.camera.SyntheticFrameSource}，
+ * 并通过 {@link #setEncoderFactory(EncoderFactory)} 换成不需要硬件的编码器<br/>
+ * 可以同时编码一路低分辨率、低码率的代理文件，编码器实例不足或代理编码失败时只录制主文件<br/>
+ * 设置 {@link BitrateGovernor} 后按写入速度、编码器积压与温度调整主文件码率（API 19+），代理文件码率不变<br/>
+ * 目前只编码视频轨<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(18)
+@SuppressWarnings("deprecation") // camera APIs
+public final class CodecRecorder implements FrameSource.FrameCallback, Handler.Callback {
+
+    private static final String TAG = "CodecRecorder";
+
+    /**
+     * 预览缓存数量
+     */
+    private static final int BUFFER_COUNT = 3;
+
+    private static final int MSG_FRAME = 1;
+
+    private static final int MSG_STOP = 2;
+
+    private final FrameSource mSource;
+
+    /**
+     * 编码器工厂，为空时使用 {@link VideoEncoder}
+     */
+    private EncoderFactory mEncoderFactory;
+
+    /**
+     * 预览宽度，也是视频宽度
+     */
+    private final int mWidth;
+
+    /**
+     * 预览高度，也是视频高度
+     */
+    private final int mHeight;
+
+    /**
+     * 帧数
+     */
+    private int mFrameRate = 30;
+
+    /**
+     * 码率，单位 bit/s
+     */
+    private int mBitRate = 512 * 1024 * 8;
+
+    /**
+     * 主文件编码参数
+     */
+    private EncoderSettings mEncoderSettings = EncoderSettings.DEFAULT;
+
+    /**
+     * 旋转角度
+     */
+    private int mOrientation;
+
+    /**
+     * 抽帧器，为空时所有帧都编码
+     */
+    private FrameDecimator mFrameDecimator;
+
+    /**
+     * 最大录制时长，单位微秒，0表示不限制
+     */
+    private long mMaxDurationUs;
+
+    /**
+     * 到达最大录制时长回调
+     */
+    private OnMaxDurationReachedListener mOnMaxDurationReachedListener;
+
+    /**
+     * 是否已通知到达最大录制时长，只在预览回调线程使用
+     */
+    private boolean mMaxDurationNotified;
+
+    /**
+     * 码率调整器，为空时使用固定码率，只在编码线程使用
+     */
+    private BitrateGovernor mBitrateGovernor;
+
+    private OnBitrateAdjustedListener mOnBitrateAdjustedListener;
+
+    private OnErrorListener mOnErrorListener;
+
+    /**
+     * 主编码器是否已经出错，出错后不再编码，只在编码线程使用
+     */
+    private boolean mEncodeFailed;
+
+    /**
+     * 开始编码的时间，码率调整按这个时间统计，只在编码线程使用
+     */
+    private long mEncodeStartUs;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 是否正在录制，预览回调线程与编码线程都会读取
+     */
+    private volatile boolean mRecording;
+
+    /**
+     * 第一帧的时间，只在预览回调线程使用
+     */
+    private long mFirstTimestampUs;
+
+    /**
+     * 最后一帧的显示时间，只在编码线程使用
+     */
+    private long mLastPresentationTimeUs;
+
+    /**
+     * 是否已经处理过结束消息，之后的帧只归还缓存，只在编码线程使用
+     */
+    private boolean mStopped;
+
+    /**
+     * 结束时输出端关闭失败的原因，编码线程写入，{@link #stop()} 等待编码线程结束后读取
+     */
+    private IOException mCloseError;
+
+    private HandlerThread mEncodeThread;
+
+    /**
+     * 预览回调线程读取，{@link #stop()} 时置空
+     */
+    private volatile Handler mEncodeHandler;
+
+    private SampleSink mSink;
+
+    private FrameEncoder mEncoder;
+
+    /**
+     * 代理文件宽度，0表示不输出代理文件
+     */
+    private int mProxyWidth;
+
+    private int mProxyHeight;
+
+    /**
+     * 代理文件码率，单位 bit/s
+     */
+    private int mProxyBitRate;
+
+    /**
+     * 代理文件编码器，不输出或已经失败时为空，只在编码线程使用
+     */
+    private FrameEncoder mProxyEncoder;
+
+    private SampleSink mProxySink;
+
+    private Nv21Scaler mProxyScaler;
+
+    /**
+     * 缩小后的代理帧
+     */
+    private byte[] mProxyFrame;
+
+    /**
+     * 代理文件是否正在录制
+     */
+    private volatile boolean mProxyRecording;
+
+    /**
+     * @param camera 已经开始预览的相机
+     * @param width  预览宽度
+     * @param height 预览高度
+     */
+    public CodecRecorder(Camera camera, int width, int height) {
+        this(new CameraFrameSource(camera, width, height));
+    }
+
+    /**
+     * @param source 帧来源，视频尺寸与帧尺寸相同
+     */
+    public CodecRecorder(FrameSource source) {
+        mSource = source;
+        mWidth = source.getWidth();
+        mHeight = source.getHeight();
+    }
+
+    /**
+     * 设置编码器工厂，主文件与代理文件都使用。开始录制前设置有效
+     *
+     * @param factory 为空时使用 {@link VideoEncoder}
+     */
+    public void setEncoderFactory(@Nullable EncoderFactory factory) {
+        mEncoderFactory = factory;
+    }
+
+    private FrameEncoder newEncoder(int width, int height, SampleSink sink) {
+        if (mEncoderFactory != null) {
+            return mEncoderFactory.newEncoder(width, height, sink);
+        }
+        return new VideoEncoder(width, height, sink);
+    }
+
+    /**
+     * 设置帧数与码率
+     *
+     * @param frameRate 帧数
+     * @param bitRate   码率，单位 bit/s
+     */
+    public void setVideoParams(int frameRate, int bitRate) {
+        mFrameRate = frameRate;
+        mBitRate = bitRate;
+    }
+
+    /**
+     * 设置主文件的码率模式、关键帧间隔与 profile/level，设备不支持时使用最接近的参数。开始录制前设置有效
+     *
+     * @param settings 为空时使用 {@link EncoderSettings#DEFAULT}
+     */
+    public void setEncoderSettings(@Nullable EncoderSettings settings) {
+        mEncoderSettings = settings != null ? settings : EncoderSettings.DEFAULT;
+    }
+
+    /**
+     * 主文件实际使用的编码参数
+     *
+     * @return 开始录制前返回null
+     */
+    @Nullable
+    public EncoderSettings getAppliedEncoderSettings() {
+        FrameEncoder encoder = mEncoder;
+        return encoder != null ? encoder.getSettings() : null;
+    }
+
+    /**
+     * 设置码率调整器，开始录制时使用调整器的当前码率代替 {@link #setVideoParams(int, int)} 设置的码率。开始录制前设置有效
+     *
+     * @param governor 为空时使用固定码率
+     * @param listener 码率调整后在主线程回调
+     */
+    @RequiresApi(19)
+    public void setBitrateGovernor(@Nullable BitrateGovernor governor, @Nullable OnBitrateAdjustedListener listener) {
+        mBitrateGovernor = governor;
+        mOnBitrateAdjustedListener = listener;
+    }
+
+    /**
+     * 设置代理文件参数，代理文件与主文件使用同一路预览数据同时编码
+     *
+     * @param width   宽度，偶数且不大于预览宽度，0表示不输出代理文件
+     * @param height  高度，偶数且不大于预览高度
+     * @param bitRate 码率，单位 bit/s
+     */
+    public void setProxyParams(int width, int height, int bitRate) {
+        mProxyWidth = width;
+        mProxyHeight = height;
+        mProxyBitRate = bitRate;
+    }
+
+    /**
+     * 设置视频旋转角度
+     *
+     * @param orientation 角度
+     */
+    public void setOrientationHint(int orientation) {
+        mOrientation = orientation;
+    }
+
+    /**
+     * 设置抽帧器，用于延时摄影
+     *
+     * @param frameDecimator 为空时不抽帧
+     */
+    public void setFrameDecimator(@Nullable FrameDecimator frameDecimator) {
+        mFrameDecimator = frameDecimator;
+    }
+
+    /**
+     * 设置最大录制时长，按采集时间计算，到达后在主线程回调，由调用者结束录制
+     *
+     * @param maxDurationMs 单位毫秒，<=0表示不限制
+     * @param listener      回调
+     */
+    public void setMaxDuration(long maxDurationMs, @Nullable OnMaxDurationReachedListener listener) {
+        mMaxDurationUs = Math.max(maxDurationMs, 0) * 1000;
+        mOnMaxDurationReachedListener = listener;
+    }
+
+    /**
+     * 设置编码出错的回调，出错后不再编码，已写入的部分在 {@link #stop()} 时正常结束，结束失败时由 {@link #stop()} 抛出
+     *
+     * @param listener 主线程回调
+     */
+    public void setOnErrorListener(@Nullable OnErrorListener listener) {
+        mOnErrorListener = listener;
+    }
+
+    /**
+     * 开始录制
+     *
+     * @param outFilePath 输出路径
+     * @throws IOException 编码器或文件创建失败
+     */
+    public void start(String outFilePath) throws IOException {
+        if (mRecording) {
+            return;
+        }
+        start(new MediaMuxerSink(outFilePath, mOrientation, 1));
+    }
+
+    /**
+     * 开始录制，编码数据写入指定的输出端，结束录制时关闭
+     *
+     * @param sink 输出端
+     * @throws IOException 编码器创建失败
+     */
+    public void start(SampleSink sink) throws IOException {
+        start(sink, null);
+    }
+
+    /**
+     * 开始录制，同时输出代理文件，结束录制时两个输出端都会关闭<br/>
+     * 代理编码器无法创建时只录制主文件，并关闭代理输出端，通过 {@link #isProxyRecording()} 判断<br/>
+     * 抛出异常时两个输出端都已关闭
+     *
+     * @param sink      主文件输出端
+     * @param proxySink 代理文件输出端，需要先调用 {@link #setProxyParams(int, int, int)}，为空时不输出代理文件
+     * @throws IOException 主文件编码器创建失败
+     */
+    public void start(SampleSink sink, @Nullable SampleSink proxySink) throws IOException {
+        if (mRecording) {
+            if (proxySink != null) {
+                proxySink.close();
+            }
+            return;
+        }
+        mSink = sink;
+        mEncoder = null;
+        try {
+            mEncoder = newEncoder(mWidth, mHeight, mSink);
+            int bitRate = mBitrateGovernor != null ? mBitrateGovernor.getBitRate() : mBitRate;
+            mEncoder.prepare(mFrameRate, bitRate, mEncoderSettings);
+        } catch (IOException | RuntimeException e) {
+            if (mEncoder != null) {
+                mEncoder.release();
+                mEncoder = null;
+            }
+            closeQuietly(mSink);
+            if (proxySink != null) {
+                closeQuietly(proxySink);
+            }
+            throw e;
+        }
+        if (mBitrateGovernor != null && mEncoder.getSettings().getBitrateMode() == EncoderSettings.BITRATE_MODE_CQ) {
+            // 恒定质量不使用码率
+            Log.w(TAG, "Bitrate governor ignored in constant quality mode");
+            mBitrateGovernor = null;
+        }
+        mProxyRecording = proxySink != null && startProxy(proxySink);
+        if (mFrameDecimator != null) {
+            mFrameDecimator.reset();
+        }
+        mFirstTimestampUs = -1;
+        mLastPresentationTimeUs = 0;
+        mMaxDurationNotified = false;
+        mEncodeStartUs = -1;
+        mEncodeFailed = false;
+        mStopped = false;
+        mCloseError = null;
+        mEncodeThread = new HandlerThread(TAG);
+        mEncodeThread.start();
+        mEncodeHandler = new Handler(mEncodeThread.getLooper(), this);
+
+        int bufferSize = mWidth * mHeight * 3 / 2;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mSource.addBuffer(new byte[bufferSize]);
+        }
+        mRecording = true;
+        mSource.setFrameCallback(this);
+    }
+
+    /**
+     * 创建代理编码器，失败时关闭代理输出端
+     *
+     * @return 是否可以输出代理文件
+     */
+    private boolean startProxy(SampleSink proxySink) {
+        mProxySink = proxySink;
+        try {
+            if (mProxyWidth <= 0 || mProxyHeight <= 0) {
+                throw new IOException("Proxy size not set");
+            }
+            if (mEncoderFactory == null) {
+                MediaCodecInfo codecInfo = VideoEncoder.selectCodec(VideoEncoder.MIME_TYPE);
+                int maxInstances = codecInfo != null ? VideoEncoder.getMaxSupportedInstances(codecInfo) : -1;
+                if (maxInstances >= 0 && maxInstances < 2) {
+                    throw new IOException("Encoder supports only " + maxInstances + " instance");
+                }
+            }
+            mProxyScaler = new Nv21Scaler(mWidth, mHeight, mProxyWidth, mProxyHeight);
+            mProxyFrame = new byte[mProxyScaler.getDstSize()];
+            mProxyEncoder = newEncoder(mProxyWidth, mProxyHeight, proxySink);
+            // 系统不提供实例数时，硬件编码器实例不足会在这里失败
+            mProxyEncoder.prepare(mFrameRate, mProxyBitRate, EncoderSettings.DEFAULT);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Proxy encoder unavailable, record master only", e);
+            releaseProxy();
+            return false;
+        }
+    }
+
+    /**
+     * 释放代理编码器并关闭代理输出端，之后只录制主文件
+     */
+    private void releaseProxy() {
+        mProxyRecording = false;
+        if (mProxyEncoder != null) {
+            mProxyEncoder.release();
+            mProxyEncoder = null;
+        }
+        if (mProxySink != null) {
+            try {
+                mProxySink.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Proxy output failed to close", e);
+            }
+            mProxySink = null;
+        }
+        mProxyScaler = null;
+        mProxyFrame = null;
+    }
+
+    /**
+     * 代理文件是否正在录制，开始录制后代理编码器无法创建或者编码失败时返回false
+     *
+     * @return
+     */
+    public boolean isProxyRecording() {
+        return mProxyRecording;
+    }
+
+    /**
+     * 结束录制，会等待编码线程写完文件<br/>
+     * 预览回调线程可能在这之后才送来帧，这些帧在结束消息之后处理，只归还缓存
+     *
+     * @throws IOException 输出端没有正常结束，例如没有写入 moov 或文件关闭失败，文件不能直接使用
+     */
+    public void stop() throws IOException {
+        if (!mRecording) {
+            return;
+        }
+        mRecording = false;
+        mSource.setFrameCallback(null);
+        mEncodeHandler.sendEmptyMessage(MSG_STOP);
+        mEncodeThread.quitSafely();
+        try {
+            mEncodeThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mEncodeThread = null;
+        mEncodeHandler = null;
+        IOException error = mCloseError;
+        mCloseError = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 是否正在录制
+     *
+     * @return
+     */
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    @Override
+    public void onFrame(byte[] data, long timestampUs) {
+        // stop() 可能在其他线程同时置空
+        Handler handler = mEncodeHandler;
+        if (!mRecording || handler == null) {
+            return;
+        }
+        if (mFirstTimestampUs < 0) {
+            mFirstTimestampUs = timestampUs;
+        }
+        checkMaxDuration(timestampUs - mFirstTimestampUs);
+        long presentationTimeUs;
+        if (mFrameDecimator != null) {
+            presentationTimeUs = mFrameDecimator.accept(timestampUs);
+        } else {
+            presentationTimeUs = timestampUs - mFirstTimestampUs;
+        }
+        if (presentationTimeUs == FrameDecimator.DROP) {
+            mSource.addBuffer(data);
+            return;
+        }
+        // 时间戳拆成两个 int 放入 Message，避免每帧创建对象
+        // 编码线程已经退出时消息被丢弃，录制已经结束，缓存不需要归还
+        handler.obtainMessage(MSG_FRAME, (int) (presentationTimeUs >>> 32),
+                (int) presentationTimeUs, data).sendToTarget();
+    }
+
+    private void checkMaxDuration(long elapsedUs) {
+        if (mMaxDurationUs <= 0 || mMaxDurationNotified || elapsedUs < mMaxDurationUs) {
+            return;
+        }
+        mMaxDurationNotified = true;
+        final OnMaxDurationReachedListener listener = mOnMaxDurationReachedListener;
+        if (listener != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onMaxDurationReached(CodecRecorder.this);
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_FRAME:
+                byte[] data = (byte[]) msg.obj;
+                long presentationTimeUs = ((long) msg.arg1 << 32) | (msg.arg2 & 0xFFFFFFFFL);
+                if (mEncodeFailed || mStopped) {
+                    returnBuffer(data);
+                    return true;
+                }
+                boolean encoded;
+                try {
+                    encoded = mEncoder.encodeFrame(data, presentationTimeUs);
+                } catch (RuntimeException e) {
+                    onEncodeFailed(e);
+                    returnBuffer(data);
+                    return true;
+                }
+                if (encoded) {
+                    mLastPresentationTimeUs = presentationTimeUs;
+                } else {
+                    Log.w(TAG, "Encoder busy, drop frame at " + presentationTimeUs);
+                }
+                if (mBitrateGovernor != null) {
+                    governBitrate(!encoded);
+                }
+                if (mProxyEncoder != null) {
+                    encodeProxyFrame(data, presentationTimeUs);
+                }
+                returnBuffer(data);
+                return true;
+            case MSG_STOP:
+                // 编码器在这里释放，之后送来的帧不能再编码
+                mStopped = true;
+                if (!mEncodeFailed) {
+                    try {
+                        mEncoder.signalEndOfStream(mLastPresentationTimeUs);
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Encoder failed at end of stream", e);
+                    }
+                }
+                mEncoder.release();
+                try {
+                    mSink.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Output failed to close", e);
+                    mCloseError = e;
+                }
+                if (mProxyEncoder != null) {
+                    try {
+                        mProxyEncoder.signalEndOfStream(mLastPresentationTimeUs);
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Proxy encoder failed at end of stream", e);
+                    }
+                    releaseProxy();
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void closeQuietly(SampleSink sink) {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Output failed to close", e);
+        }
+    }
+
+    private void returnBuffer(byte[] data) {
+        if (mRecording) {
+            mSource.addBuffer(data);
+        }
+    }
+
+    /**
+     * 主编码器出错，停止编码并通知，代理文件同样停止
+     */
+    private void onEncodeFailed(final Exception e) {
+        Log.w(TAG, "Encoder failed at " + mLastPresentationTimeUs, e);
+        mEncodeFailed = true;
+        if (mProxyEncoder != null) {
+            releaseProxy();
+        }
+        final OnErrorListener listener = mOnErrorListener;
+        if (listener != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onError(CodecRecorder.this, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * 统计一帧，需要时调整编码器码率并通知
+     */
+    private void governBitrate(boolean dropped) {
+        long nowUs = System.nanoTime() / 1000;
+        if (mEncodeStartUs < 0) {
+            mEncodeStartUs = nowUs;
+        }
+        final BitrateAdjustment adjustment = mBitrateGovernor.onFrame(nowUs - mEncodeStartUs, dropped,
+                mEncoder.getPendingFrames(), mEncoder.getWriteTimeNs(), mEncoder.getWrittenSamples());
+        if (adjustment == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return;
+        }
+        try {
+            mEncoder.setBitRate(adjustment.getToBitRate());
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Encoder rejected bit rate " + adjustment.getToBitRate(), e);
+            return;
+        }
+        Log.i(TAG, "Adjust " + adjustment);
+        final OnBitrateAdjustedListener listener = mOnBitrateAdjustedListener;
+        if (listener != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onBitrateAdjusted(CodecRecorder.this, adjustment);
+                }
+            });
+        }
+    }
+
+    /**
+     * 编码代理帧，编码器出错时停止代理文件，不影响主文件
+     */
+    private void encodeProxyFrame(byte[] data, long presentationTimeUs) {
+        try {
+            mProxyScaler.scale(data, mProxyFrame);
+            if (!mProxyEncoder.encodeFrame(mProxyFrame, presentationTimeUs)) {
+                Log.w(TAG, "Proxy encoder busy, drop frame at " + presentationTimeUs);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Proxy encoder failed, record master only", e);
+            releaseProxy();
+        }
+    }
+
+    public interface EncoderFactory {
+        /**
+         * 创建编码器，在调用 {@link #start} 的线程调用
+         *
+         * @param width  视频宽度
+         * @param height 视频高度
+         * @param sink   编码结果输出端
+         * @return 还没有 prepare 的编码器
+         */
+        FrameEncoder newEncoder(int width, int height, SampleSink sink);
+    }
+
+    public interface OnBitrateAdjustedListener {
+        /**
+         * 编码器码率已调整，主线程回调
+         *
+         * @param recorder   录制器
+         * @param adjustment 调整内容
+         */
+        void onBitrateAdjusted(CodecRecorder recorder, BitrateAdjustment adjustment);
+    }
+
+    public interface OnErrorListener {
+        /**
+         * 主编码器编码或写入出错，主线程回调，需要由调用者结束录制
+         *
+         * @param recorder 录制器
+         * @param e        错误
+         */
+        void onError(CodecRecorder recorder, Exception e);
+    }
+
+    public interface OnMaxDurationReachedListener {
+        /**
+         * 到达最大录制时长，主线程回调
+         *
+         * @param recorder 录制器
+         */
+        void onMaxDurationReached(CodecRecorder recorder);
+    }
+}
@@ -0,0 +1,356 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * EncoderSettings.java  2026-10-19
+ * <P>
+ * MediaCodec 编码参数：码率模式、恒定质量、关键帧间隔与 H.264 profile/level，创建后不可修改<br/>
+ * 设备不支持时由 {@link #resolve(EncoderSupport)} 换成最接近的可用参数：CQ 退到 VBR 再退到 CBR，VBR 与 CBR 互为替代，
+ * profile 退到不高于请求的最高可用 profile，level 不超过该 profile 支持的最高 level<br/>
+ * 通过 {@link Builder} 创建，或使用 {@link #DEFAULT}<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class EncoderSettings {
+
+    /**
+     * 使用编码器默认模式
+     */
+    public static final int BITRATE_MODE_DEFAULT = -1;
+
+    /**
+     * 恒定质量，忽略码率，与 MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CQ 相同
+     */
+    public static final int BITRATE_MODE_CQ = 0;
+
+    /**
+     * 可变码率，平均码率接近目标
+     */
+    public static final int BITRATE_MODE_VBR = 1;
+
+    /**
+     * 恒定码率
+     */
+    public static final int BITRATE_MODE_CBR = 2;
+
+    /**
+     * 使用编码器默认值，用于 quality、profile 与 level
+     */
+    public static final int UNSPECIFIED = 0;
+
+    /**
+     * 默认参数：编码器默认模式，关键帧间隔1秒
+     */
+    public static final EncoderSettings DEFAULT = new Builder().build();
+
+    /**
+     * H.264 profile，与 MediaCodecInfo.CodecProfileLevel.AVCProfile* 相同
+     */
+    private static final int AVC_BASELINE = 0x01;
+    private static final int AVC_MAIN = 0x02;
+    private static final int AVC_EXTENDED = 0x04;
+    private static final int AVC_HIGH = 0x08;
+    private static final int AVC_HIGH10 = 0x10;
+    private static final int AVC_HIGH422 = 0x20;
+    private static final int AVC_HIGH444 = 0x40;
+    private static final int AVC_CONSTRAINED_BASELINE = 0x10000;
+    private static final int AVC_CONSTRAINED_HIGH = 0x80000;
+
+    /**
+     * 各参数可以设置的最低系统版本
+     */
+    private static final int SDK_BITRATE_MODE = 21;
+    private static final int SDK_PROFILE = 21;
+    private static final int SDK_LEVEL = 23;
+    private static final int SDK_FLOAT_I_FRAME_INTERVAL = 25;
+    private static final int SDK_QUALITY = 28;
+
+    private final int mBitrateMode;
+
+    private final int mQuality;
+
+    private final float mIFrameInterval;
+
+    private final int mProfile;
+
+    private final int mLevel;
+
+    private EncoderSettings(int bitrateMode, int quality, float iFrameInterval, int profile, int level) {
+        mBitrateMode = bitrateMode;
+        mQuality = quality;
+        mIFrameInterval = iFrameInterval;
+        mProfile = profile;
+        mLevel = level;
+    }
+
+    /**
+     * 码率模式
+     *
+     * @return {@link #BITRATE_MODE_DEFAULT}、{@link #BITRATE_MODE_CQ}、{@link #BITRATE_MODE_VBR} 或 {@link #BITRATE_MODE_CBR}
+     */
+    public int getBitrateMode() {
+        return mBitrateMode;
+    }
+
+    /**
+     * 恒定质量模式的质量，{@link #UNSPECIFIED} 表示取编码器质量范围的中间值
+     *
+     * @return
+     */
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * 关键帧间隔，单位秒，0表示每帧都是关键帧
+     *
+     * @return
+     */
+    public float getIFrameInterval() {
+        return mIFrameInterval;
+    }
+
+    /**
+     * H.264 profile，{@link #UNSPECIFIED} 表示编码器默认
+     *
+     * @return
+     */
+    public int getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * H.264 level，{@link #UNSPECIFIED} 表示编码器默认
+     *
+     * @return
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * 换成设备支持的参数
+     *
+     * @param support 编码器能力
+     * @return 可以直接设置给编码器的参数
+     */
+    public EncoderSettings resolve(EncoderSupport support) {
+        int bitrateMode = resolveBitrateMode(support);
+        int quality = UNSPECIFIED;
+        if (bitrateMode == BITRATE_MODE_CQ) {
+            int min = support.getMinQuality();
+            int max = support.getMaxQuality();
+            quality = mQuality == UNSPECIFIED ? (min + max) / 2 : Math.max(min, Math.min(mQuality, max));
+        }
+        float iFrameInterval = mIFrameInterval;
+        if (support.getSdkInt() < SDK_FLOAT_I_FRAME_INTERVAL && iFrameInterval > 0) {
+            // 只能设置整数秒
+            iFrameInterval = (float) Math.ceil(iFrameInterval);
+        }
+        int profile = UNSPECIFIED;
+        int level = UNSPECIFIED;
+        if (mProfile != UNSPECIFIED && support.getSdkInt() >= SDK_PROFILE) {
+            profile = resolveProfile(support);
+            if (profile != UNSPECIFIED && mLevel != UNSPECIFIED && support.getSdkInt() >= SDK_LEVEL) {
+                level = Math.min(mLevel, support.getMaxLevel(profile));
+            }
+        }
+        return new EncoderSettings(bitrateMode, quality, iFrameInterval, profile, level);
+    }
+
+    private int resolveBitrateMode(EncoderSupport support) {
+        if (mBitrateMode == BITRATE_MODE_DEFAULT || support.getSdkInt() < SDK_BITRATE_MODE) {
+            return BITRATE_MODE_DEFAULT;
+        }
+        int[] candidates;
+        switch (mBitrateMode) {
+            case BITRATE_MODE_CQ:
+                candidates = new int[]{BITRATE_MODE_CQ, BITRATE_MODE_VBR, BITRATE_MODE_CBR};
+                break;
+            case BITRATE_MODE_VBR:
+                candidates = new int[]{BITRATE_MODE_VBR, BITRATE_MODE_CBR};
+                break;
+            default:
+                candidates = new int[]{BITRATE_MODE_CBR, BITRATE_MODE_VBR};
+                break;
+        }
+        for (int mode : candidates) {
+            // 恒定质量需要设置 KEY_QUALITY
+            if (mode == BITRATE_MODE_CQ && support.getSdkInt() < SDK_QUALITY) {
+                continue;
+            }
+            if (support.isBitrateModeSupported(mode)) {
+                return mode;
+            }
+        }
+        return BITRATE_MODE_DEFAULT;
+    }
+
+    /**
+     * 请求的 profile 不支持时，取不高于它的最高可用 profile
+     */
+    private int resolveProfile(EncoderSupport support) {
+        int requestedRank = profileRank(mProfile);
+        int best = UNSPECIFIED;
+        int bestRank = -1;
+        for (int i = 0; i < support.getProfileCount(); i++) {
+            int profile = support.getProfile(i);
+            if (profile == mProfile) {
+                return profile;
+            }
+            int rank = profileRank(profile);
+            if (rank >= 0 && rank <= requestedRank && rank > bestRank) {
+                best = profile;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * profile 的高低，数值不是按高低排列的
+     */
+    private static int profileRank(int profile) {
+        switch (profile) {
+            case AVC_BASELINE:
+            case AVC_CONSTRAINED_BASELINE:
+                return 0;
+            case AVC_MAIN:
+            case AVC_EXTENDED:
+                return 1;
+            case AVC_HIGH:
+            case AVC_CONSTRAINED_HIGH:
+                return 2;
+            case AVC_HIGH10:
+                return 3;
+            case AVC_HIGH422:
+                return 4;
+            case AVC_HIGH444:
+                return 5;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * 以当前参数为基础创建 Builder
+     *
+     * @return
+     */
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EncoderSettings)) {
+            return false;
+        }
+        EncoderSettings that = (EncoderSettings) o;
+        return mBitrateMode == that.mBitrateMode
+                && mQuality == that.mQuality
+                && Float.compare(mIFrameInterval, that.mIFrameInterval) == 0
+                && mProfile == that.mProfile
+                && mLevel == that.mLevel;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mBitrateMode;
+        result = 31 * result + mQuality;
+        result = 31 * result + Float.floatToIntBits(mIFrameInterval);
+        result = 31 * result + mProfile;
+        result = 31 * result + mLevel;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "EncoderSettings{bitrateMode=" + mBitrateMode
+                + ", quality=" + mQuality
+                + ", iFrameInterval=" + mIFrameInterval
+                + ", profile=0x" + Integer.toHexString(mProfile)
+                + ", level=0x" + Integer.toHexString(mLevel) + '}';
+    }
+
+    public static final class Builder {
+
+        private int mBitrateMode = BITRATE_MODE_DEFAULT;
+
+        private int mQuality = UNSPECIFIED;
+
+        private float mIFrameInterval = VideoEncoder.DEFAULT_I_FRAME_INTERVAL;
+
+        private int mProfile = UNSPECIFIED;
+
+        private int mLevel = UNSPECIFIED;
+
+        public Builder() {
+        }
+
+        private Builder(EncoderSettings settings) {
+            mBitrateMode = settings.mBitrateMode;
+            mQuality = settings.mQuality;
+            mIFrameInterval = settings.mIFrameInterval;
+            mProfile = settings.mProfile;
+            mLevel = settings.mLevel;
+        }
+
+        /**
+         * 设置码率模式，默认 {@link #BITRATE_MODE_DEFAULT}
+         *
+         * @param bitrateMode
+         * @return
+         */
+        public Builder setBitrateMode(int bitrateMode) {
+            if (bitrateMode < BITRATE_MODE_DEFAULT || bitrateMode > BITRATE_MODE_CBR) {
+                throw new IllegalArgumentException("Unknown bitrate mode " + bitrateMode);
+            }
+            mBitrateMode = bitrateMode;
+            return this;
+        }
+
+        /**
+         * 设置恒定质量模式的质量，超出编码器范围时取边界值，默认取范围中间值
+         *
+         * @param quality
+         * @return
+         */
+        public Builder setQuality(int quality) {
+            mQuality = quality;
+            return this;
+        }
+
+        /**
+         * 设置关键帧间隔，单位秒，默认1秒。API 25 以下向上取整
+         *
+         * @param iFrameInterval 0表示每帧都是关键帧
+         * @return
+         */
+        public Builder setIFrameInterval(float iFrameInterval) {
+            mIFrameInterval = iFrameInterval;
+            return this;
+        }
+
+        /**
+         * 设置 H.264 profile 与 level，MediaCodecInfo.CodecProfileLevel 中的 AVCProfile* 与 AVCLevel*
+         *
+         * @param profile {@link #UNSPECIFIED} 表示编码器默认
+         * @param level   {@link #UNSPECIFIED} 表示编码器默认
+         * @return
+         */
+        public Builder setProfileLevel(int profile, int level) {
+            mProfile = profile;
+            mLevel = level;
+            return this;
+        }
+
+        public EncoderSettings build() {
+            return new EncoderSettings(mBitrateMode, mQuality, mIFrameInterval, mProfile, mLevel);
+        }
+    }
+}
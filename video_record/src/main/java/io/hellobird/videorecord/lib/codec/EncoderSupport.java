@@ -0,0 +1,94 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * EncoderSupport.java  2026-10-19
+ * <P>
+ * 编码器支持的码率模式、profile/level 与质量范围，用于 {@link EncoderSettings#resolve(EncoderSupport)}<br/>
+ * 由 {@link VideoEncoder#querySupport} 从 MediaCodecInfo 读取，不依赖系统类，测试时可以直接创建<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class EncoderSupport {
+
+    private final int mSdkInt;
+
+    /**
+     * 支持的码率模式，第 n 位表示模式 n
+     */
+    private final int mBitrateModes;
+
+    private final int[] mProfiles;
+
+    private final int[] mMaxLevels;
+
+    private final int mMinQuality;
+
+    private final int mMaxQuality;
+
+    /**
+     * @param sdkInt       系统版本，决定哪些参数可以设置
+     * @param bitrateModes 支持的码率模式，第 n 位表示 {@link EncoderSettings} 的模式 n
+     * @param profiles     支持的 profile
+     * @param maxLevels    每个 profile 支持的最高 level，与 profiles 一一对应
+     * @param minQuality   恒定质量模式的质量下限
+     * @param maxQuality   恒定质量模式的质量上限
+     */
+    public EncoderSupport(int sdkInt, int bitrateModes, int[] profiles, int[] maxLevels, int minQuality, int maxQuality) {
+        if (profiles.length != maxLevels.length) {
+            throw new IllegalArgumentException("Profiles and levels differ in length");
+        }
+        mSdkInt = sdkInt;
+        mBitrateModes = bitrateModes;
+        mProfiles = profiles.clone();
+        mMaxLevels = maxLevels.clone();
+        mMinQuality = minQuality;
+        mMaxQuality = maxQuality;
+    }
+
+    public int getSdkInt() {
+        return mSdkInt;
+    }
+
+    /**
+     * 是否支持码率模式
+     *
+     * @param mode {@link EncoderSettings#BITRATE_MODE_CQ} 等
+     * @return
+     */
+    public boolean isBitrateModeSupported(int mode) {
+        return mode >= 0 && mode < 32 && (mBitrateModes & (1 << mode)) != 0;
+    }
+
+    public int getProfileCount() {
+        return mProfiles.length;
+    }
+
+    public int getProfile(int index) {
+        return mProfiles[index];
+    }
+
+    /**
+     * 指定 profile 支持的最高 level
+     *
+     * @return 不支持该 profile 时返回0
+     */
+    public int getMaxLevel(int profile) {
+        int maxLevel = 0;
+        for (int i = 0; i < mProfiles.length; i++) {
+            if (mProfiles[i] == profile) {
+                maxLevel = Math.max(maxLevel, mMaxLevels[i]);
+            }
+        }
+        return maxLevel;
+    }
+
+    public int getMinQuality() {
+        return mMinQuality;
+    }
+
+    public int getMaxQuality() {
+        return mMaxQuality;
+    }
+}
@@ -0,0 +1,87 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * FrameDecimator.java  2026-10-19
+ * <P>
+ * 延时摄影抽帧器，按固定间隔挑选输入帧，并重新计算输出时间戳<br/>
+ * 用于设备不支持 CamcorderProfile.QUALITY_TIME_LAPSE_* 时在编码器输入端抽帧<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class FrameDecimator {
+
+    /**
+     * 返回此值表示该帧需要丢弃
+     */
+    public static final long DROP = -1;
+
+    /**
+     * 采集间隔，单位微秒
+     */
+    private final long mCaptureIntervalUs;
+
+    /**
+     * 输出帧数
+     */
+    private final int mOutputFrameRate;
+
+    /**
+     * 下一帧的采集时间
+     */
+    private long mNextCaptureUs = DROP;
+
+    /**
+     * 已输出帧数
+     */
+    private long mFrameCount;
+
+    /**
+     * @param captureIntervalMs 采集间隔，单位毫秒
+     * @param outputFrameRate   输出视频的帧数
+     */
+    public FrameDecimator(long captureIntervalMs, int outputFrameRate) {
+        if (captureIntervalMs <= 0 || outputFrameRate <= 0) {
+            throw new IllegalArgumentException("captureIntervalMs 与 outputFrameRate 必须大于0");
+        }
+        mCaptureIntervalUs = captureIntervalMs * 1000;
+        mOutputFrameRate = outputFrameRate;
+    }
+
+    /**
+     * 判断一帧是否需要编码
+     *
+     * @param timestampUs 采集时间，单位微秒，需要单调递增
+     * @return 需要编码时返回输出时间戳，否则返回 {@link #DROP}
+     */
+    public long accept(long timestampUs) {
+        if (mNextCaptureUs == DROP) {
+            mNextCaptureUs = timestampUs;
+        }
+        if (timestampUs < mNextCaptureUs) {
+            return DROP;
+        }
+        // 按整数倍间隔前进，卡顿后不会连续补帧，也不会累积误差
+        long skipped = (timestampUs - mNextCaptureUs) / mCaptureIntervalUs;
+        mNextCaptureUs += (skipped + 1) * mCaptureIntervalUs;
+        return mFrameCount++ * 1000000L / mOutputFrameRate;
+    }
+
+    /**
+     * 已输出帧数
+     *
+     * @return
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 重置状态，开始新的录制前调用
+     */
+    public void reset() {
+        mNextCaptureUs = DROP;
+        mFrameCount = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package io.hellobird.videorecord.lib.codec;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+
+/*******************************************************************
+ * FrameEncoder.java  2026-10-19
+ * <P>
+ * {@link CodecRecorder} 使用的视频编码器，输入 NV21 帧，编码结果写入创建时指定的 {@link SampleSink}<br/>
+ * {@link VideoEncoder} 使用 MediaCodec 编码；测试时可以换成不需要硬件的实现，见 {@link CodecRecorder#setEncoderFactory}<br/>
+ * 非线程安全，所有方法在编码线程调用<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public interface FrameEncoder {
+
+    /**
+     * 创建并启动编码器，设备不支持的参数换成最接近的可用参数
+     *
+     * @param frameRate 帧数
+     * @param bitRate   码率，单位 bit/s
+     * @param settings  编码参数
+     * @throws IOException 设备不支持
+     */
+    void prepare(int frameRate, int bitRate, EncoderSettings settings) throws IOException;
+
+    /**
+     * 实际使用的编码参数，{@link #prepare} 之后有效
+     *
+     * @return
+     */
+    @Nullable
+    EncoderSettings getSettings();
+
+    /**
+     * 编码一帧
+     *
+     * @param nv21               NV21 数据
+     * @param presentationTimeUs 显示时间，单位微秒
+     * @return 编码器没有空闲输入时返回 false，该帧被丢弃
+     */
+    boolean encodeFrame(byte[] nv21, long presentationTimeUs);
+
+    /**
+     * 通知编码结束，输出剩余数据
+     *
+     * @param presentationTimeUs 结束时间
+     */
+    void signalEndOfStream(long presentationTimeUs);
+
+    /**
+     * 释放编码器，不关闭输出端
+     */
+    void release();
+
+    /**
+     * 录制中调整码率
+     *
+     * @param bitRate 码率，单位 bit/s
+     */
+    @RequiresApi(19)
+    void setBitRate(int bitRate);
+
+    /**
+     * 已送入编码器还没有输出的帧数
+     *
+     * @return
+     */
+    int getPendingFrames();
+
+    /**
+     * 写入输出端的总耗时，单位纳秒
+     *
+     * @return
+     */
+    long getWriteTimeNs();
+
+    /**
+     * 写入输出端的帧数
+     *
+     * @return
+     */
+    long getWrittenSamples();
+}
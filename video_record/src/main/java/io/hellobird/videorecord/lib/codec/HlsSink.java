@@ -0,0 +1,104 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.hellobird.videorecord.lib.hls.HlsSegmenter;
+
+/*******************************************************************
+ * HlsSink.java  2026-10-19
+ * <P>
+ * 使用 {@link HlsSegmenter} 输出 .ts 分段与 .m3u8 播放列表，录制过程中就可以边录边播<br/>
+ * 只支持一条 H.264/H.265 视频轨；TS 没有旋转信息，竖屏录制时需要播放端旋转<br/>
+ * 与 {@link Mp4WriterSink} 相同，写入失败时丢弃后续数据，关闭时抛出<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class HlsSink implements SampleSink {
+
+    private static final String TAG = "HlsSink";
+
+    private final HlsSegmenter mSegmenter;
+
+    private boolean mTrackAdded;
+
+    private IOException mError;
+
+    /**
+     * @param directory          输出目录
+     * @param name               播放列表与分段的文件名前缀
+     * @param segmentDurationMs  分段时长，在之后的第一个关键帧切分
+     * @param keyFrameIntervalMs 编码器的关键帧间隔，用于确定播放列表声明的最大分段时长
+     * @param windowSize         播放列表保留的分段数，0表示全部保留
+     */
+    public HlsSink(File directory, String name, long segmentDurationMs, long keyFrameIntervalMs, int windowSize) {
+        mSegmenter = new HlsSegmenter(directory, name, segmentDurationMs, keyFrameIntervalMs, windowSize);
+    }
+
+    @Override
+    public synchronized int addTrack(MediaFormat format) {
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        boolean hevc = MediaFormat.MIMETYPE_VIDEO_HEVC.equals(mime);
+        if (mTrackAdded || (!hevc && !MediaFormat.MIMETYPE_VIDEO_AVC.equals(mime))) {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        mSegmenter.setVideoTrack(hevc, Mp4WriterSink.toArray(format, "csd-0"), Mp4WriterSink.toArray(format, "csd-1"));
+        mTrackAdded = true;
+        return 0;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation") // BUFFER_FLAG_SYNC_FRAME for API 18
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if (!mTrackAdded) {
+            Log.w(TAG, "Track not added, drop sample");
+            return;
+        }
+        if (mError != null || (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            return;
+        }
+        // 不复制缓存，写入后恢复 position 与 limit
+        int position = buffer.position();
+        int limit = buffer.limit();
+        buffer.limit(info.offset + info.size).position(info.offset);
+        try {
+            mSegmenter.writeSample(buffer, info.presentationTimeUs,
+                    (info.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0);
+        } catch (IOException e) {
+            Log.w(TAG, "Write failed, drop following samples", e);
+            mError = e;
+        } finally {
+            buffer.limit(limit).position(position);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            mSegmenter.close();
+        } catch (IOException e) {
+            if (mError == null) {
+                throw e;
+            }
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    /**
+     * 播放列表文件
+     *
+     * @return
+     */
+    public File getPlaylistFile() {
+        return mSegmenter.getPlaylistFile();
+    }
+}
@@ -0,0 +1,125 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.hellobird.videorecord.lib.mp4.KeyframeIndex;
+import io.hellobird.videorecord.lib.mp4.KeyframeIndexWriter;
+
+/*******************************************************************
+ * KeyframeIndexSink.java  2026-10-19
+ * <P>
+ * 在输出文件旁写入 {@link KeyframeIndex}，编码数据写入实际的输出端后在同一线程检查码流，不复制数据<br/>
+ * 索引只影响定位，写入失败时停止索引，不中断录制；只索引第一条视频轨<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class KeyframeIndexSink implements SampleSink {
+
+    private static final String TAG = "KeyframeIndexSink";
+
+    private final SampleSink mSink;
+
+    private final File mOutputFile;
+
+    private KeyframeIndexWriter mWriter;
+
+    private int mVideoTrack = -1;
+
+    /**
+     * @param sink       实际的输出端
+     * @param outputFile 输出文件，索引写入 {@link KeyframeIndex#sidecarOf(File)}
+     */
+    public KeyframeIndexSink(SampleSink sink, File outputFile) {
+        mSink = sink;
+        mOutputFile = outputFile;
+    }
+
+    @Override
+    public int addTrack(MediaFormat format) {
+        int index = mSink.addTrack(format);
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        boolean hevc = MediaFormat.MIMETYPE_VIDEO_HEVC.equals(mime);
+        synchronized (this) {
+            if (mWriter == null && (hevc || MediaFormat.MIMETYPE_VIDEO_AVC.equals(mime))) {
+                try {
+                    mWriter = KeyframeIndexWriter.create(mOutputFile, hevc);
+                    addCodecConfig(format, "csd-0");
+                    addCodecConfig(format, "csd-1");
+                    mVideoTrack = index;
+                } catch (IOException e) {
+                    abandon(e);
+                }
+            }
+        }
+        return index;
+    }
+
+    private void addCodecConfig(MediaFormat format, String key) throws IOException {
+        byte[] csd = Mp4WriterSink.toArray(format, key);
+        if (csd != null) {
+            mWriter.addCodecConfig(csd);
+        }
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        mSink.writeSampleData(trackIndex, buffer, info);
+        synchronized (this) {
+            if (trackIndex != mVideoTrack || mWriter == null
+                    || (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                return;
+            }
+            buffer.limit(info.offset + info.size).position(info.offset);
+            try {
+                mWriter.addSample(buffer, info.presentationTimeUs);
+            } catch (IOException e) {
+                abandon(e);
+            } finally {
+                buffer.limit(limit).position(position);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mSink.close();
+        } finally {
+            synchronized (this) {
+                if (mWriter != null) {
+                    try {
+                        mWriter.close();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Cannot close keyframe index", e);
+                    }
+                    mWriter = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止索引并删除不完整的索引文件
+     */
+    private void abandon(IOException e) {
+        Log.w(TAG, "Keyframe index failed, stop indexing " + mOutputFile, e);
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException ignored) {
+            }
+            mWriter = null;
+        }
+        KeyframeIndex.sidecarOf(mOutputFile).delete();
+    }
+}
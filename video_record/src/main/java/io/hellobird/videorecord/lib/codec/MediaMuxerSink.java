@@ -0,0 +1,83 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*******************************************************************
+ * MediaMuxerSink.java  2026-10-19
+ * <P>
+ * 使用系统 MediaMuxer 输出 MP4 文件<br/>
+ * <br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(18)
+public final class MediaMuxerSink implements SampleSink {
+
+    private static final String TAG = "MediaMuxerSink";
+
+    private final MediaMuxer mMuxer;
+
+    /**
+     * 需要添加的轨道数，全部添加后才能开始写入
+     */
+    private final int mTrackCount;
+
+    private int mAddedTracks;
+
+    private boolean mStarted;
+
+    /**
+     * @param path        输出路径
+     * @param orientation 旋转角度
+     * @param trackCount  轨道数量
+     * @throws IOException 文件无法创建
+     */
+    public MediaMuxerSink(String path, int orientation, int trackCount) throws IOException {
+        mMuxer = new MediaMuxer(path, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        mMuxer.setOrientationHint(orientation);
+        mTrackCount = trackCount;
+    }
+
+    @Override
+    public synchronized int addTrack(MediaFormat format) {
+        int index = mMuxer.addTrack(format);
+        if (++mAddedTracks == mTrackCount) {
+            mMuxer.start();
+            mStarted = true;
+        }
+        return index;
+    }
+
+    @Override
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if (!mStarted) {
+            Log.w(TAG, "Muxer not started, drop sample of track " + trackIndex);
+            return;
+        }
+        mMuxer.writeSampleData(trackIndex, buffer, info);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (mStarted) {
+                mMuxer.stop();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("MediaMuxer failed to stop", e);
+        } finally {
+            mStarted = false;
+            mMuxer.release();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import io.hellobird.videorecord.lib.mp4.Mp4FormatException;
+import io.hellobird.videorecord.lib.mp4.Mp4Writer;
+
+/*******************************************************************
+ * Mp4WriterSink.java  2026-10-19
+ * <P>
+ * 使用 {@link Mp4Writer} 输出 MP4，可以写入任意 FileChannel，例如加密文件<br/>
+ * 与 {@link MediaMuxerSink} 相同，全部轨道添加后才开始写入；写入失败时丢弃后续数据，关闭时抛出<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Mp4WriterSink implements SampleSink {
+
+    private static final String TAG = "Mp4WriterSink";
+
+    private final Mp4Writer mWriter;
+
+    private final int mTrackCount;
+
+    private int mAddedTracks;
+
+    private IOException mError;
+
+    /**
+     * @param channel     输出文件，关闭时一起关闭
+     * @param orientation 旋转角度
+     * @param trackCount  轨道数量
+     */
+    public Mp4WriterSink(FileChannel channel, int orientation, int trackCount) {
+        mWriter = new Mp4Writer(channel);
+        mWriter.setOrientation(orientation);
+        mTrackCount = trackCount;
+    }
+
+    @Override
+    public synchronized int addTrack(MediaFormat format) {
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        int index;
+        if (mime != null && mime.startsWith("video/")) {
+            try {
+                index = mWriter.addVideoTrack(mime, format.getInteger(MediaFormat.KEY_WIDTH),
+                        format.getInteger(MediaFormat.KEY_HEIGHT), toArray(format, "csd-0"), toArray(format, "csd-1"));
+            } catch (Mp4FormatException e) {
+                throw new IllegalArgumentException("Unsupported format " + format, e);
+            }
+        } else if (MediaFormat.MIMETYPE_AUDIO_AAC.equals(mime)) {
+            int bitRate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+            index = mWriter.addAudioTrack(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), bitRate, toArray(format, "csd-0"));
+        } else {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        mAddedTracks++;
+        return index;
+    }
+
+    static byte[] toArray(MediaFormat format, String key) {
+        ByteBuffer buffer = format.getByteBuffer(key);
+        if (buffer == null) {
+            return null;
+        }
+        ByteBuffer copy = buffer.duplicate();
+        copy.position(0);
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation") // BUFFER_FLAG_SYNC_FRAME for API 18
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if (mAddedTracks < mTrackCount) {
+            Log.w(TAG, "Writer not started, drop sample of track " + trackIndex);
+            return;
+        }
+        if (mError != null) {
+            return;
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.limit(info.offset + info.size).position(info.offset);
+        try {
+            mWriter.writeSample(trackIndex, data, info.presentationTimeUs,
+                    (info.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0);
+        } catch (IOException e) {
+            Log.w(TAG, "Write failed, drop following samples", e);
+            mError = e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            if (mError == null) {
+                throw e;
+            }
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * Nv21Scaler.java  2026-10-19
+ * <P>
+ * NV21 缩小，用于从同一路预览数据编码低分辨率的代理文件<br/>
+ * 亮度取映射位置 2x2 像素的平均值，色度取最近的一组 VU；坐标表在创建时计算，每帧只做查表与求平均<br/>
+ * 非线程安全<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Nv21Scaler {
+
+    /**
+     * 编码器要求宽高对齐的像素数
+     */
+    private static final int ALIGNMENT = 16;
+
+    private final int mSrcWidth;
+
+    private final int mSrcHeight;
+
+    private final int mDstWidth;
+
+    private final int mDstHeight;
+
+    /**
+     * 每个目标列对应的源列，亮度平均取这一列与下一列
+     */
+    private final int[] mLumaX;
+
+    private final int[] mLumaY;
+
+    /**
+     * 每个目标色度列对应的源 VU 偏移，已经乘2
+     */
+    private final int[] mChromaX;
+
+    private final int[] mChromaY;
+
+    /**
+     * @param srcWidth  源宽度
+     * @param srcHeight 源高度
+     * @param dstWidth  目标宽度，偶数且不大于源宽度
+     * @param dstHeight 目标高度，偶数且不大于源高度
+     */
+    public Nv21Scaler(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        if (dstWidth <= 0 || dstHeight <= 0 || dstWidth > srcWidth || dstHeight > srcHeight
+                || dstWidth % 2 != 0 || dstHeight % 2 != 0) {
+            throw new IllegalArgumentException("Cannot scale " + srcWidth + "x" + srcHeight + " to "
+                    + dstWidth + "x" + dstHeight);
+        }
+        mSrcWidth = srcWidth;
+        mSrcHeight = srcHeight;
+        mDstWidth = dstWidth;
+        mDstHeight = dstHeight;
+        mLumaX = lumaTable(srcWidth, dstWidth);
+        mLumaY = lumaTable(srcHeight, dstHeight);
+        mChromaX = new int[dstWidth / 2];
+        for (int i = 0; i < mChromaX.length; i++) {
+            mChromaX[i] = center(i, srcWidth / 2, dstWidth / 2) * 2;
+        }
+        mChromaY = new int[dstHeight / 2];
+        for (int i = 0; i < mChromaY.length; i++) {
+            mChromaY[i] = center(i, srcHeight / 2, dstHeight / 2);
+        }
+    }
+
+    /**
+     * 按短边缩小并向下对齐到16，保持宽高比
+     *
+     * @param width     源宽度
+     * @param height    源高度
+     * @param shortEdge 目标短边
+     * @return {宽, 高}，源尺寸不大于目标时返回源尺寸
+     */
+    public static int[] fitShortEdge(int width, int height, int shortEdge) {
+        int srcShort = Math.min(width, height);
+        if (shortEdge >= srcShort) {
+            return new int[]{width, height};
+        }
+        int scaledWidth = align((long) width * shortEdge / srcShort);
+        int scaledHeight = align((long) height * shortEdge / srcShort);
+        return new int[]{Math.min(scaledWidth, width), Math.min(scaledHeight, height)};
+    }
+
+    private static int align(long size) {
+        return (int) Math.max(ALIGNMENT, size / ALIGNMENT * ALIGNMENT);
+    }
+
+    /**
+     * 目标像素中心映射到源坐标
+     */
+    private static int center(int dst, int srcSize, int dstSize) {
+        return (int) Math.min(((2L * dst + 1) * srcSize) / (2L * dstSize), srcSize - 1);
+    }
+
+    private static int[] lumaTable(int srcSize, int dstSize) {
+        int[] table = new int[dstSize];
+        for (int i = 0; i < dstSize; i++) {
+            // 取中心左上方的像素，保证下一行、下一列不越界
+            table[i] = Math.min(Math.max(center(i, srcSize, dstSize) - (srcSize > dstSize ? 1 : 0), 0), srcSize - 2);
+        }
+        return table;
+    }
+
+    public int getDstWidth() {
+        return mDstWidth;
+    }
+
+    public int getDstHeight() {
+        return mDstHeight;
+    }
+
+    /**
+     * 目标数据的字节数
+     */
+    public int getDstSize() {
+        return mDstWidth * mDstHeight * 3 / 2;
+    }
+
+    /**
+     * 缩小一帧
+     *
+     * @param src 源 NV21 数据
+     * @param dst 目标 NV21 数据，长度至少为 {@link #getDstSize()}
+     */
+    public void scale(byte[] src, byte[] dst) {
+        int srcWidth = mSrcWidth;
+        int out = 0;
+        for (int y = 0; y < mDstHeight; y++) {
+            int row = mLumaY[y] * srcWidth;
+            int nextRow = row + srcWidth;
+            for (int x = 0; x < mDstWidth; x++) {
+                int sx = mLumaX[x];
+                int sum = (src[row + sx] & 0xFF) + (src[row + sx + 1] & 0xFF)
+                        + (src[nextRow + sx] & 0xFF) + (src[nextRow + sx + 1] & 0xFF);
+                dst[out++] = (byte) ((sum + 2) >> 2);
+            }
+        }
+        int srcChroma = srcWidth * mSrcHeight;
+        for (int y = 0; y < mChromaY.length; y++) {
+            int row = srcChroma + mChromaY[y] * srcWidth;
+            for (int x = 0; x < mChromaX.length; x++) {
+                int offset = row + mChromaX[x];
+                dst[out++] = src[offset];
+                dst[out++] = src[offset + 1];
+            }
+        }
+    }
+}
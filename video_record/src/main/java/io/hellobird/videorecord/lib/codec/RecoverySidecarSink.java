@@ -0,0 +1,102 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.hellobird.videorecord.lib.mp4.RecoveryInfo;
+
+/*******************************************************************
+ * RecoverySidecarSink.java  2026-10-19
+ * <P>
+ * 在输出文件旁保存编码参数，录制中进程退出时可以用 {@link io.hellobird.videorecord.lib.mp4.Mp4Recovery} 修复<br/>
+ * 添加轨道时从编码器输出格式中取得 csd 写入旁路文件，正常结束后删除<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class RecoverySidecarSink implements SampleSink {
+
+    private static final String TAG = "RecoverySidecarSink";
+
+    private final SampleSink mSink;
+
+    private final File mSidecar;
+
+    private final RecoveryInfo.Builder mInfo;
+
+    /**
+     * @param sink        实际的输出端
+     * @param outputFile  输出文件
+     * @param frameRate   帧率，用于生成时间戳
+     * @param orientation 旋转角度
+     */
+    public RecoverySidecarSink(SampleSink sink, File outputFile, int frameRate, int orientation) {
+        mSink = sink;
+        mSidecar = RecoveryInfo.sidecarOf(outputFile);
+        mInfo = new RecoveryInfo.Builder()
+                .setFrameRate(frameRate)
+                .setOrientation(orientation);
+    }
+
+    @Override
+    public int addTrack(MediaFormat format) {
+        int index = mSink.addTrack(format);
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        synchronized (this) {
+            if (mime != null && mime.startsWith("video/")) {
+                mInfo.setVideoMime(mime)
+                        .setVideoSize(format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT));
+                addCodecConfig(format, "csd-0");
+                addCodecConfig(format, "csd-1");
+            } else if (MediaFormat.MIMETYPE_AUDIO_AAC.equals(mime)) {
+                int bitRate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+                mInfo.setAudio(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), bitRate);
+                ByteBuffer csd = format.getByteBuffer("csd-0");
+                if (csd != null) {
+                    mInfo.setAudioConfig(toArray(csd));
+                }
+            }
+            try {
+                mInfo.build().write(mSidecar);
+            } catch (IOException e) {
+                // 只影响崩溃后的修复，不中断录制
+                Log.w(TAG, "Cannot write " + mSidecar, e);
+            }
+        }
+        return index;
+    }
+
+    private void addCodecConfig(MediaFormat format, String key) {
+        ByteBuffer csd = format.getByteBuffer(key);
+        if (csd != null) {
+            mInfo.addCodecConfig(toArray(csd));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        ByteBuffer copy = buffer.duplicate();
+        copy.position(0);
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        mSink.writeSampleData(trackIndex, buffer, info);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSink.close();
+        // 文件已经有 moov，不再需要修复；关闭失败时保留旁路文件
+        mSidecar.delete();
+    }
+}
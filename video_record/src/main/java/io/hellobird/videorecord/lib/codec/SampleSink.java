@@ -0,0 +1,44 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*******************************************************************
+ * SampleSink.java  2026-10-19
+ * <P>
+ * 编码数据输出端，编码器产生的每一帧数据都会写入这里<br/>
+ * <br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public interface SampleSink {
+
+    /**
+     * 添加一条轨道
+     *
+     * @param format 编码器输出格式
+     * @return 轨道序号
+     */
+    int addTrack(MediaFormat format);
+
+    /**
+     * 写入一帧编码数据
+     *
+     * @param trackIndex 轨道序号
+     * @param buffer     数据，position 到 limit 之间为有效数据
+     * @param info       帧信息
+     */
+    void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info);
+
+    /**
+     * 结束写入并释放资源
+     *
+     * @throws IOException 文件无法正常结束
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,136 @@
+package io.hellobird.videorecord.lib.codec;
+
+/*******************************************************************
+ * SceneComplexity.java  2026-10-19
+ * <P>
+ * 根据预览帧估计画面复杂度，用于自动码率<br/>
+ * 在亮度平面上按网格取点，空间复杂度为相邻像素差的平均值，时间复杂度为与上一帧同一位置差的平均值，两者按帧平滑后合成0到1之间的值<br/>
+ * 每帧只读取约两千个点，可以在预览回调中直接调用；可以在任意线程读取结果<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class SceneComplexity {
+
+    /**
+     * 样本不足时的复杂度
+     */
+    public static final float DEFAULT_COMPLEXITY = 0.5f;
+
+    /**
+     * 长边上的取样点数
+     */
+    private static final int GRID = 64;
+
+    /**
+     * 平滑系数，新一帧所占的比例
+     */
+    private static final float SMOOTHING = 0.2f;
+
+    /**
+     * 相邻像素差达到这个值认为细节最多，例如树叶、人群
+     */
+    private static final float SPATIAL_HIGH = 20f;
+
+    /**
+     * 帧间差达到这个值认为运动最剧烈，例如快速摇镜头
+     */
+    private static final float TEMPORAL_HIGH = 16f;
+
+    /**
+     * 时间复杂度对码率的影响更大
+     */
+    private static final float TEMPORAL_WEIGHT = 0.6f;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    /**
+     * 上一帧取样点的亮度
+     */
+    private byte[] mPrevious;
+
+    private int mFrames;
+
+    private float mSpatial;
+
+    private float mTemporal;
+
+    /**
+     * 加入一帧
+     *
+     * @param nv21   预览数据，只读取亮度平面
+     * @param width  宽度
+     * @param height 高度
+     */
+    public synchronized void update(byte[] nv21, int width, int height) {
+        int step = Math.max(2, Math.max(width, height) / GRID);
+        int columns = (width - 1) / step;
+        int rows = (height - 1) / step;
+        if (columns <= 0 || rows <= 0) {
+            return;
+        }
+        if (mPrevious == null || width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mPrevious = new byte[columns * rows];
+            mFrames = 0;
+        }
+        long spatialSum = 0;
+        long temporalSum = 0;
+        int index = 0;
+        for (int row = 0; row < rows; row++) {
+            int offset = row * step * width;
+            for (int column = 0; column < columns; column++, offset += step) {
+                int value = nv21[offset] & 0xFF;
+                spatialSum += Math.abs(value - (nv21[offset + 1] & 0xFF))
+                        + Math.abs(value - (nv21[offset + width] & 0xFF));
+                temporalSum += Math.abs(value - (mPrevious[index] & 0xFF));
+                mPrevious[index++] = (byte) value;
+            }
+        }
+        float spatial = spatialSum / (2f * index);
+        float temporal = temporalSum / (float) index;
+        if (mFrames == 0) {
+            mSpatial = spatial;
+        } else {
+            mSpatial += (spatial - mSpatial) * SMOOTHING;
+            // 第一帧没有参照，从第二帧开始计算
+            mTemporal = mFrames == 1 ? temporal : mTemporal + (temporal - mTemporal) * SMOOTHING;
+        }
+        mFrames++;
+    }
+
+    /**
+     * 画面复杂度
+     *
+     * @return 0到1，静止的纯色画面接近0；少于两帧时返回 {@link #DEFAULT_COMPLEXITY}
+     */
+    public synchronized float getComplexity() {
+        if (mFrames < 2) {
+            return DEFAULT_COMPLEXITY;
+        }
+        float spatial = Math.min(mSpatial / SPATIAL_HIGH, 1f);
+        float temporal = Math.min(mTemporal / TEMPORAL_HIGH, 1f);
+        return spatial * (1 - TEMPORAL_WEIGHT) + temporal * TEMPORAL_WEIGHT;
+    }
+
+    /**
+     * 已加入的帧数
+     */
+    public synchronized int getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * 清除之前的帧，例如切换相机后
+     */
+    public synchronized void reset() {
+        mPrevious = null;
+        mFrames = 0;
+        mSpatial = 0;
+        mTemporal = 0;
+    }
+}
@@ -0,0 +1,114 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import io.hellobird.videorecord.lib.camera.FrameSource;
+
+/*******************************************************************
+ * SceneComplexitySampler.java  2026-10-19
+ * <P>
+ * 预览时定期取一帧更新 {@link SceneComplexity}<br/>
+ * 只使用一个预览缓存，处理完后延时归还，期间帧来源不会回调，不影响预览；开始录制前需要停止，录制器会设置自己的预览回调<br/>
+ * 在主线程调用 {@link #start(FrameSource)} 与 {@link #stop()}，帧回调在帧来源的线程<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class SceneComplexitySampler implements FrameSource.FrameCallback {
+
+    private static final String TAG = "ComplexitySampler";
+
+    /**
+     * 取样间隔，单位毫秒
+     */
+    private static final long INTERVAL_MS = 200;
+
+    private final SceneComplexity mComplexity;
+
+    private volatile FrameSource mSource;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    /**
+     * 帧回调线程的 Handler，用于延时归还缓存
+     */
+    private Handler mCallbackHandler;
+
+    /**
+     * @param complexity 接收预览帧的复杂度估计
+     */
+    public SceneComplexitySampler(SceneComplexity complexity) {
+        mComplexity = complexity;
+    }
+
+    /**
+     * 开始取样，相机需要已经开始预览。帧尺寸变化时清除之前的结果
+     *
+     * @param source 帧来源
+     */
+    public void start(FrameSource source) {
+        if (mSource != null) {
+            stop();
+        }
+        try {
+            if (source.getWidth() != mWidth || source.getHeight() != mHeight) {
+                mComplexity.reset();
+                mWidth = source.getWidth();
+                mHeight = source.getHeight();
+            }
+            mSource = source;
+            source.setFrameCallback(this);
+            source.addBuffer(new byte[mWidth * mHeight * 3 / 2]);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to sample preview", e);
+            mSource = null;
+        }
+    }
+
+    /**
+     * 停止取样，保留已经计算的结果
+     */
+    public void stop() {
+        FrameSource source = mSource;
+        mSource = null;
+        if (source == null) {
+            return;
+        }
+        try {
+            source.setFrameCallback(null);
+        } catch (RuntimeException e) {
+            // 相机已经释放
+            Log.w(TAG, "Failed to clear preview callback", e);
+        }
+    }
+
+    public boolean isRunning() {
+        return mSource != null;
+    }
+
+    @Override
+    public void onFrame(final byte[] data, long timestampUs) {
+        final FrameSource source = mSource;
+        if (source == null) {
+            return;
+        }
+        mComplexity.update(data, mWidth, mHeight);
+        if (mCallbackHandler == null) {
+            Looper looper = Looper.myLooper();
+            mCallbackHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+        }
+        mCallbackHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (source == mSource) {
+                    source.addBuffer(data);
+                }
+            }
+        }, INTERVAL_MS);
+    }
+}
@@ -0,0 +1,167 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*******************************************************************
+ * SegmentingSink.java  2026-10-19
+ * <P>
+ * 按时长切分输出文件，每个分段都是独立可播放的 MP4<br/>
+ * 到达分段时长后在下一个关键帧切换到新文件，前一个分段在后台线程结束，编码线程不等待，分段之间没有间隔<br/>
+ * 每个分段的时间戳从0开始；只支持一条视频轨<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(18)
+public final class SegmentingSink implements SampleSink {
+
+    private static final String TAG = "SegmentingSink";
+
+    public interface Callback {
+        /**
+         * 需要新的分段文件，编码线程回调，不应做耗时操作
+         *
+         * @return 输出文件
+         * @throws IOException 无法分配文件
+         */
+        File onSegmentStart() throws IOException;
+
+        /**
+         * 分段文件已写完，后台线程回调
+         *
+         * @param file       输出文件
+         * @param durationUs 时长
+         */
+        void onSegmentFinished(File file, long durationUs);
+    }
+
+    private final Callback mCallback;
+
+    private final int mOrientation;
+
+    private final long mSegmentDurationUs;
+
+    private final Handler mCloseHandler;
+
+    private final HandlerThread mCloseThread;
+
+    private MediaFormat mFormat;
+
+    private MediaMuxerSink mCurrent;
+
+    private File mCurrentFile;
+
+    private int mCurrentTrack;
+
+    private long mSegmentStartUs;
+
+    private long mLastSampleUs;
+
+    /**
+     * @param callback          分段回调
+     * @param orientation       旋转角度
+     * @param segmentDurationMs 分段时长，实际在之后的第一个关键帧切分
+     */
+    public SegmentingSink(Callback callback, int orientation, long segmentDurationMs) {
+        mCallback = callback;
+        mOrientation = orientation;
+        mSegmentDurationUs = segmentDurationMs * 1000;
+        mCloseThread = new HandlerThread(TAG);
+        mCloseThread.start();
+        mCloseHandler = new Handler(mCloseThread.getLooper());
+    }
+
+    @Override
+    public synchronized int addTrack(MediaFormat format) {
+        if (mFormat != null) {
+            throw new IllegalStateException("SegmentingSink supports a single track");
+        }
+        mFormat = format;
+        return 0;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation") // BUFFER_FLAG_SYNC_FRAME for API 18
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0;
+        if (mCurrent == null || (keyFrame && info.presentationTimeUs - mSegmentStartUs >= mSegmentDurationUs)) {
+            if (!keyFrame) {
+                // 分段只能从关键帧开始
+                return;
+            }
+            try {
+                rollOver(info.presentationTimeUs);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot open next segment, drop frame", e);
+                return;
+            }
+        }
+        long presentationTimeUs = info.presentationTimeUs;
+        info.presentationTimeUs = presentationTimeUs - mSegmentStartUs;
+        try {
+            mCurrent.writeSampleData(mCurrentTrack, buffer, info);
+        } finally {
+            info.presentationTimeUs = presentationTimeUs;
+        }
+        mLastSampleUs = presentationTimeUs;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeCurrent(mLastSampleUs);
+        mCloseThread.quitSafely();
+        try {
+            mCloseThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rollOver(long startUs) throws IOException {
+        closeCurrent(startUs);
+        File file = mCallback.onSegmentStart();
+        MediaMuxerSink sink = new MediaMuxerSink(file.getAbsolutePath(), mOrientation, 1);
+        mCurrentTrack = sink.addTrack(mFormat);
+        mCurrent = sink;
+        mCurrentFile = file;
+        mSegmentStartUs = startUs;
+    }
+
+    /**
+     * 在后台线程结束当前分段
+     *
+     * @param endUs 结束时间
+     */
+    private void closeCurrent(long endUs) {
+        final MediaMuxerSink sink = mCurrent;
+        final File file = mCurrentFile;
+        if (sink == null) {
+            return;
+        }
+        final long durationUs = Math.max(endUs - mSegmentStartUs, 0);
+        mCurrent = null;
+        mCurrentFile = null;
+        mCloseHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sink.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Segment failed to close " + file, e);
+                }
+                mCallback.onSegmentFinished(file, durationUs);
+            }
+        });
+    }
+}
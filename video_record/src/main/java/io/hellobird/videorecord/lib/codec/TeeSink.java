@@ -0,0 +1,74 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*******************************************************************
+ * TeeSink.java  2026-10-19
+ * <P>
+ * 把同一路编码数据同时写入多个输出，例如 MP4 文件与 HLS 分段<br/>
+ * 写入时转换为各个输出自己的轨道序号，每个输出看到的 position 与 limit 相同；关闭时全部关闭后抛出第一个错误<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class TeeSink implements SampleSink {
+
+    private final SampleSink[] mSinks;
+
+    /**
+     * 每条轨道在各个输出中的序号
+     */
+    private final List<int[]> mTracks = new ArrayList<>();
+
+    public TeeSink(SampleSink... sinks) {
+        if (sinks.length == 0) {
+            throw new IllegalArgumentException("No sink");
+        }
+        mSinks = sinks;
+    }
+
+    @Override
+    public synchronized int addTrack(MediaFormat format) {
+        int[] indexes = new int[mSinks.length];
+        for (int i = 0; i < mSinks.length; i++) {
+            indexes[i] = mSinks[i].addTrack(format);
+        }
+        mTracks.add(indexes);
+        return mTracks.size() - 1;
+    }
+
+    @Override
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        int[] indexes = mTracks.get(trackIndex);
+        int position = buffer.position();
+        int limit = buffer.limit();
+        for (int i = 0; i < mSinks.length; i++) {
+            buffer.limit(limit).position(position);
+            mSinks[i].writeSampleData(indexes[i], buffer, info);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (SampleSink sink : mSinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
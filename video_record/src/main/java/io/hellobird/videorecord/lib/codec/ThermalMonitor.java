@@ -0,0 +1,63 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.content.Context;
+import android.os.PowerManager;
+
+import androidx.annotation.RequiresApi;
+
+/*******************************************************************
+ * ThermalMonitor.java  2026-10-19
+ * <P>
+ * 监听设备温度状态并通知 {@link BitrateGovernor}<br/>
+ * 在主线程调用 {@link #start()} 与 {@link #stop()}，回调也在主线程<br/>
+ * 监听器是内部对象，低版本系统上加载或反射本类时不需要解析 API 29 的接口<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(29)
+public final class ThermalMonitor {
+
+    private final PowerManager mPowerManager;
+
+    private final BitrateGovernor mGovernor;
+
+    private boolean mStarted;
+
+    /**
+     * @param context  上下文
+     * @param governor 接收温度状态的码率调整器
+     */
+    public ThermalMonitor(Context context, BitrateGovernor governor) {
+        mPowerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        mGovernor = governor;
+    }
+
+    /**
+     * 开始监听，立即同步一次当前状态
+     */
+    public void start() {
+        if (mStarted || mPowerManager == null) {
+            return;
+        }
+        mStarted = true;
+        mGovernor.setThermalStatus(mPowerManager.getCurrentThermalStatus());
+        mPowerManager.addThermalStatusListener(mListener);
+    }
+
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mPowerManager.removeThermalStatusListener(mListener);
+    }
+
+    private final PowerManager.OnThermalStatusChangedListener mListener = new PowerManager.OnThermalStatusChangedListener() {
+        @Override
+        public void onThermalStatusChanged(int status) {
+            mGovernor.setThermalStatus(status);
+        }
+    };
+}
@@ -0,0 +1,444 @@
+package io.hellobird.videorecord.lib.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*******************************************************************
+ * VideoEncoder.java  2026-10-19
+ * <P>
+ * 基于 MediaCodec 的 H.264 编码器，输入为相机预览的 NV21 数据<br/>
+ * 非线程安全，所有方法需要在同一线程调用<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(18)
+@SuppressWarnings("deprecation") // getInputBuffers / getOutputBuffers
+public final class VideoEncoder implements FrameEncoder {
+
+    private static final String TAG = "VideoEncoder";
+
+    /**
+     * H.264
+     */
+    public static final String MIME_TYPE = "video/avc";
+
+    /**
+     * 默认关键帧间隔，单位秒
+     */
+    public static final int DEFAULT_I_FRAME_INTERVAL = 1;
+
+    private static final long TIMEOUT_US = 10000;
+
+    /**
+     * 结束时等待编码器输出的最大次数，防止编码器异常时死循环
+     */
+    private static final int MAX_EOS_RETRY = 100;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final SampleSink mSink;
+
+    private MediaCodec mCodec;
+
+    private int mColorFormat;
+
+    /**
+     * 实际使用的编码参数
+     */
+    private EncoderSettings mSettings;
+
+    private ByteBuffer[] mInputBuffers;
+
+    private ByteBuffer[] mOutputBuffers;
+
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+    /**
+     * 颜色转换缓存，避免每帧分配
+     */
+    private byte[] mConvertBuffer;
+
+    private int mTrackIndex = -1;
+
+    /**
+     * 已送入编码器还没有输出的帧数
+     */
+    private int mPendingFrames;
+
+    /**
+     * 写入输出端的总耗时，单位纳秒
+     */
+    private long mWriteTimeNs;
+
+    /**
+     * 写入输出端的帧数
+     */
+    private long mWrittenSamples;
+
+    /**
+     * @param width  视频宽度，需要和预览尺寸一致
+     * @param height 视频高度，需要和预览尺寸一致
+     * @param sink   输出端
+     */
+    public VideoEncoder(int width, int height, SampleSink sink) {
+        mWidth = width;
+        mHeight = height;
+        mSink = sink;
+    }
+
+    /**
+     * 创建并启动编码器
+     *
+     * @param frameRate      帧数
+     * @param bitRate        码率，单位 bit/s
+     * @param iFrameInterval 关键帧间隔，单位秒
+     * @throws IOException 设备不支持
+     */
+    public void prepare(int frameRate, int bitRate, int iFrameInterval) throws IOException {
+        prepare(frameRate, bitRate, new EncoderSettings.Builder().setIFrameInterval(iFrameInterval).build());
+    }
+
+    /**
+     * 创建并启动编码器，设备不支持的参数换成最接近的可用参数，通过 {@link #getSettings()} 获取实际使用的参数
+     *
+     * @param frameRate 帧数
+     * @param bitRate   码率，单位 bit/s，恒定质量模式下部分编码器仍然需要
+     * @param settings  编码参数
+     * @throws IOException 设备不支持
+     */
+    @Override
+    public void prepare(int frameRate, int bitRate, EncoderSettings settings) throws IOException {
+        MediaCodecInfo codecInfo = selectCodec(MIME_TYPE);
+        if (codecInfo == null) {
+            throw new IOException("No encoder found for " + MIME_TYPE);
+        }
+        mColorFormat = selectColorFormat(codecInfo, MIME_TYPE);
+        if (mColorFormat == 0) {
+            throw new IOException("No supported color format in " + codecInfo.getName());
+        }
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, mWidth, mHeight);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, mColorFormat);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        mSettings = settings.resolve(querySupport(codecInfo));
+        if (!mSettings.equals(settings)) {
+            Log.i(TAG, "Encoder " + codecInfo.getName() + " falls back from " + settings + " to " + mSettings);
+        }
+        applySettings(format, mSettings);
+        Log.i(TAG, "Encoder " + codecInfo.getName() + " format: " + format);
+        mCodec = MediaCodec.createByCodecName(codecInfo.getName());
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mCodec.start();
+        mInputBuffers = mCodec.getInputBuffers();
+        mOutputBuffers = mCodec.getOutputBuffers();
+        mConvertBuffer = new byte[mWidth * mHeight * 3 / 2];
+    }
+
+    /**
+     * 把已经换成设备支持的参数写入格式
+     */
+    private static void applySettings(MediaFormat format, EncoderSettings settings) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N_MR1) {
+            format.setFloat(MediaFormat.KEY_I_FRAME_INTERVAL, settings.getIFrameInterval());
+        } else {
+            format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, (int) settings.getIFrameInterval());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && settings.getBitrateMode() != EncoderSettings.BITRATE_MODE_DEFAULT) {
+            format.setInteger(MediaFormat.KEY_BITRATE_MODE, settings.getBitrateMode());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && settings.getBitrateMode() == EncoderSettings.BITRATE_MODE_CQ) {
+            format.setInteger(MediaFormat.KEY_QUALITY, settings.getQuality());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && settings.getProfile() != EncoderSettings.UNSPECIFIED) {
+            format.setInteger(MediaFormat.KEY_PROFILE, settings.getProfile());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && settings.getLevel() != EncoderSettings.UNSPECIFIED) {
+            format.setInteger(MediaFormat.KEY_LEVEL, settings.getLevel());
+        }
+    }
+
+    /**
+     * 实际使用的编码参数，{@link #prepare} 之后有效
+     *
+     * @return
+     */
+    @Override
+    @Nullable
+    public EncoderSettings getSettings() {
+        return mSettings;
+    }
+
+    /**
+     * 编码一帧
+     *
+     * @param nv21               预览数据
+     * @param presentationTimeUs 显示时间，单位微秒
+     * @return 编码器没有空闲输入时返回 false，该帧被丢弃
+     */
+    @Override
+    public boolean encodeFrame(byte[] nv21, long presentationTimeUs) {
+        int index = mCodec.dequeueInputBuffer(TIMEOUT_US);
+        if (index < 0) {
+            drain(false);
+            return false;
+        }
+        int frameSize = mConvertBuffer.length;
+        convert(nv21, mConvertBuffer);
+        ByteBuffer input = mInputBuffers[index];
+        input.clear();
+        input.put(mConvertBuffer, 0, frameSize);
+        mCodec.queueInputBuffer(index, 0, frameSize, presentationTimeUs, 0);
+        mPendingFrames++;
+        drain(false);
+        return true;
+    }
+
+    /**
+     * 通知编码结束，会把编码器中剩余数据全部输出
+     *
+     * @param presentationTimeUs 结束时间
+     */
+    @Override
+    public void signalEndOfStream(long presentationTimeUs) {
+        int index = mCodec.dequeueInputBuffer(TIMEOUT_US);
+        if (index >= 0) {
+            mCodec.queueInputBuffer(index, 0, 0, presentationTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+        } else {
+            Log.w(TAG, "No input buffer for end of stream");
+        }
+        drain(true);
+    }
+
+    /**
+     * 释放编码器
+     */
+    @Override
+    public void release() {
+        if (mCodec != null) {
+            try {
+                mCodec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Encoder failed to stop", e);
+            }
+            mCodec.release();
+            mCodec = null;
+        }
+    }
+
+    /**
+     * 录制中调整码率，编码器会在之后的帧生效
+     *
+     * @param bitRate 码率，单位 bit/s
+     */
+    @Override
+    @RequiresApi(19)
+    public void setBitRate(int bitRate) {
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+        mCodec.setParameters(params);
+    }
+
+    /**
+     * 已送入编码器还没有输出的帧数
+     *
+     * @return
+     */
+    @Override
+    public int getPendingFrames() {
+        return mPendingFrames;
+    }
+
+    /**
+     * 写入输出端的总耗时，单位纳秒，用于判断存储是否跟得上
+     *
+     * @return
+     */
+    @Override
+    public long getWriteTimeNs() {
+        return mWriteTimeNs;
+    }
+
+    /**
+     * 写入输出端的帧数
+     *
+     * @return
+     */
+    @Override
+    public long getWrittenSamples() {
+        return mWrittenSamples;
+    }
+
+    /**
+     * 获取当前编码器，只用于调整参数
+     *
+     * @return
+     */
+    @Nullable
+    public MediaCodec getCodec() {
+        return mCodec;
+    }
+
+    /**
+     * 将编码器输出写入输出端
+     *
+     * @param endOfStream 是否等待结束标记
+     */
+    private void drain(boolean endOfStream) {
+        int retry = 0;
+        while (true) {
+            int index = mCodec.dequeueOutputBuffer(mBufferInfo, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || ++retry > MAX_EOS_RETRY) {
+                    break;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                mOutputBuffers = mCodec.getOutputBuffers();
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                mTrackIndex = mSink.addTrack(mCodec.getOutputFormat());
+            } else if (index >= 0) {
+                ByteBuffer output = mOutputBuffers[index];
+                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    // 配置信息已经包含在 MediaFormat 中
+                    mBufferInfo.size = 0;
+                }
+                if (mBufferInfo.size > 0) {
+                    mPendingFrames = Math.max(mPendingFrames - 1, 0);
+                }
+                if (mBufferInfo.size > 0 && mTrackIndex >= 0) {
+                    output.position(mBufferInfo.offset);
+                    output.limit(mBufferInfo.offset + mBufferInfo.size);
+                    long writeStart = System.nanoTime();
+                    mSink.writeSampleData(mTrackIndex, output, mBufferInfo);
+                    mWriteTimeNs += System.nanoTime() - writeStart;
+                    mWrittenSamples++;
+                }
+                mCodec.releaseOutputBuffer(index, false);
+                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * NV21 转换为编码器需要的格式
+     */
+    private void convert(byte[] nv21, byte[] out) {
+        int ySize = mWidth * mHeight;
+        System.arraycopy(nv21, 0, out, 0, ySize);
+        int uvSize = ySize / 4;
+        if (mColorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) {
+            // I420: YYYY UU VV
+            for (int i = 0; i < uvSize; i++) {
+                out[ySize + i] = nv21[ySize + i * 2 + 1];
+                out[ySize + uvSize + i] = nv21[ySize + i * 2];
+            }
+        } else {
+            // NV12: YYYY UVUV
+            for (int i = 0; i < uvSize; i++) {
+                out[ySize + i * 2] = nv21[ySize + i * 2 + 1];
+                out[ySize + i * 2 + 1] = nv21[ySize + i * 2];
+            }
+        }
+    }
+
+    /**
+     * 查找支持指定格式的编码器
+     *
+     * @param mimeType 编码格式
+     * @return
+     */
+    @Nullable
+    public static MediaCodecInfo selectCodec(String mimeType) {
+        int numCodecs = MediaCodecList.getCodecCount();
+        for (int i = 0; i < numCodecs; i++) {
+            MediaCodecInfo codecInfo = MediaCodecList.getCodecInfoAt(i);
+            if (!codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(mimeType)) {
+                    return codecInfo;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取编码器支持的码率模式、profile/level 与质量范围
+     *
+     * @param codecInfo 编码器
+     * @return
+     */
+    public static EncoderSupport querySupport(MediaCodecInfo codecInfo) {
+        MediaCodecInfo.CodecCapabilities capabilities = codecInfo.getCapabilitiesForType(MIME_TYPE);
+        MediaCodecInfo.CodecProfileLevel[] profileLevels = capabilities.profileLevels;
+        int[] profiles = new int[profileLevels.length];
+        int[] levels = new int[profileLevels.length];
+        for (int i = 0; i < profileLevels.length; i++) {
+            profiles[i] = profileLevels[i].profile;
+            levels[i] = profileLevels[i].level;
+        }
+        int bitrateModes = 0;
+        int minQuality = 0;
+        int maxQuality = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            MediaCodecInfo.EncoderCapabilities encoderCapabilities = capabilities.getEncoderCapabilities();
+            for (int mode = EncoderSettings.BITRATE_MODE_CQ; mode <= EncoderSettings.BITRATE_MODE_CBR; mode++) {
+                if (encoderCapabilities.isBitrateModeSupported(mode)) {
+                    bitrateModes |= 1 << mode;
+                }
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                minQuality = encoderCapabilities.getQualityRange().getLower();
+                maxQuality = encoderCapabilities.getQualityRange().getUpper();
+            }
+        }
+        return new EncoderSupport(Build.VERSION.SDK_INT, bitrateModes, profiles, levels, minQuality, maxQuality);
+    }
+
+    /**
+     * 编码器可以同时运行的实例数，硬件编码器通常有限制
+     *
+     * @param codecInfo 编码器
+     * @return 系统不提供时（API 23 以下）返回-1
+     */
+    public static int getMaxSupportedInstances(MediaCodecInfo codecInfo) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return codecInfo.getCapabilitiesForType(MIME_TYPE).getMaxSupportedInstances();
+        }
+        return -1;
+    }
+
+    /**
+     * 查找可以由 NV21 直接转换的颜色格式
+     */
+    private static int selectColorFormat(MediaCodecInfo codecInfo, String mimeType) {
+        MediaCodecInfo.CodecCapabilities capabilities = codecInfo.getCapabilitiesForType(mimeType);
+        for (int colorFormat : capabilities.colorFormats) {
+            if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar
+                    || colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) {
+                return colorFormat;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,276 @@
+package io.hellobird.videorecord.lib.hls;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/*******************************************************************
+ * HlsSegmenter.java  2026-10-19
+ * <P>
+ * 把视频写成固定时长的 .ts 分段与滚动更新的 .m3u8 播放列表，录制过程中就可以由 HTTP 服务直接提供给播放端<br/>
+ * 到达分段时长后在下一个关键帧切分；分段先写入 .tmp 文件，写完后改名，播放列表同样写入临时文件后改名，
+ * 因此读取方看到的文件总是完整的，播放列表中的分段总是已经存在<br/>
+ * 播放列表声明的最大分段时长在开始时按分段时长加一个关键帧间隔确定，之后不再改变，超出的分段只记录日志<br/>
+ * 窗口大小为0时保留全部分段（EVENT 列表）；否则列表只保留最近的分段，移出列表的分段再保留一个窗口后删除，
+ * 正在下载的播放端不会读到已删除的文件<br/>
+ * 不是线程安全的<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class HlsSegmenter implements Closeable {
+
+    static final String PLAYLIST_EXTENSION = ".m3u8";
+
+    static final String SEGMENT_EXTENSION = ".ts";
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * 默认关键帧间隔，与编码器的默认设置相同
+     */
+    private static final long DEFAULT_KEY_FRAME_INTERVAL_MS = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger("HlsSegmenter");
+
+    private static final class Entry {
+        final String name;
+        final long durationUs;
+
+        Entry(String name, long durationUs) {
+            this.name = name;
+            this.durationUs = durationUs;
+        }
+    }
+
+    private final File mDirectory;
+
+    private final String mName;
+
+    private final long mSegmentDurationUs;
+
+    private final int mWindowSize;
+
+    private final TsWriter mWriter = new TsWriter(null);
+
+    /**
+     * 播放列表中的分段
+     */
+    private final ArrayDeque<Entry> mEntries = new ArrayDeque<>();
+
+    /**
+     * 已经移出播放列表、等待删除的分段
+     */
+    private final ArrayDeque<Entry> mRemoved = new ArrayDeque<>();
+
+    private final StringBuilder mPlaylist = new StringBuilder();
+
+    private int mMediaSequence;
+
+    private int mNextSequence;
+
+    /**
+     * 播放列表声明的最大分段时长，单位为秒，播放端在开始时读取，之后不能改变
+     */
+    private final int mTargetDuration;
+
+    private FileChannel mChannel;
+
+    private File mTempFile;
+
+    private String mSegmentName;
+
+    private long mSegmentStartUs;
+
+    private long mLastSampleUs = -1;
+
+    private long mLastFrameDurationUs;
+
+    private boolean mClosed;
+
+    /**
+     * 按默认的1秒关键帧间隔确定最大分段时长
+     *
+     * @param directory         输出目录，不存在时创建
+     * @param name              播放列表与分段的文件名前缀，播放列表为 name.m3u8，分段为 name-0.ts、name-1.ts ...
+     * @param segmentDurationMs 分段时长，实际在之后的第一个关键帧切分，关键帧间隔最好能整除分段时长
+     * @param windowSize        播放列表保留的分段数，0表示全部保留
+     */
+    public HlsSegmenter(File directory, String name, long segmentDurationMs, int windowSize) {
+        this(directory, name, segmentDurationMs, DEFAULT_KEY_FRAME_INTERVAL_MS, windowSize);
+    }
+
+    /**
+     * @param directory          输出目录，不存在时创建
+     * @param name               播放列表与分段的文件名前缀，播放列表为 name.m3u8，分段为 name-0.ts、name-1.ts ...
+     * @param segmentDurationMs  分段时长，实际在之后的第一个关键帧切分，关键帧间隔最好能整除分段时长
+     * @param keyFrameIntervalMs 编码器的关键帧间隔，分段最多比分段时长多这么久
+     * @param windowSize         播放列表保留的分段数，0表示全部保留
+     */
+    public HlsSegmenter(File directory, String name, long segmentDurationMs, long keyFrameIntervalMs,
+                        int windowSize) {
+        if (segmentDurationMs <= 0) {
+            throw new IllegalArgumentException("Segment duration must be positive: " + segmentDurationMs);
+        }
+        if (keyFrameIntervalMs < 0) {
+            throw new IllegalArgumentException("Bad key frame interval: " + keyFrameIntervalMs);
+        }
+        mDirectory = directory;
+        mName = name;
+        mSegmentDurationUs = segmentDurationMs * 1000;
+        mWindowSize = Math.max(windowSize, 0);
+        // 与 EXTINF 一样四舍五入，不超过这个时长的分段四舍五入后也不会超过
+        mTargetDuration = (int) Math.max((segmentDurationMs + keyFrameIntervalMs + 500) / 1000, 1);
+    }
+
+    /**
+     * 设置视频轨，需要在写入数据前设置
+     *
+     * @param hevc        是否 H.265
+     * @param codecConfig 编码器输出的 csd-0、csd-1，起始码格式
+     */
+    public void setVideoTrack(boolean hevc, byte[]... codecConfig) {
+        mWriter.setVideoTrack(hevc, codecConfig);
+    }
+
+    /**
+     * 写入一帧，第一个关键帧之前的数据会被丢弃
+     *
+     * @param data               position 到 limit 之间的数据，起始码格式，写入后 position 与 limit 不变
+     * @param presentationTimeUs 时间戳
+     * @param sync               是否是关键帧
+     * @throws IOException 写入失败
+     */
+    public void writeSample(ByteBuffer data, long presentationTimeUs, boolean sync) throws IOException {
+        if (mClosed) {
+            throw new IllegalStateException("Segmenter closed");
+        }
+        if (mChannel == null || (sync && presentationTimeUs - mSegmentStartUs >= mSegmentDurationUs)) {
+            if (!sync) {
+                // 分段只能从关键帧开始
+                return;
+            }
+            finishSegment(presentationTimeUs);
+            startSegment(presentationTimeUs);
+        }
+        mWriter.writeSample(data, presentationTimeUs, sync);
+        if (mLastSampleUs >= 0 && presentationTimeUs > mLastSampleUs) {
+            mLastFrameDurationUs = presentationTimeUs - mLastSampleUs;
+        }
+        mLastSampleUs = presentationTimeUs;
+    }
+
+    /**
+     * 结束最后一个分段并在播放列表中标记结束
+     *
+     * @throws IOException 写入失败
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (mChannel != null) {
+            // 最后一帧没有下一帧，按前一帧的间隔计算时长
+            finishSegment(mLastSampleUs + mLastFrameDurationUs);
+        }
+        writePlaylist(true);
+    }
+
+    /**
+     * 播放列表文件
+     *
+     * @return
+     */
+    public File getPlaylistFile() {
+        return new File(mDirectory, mName + PLAYLIST_EXTENSION);
+    }
+
+    private void ensureDirectory() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+    }
+
+    private void startSegment(long startUs) throws IOException {
+        ensureDirectory();
+        mSegmentName = mName + "-" + mNextSequence++ + SEGMENT_EXTENSION;
+        mTempFile = new File(mDirectory, mSegmentName + TEMP_EXTENSION);
+        mChannel = new FileOutputStream(mTempFile).getChannel();
+        mWriter.setChannel(mChannel);
+        mSegmentStartUs = startUs;
+    }
+
+    private void finishSegment(long endUs) throws IOException {
+        if (mChannel == null) {
+            return;
+        }
+        FileChannel channel = mChannel;
+        mChannel = null;
+        try {
+            mWriter.flush();
+        } finally {
+            channel.close();
+        }
+        File file = new File(mDirectory, mSegmentName);
+        if (!mTempFile.renameTo(file)) {
+            throw new IOException("Cannot rename " + mTempFile + " to " + file);
+        }
+        long durationUs = Math.max(endUs - mSegmentStartUs, 0);
+        if ((durationUs + 500000) / 1000000 > mTargetDuration) {
+            // 关键帧间隔比设置的长，播放端可能卡顿，但已经读取的列表头不能再改
+            LOGGER.warning(mSegmentName + " lasts " + durationUs / 1000 + " ms, longer than target duration "
+                    + mTargetDuration + " s");
+        }
+        mEntries.addLast(new Entry(mSegmentName, durationUs));
+        if (mWindowSize > 0) {
+            while (mEntries.size() > mWindowSize) {
+                mRemoved.addLast(mEntries.removeFirst());
+                mMediaSequence++;
+            }
+        }
+        writePlaylist(false);
+        while (mRemoved.size() > mWindowSize) {
+            new File(mDirectory, mRemoved.removeFirst().name).delete();
+        }
+    }
+
+    private void writePlaylist(boolean ended) throws IOException {
+        StringBuilder playlist = mPlaylist;
+        playlist.setLength(0);
+        playlist.append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:3\n")
+                .append("#EXT-X-TARGETDURATION:").append(mTargetDuration).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(mMediaSequence).append('\n');
+        if (mWindowSize == 0) {
+            playlist.append("#EXT-X-PLAYLIST-TYPE:EVENT\n");
+        }
+        for (Entry entry : mEntries) {
+            playlist.append(String.format(Locale.US, "#EXTINF:%.3f,\n", entry.durationUs / 1000000.0))
+                    .append(entry.name).append('\n');
+        }
+        if (ended) {
+            playlist.append("#EXT-X-ENDLIST\n");
+        }
+        ensureDirectory();
+        File file = getPlaylistFile();
+        File temp = new File(mDirectory, file.getName() + TEMP_EXTENSION);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(playlist.toString().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package io.hellobird.videorecord.lib.hls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/*******************************************************************
+ * TsWriter.java  2026-10-19
+ * <P>
+ * 不依赖系统类的 MPEG-TS 写入，只有一条 H.264/H.265 视频轨<br/>
+ * 每个关键帧前写入 PAT、PMT，关键帧带 PCR 与随机访问标记，并在前面补上访问单元分隔符与参数集，
+ * 因此从任意关键帧切开的数据都可以独立播放<br/>
+ * 视频数据为编码器输出的起始码格式；时间戳只写 PTS，不支持B帧<br/>
+ * 写入时不分配内存：TS 包直接拼在固定大小的缓存中，缓存满或调用 {@link #flush()} 时写出。
+ * 切换输出时连续计数与时间戳保持连续<br/>
+ * 不是线程安全的<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class TsWriter {
+
+    public static final int PACKET_SIZE = 188;
+
+    static final int SYNC_BYTE = 0x47;
+
+    static final int PID_PAT = 0;
+
+    static final int PID_PMT = 0x1000;
+
+    static final int PID_VIDEO = 0x100;
+
+    static final int STREAM_TYPE_AVC = 0x1B;
+
+    static final int STREAM_TYPE_HEVC = 0x24;
+
+    private static final int PROGRAM_NUMBER = 1;
+
+    private static final int PES_STREAM_ID_VIDEO = 0xE0;
+
+    /**
+     * PES 头：起始码、流ID、长度、标记、头长度与5字节 PTS
+     */
+    private static final int PES_HEADER_SIZE = 14;
+
+    /**
+     * PTS 比 PCR 晚 0.7 秒，给播放端留出缓冲时间
+     */
+    private static final long PTS_OFFSET = 63000;
+
+    private static final long TIMESTAMP_MASK = (1L << 33) - 1;
+
+    private static final byte[] AUD_AVC = {0, 0, 0, 1, 0x09, (byte) 0xF0};
+
+    private static final byte[] AUD_HEVC = {0, 0, 0, 1, 0x46, 0x01, 0x50};
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // CRC-32/MPEG-2，不反转
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * 输出缓存，64个 TS 包
+     */
+    private final ByteBuffer mOut = ByteBuffer.allocate(PACKET_SIZE * 64);
+
+    private WritableByteChannel mChannel;
+
+    private boolean mHevc;
+
+    private byte[] mPat;
+
+    private byte[] mPmt;
+
+    /**
+     * PES 头与数据前补充的 AUD、参数集，每帧重复使用
+     */
+    private byte[] mPrefix;
+
+    private int mPrefixLength;
+
+    private int mPrefixPosition;
+
+    private int mPatCounter;
+
+    private int mPmtCounter;
+
+    private int mVideoCounter;
+
+    private long mFirstTimeUs = -1;
+
+    private long mBytesWritten;
+
+    /**
+     * @param channel 输出，可以为null，写入前通过 {@link #setChannel(WritableByteChannel)} 指定
+     */
+    public TsWriter(WritableByteChannel channel) {
+        mChannel = channel;
+    }
+
+    /**
+     * 设置视频轨，需要在写入数据前设置
+     *
+     * @param hevc        是否 H.265
+     * @param codecConfig 编码器输出的 csd-0、csd-1，起始码格式，在每个关键帧前写入
+     */
+    public void setVideoTrack(boolean hevc, byte[]... codecConfig) {
+        mHevc = hevc;
+        mPat = buildPat();
+        mPmt = buildPmt(hevc ? STREAM_TYPE_HEVC : STREAM_TYPE_AVC);
+        byte[] aud = hevc ? AUD_HEVC : AUD_AVC;
+        int configLength = 0;
+        for (byte[] csd : codecConfig) {
+            configLength += csd == null ? 0 : csd.length;
+        }
+        mPrefix = new byte[PES_HEADER_SIZE + aud.length + configLength];
+        System.arraycopy(aud, 0, mPrefix, PES_HEADER_SIZE, aud.length);
+        int position = PES_HEADER_SIZE + aud.length;
+        for (byte[] csd : codecConfig) {
+            if (csd != null) {
+                System.arraycopy(csd, 0, mPrefix, position, csd.length);
+                position += csd.length;
+            }
+        }
+    }
+
+    /**
+     * 切换输出，之前缓存的数据先写入原来的输出
+     *
+     * @param channel 新的输出
+     * @throws IOException 写入失败
+     */
+    public void setChannel(WritableByteChannel channel) throws IOException {
+        flush();
+        mChannel = channel;
+    }
+
+    /**
+     * 写入一帧
+     *
+     * @param data               position 到 limit 之间的数据，起始码格式，写入后 position 与 limit 不变
+     * @param presentationTimeUs 时间戳
+     * @param sync               是否是关键帧
+     * @throws IOException 写入失败
+     */
+    public void writeSample(ByteBuffer data, long presentationTimeUs, boolean sync) throws IOException {
+        if (mPrefix == null) {
+            throw new IllegalStateException("Video track not set");
+        }
+        if (mFirstTimeUs < 0) {
+            mFirstTimeUs = presentationTimeUs;
+        }
+        long pcr = Math.max(presentationTimeUs - mFirstTimeUs, 0) * 9 / 100;
+        long pts = (pcr + PTS_OFFSET) & TIMESTAMP_MASK;
+        if (sync) {
+            writeTable(mPat, mPatCounter++);
+            writeTable(mPmt, mPmtCounter++);
+        }
+        int prefixLength = preparePrefix(data, pts, sync);
+        int start = data.position();
+        int limit = data.limit();
+        try {
+            writePes(data, prefixLength, sync ? pcr & TIMESTAMP_MASK : -1);
+        } finally {
+            data.limit(limit).position(start);
+        }
+    }
+
+    /**
+     * 写出缓存的数据
+     *
+     * @throws IOException 写入失败
+     */
+    public void flush() throws IOException {
+        if (mOut.position() == 0) {
+            return;
+        }
+        mOut.flip();
+        try {
+            while (mOut.hasRemaining()) {
+                mBytesWritten += mChannel.write(mOut);
+            }
+        } finally {
+            mOut.clear();
+        }
+    }
+
+    /**
+     * 已经写出的字节数，不包括缓存中的数据
+     *
+     * @return
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * 填写 PES 头，数据本身没有 AUD 时补上 AUD，关键帧本身没有参数集时补上参数集
+     *
+     * @return PES 头与补充数据的长度
+     */
+    private int preparePrefix(ByteBuffer data, long pts, boolean sync) {
+        byte[] prefix = mPrefix;
+        prefix[0] = 0;
+        prefix[1] = 0;
+        prefix[2] = 1;
+        prefix[3] = (byte) PES_STREAM_ID_VIDEO;
+        // 视频 PES 长度为0表示不限长度
+        prefix[4] = 0;
+        prefix[5] = 0;
+        // 数据对齐
+        prefix[6] = (byte) 0x84;
+        // 只有 PTS
+        prefix[7] = (byte) 0x80;
+        prefix[8] = 5;
+        prefix[9] = (byte) (0x21 | ((pts >> 29) & 0x0E));
+        prefix[10] = (byte) (pts >> 22);
+        prefix[11] = (byte) (((pts >> 14) & 0xFE) | 1);
+        prefix[12] = (byte) (pts >> 7);
+        prefix[13] = (byte) (((pts << 1) & 0xFE) | 1);
+
+        int audLength = mHevc ? AUD_HEVC.length : AUD_AVC.length;
+        int firstType = firstNalType(data);
+        if (firstType == (mHevc ? 35 : 9)) {
+            // 已经有 AUD，原样写入
+            mPrefixLength = PES_HEADER_SIZE;
+        } else if (sync && !isParameterSet(firstType)) {
+            mPrefixLength = prefix.length;
+        } else {
+            // AUD 之后紧接参数集，只写 AUD 时截掉参数集
+            mPrefixLength = PES_HEADER_SIZE + audLength;
+        }
+        mPrefixPosition = 0;
+        return mPrefixLength;
+    }
+
+    private boolean isParameterSet(int type) {
+        return mHevc ? type >= 32 && type <= 34 : type == 7 || type == 8;
+    }
+
+    /**
+     * 第一个 NAL 的类型，没有起始码时为-1
+     */
+    private int firstNalType(ByteBuffer data) {
+        int i = data.position();
+        int end = data.limit();
+        while (i + 3 < end && data.get(i) == 0) {
+            if (data.get(i + 1) == 0 && data.get(i + 2) == 1) {
+                int header = data.get(i + 3) & 0xFF;
+                return mHevc ? (header >> 1) & 0x3F : header & 0x1F;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * 把 PES 拆分为 TS 包
+     *
+     * @param pcr 不为负时在第一个包写入 PCR 与随机访问标记
+     */
+    private void writePes(ByteBuffer data, int prefixLength, long pcr) throws IOException {
+        int remaining = prefixLength + data.remaining();
+        boolean first = true;
+        while (remaining > 0) {
+            ensurePacketSpace();
+            boolean withPcr = first && pcr >= 0;
+            // 自适应字段的总长度，包括长度字节
+            int adaptation = withPcr ? 8 : 0;
+            int payload = Math.min(PACKET_SIZE - 4 - adaptation, remaining);
+            if (adaptation + payload < PACKET_SIZE - 4) {
+                // 最后一个包用自适应字段填充
+                adaptation = PACKET_SIZE - 4 - payload;
+            }
+            ByteBuffer out = mOut;
+            out.put((byte) SYNC_BYTE);
+            out.put((byte) ((first ? 0x40 : 0) | (PID_VIDEO >> 8)));
+            out.put((byte) PID_VIDEO);
+            out.put((byte) ((adaptation > 0 ? 0x30 : 0x10) | (mVideoCounter++ & 0x0F)));
+            if (adaptation > 0) {
+                out.put((byte) (adaptation - 1));
+                if (adaptation > 1) {
+                    int used = 2;
+                    if (withPcr) {
+                        // 随机访问标记与 PCR 标记
+                        out.put((byte) 0x50);
+                        out.put((byte) (pcr >> 25));
+                        out.put((byte) (pcr >> 17));
+                        out.put((byte) (pcr >> 9));
+                        out.put((byte) (pcr >> 1));
+                        out.put((byte) (((pcr & 1) << 7) | 0x7E));
+                        out.put((byte) 0);
+                        used = 8;
+                    } else {
+                        out.put((byte) 0);
+                    }
+                    for (int i = used; i < adaptation; i++) {
+                        out.put((byte) 0xFF);
+                    }
+                }
+            }
+            putPayload(data, payload);
+            remaining -= payload;
+            first = false;
+        }
+    }
+
+    /**
+     * 依次写入 PES 头、补充数据与帧数据
+     */
+    private void putPayload(ByteBuffer data, int length) {
+        int fromPrefix = Math.min(length, mPrefixLength - mPrefixPosition);
+        if (fromPrefix > 0) {
+            mOut.put(mPrefix, mPrefixPosition, fromPrefix);
+            mPrefixPosition += fromPrefix;
+            length -= fromPrefix;
+        }
+        if (length > 0) {
+            int limit = data.limit();
+            data.limit(data.position() + length);
+            mOut.put(data);
+            data.limit(limit);
+        }
+    }
+
+    private void writeTable(byte[] table, int counter) throws IOException {
+        ensurePacketSpace();
+        table[3] = (byte) (0x10 | (counter & 0x0F));
+        mOut.put(table);
+    }
+
+    private void ensurePacketSpace() throws IOException {
+        if (mOut.remaining() < PACKET_SIZE) {
+            flush();
+        }
+    }
+
+    private static byte[] buildPat() {
+        byte[] packet = newTablePacket(PID_PAT);
+        int section = 5;
+        // table_id、section_length
+        packet[section] = 0x00;
+        packet[section + 1] = (byte) 0xB0;
+        packet[section + 2] = 13;
+        packet[section + 3] = 0;
+        packet[section + 4] = 1;
+        // version 0、current_next_indicator
+        packet[section + 5] = (byte) 0xC1;
+        packet[section + 6] = 0;
+        packet[section + 7] = 0;
+        packet[section + 8] = 0;
+        packet[section + 9] = PROGRAM_NUMBER;
+        packet[section + 10] = (byte) (0xE0 | (PID_PMT >> 8));
+        packet[section + 11] = (byte) PID_PMT;
+        putCrc(packet, section, 12);
+        return packet;
+    }
+
+    private static byte[] buildPmt(int streamType) {
+        byte[] packet = newTablePacket(PID_PMT);
+        int section = 5;
+        packet[section] = 0x02;
+        packet[section + 1] = (byte) 0xB0;
+        packet[section + 2] = 18;
+        packet[section + 3] = 0;
+        packet[section + 4] = PROGRAM_NUMBER;
+        packet[section + 5] = (byte) 0xC1;
+        packet[section + 6] = 0;
+        packet[section + 7] = 0;
+        // PCR_PID
+        packet[section + 8] = (byte) (0xE0 | (PID_VIDEO >> 8));
+        packet[section + 9] = (byte) PID_VIDEO;
+        // program_info_length
+        packet[section + 10] = (byte) 0xF0;
+        packet[section + 11] = 0;
+        packet[section + 12] = (byte) streamType;
+        packet[section + 13] = (byte) (0xE0 | (PID_VIDEO >> 8));
+        packet[section + 14] = (byte) PID_VIDEO;
+        packet[section + 15] = (byte) 0xF0;
+        packet[section + 16] = 0;
+        putCrc(packet, section, 17);
+        return packet;
+    }
+
+    /**
+     * PSI 包：包头、pointer_field，其余填充 0xFF
+     */
+    private static byte[] newTablePacket(int pid) {
+        byte[] packet = new byte[PACKET_SIZE];
+        Arrays.fill(packet, (byte) 0xFF);
+        packet[0] = (byte) SYNC_BYTE;
+        packet[1] = (byte) (0x40 | (pid >> 8));
+        packet[2] = (byte) pid;
+        packet[3] = 0x10;
+        packet[4] = 0;
+        return packet;
+    }
+
+    private static void putCrc(byte[] packet, int offset, int length) {
+        int crc = crc32(packet, offset, length);
+        int end = offset + length;
+        packet[end] = (byte) (crc >>> 24);
+        packet[end + 1] = (byte) (crc >>> 16);
+        packet[end + 2] = (byte) (crc >>> 8);
+        packet[end + 3] = (byte) crc;
+    }
+
+    /**
+     * CRC-32/MPEG-2，包含 CRC 本身计算时结果为0
+     */
+    static int crc32(byte[] data, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,233 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*******************************************************************
+ * KeyframeIndex.java  2026-10-19
+ * <P>
+ * 视频旁的关键帧索引，由 {@link KeyframeIndexWriter} 在录制时写入，用于快速定位与跳转到事件，不需要解码视频<br/>
+ * 旁路文件与视频文件同名，加上 {@link #SIDECAR_SUFFIX}，录制结束后保留<br/>
+ * 文件由文件头与逐条追加的记录组成，录制中途或进程异常退出时末尾不完整的记录被忽略<br/>
+ * 创建后不可修改<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class KeyframeIndex {
+
+    /**
+     * 旁路文件的后缀
+     */
+    public static final String SIDECAR_SUFFIX = ".keyframes";
+
+    static final int MAGIC = 0x56524B49; // VRKI
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 9;
+
+    static final byte TAG_PARAMETER_SET = 1;
+
+    static final byte TAG_KEYFRAME = 2;
+
+    /**
+     * 关键帧记录：标记、时间、偏移、帧序号
+     */
+    static final int KEYFRAME_RECORD_SIZE = 21;
+
+    /**
+     * 参数集的最大长度，超过的参数集不保存
+     */
+    static final int MAX_PARAMETER_SET_SIZE = 4096;
+
+    /**
+     * 旁路文件的最大长度，避免读取错误文件时分配过多内存
+     */
+    private static final int MAX_SIDECAR_SIZE = 64 * 1024 * 1024;
+
+    private final boolean mHevc;
+
+    private final long[] mTimesUs;
+
+    private final long[] mOffsets;
+
+    private final int[] mSampleIndexes;
+
+    private final int mCount;
+
+    private final List<byte[]> mParameterSets;
+
+    private KeyframeIndex(boolean hevc, long[] timesUs, long[] offsets, int[] sampleIndexes, int count,
+                          List<byte[]> parameterSets) {
+        mHevc = hevc;
+        mTimesUs = timesUs;
+        mOffsets = offsets;
+        mSampleIndexes = sampleIndexes;
+        mCount = count;
+        mParameterSets = Collections.unmodifiableList(parameterSets);
+    }
+
+    /**
+     * 视频文件对应的旁路文件
+     *
+     * @param video 视频文件
+     * @return
+     */
+    public static File sidecarOf(File video) {
+        return new File(video.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * 读取旁路文件
+     *
+     * @param sidecar 旁路文件
+     * @return
+     * @throws Mp4FormatException 文件内容损坏
+     * @throws IOException        读取失败
+     */
+    public static KeyframeIndex read(File sidecar) throws IOException {
+        long length = sidecar.length();
+        if (length < HEADER_SIZE || length > MAX_SIDECAR_SIZE) {
+            throw new Mp4FormatException("Bad keyframe index size " + length);
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) length);
+        RandomAccessFile file = new RandomAccessFile(sidecar, "r");
+        try {
+            while (data.hasRemaining()) {
+                if (file.getChannel().read(data) < 0) {
+                    throw new Mp4FormatException("Keyframe index truncated while reading");
+                }
+            }
+        } finally {
+            file.close();
+        }
+        data.flip();
+        if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new Mp4FormatException("Unknown keyframe index format");
+        }
+        boolean hevc = data.get() != 0;
+        int capacity = Math.max(data.remaining() / KEYFRAME_RECORD_SIZE, 1);
+        long[] timesUs = new long[capacity];
+        long[] offsets = new long[capacity];
+        int[] sampleIndexes = new int[capacity];
+        int count = 0;
+        List<byte[]> parameterSets = new ArrayList<>();
+        while (data.hasRemaining()) {
+            byte tag = data.get();
+            if (tag == TAG_KEYFRAME) {
+                if (data.remaining() < KEYFRAME_RECORD_SIZE - 1) {
+                    break;
+                }
+                timesUs[count] = data.getLong();
+                offsets[count] = data.getLong();
+                sampleIndexes[count] = data.getInt();
+                count++;
+            } else if (tag == TAG_PARAMETER_SET) {
+                if (data.remaining() < 2) {
+                    break;
+                }
+                int size = data.getShort() & 0xFFFF;
+                if (size > MAX_PARAMETER_SET_SIZE) {
+                    throw new Mp4FormatException("Bad parameter set size " + size);
+                }
+                if (data.remaining() < size) {
+                    break;
+                }
+                byte[] parameterSet = new byte[size];
+                data.get(parameterSet);
+                parameterSets.add(parameterSet);
+            } else {
+                throw new Mp4FormatException("Unknown record " + tag + " at " + (data.position() - 1));
+            }
+        }
+        return new KeyframeIndex(hevc, timesUs, offsets, sampleIndexes, count, parameterSets);
+    }
+
+    public boolean isHevc() {
+        return mHevc;
+    }
+
+    public int getKeyframeCount() {
+        return mCount;
+    }
+
+    /**
+     * 关键帧的时间戳
+     *
+     * @param index 关键帧序号
+     * @return
+     */
+    public long getTimeUs(int index) {
+        checkIndex(index);
+        return mTimesUs[index];
+    }
+
+    /**
+     * 关键帧在视频数据中的偏移，即之前所有帧的大小之和
+     *
+     * @param index 关键帧序号
+     * @return
+     */
+    public long getOffset(int index) {
+        checkIndex(index);
+        return mOffsets[index];
+    }
+
+    /**
+     * 关键帧在视频轨中的帧序号，从0开始
+     *
+     * @param index 关键帧序号
+     * @return
+     */
+    public int getSampleIndex(int index) {
+        checkIndex(index);
+        return mSampleIndexes[index];
+    }
+
+    /**
+     * 不晚于指定时间的最后一个关键帧，用于定位
+     *
+     * @param timeUs 时间戳
+     * @return 关键帧序号，指定时间在第一个关键帧之前时为-1
+     */
+    public int findKeyframe(long timeUs) {
+        int index = Arrays.binarySearch(mTimesUs, 0, mCount, timeUs);
+        if (index >= 0) {
+            // 时间相同时取第一个
+            while (index > 0 && mTimesUs[index - 1] == timeUs) {
+                index--;
+            }
+            return index;
+        }
+        return -index - 2;
+    }
+
+    /**
+     * 录制过程中出现过的参数集，不含起始码，按出现顺序
+     *
+     * @return
+     */
+    public List<byte[]> getParameterSets() {
+        return mParameterSets;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Keyframe " + index + " of " + mCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "KeyframeIndex{" + (mHevc ? "hevc" : "avc") + ", " + mCount + " keyframes, "
+                + mParameterSets.size() + " parameter sets}";
+    }
+}
@@ -0,0 +1,215 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*******************************************************************
+ * KeyframeIndexWriter.java  2026-10-19
+ * <P>
+ * 在写入视频的同时检查码流，把关键帧的时间、偏移与参数集写入 {@link KeyframeIndex} 旁路文件，不需要解码<br/>
+ * 关键帧由 NAL 类型判断（H.264 为 IDR，H.265 为 IRAP），偏移为视频数据中的偏移，即之前所有帧的大小之和<br/>
+ * 内存固定：记录先写入固定大小的缓存，每个关键帧后写出，录制中途也可以读取；参数集只保存最近的
+ * {@link #MAX_PARAMETER_SETS} 个用于去重，内容变化时才写入<br/>
+ * 不是线程安全的<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class KeyframeIndexWriter implements Closeable {
+
+    /**
+     * 去重时保存的参数集数量
+     */
+    static final int MAX_PARAMETER_SETS = 8;
+
+    private final WritableByteChannel mChannel;
+
+    private final NalParser mParser;
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(KeyframeIndex.MAX_PARAMETER_SET_SIZE * 2);
+
+    private final byte[][] mParameterSets = new byte[MAX_PARAMETER_SETS][];
+
+    /**
+     * 参数集表满时下一个替换的位置
+     */
+    private int mNextParameterSet;
+
+    private boolean mSampleSync;
+
+    private long mStreamOffset;
+
+    private int mSampleIndex;
+
+    private int mKeyframeCount;
+
+    private boolean mClosed;
+
+    /**
+     * 回调中写出失败的异常，解析结束后抛出
+     */
+    private IOException mCallbackError;
+
+    private final NalParser.Callback mNalCallback = new NalParser.Callback() {
+        @Override
+        public void onNalUnit(ByteBuffer data, int offset, int length, int type) {
+            if (mParser.isSync(type)) {
+                mSampleSync = true;
+            } else if (mParser.isParameterSet(type) && mCallbackError == null) {
+                try {
+                    addParameterSet(data, offset, length);
+                } catch (IOException e) {
+                    mCallbackError = e;
+                }
+            }
+        }
+    };
+
+    /**
+     * @param channel 输出，关闭时一起关闭
+     * @param hevc    是否 H.265
+     * @throws IOException 写入失败
+     */
+    public KeyframeIndexWriter(WritableByteChannel channel, boolean hevc) throws IOException {
+        mChannel = channel;
+        mParser = new NalParser(hevc);
+        mBuffer.putInt(KeyframeIndex.MAGIC).putInt(KeyframeIndex.VERSION).put((byte) (hevc ? 1 : 0));
+        flush();
+    }
+
+    /**
+     * 创建视频文件的旁路文件
+     *
+     * @param video 视频文件
+     * @param hevc  是否 H.265
+     * @return
+     * @throws IOException 文件无法创建
+     */
+    public static KeyframeIndexWriter create(File video, boolean hevc) throws IOException {
+        return new KeyframeIndexWriter(new FileOutputStream(KeyframeIndex.sidecarOf(video)).getChannel(), hevc);
+    }
+
+    /**
+     * 添加编码器输出的 csd，其中的参数集写入索引
+     *
+     * @param csd 例如 MediaFormat 中的 csd-0、csd-1，起始码格式
+     * @throws IOException 写入失败
+     */
+    public void addCodecConfig(byte[] csd) throws IOException {
+        checkOpen();
+        mParser.parse(ByteBuffer.wrap(csd), mNalCallback);
+        throwCallbackError();
+        flush();
+    }
+
+    /**
+     * 添加一帧，数据不会被复制或修改
+     *
+     * @param data   position 到 limit 之间的一帧数据，起始码或长度格式
+     * @param timeUs 时间戳
+     * @return 是否是关键帧
+     * @throws IOException 写入失败
+     */
+    public boolean addSample(ByteBuffer data, long timeUs) throws IOException {
+        checkOpen();
+        mSampleSync = false;
+        mParser.parse(data, mNalCallback);
+        throwCallbackError();
+        boolean sync = mSampleSync;
+        if (sync) {
+            ensureSpace(KeyframeIndex.KEYFRAME_RECORD_SIZE);
+            mBuffer.put(KeyframeIndex.TAG_KEYFRAME).putLong(timeUs).putLong(mStreamOffset).putInt(mSampleIndex);
+            mKeyframeCount++;
+            flush();
+        }
+        mStreamOffset += data.remaining();
+        mSampleIndex++;
+        return sync;
+    }
+
+    public int getKeyframeCount() {
+        return mKeyframeCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            flush();
+        } finally {
+            mChannel.close();
+        }
+    }
+
+    private void throwCallbackError() throws IOException {
+        if (mCallbackError != null) {
+            IOException e = mCallbackError;
+            mCallbackError = null;
+            throw e;
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Writer closed");
+        }
+    }
+
+    /**
+     * 与最近的参数集比较，内容不同时写入，过大的参数集忽略
+     */
+    private void addParameterSet(ByteBuffer data, int offset, int length) throws IOException {
+        if (length > KeyframeIndex.MAX_PARAMETER_SET_SIZE || findParameterSet(data, offset, length)) {
+            return;
+        }
+        byte[] parameterSet = new byte[length];
+        for (int i = 0; i < length; i++) {
+            parameterSet[i] = data.get(offset + i);
+        }
+        ensureSpace(3 + length);
+        mParameterSets[mNextParameterSet] = parameterSet;
+        mNextParameterSet = (mNextParameterSet + 1) % MAX_PARAMETER_SETS;
+        mBuffer.put(KeyframeIndex.TAG_PARAMETER_SET).putShort((short) length).put(parameterSet);
+    }
+
+    private boolean findParameterSet(ByteBuffer data, int offset, int length) {
+        for (byte[] parameterSet : mParameterSets) {
+            if (parameterSet == null || parameterSet.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && parameterSet[i] == data.get(offset + i)) {
+                i++;
+            }
+            if (i == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureSpace(int size) throws IOException {
+        if (mBuffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        try {
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+        } finally {
+            mBuffer.clear();
+        }
+    }
+}
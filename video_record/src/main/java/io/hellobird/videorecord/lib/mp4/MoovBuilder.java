@@ -0,0 +1,151 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*******************************************************************
+ * MoovBuilder.java  2026-10-19
+ * <P>
+ * 由采样表与 stsd 生成完整的 moov，用于在没有 moov 的文件后补写索引<br/>
+ * 电影时间单位固定为 1000，与 MediaMuxer 一致<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class MoovBuilder {
+
+    private static final int MOVIE_TIMESCALE = 1000;
+
+    private static final class Track {
+        final boolean video;
+        final int timescale;
+        final SampleTableBuilder samples;
+        final Mp4Box stsd;
+        final int width;
+        final int height;
+
+        Track(boolean video, int timescale, SampleTableBuilder samples, Mp4Box stsd, int width, int height) {
+            this.video = video;
+            this.timescale = timescale;
+            this.samples = samples;
+            this.stsd = stsd;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final List<Track> mTracks = new ArrayList<>();
+
+    private int mOrientation;
+
+    void setOrientation(int orientation) {
+        mOrientation = orientation;
+    }
+
+    void addVideoTrack(int timescale, SampleTableBuilder samples, Mp4Box stsd, int width, int height) {
+        mTracks.add(new Track(true, timescale, samples, stsd, width, height));
+    }
+
+    void addAudioTrack(int timescale, SampleTableBuilder samples, Mp4Box stsd) {
+        mTracks.add(new Track(false, timescale, samples, stsd, 0, 0));
+    }
+
+    /**
+     * 电影时长，毫秒
+     */
+    long getDurationMs() {
+        long duration = 0;
+        for (Track track : mTracks) {
+            duration = Math.max(duration, track.samples.getDuration() * MOVIE_TIMESCALE / track.timescale);
+        }
+        return duration;
+    }
+
+    /**
+     * @param dataOffset mdat 数据在文件中的位置，采样表中的位置相对于此
+     */
+    Mp4Box build(long dataOffset) {
+        long duration = getDurationMs();
+        List<Mp4Box> children = new ArrayList<>();
+        ByteBuffer mvhd = ByteBuffer.allocate(100);
+        mvhd.putInt(0).putInt(0).putInt(0).putInt(MOVIE_TIMESCALE).putInt((int) duration);
+        mvhd.putInt(0x00010000); // rate
+        mvhd.putShort((short) 0x0100); // volume
+        mvhd.position(36);
+        putMatrix(mvhd, 0);
+        mvhd.position(96);
+        mvhd.putInt(mTracks.size() + 1); // next_track_ID
+        children.add(new Mp4Box("mvhd", mvhd.array()));
+        for (int i = 0; i < mTracks.size(); i++) {
+            children.add(trak(i + 1, mTracks.get(i), duration, dataOffset));
+        }
+        return new Mp4Box("moov", children);
+    }
+
+    private Mp4Box trak(int id, Track track, long movieDuration, long dataOffset) {
+        ByteBuffer tkhd = ByteBuffer.allocate(84);
+        tkhd.putInt(0x00000007); // enabled, in movie, in preview
+        tkhd.putInt(0).putInt(0).putInt(id).putInt(0);
+        tkhd.putInt((int) (track.samples.getDuration() * MOVIE_TIMESCALE / track.timescale));
+        tkhd.position(36);
+        tkhd.putShort((short) (track.video ? 0 : 0x0100)); // volume
+        tkhd.position(40);
+        putMatrix(tkhd, track.video ? mOrientation : 0);
+        tkhd.putInt(track.width << 16).putInt(track.height << 16);
+
+        ByteBuffer mdhd = ByteBuffer.allocate(24);
+        mdhd.putInt(0).putInt(0).putInt(0).putInt(track.timescale).putInt((int) track.samples.getDuration());
+        mdhd.putShort((short) 0x55C4); // und
+
+        ByteBuffer hdlr = ByteBuffer.allocate(25);
+        hdlr.putInt(0).putInt(0).put((track.video ? "vide" : "soun").getBytes());
+
+        Mp4Box mediaHeader;
+        if (track.video) {
+            mediaHeader = new Mp4Box("vmhd", new byte[]{0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0});
+        } else {
+            mediaHeader = new Mp4Box("smhd", new byte[8]);
+        }
+        Mp4Box dinf = new Mp4Box("dinf", list(new Mp4Box("dref",
+                new byte[]{0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 12, 'u', 'r', 'l', ' ', 0, 0, 0, 1})));
+        Mp4Box stbl = track.samples.build(track.stsd, dataOffset);
+        Mp4Box minf = new Mp4Box("minf", list(mediaHeader, dinf, stbl));
+        Mp4Box mdia = new Mp4Box("mdia", list(new Mp4Box("mdhd", mdhd.array()),
+                new Mp4Box("hdlr", hdlr.array()), minf));
+        return new Mp4Box("trak", list(new Mp4Box("tkhd", tkhd.array()), mdia));
+    }
+
+    /**
+     * 与 MediaMuxer.setOrientationHint 相同的变换矩阵
+     */
+    private static void putMatrix(ByteBuffer out, int orientation) {
+        int one = 0x00010000;
+        int a = one;
+        int b = 0;
+        switch ((orientation % 360 + 360) % 360) {
+            case 90:
+                a = 0;
+                b = one;
+                break;
+            case 180:
+                a = -one;
+                break;
+            case 270:
+                a = 0;
+                b = -one;
+                break;
+            default:
+                break;
+        }
+        out.putInt(a).putInt(b).putInt(0);
+        out.putInt(-b).putInt(a).putInt(0);
+        out.putInt(0).putInt(0).putInt(0x40000000);
+    }
+
+    private static List<Mp4Box> list(Mp4Box... boxes) {
+        return new ArrayList<>(Arrays.asList(boxes));
+    }
+}
@@ -0,0 +1,184 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/*******************************************************************
+ * Mp4Box.java  2026-10-19
+ * <P>
+ * MP4 box 树的节点，容器 box 保存子节点，其他 box 保存原始内容<br/>
+ * 只用于 moov 这类体积较小的 box，mdat 不会读入内存<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class Mp4Box {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * 需要展开子节点的容器，其余 box 原样保存
+     */
+    private static final String[] CONTAINERS = {"moov", "trak", "mdia", "minf", "stbl", "edts", "dinf", "mvex"};
+
+    final String type;
+
+    /**
+     * 叶子节点的内容，不含 box 头
+     */
+    byte[] payload;
+
+    /**
+     * 容器的子节点
+     */
+    final List<Mp4Box> children;
+
+    Mp4Box(String type, byte[] payload) {
+        this.type = type;
+        this.payload = payload;
+        this.children = null;
+    }
+
+    Mp4Box(String type, List<Mp4Box> children) {
+        this.type = type;
+        this.payload = null;
+        this.children = children;
+    }
+
+    static boolean isContainer(String type) {
+        for (String container : CONTAINERS) {
+            if (container.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从缓冲区解析 position 到 limit 之间的所有 box
+     */
+    static List<Mp4Box> parseAll(ByteBuffer buffer) throws Mp4FormatException {
+        List<Mp4Box> boxes = new ArrayList<>();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            String type = readType(buffer);
+            if (size == 1) {
+                size = buffer.getLong();
+            } else if (size == 0) {
+                size = buffer.limit() - start;
+            }
+            int headerSize = buffer.position() - start;
+            if (size < headerSize || start + size > buffer.limit()) {
+                throw new Mp4FormatException("Bad size " + size + " of box " + type);
+            }
+            int end = (int) (start + size);
+            ByteBuffer content = buffer.duplicate();
+            content.limit(end);
+            if (isContainer(type)) {
+                boxes.add(new Mp4Box(type, parseAll(content)));
+            } else {
+                byte[] payload = new byte[end - buffer.position()];
+                content.get(payload);
+                boxes.add(new Mp4Box(type, payload));
+            }
+            buffer.position(end);
+        }
+        return boxes;
+    }
+
+    static String readType(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, ASCII);
+    }
+
+    boolean isContainer() {
+        return children != null;
+    }
+
+    /**
+     * 查找第一个指定类型的子节点
+     */
+    Mp4Box child(String childType) {
+        if (children == null) {
+            return null;
+        }
+        for (Mp4Box child : children) {
+            if (child.type.equals(childType)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按路径查找，例如 "mdia/minf/stbl"
+     */
+    Mp4Box find(String path) {
+        Mp4Box box = this;
+        for (String part : path.split("/")) {
+            box = box.child(part);
+            if (box == null) {
+                return null;
+            }
+        }
+        return box;
+    }
+
+    /**
+     * 叶子节点内容的只读视图
+     */
+    ByteBuffer content() {
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    long size() {
+        long contentSize = 0;
+        if (children != null) {
+            for (Mp4Box child : children) {
+                contentSize += child.size();
+            }
+        } else {
+            contentSize = payload.length;
+        }
+        return contentSize + 8 > 0xFFFFFFFFL ? contentSize + 16 : contentSize + 8;
+    }
+
+    void writeTo(ByteBuffer out) {
+        long size = size();
+        if (size > 0xFFFFFFFFL) {
+            out.putInt(1);
+            out.put(type.getBytes(ASCII));
+            out.putLong(size);
+        } else {
+            out.putInt((int) size);
+            out.put(type.getBytes(ASCII));
+        }
+        if (children != null) {
+            for (Mp4Box child : children) {
+                child.writeTo(out);
+            }
+        } else {
+            out.put(payload);
+        }
+    }
+
+    /**
+     * 序列化为完整的 box
+     */
+    ByteBuffer toBuffer() {
+        ByteBuffer out = ByteBuffer.allocate((int) size());
+        writeTo(out);
+        out.flip();
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return type + (children != null ? children.toString() : "(" + payload.length + ")");
+    }
+}
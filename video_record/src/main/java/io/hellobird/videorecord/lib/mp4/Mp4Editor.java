@@ -0,0 +1,370 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*******************************************************************
+ * Mp4Editor.java  2026-10-19
+ * <P>
+ * 不重新编码的 MP4 剪辑，按关键帧裁剪与分割<br/>
+ * 开始位置向前对齐到 stss 中的关键帧，媒体数据按原有的块用 FileChannel.transferTo 复制，
+ * 只重建采样表，耗时取决于复制的数据量<br/>
+ * 纯 Java 实现，可以在 JVM 上测试；输出的 moov 放在 mdat 之前，不支持分片 MP4<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Mp4Editor {
+
+    private static final long US_PER_SECOND = 1000000L;
+
+    /**
+     * 裁剪结果
+     */
+    public static final class Result {
+
+        private final long mStartUs;
+
+        private final long mEndUs;
+
+        private final long mBytes;
+
+        Result(long startUs, long endUs, long bytes) {
+            mStartUs = startUs;
+            mEndUs = endUs;
+            mBytes = bytes;
+        }
+
+        /**
+         * 实际开始时间，对齐到关键帧后不晚于请求的开始时间
+         *
+         * @return 微秒，相对原文件
+         */
+        public long getStartUs() {
+            return mStartUs;
+        }
+
+        /**
+         * 实际结束时间
+         *
+         * @return 微秒，相对原文件
+         */
+        public long getEndUs() {
+            return mEndUs;
+        }
+
+        /**
+         * 输出文件大小
+         *
+         * @return
+         */
+        public long getBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + mStartUs + "us - " + mEndUs + "us, " + mBytes + " bytes}";
+        }
+    }
+
+    private Mp4Editor() {
+    }
+
+    /**
+     * 裁剪 [startUs, endUs)，开始时间向前对齐到关键帧
+     *
+     * @param source  原文件
+     * @param target  输出文件，已存在时覆盖
+     * @param startUs 开始时间，微秒
+     * @param endUs   结束时间，微秒，超过时长时到文件末尾
+     * @return 实际裁剪的范围
+     * @throws Mp4FormatException 文件结构不支持或范围内没有数据
+     * @throws IOException        读写失败
+     */
+    public static Result trim(File source, File target, long startUs, long endUs) throws IOException {
+        if (startUs < 0 || endUs <= startUs) {
+            throw new IllegalArgumentException("Bad range " + startUs + " - " + endUs);
+        }
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileChannel input = in.getChannel();
+            Mp4Movie movie = Mp4Movie.read(input);
+            return write(movie, input, target, startUs, endUs);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 在关键帧处分割为两个文件，分割点向前对齐到关键帧
+     *
+     * @param source 原文件
+     * @param first  前半部分
+     * @param second 后半部分
+     * @param atUs   分割时间，微秒
+     * @return 两部分的实际范围
+     * @throws IOException
+     */
+    public static Result[] split(File source, File first, File second, long atUs) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileChannel input = in.getChannel();
+            Mp4Movie movie = Mp4Movie.read(input);
+            Result secondResult = write(movie, input, second, atUs, Long.MAX_VALUE);
+            Result firstResult = write(movie, input, first, 0, secondResult.getStartUs());
+            return new Result[]{firstResult, secondResult};
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 一段在原文件中连续的采样，输出为一个块
+     */
+    private static final class Run {
+        final int track;
+        final int firstSample;
+        int sampleCount;
+        final long sourceOffset;
+        long length;
+        long targetOffset;
+
+        Run(int track, int firstSample, long sourceOffset) {
+            this.track = track;
+            this.firstSample = firstSample;
+            this.sourceOffset = sourceOffset;
+        }
+    }
+
+    private static Result write(Mp4Movie movie, FileChannel input, File target, long startUs, long endUs)
+            throws IOException {
+        Mp4Movie.Track reference = referenceTrack(movie);
+        SampleTable referenceSamples = reference.samples;
+        if (toTimescale(startUs, reference.timescale) >= referenceSamples.getDuration()) {
+            throw new Mp4FormatException("Start " + startUs + "us is beyond the end");
+        }
+        int first = referenceSamples.syncSampleAtOrBefore(toTimescale(startUs, reference.timescale));
+        int last = referenceSamples.firstSampleAtOrAfter(toTimescale(endUs, reference.timescale));
+        if (last <= first) {
+            throw new Mp4FormatException("No samples in range " + startUs + " - " + endUs);
+        }
+        long cutStartUs = toUs(referenceSamples.times[first], reference.timescale);
+        long cutEndUs = last < referenceSamples.sampleCount
+                ? toUs(referenceSamples.times[last], reference.timescale)
+                : toUs(referenceSamples.getDuration(), reference.timescale);
+
+        // 每条轨道选出范围内的采样，按原文件中的连续区间分组
+        int trackCount = movie.tracks.size();
+        int[] firsts = new int[trackCount];
+        int[] lasts = new int[trackCount];
+        List<Run> runs = new ArrayList<>();
+        for (int t = 0; t < trackCount; t++) {
+            Mp4Movie.Track track = movie.tracks.get(t);
+            SampleTable samples = track.samples;
+            if (track == reference) {
+                firsts[t] = first;
+                lasts[t] = last;
+            } else {
+                firsts[t] = samples.firstSampleAtOrAfter(toTimescale(cutStartUs, track.timescale));
+                lasts[t] = samples.firstSampleAtOrAfter(toTimescale(cutEndUs, track.timescale));
+            }
+            Run run = null;
+            for (int i = firsts[t]; i < lasts[t]; i++) {
+                if (run == null || samples.chunks[i] != samples.chunks[i - 1]
+                        || samples.offsets[i] != run.sourceOffset + run.length) {
+                    run = new Run(t, i, samples.offsets[i]);
+                    runs.add(run);
+                }
+                run.sampleCount++;
+                run.length += samples.sizes[i];
+            }
+        }
+        // 保持原文件中各轨道交错的顺序
+        Collections.sort(runs, new Comparator<Run>() {
+            @Override
+            public int compare(Run a, Run b) {
+                return Long.compare(a.sourceOffset, b.sourceOffset);
+            }
+        });
+        long dataSize = 0;
+        for (Run run : runs) {
+            run.targetOffset = dataSize;
+            dataSize += run.length;
+        }
+
+        // 重建采样表
+        SampleTableBuilder[] builders = new SampleTableBuilder[trackCount];
+        for (int t = 0; t < trackCount; t++) {
+            SampleTable samples = movie.tracks.get(t).samples;
+            builders[t] = new SampleTableBuilder(samples.ctsOffsets != null, samples.syncSamples != null);
+        }
+        for (Run run : runs) {
+            SampleTable samples = movie.tracks.get(run.track).samples;
+            SampleTableBuilder builder = builders[run.track];
+            builder.startChunk(run.targetOffset, samples.chunkDescriptions[samples.chunks[run.firstSample]]);
+            for (int i = run.firstSample; i < run.firstSample + run.sampleCount; i++) {
+                builder.addSample(samples.sizes[i], samples.durations[i],
+                        samples.ctsOffsets != null ? samples.ctsOffsets[i] : 0,
+                        samples.syncSamples != null && samples.isSync(i));
+            }
+        }
+        // 音频等轨道的第一个采样可能不是关键帧，也保留，由解码器处理
+
+        boolean largeMdat = dataSize + 8 > 0xFFFFFFFFL;
+        int mdatHeaderSize = largeMdat ? 16 : 8;
+        long ftypSize = movie.ftyp != null ? movie.ftyp.size() : 0;
+        // moov 大小与块位置的宽度有关，先用0计算一次，再用实际位置生成
+        Mp4Box moov = buildMoov(movie, builders, 0);
+        long dataOffset = ftypSize + moov.size() + mdatHeaderSize;
+        moov = buildMoov(movie, builders, dataOffset);
+        if (ftypSize + moov.size() + mdatHeaderSize != dataOffset) {
+            // 改用 co64 后 moov 变大
+            dataOffset = ftypSize + moov.size() + mdatHeaderSize;
+            moov = buildMoov(movie, builders, dataOffset);
+        }
+
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try {
+            out.setLength(0);
+            FileChannel output = out.getChannel();
+            if (movie.ftyp != null) {
+                writeFully(output, movie.ftyp.toBuffer());
+            }
+            writeFully(output, moov.toBuffer());
+            ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+            if (largeMdat) {
+                mdatHeader.putInt(1).put(new byte[]{'m', 'd', 'a', 't'}).putLong(dataSize + 16);
+            } else {
+                mdatHeader.putInt((int) (dataSize + 8)).put(new byte[]{'m', 'd', 'a', 't'});
+            }
+            mdatHeader.flip();
+            writeFully(output, mdatHeader);
+            for (Run run : runs) {
+                transferFully(input, run.sourceOffset, run.length, output);
+            }
+            output.force(false);
+            return new Result(cutStartUs, cutEndUs, output.size());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 以第一条视频轨为准对齐关键帧，没有视频时使用第一条轨道
+     */
+    private static Mp4Movie.Track referenceTrack(Mp4Movie movie) throws Mp4FormatException {
+        if (movie.tracks.isEmpty()) {
+            throw new Mp4FormatException("No tracks");
+        }
+        for (Mp4Movie.Track track : movie.tracks) {
+            if (track.isVideo()) {
+                return track;
+            }
+        }
+        return movie.tracks.get(0);
+    }
+
+    /**
+     * 复制 moov，替换采样表并更新时长，去掉基于原时间线的 edts
+     */
+    private static Mp4Box buildMoov(Mp4Movie movie, SampleTableBuilder[] builders, long dataOffset) {
+        List<Mp4Box> children = new ArrayList<>();
+        long movieDuration = 0;
+        int trackIndex = 0;
+        for (Mp4Box child : movie.moov.children) {
+            if (!"trak".equals(child.type)) {
+                children.add(copy(child));
+                continue;
+            }
+            Mp4Movie.Track track = movie.tracks.get(trackIndex);
+            SampleTableBuilder builder = builders[trackIndex];
+            trackIndex++;
+            long mediaDuration = builder.getDuration();
+            long trackDuration = mediaDuration * movie.timescale / track.timescale;
+            movieDuration = Math.max(movieDuration, trackDuration);
+            Mp4Box stbl = builder.build(track.stbl().child("stsd"), dataOffset);
+            children.add(replace(child, stbl, mediaDuration, trackDuration));
+        }
+        for (Mp4Box child : children) {
+            if ("mvhd".equals(child.type)) {
+                Mp4Movie.writeHeaderDuration(child, movieDuration);
+            }
+        }
+        return new Mp4Box("moov", children);
+    }
+
+    /**
+     * 复制 box 树，stbl 替换为新的采样表
+     */
+    private static Mp4Box replace(Mp4Box box, Mp4Box stbl, long mediaDuration, long trackDuration) {
+        if ("stbl".equals(box.type)) {
+            return stbl;
+        }
+        if (!box.isContainer()) {
+            Mp4Box copy = copy(box);
+            if ("mdhd".equals(box.type)) {
+                Mp4Movie.writeHeaderDuration(copy, mediaDuration);
+            } else if ("tkhd".equals(box.type)) {
+                Mp4Movie.writeTrackHeaderDuration(copy, trackDuration);
+            }
+            return copy;
+        }
+        List<Mp4Box> children = new ArrayList<>();
+        for (Mp4Box child : box.children) {
+            if (!"edts".equals(child.type)) {
+                children.add(replace(child, stbl, mediaDuration, trackDuration));
+            }
+        }
+        return new Mp4Box(box.type, children);
+    }
+
+    private static Mp4Box copy(Mp4Box box) {
+        if (box.isContainer()) {
+            List<Mp4Box> children = new ArrayList<>();
+            for (Mp4Box child : box.children) {
+                children.add(copy(child));
+            }
+            return new Mp4Box(box.type, children);
+        }
+        return new Mp4Box(box.type, box.payload.clone());
+    }
+
+    private static long toTimescale(long us, int timescale) {
+        if (us == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return us * timescale / US_PER_SECOND;
+    }
+
+    private static long toUs(long time, int timescale) {
+        return time * US_PER_SECOND / timescale;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void transferFully(FileChannel input, long position, long count, FileChannel output)
+            throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = input.transferTo(position, end - position, output);
+            if (transferred <= 0) {
+                throw new Mp4FormatException("Unexpected end of media data at " + position);
+            }
+            position += transferred;
+        }
+    }
+}
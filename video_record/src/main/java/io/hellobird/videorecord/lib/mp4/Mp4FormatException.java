@@ -0,0 +1,22 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.IOException;
+
+/*******************************************************************
+ * Mp4FormatException.java  2026-10-19
+ * <P>
+ * MP4 文件结构无法解析或不受支持<br/>
+ * <br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public class Mp4FormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public Mp4FormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,396 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************************
+ * Mp4IndexReader.java  2026-10-19
+ * <P>
+ * 只读取 moov 得到时长、分辨率、旋转角度与关键帧时间，代替 MediaMetadataRetriever<br/>
+ * 顶层只读 box 头，moov 通过内存映射读取，按位置遍历，不复制采样表，
+ * 内存占用只与关键帧数量有关<br/>
+ * 批量读取时在线程池中并行，适合相册等需要扫描大量文件的场景<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Mp4IndexReader {
+
+    private static final long US_PER_SECOND = 1000000L;
+
+    private static final int MOOV = fourcc("moov");
+    private static final int MVHD = fourcc("mvhd");
+    private static final int TRAK = fourcc("trak");
+    private static final int TKHD = fourcc("tkhd");
+    private static final int MDIA = fourcc("mdia");
+    private static final int MDHD = fourcc("mdhd");
+    private static final int HDLR = fourcc("hdlr");
+    private static final int MINF = fourcc("minf");
+    private static final int STBL = fourcc("stbl");
+    private static final int STSD = fourcc("stsd");
+    private static final int STTS = fourcc("stts");
+    private static final int CTTS = fourcc("ctts");
+    private static final int STSS = fourcc("stss");
+    private static final int STSZ = fourcc("stsz");
+    private static final int STZ2 = fourcc("stz2");
+    private static final int VIDE = fourcc("vide");
+    private static final int SOUN = fourcc("soun");
+
+    private final ByteBuffer mBuffer;
+
+    /**
+     * 最近一次 {@link #findChild} 找到的 box 的结束位置
+     */
+    private int mBoxEnd;
+
+    private Mp4IndexReader(ByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * 读取文件信息
+     *
+     * @param file MP4 文件
+     * @return
+     * @throws Mp4FormatException 没有 moov 或结构错误
+     * @throws IOException        读取失败
+     */
+    public static Mp4Info read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            long[] range = findMoov(channel, length);
+            ByteBuffer moov = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1]);
+            try {
+                return new Mp4IndexReader(moov).parseMoov(file, length);
+            } catch (IndexOutOfBoundsException e) {
+                throw new Mp4FormatException("Truncated moov: " + e);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 使用与 CPU 核数相同的线程批量读取
+     *
+     * @see #readAll(List, int)
+     */
+    public static List<Mp4Info> readAll(List<File> files) throws InterruptedException {
+        return readAll(files, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 并行批量读取，阻塞到全部完成，不要在主线程调用
+     *
+     * @param files   文件列表
+     * @param threads 线程数
+     * @return 与 files 顺序相同，无法读取的文件对应null
+     * @throws InterruptedException 等待时被中断，未完成的读取会被取消
+     */
+    public static List<Mp4Info> readAll(List<File> files, int threads) throws InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Mp4IndexReader-" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Future<Mp4Info>> futures = new ArrayList<>(files.size());
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<Mp4Info>() {
+                    @Override
+                    public Mp4Info call() throws IOException {
+                        return read(file);
+                    }
+                }));
+            }
+            List<Mp4Info> result = new ArrayList<>(files.size());
+            for (Future<Mp4Info> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException e) {
+                    result.add(null);
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 只读顶层 box 头找到 moov
+     *
+     * @return moov 在文件中的位置与大小
+     */
+    private static long[] findMoov(FileChannel channel, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long offset = 0;
+        while (offset + 8 <= length) {
+            header.clear();
+            Mp4Movie.readFully(channel, header, offset, length);
+            header.flip();
+            long size = header.getInt() & 0xFFFFFFFFL;
+            int type = header.getInt();
+            int headerSize = 8;
+            if (size == 1) {
+                if (header.remaining() < 8) {
+                    throw new Mp4FormatException("Truncated box header at " + offset);
+                }
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = length - offset;
+            }
+            if (size < headerSize || offset + size > length) {
+                throw new Mp4FormatException("Bad size " + size + " of top level box at " + offset);
+            }
+            if (type == MOOV) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new Mp4FormatException("moov too large: " + size);
+                }
+                return new long[]{offset, size};
+            }
+            offset += size;
+        }
+        throw new Mp4FormatException("No moov box");
+    }
+
+    private Mp4Info parseMoov(File file, long fileSize) throws Mp4FormatException {
+        int moovEnd = mBuffer.limit();
+        int moov = findChild(0, moovEnd, MOOV);
+        if (moov < 0) {
+            throw new Mp4FormatException("No moov box");
+        }
+        moovEnd = mBoxEnd;
+        int mvhd = require(findChild(moov, moovEnd, MVHD), "mvhd");
+        long durationUs = readDurationUs(mvhd);
+
+        List<Mp4Info.Track> tracks = new ArrayList<>();
+        int trak = findChild(moov, moovEnd, TRAK);
+        while (trak >= 0) {
+            int trakEnd = mBoxEnd;
+            tracks.add(parseTrack(trak, trakEnd));
+            trak = findChild(trakEnd, moovEnd, TRAK);
+        }
+        return new Mp4Info(file, fileSize, durationUs, tracks);
+    }
+
+    private Mp4Info.Track parseTrack(int trak, int trakEnd) throws Mp4FormatException {
+        int tkhd = require(findChild(trak, trakEnd, TKHD), "tkhd");
+        boolean tkhdV1 = mBuffer.get(tkhd) == 1;
+        int id = mBuffer.getInt(tkhd + (tkhdV1 ? 20 : 12));
+        int matrixPosition = tkhd + (tkhdV1 ? 52 : 40);
+        int[] matrix = new int[9];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = mBuffer.getInt(matrixPosition + i * 4);
+        }
+        int width = mBuffer.getInt(matrixPosition + 36) >>> 16;
+        int height = mBuffer.getInt(matrixPosition + 40) >>> 16;
+
+        int mdia = require(findChild(trak, trakEnd, MDIA), "mdia");
+        int mdiaEnd = mBoxEnd;
+        int mdhd = require(findChild(mdia, mdiaEnd, MDHD), "mdhd");
+        int timescale = readTimescale(mdhd);
+        long durationUs = readDurationUs(mdhd);
+        int hdlr = require(findChild(mdia, mdiaEnd, HDLR), "hdlr");
+        int handler = mBuffer.getInt(hdlr + 8);
+        int minf = require(findChild(mdia, mdiaEnd, MINF), "minf");
+        int stbl = require(findChild(minf, mBoxEnd, STBL), "stbl");
+        int stblEnd = mBoxEnd;
+
+        // sample entry，视频取编码尺寸，音频取采样率与声道数
+        String codec = null;
+        int sampleRate = 0;
+        int channelCount = 0;
+        int stsd = findChild(stbl, stblEnd, STSD);
+        if (stsd >= 0 && mBuffer.getInt(stsd + 4) > 0) {
+            int entry = stsd + 8;
+            codec = fourccString(mBuffer.getInt(entry + 4));
+            if (handler == VIDE) {
+                width = mBuffer.getShort(entry + 8 + 24) & 0xFFFF;
+                height = mBuffer.getShort(entry + 8 + 26) & 0xFFFF;
+            } else if (handler == SOUN) {
+                channelCount = mBuffer.getShort(entry + 8 + 16) & 0xFFFF;
+                sampleRate = mBuffer.getInt(entry + 8 + 24) >>> 16;
+            }
+        }
+        if (handler != VIDE) {
+            width = 0;
+            height = 0;
+        }
+
+        int sampleCount = 0;
+        int stsz = findChild(stbl, stblEnd, STSZ);
+        if (stsz < 0) {
+            stsz = findChild(stbl, stblEnd, STZ2);
+        }
+        if (stsz >= 0) {
+            sampleCount = mBuffer.getInt(stsz + 8);
+        }
+
+        long[] keyframes = new long[0];
+        if (handler == VIDE && sampleCount > 0) {
+            keyframes = readKeyframeTimesUs(stbl, stblEnd, sampleCount, timescale);
+        }
+        return new Mp4Info.Track(id, fourccString(handler), codec, timescale, durationUs, sampleCount,
+                width, height, sampleRate, channelCount, matrix, keyframes);
+    }
+
+    /**
+     * 按 stss 中的关键帧序号沿 stts、ctts 累加得到显示时间，不展开整个采样表
+     */
+    private long[] readKeyframeTimesUs(int stbl, int stblEnd, int sampleCount, int timescale)
+            throws Mp4FormatException {
+        int stts = require(findChild(stbl, stblEnd, STTS), "stts");
+        int sttsEntries = checkCount(mBuffer.getInt(stts + 4), mBoxEnd - stts - 8, 8);
+        int ctts = findChild(stbl, stblEnd, CTTS);
+        int cttsEntries = ctts < 0 ? 0 : checkCount(mBuffer.getInt(ctts + 4), mBoxEnd - ctts - 8, 8);
+        int stss = findChild(stbl, stblEnd, STSS);
+        int count = stss < 0 ? sampleCount : checkCount(mBuffer.getInt(stss + 4), mBoxEnd - stss - 8, 4);
+
+        long[] times = new long[count];
+        // 当前 stts 项覆盖 [sttsStart, sttsStart + sttsCount)
+        int sttsIndex = 0;
+        long sttsStart = 0;
+        long sttsCount = 0;
+        long sttsTime = 0;
+        int sttsDelta = 0;
+        int cttsIndex = 0;
+        long cttsStart = 0;
+        long cttsCount = 0;
+        int cttsOffset = 0;
+        long previous = -1;
+        for (int i = 0; i < count; i++) {
+            long sample = stss < 0 ? i : (mBuffer.getInt(stss + 8 + i * 4) & 0xFFFFFFFFL) - 1;
+            if (sample <= previous || sample >= sampleCount) {
+                throw new Mp4FormatException("Bad sync sample " + (sample + 1));
+            }
+            previous = sample;
+            while (sample >= sttsStart + sttsCount) {
+                if (sttsIndex == sttsEntries) {
+                    throw new Mp4FormatException("stts does not cover sample " + sample);
+                }
+                sttsTime += sttsCount * sttsDelta;
+                sttsStart += sttsCount;
+                sttsCount = mBuffer.getInt(stts + 8 + sttsIndex * 8) & 0xFFFFFFFFL;
+                sttsDelta = mBuffer.getInt(stts + 12 + sttsIndex * 8);
+                sttsIndex++;
+            }
+            long time = sttsTime + (sample - sttsStart) * sttsDelta;
+            while (sample >= cttsStart + cttsCount && cttsIndex < cttsEntries) {
+                cttsStart += cttsCount;
+                cttsCount = mBuffer.getInt(ctts + 8 + cttsIndex * 8) & 0xFFFFFFFFL;
+                cttsOffset = mBuffer.getInt(ctts + 12 + cttsIndex * 8);
+                cttsIndex++;
+            }
+            if (sample < cttsStart + cttsCount) {
+                time += cttsOffset;
+            }
+            times[i] = time * US_PER_SECOND / timescale;
+        }
+        return times;
+    }
+
+    /**
+     * 在 [start, end) 内查找子 box
+     *
+     * @return 内容开始的位置，没有时返回-1；box 结束位置保存在 {@link #mBoxEnd}
+     */
+    private int findChild(int start, int end, int type) throws Mp4FormatException {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = mBuffer.getInt(position) & 0xFFFFFFFFL;
+            int boxType = mBuffer.getInt(position + 4);
+            int headerSize = 8;
+            if (size == 1) {
+                size = mBuffer.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) {
+                throw new Mp4FormatException("Bad size " + size + " of box " + fourccString(boxType));
+            }
+            if (boxType == type) {
+                mBoxEnd = (int) (position + size);
+                return position + headerSize;
+            }
+            position += size;
+        }
+        return -1;
+    }
+
+    private int readTimescale(int header) throws Mp4FormatException {
+        int timescale = mBuffer.getInt(header + (mBuffer.get(header) == 1 ? 20 : 12));
+        if (timescale <= 0) {
+            throw new Mp4FormatException("Bad timescale " + timescale);
+        }
+        return timescale;
+    }
+
+    /**
+     * mvhd、mdhd 中的时长
+     */
+    private long readDurationUs(int header) throws Mp4FormatException {
+        long duration;
+        if (mBuffer.get(header) == 1) {
+            duration = mBuffer.getLong(header + 24);
+        } else {
+            duration = mBuffer.getInt(header + 16) & 0xFFFFFFFFL;
+            if (duration == 0xFFFFFFFFL) {
+                duration = 0;
+            }
+        }
+        return duration * US_PER_SECOND / readTimescale(header);
+    }
+
+    private static int require(int position, String type) throws Mp4FormatException {
+        if (position < 0) {
+            throw new Mp4FormatException("No " + type + " box");
+        }
+        return position;
+    }
+
+    /**
+     * 检查表项数量不超过 box 的大小，避免按错误的数量分配内存
+     */
+    private static int checkCount(int count, int available, int entrySize) throws Mp4FormatException {
+        if (count < 0 || (long) count * entrySize > available) {
+            throw new Mp4FormatException("Bad entry count " + count);
+        }
+        return count;
+    }
+
+    private static int fourcc(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+
+    private static String fourccString(int type) {
+        return new String(new char[]{(char) (type >>> 24 & 0xFF), (char) (type >>> 16 & 0xFF),
+                (char) (type >>> 8 & 0xFF), (char) (type & 0xFF)});
+    }
+}
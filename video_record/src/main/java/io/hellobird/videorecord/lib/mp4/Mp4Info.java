@@ -0,0 +1,260 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/*******************************************************************
+ * Mp4Info.java  2026-10-19
+ * <P>
+ * 从 moov 读出的文件信息，时长、轨道格式、旋转角度与关键帧时间<br/>
+ * 由 {@link Mp4IndexReader} 生成，不可变<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Mp4Info {
+
+    /**
+     * 一条轨道的信息
+     */
+    public static final class Track {
+
+        private final int mId;
+
+        private final String mHandler;
+
+        private final String mCodec;
+
+        private final int mTimescale;
+
+        private final long mDurationUs;
+
+        private final int mSampleCount;
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final int mSampleRate;
+
+        private final int mChannelCount;
+
+        private final int[] mMatrix;
+
+        private final long[] mKeyframeTimesUs;
+
+        Track(int id, String handler, String codec, int timescale, long durationUs, int sampleCount,
+              int width, int height, int sampleRate, int channelCount, int[] matrix, long[] keyframeTimesUs) {
+            mId = id;
+            mHandler = handler;
+            mCodec = codec;
+            mTimescale = timescale;
+            mDurationUs = durationUs;
+            mSampleCount = sampleCount;
+            mWidth = width;
+            mHeight = height;
+            mSampleRate = sampleRate;
+            mChannelCount = channelCount;
+            mMatrix = matrix;
+            mKeyframeTimesUs = keyframeTimesUs;
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        /**
+         * 轨道类型，例如 vide、soun
+         *
+         * @return
+         */
+        public String getHandler() {
+            return mHandler;
+        }
+
+        public boolean isVideo() {
+            return "vide".equals(mHandler);
+        }
+
+        public boolean isAudio() {
+            return "soun".equals(mHandler);
+        }
+
+        /**
+         * sample entry 的类型，例如 avc1、hvc1、mp4a
+         *
+         * @return
+         */
+        public String getCodec() {
+            return mCodec;
+        }
+
+        public int getTimescale() {
+            return mTimescale;
+        }
+
+        public long getDurationUs() {
+            return mDurationUs;
+        }
+
+        public int getSampleCount() {
+            return mSampleCount;
+        }
+
+        /**
+         * 视频宽度，不考虑旋转，非视频轨为0
+         *
+         * @return
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * 音频采样率，非音频轨为0
+         *
+         * @return
+         */
+        public int getSampleRate() {
+            return mSampleRate;
+        }
+
+        public int getChannelCount() {
+            return mChannelCount;
+        }
+
+        /**
+         * tkhd 中的变换矩阵，前6个是 16.16 定点数，其余是 2.30 定点数
+         *
+         * @return 9个元素的副本
+         */
+        public int[] getMatrix() {
+            return mMatrix.clone();
+        }
+
+        /**
+         * 由变换矩阵计算的顺时针旋转角度
+         *
+         * @return 0、90、180 或 270
+         */
+        public int getRotation() {
+            double degrees = Math.toDegrees(Math.atan2(mMatrix[1], mMatrix[0]));
+            int rotation = (int) (Math.round(degrees / 90) * 90);
+            return (rotation + 360) % 360;
+        }
+
+        /**
+         * 关键帧的显示时间，只有视频轨会计算
+         *
+         * @return 微秒，递增；非视频轨为空数组
+         */
+        public long[] getKeyframeTimesUs() {
+            return mKeyframeTimesUs.clone();
+        }
+
+        public int getKeyframeCount() {
+            return mKeyframeTimesUs.length;
+        }
+
+        @Override
+        public String toString() {
+            return "Track{" + mId + " " + mHandler + "/" + mCodec + ", " + mDurationUs + "us, "
+                    + mSampleCount + " samples}";
+        }
+    }
+
+    private final File mFile;
+
+    private final long mFileSize;
+
+    private final long mDurationUs;
+
+    private final List<Track> mTracks;
+
+    Mp4Info(File file, long fileSize, long durationUs, List<Track> tracks) {
+        mFile = file;
+        mFileSize = fileSize;
+        mDurationUs = durationUs;
+        mTracks = Collections.unmodifiableList(tracks);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    /**
+     * mvhd 中的时长
+     *
+     * @return 微秒
+     */
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    public List<Track> getTracks() {
+        return mTracks;
+    }
+
+    /**
+     * 第一条视频轨
+     *
+     * @return 没有视频时返回null
+     */
+    public Track getVideoTrack() {
+        for (Track track : mTracks) {
+            if (track.isVideo()) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 第一条音频轨
+     *
+     * @return 没有音频时返回null
+     */
+    public Track getAudioTrack() {
+        for (Track track : mTracks) {
+            if (track.isAudio()) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    public int getWidth() {
+        Track video = getVideoTrack();
+        return video != null ? video.getWidth() : 0;
+    }
+
+    public int getHeight() {
+        Track video = getVideoTrack();
+        return video != null ? video.getHeight() : 0;
+    }
+
+    /**
+     * 视频的旋转角度，与 MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION 相同
+     *
+     * @return
+     */
+    public int getRotation() {
+        Track video = getVideoTrack();
+        return video != null ? video.getRotation() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp4Info{" + mFile + ", " + mDurationUs + "us, " + mTracks + "}";
+    }
+}
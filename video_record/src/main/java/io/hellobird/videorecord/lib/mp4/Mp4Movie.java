@@ -0,0 +1,205 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/*******************************************************************
+ * Mp4Movie.java  2026-10-19
+ * <P>
+ * 读取 MP4 文件的顶层结构与 moov，得到每条轨道的采样表<br/>
+ * 只把 moov 读入内存，媒体数据留在文件中<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class Mp4Movie {
+
+    /**
+     * ftyp，可能为null
+     */
+    final Mp4Box ftyp;
+
+    final Mp4Box moov;
+
+    /**
+     * 电影时间单位
+     */
+    final int timescale;
+
+    final List<Track> tracks;
+
+    static final class Track {
+
+        final Mp4Box trak;
+
+        /**
+         * 轨道类型，例如 vide、soun
+         */
+        final String handler;
+
+        /**
+         * 轨道时间单位
+         */
+        final int timescale;
+
+        final SampleTable samples;
+
+        Track(Mp4Box trak, String handler, int timescale, SampleTable samples) {
+            this.trak = trak;
+            this.handler = handler;
+            this.timescale = timescale;
+            this.samples = samples;
+        }
+
+        boolean isVideo() {
+            return "vide".equals(handler);
+        }
+
+        Mp4Box stbl() {
+            return trak.find("mdia/minf/stbl");
+        }
+    }
+
+    private Mp4Movie(Mp4Box ftyp, Mp4Box moov, int timescale, List<Track> tracks) {
+        this.ftyp = ftyp;
+        this.moov = moov;
+        this.timescale = timescale;
+        this.tracks = tracks;
+    }
+
+    /**
+     * 读取文件
+     *
+     * @param channel 文件
+     * @return
+     * @throws Mp4FormatException 结构错误，或者是不支持的分片 MP4
+     */
+    static Mp4Movie read(FileChannel channel) throws IOException {
+        Mp4Box ftyp = null;
+        Mp4Box moov = null;
+        long length = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(16);
+        while (offset + 8 <= length) {
+            header.clear();
+            header.limit(16);
+            readFully(channel, header, offset, length);
+            header.flip();
+            long size = header.getInt() & 0xFFFFFFFFL;
+            String type = Mp4Box.readType(header);
+            int headerSize = 8;
+            if (size == 1) {
+                if (header.remaining() < 8) {
+                    throw new Mp4FormatException("Truncated box header at " + offset);
+                }
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = length - offset;
+            }
+            if (size < headerSize || offset + size > length) {
+                throw new Mp4FormatException("Bad size " + size + " of top level box " + type + " at " + offset);
+            }
+            if ("moov".equals(type) || "ftyp".equals(type)) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new Mp4FormatException("Box " + type + " too large: " + size);
+                }
+                ByteBuffer box = ByteBuffer.allocate((int) size);
+                readFully(channel, box, offset, offset + size);
+                box.flip();
+                Mp4Box parsed = Mp4Box.parseAll(box).get(0);
+                if ("moov".equals(type)) {
+                    moov = parsed;
+                } else {
+                    ftyp = parsed;
+                }
+            }
+            offset += size;
+        }
+        if (moov == null) {
+            throw new Mp4FormatException("No moov box");
+        }
+        if (moov.child("mvex") != null) {
+            throw new Mp4FormatException("Fragmented MP4 is not supported");
+        }
+        try {
+            Mp4Box mvhd = moov.child("mvhd");
+            if (mvhd == null) {
+                throw new Mp4FormatException("No mvhd box");
+            }
+            int timescale = readTimescale(mvhd);
+            List<Track> tracks = new ArrayList<>();
+            for (Mp4Box child : moov.children) {
+                if (!"trak".equals(child.type)) {
+                    continue;
+                }
+                Mp4Box mdhd = child.find("mdia/mdhd");
+                Mp4Box hdlr = child.find("mdia/hdlr");
+                Mp4Box stbl = child.find("mdia/minf/stbl");
+                if (mdhd == null || hdlr == null || stbl == null) {
+                    throw new Mp4FormatException("Incomplete track " + child);
+                }
+                ByteBuffer hdlrContent = hdlr.content();
+                hdlrContent.position(8);
+                String handler = Mp4Box.readType(hdlrContent);
+                tracks.add(new Track(child, handler, readTimescale(mdhd), SampleTable.parse(stbl)));
+            }
+            return new Mp4Movie(ftyp, moov, timescale, tracks);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new Mp4FormatException("Truncated table: " + e);
+        }
+    }
+
+    /**
+     * 读取 mvhd 或 mdhd 中的时间单位
+     */
+    static int readTimescale(Mp4Box box) {
+        ByteBuffer content = box.content();
+        int version = content.get(0) & 0xFF;
+        return content.getInt(version == 1 ? 20 : 12);
+    }
+
+    /**
+     * 修改 mvhd、mdhd 中的时长
+     */
+    static void writeHeaderDuration(Mp4Box box, long duration) {
+        ByteBuffer content = ByteBuffer.wrap(box.payload);
+        int version = content.get(0) & 0xFF;
+        if (version == 1) {
+            content.putLong(24, duration);
+        } else {
+            content.putInt(16, (int) Math.min(duration, 0xFFFFFFFFL));
+        }
+    }
+
+    /**
+     * 修改 tkhd 中的时长
+     */
+    static void writeTrackHeaderDuration(Mp4Box tkhd, long duration) {
+        ByteBuffer content = ByteBuffer.wrap(tkhd.payload);
+        int version = content.get(0) & 0xFF;
+        if (version == 1) {
+            content.putLong(28, duration);
+        } else {
+            content.putInt(20, (int) Math.min(duration, 0xFFFFFFFFL));
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position, long end) throws IOException {
+        if (end - position < buffer.remaining()) {
+            buffer.limit(buffer.position() + (int) (end - position));
+        }
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new Mp4FormatException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+}
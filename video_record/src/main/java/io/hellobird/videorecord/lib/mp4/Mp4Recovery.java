@@ -0,0 +1,836 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*******************************************************************
+ * Mp4Recovery.java  2026-10-19
+ * <P>
+ * 修复录制中进程退出留下的没有 moov 的 MP4 文件<br/>
+ * 从 mdat 开始依次识别 4 字节长度加 NAL 的视频数据与 AAC 帧，按录制开始时保存的
+ * {@link RecoveryInfo} 或一个相同设置录制的完整文件生成采样表，在有效数据之后补写 moov<br/>
+ * 原地修改，不复制媒体数据；读取使用固定大小的窗口，内存占用与文件大小无关，
+ * 只有重建的采样表随采样数增长<br/>
+ * AAC 帧没有长度字段，按 ID_END 结尾与下一帧的元素头判断边界，个别帧切分错误时只影响这一帧<br/>
+ * 无法识别的数据会跳过直到下一段视频，其中的音频会丢失<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Mp4Recovery {
+
+    private static final int WINDOW_SIZE = 1024 * 1024;
+
+    private static final int VIDEO_TIMESCALE = 90000;
+
+    private static final int AAC_FRAME_SAMPLES = 1024;
+
+    /**
+     * AAC 每声道每帧最多 6144 位
+     */
+    private static final int AAC_MAX_CHANNEL_BYTES = 768;
+
+    private static final int DEFAULT_AUDIO_BIT_RATE = 96000;
+
+    private static final int MIN_AAC_FRAME = 4;
+
+    /**
+     * 一次识别的连续音频数据上限，MediaMuxer 交错写入时每段音频不到1秒
+     */
+    private static final int MAX_AUDIO_RUN = 4 * 1024 * 1024;
+
+    private static final int EIGHT_SHORT_SEQUENCE = 2;
+
+    /**
+     * 长窗口缩放因子带数的最大值，32kHz 时为51
+     */
+    private static final int MAX_SFB_LONG = 51;
+
+    /**
+     * 正常编码数据的 global_gain 不会太小，用于排除预分配的全零数据
+     */
+    private static final int MIN_GLOBAL_GAIN = 64;
+
+    /**
+     * 单个 NAL 的最大长度
+     */
+    private static final long MAX_NAL_SIZE = 32L * 1024 * 1024;
+
+    /**
+     * 连续全零超过此长度时认为是预分配的空间，不再向后查找
+     */
+    private static final int MAX_ZERO_RUN = 64 * 1024;
+
+    /**
+     * 码流中最多收集的参数集数量
+     */
+    private static final int MAX_PARAMETER_SETS = 8;
+
+    /**
+     * 修复结果
+     */
+    public static final class Result {
+
+        private final int mVideoSamples;
+
+        private final int mAudioSamples;
+
+        private final long mDurationMs;
+
+        private final long mSkippedBytes;
+
+        private final long mDiscardedBytes;
+
+        Result(int videoSamples, int audioSamples, long durationMs, long skippedBytes, long discardedBytes) {
+            mVideoSamples = videoSamples;
+            mAudioSamples = audioSamples;
+            mDurationMs = durationMs;
+            mSkippedBytes = skippedBytes;
+            mDiscardedBytes = discardedBytes;
+        }
+
+        public int getVideoSamples() {
+            return mVideoSamples;
+        }
+
+        public int getAudioSamples() {
+            return mAudioSamples;
+        }
+
+        public long getDurationMs() {
+            return mDurationMs;
+        }
+
+        /**
+         * 数据中间无法识别而跳过的字节数
+         *
+         * @return
+         */
+        public long getSkippedBytes() {
+            return mSkippedBytes;
+        }
+
+        /**
+         * 文件末尾不完整或预分配而截掉的字节数
+         *
+         * @return
+         */
+        public long getDiscardedBytes() {
+            return mDiscardedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{video " + mVideoSamples + ", audio " + mAudioSamples + ", " + mDurationMs + "ms, skipped "
+                    + mSkippedBytes + ", discarded " + mDiscardedBytes + "}";
+        }
+    }
+
+    private Mp4Recovery() {
+    }
+
+    /**
+     * 是否是需要修复的文件：有 mdat 但没有 moov
+     *
+     * @param file MP4 文件
+     * @return
+     * @throws IOException
+     */
+    public static boolean needsRecovery(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return findMdat(raf.getChannel()) != null;
+        } catch (Mp4FormatException e) {
+            return false;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 使用同名的旁路文件修复，成功后删除旁路文件
+     *
+     * @param file 没有 moov 的文件
+     * @return
+     * @throws Mp4FormatException 无法修复
+     * @throws IOException        读写失败
+     */
+    public static Result recover(File file) throws IOException {
+        File sidecar = RecoveryInfo.sidecarOf(file);
+        Result result = recover(file, RecoveryInfo.read(sidecar), null);
+        sidecar.delete();
+        return result;
+    }
+
+    /**
+     * 修复文件
+     *
+     * @param file      没有 moov 的文件
+     * @param info      录制开始时保存的参数，可以为null，此时完全使用参考文件
+     * @param reference 相同设置录制的完整文件，可以为null。旁路文件没有编码参数时（例如 MediaRecorder 录制），
+     *                  使用它的 sample description
+     * @return
+     * @throws Mp4FormatException 无法修复，文件没有被修改
+     * @throws IOException        读写失败
+     */
+    public static Result recover(File file, RecoveryInfo info, File reference) throws IOException {
+        if (info == null && reference == null) {
+            throw new IllegalArgumentException("RecoveryInfo or reference required");
+        }
+        Config config = reference != null ? Config.fromReference(info, reference) : Config.fromInfo(info);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long[] mdat = findMdat(channel);
+            if (mdat == null) {
+                throw new Mp4FormatException("File already has a moov box");
+            }
+            long headerOffset = mdat[0];
+            long dataStart = mdat[1];
+            long length = channel.size();
+
+            Scanner scanner = new Scanner(new Window(channel), config, dataStart, length);
+            scanner.scan();
+            if (scanner.mVideo.getSampleCount() == 0) {
+                throw new Mp4FormatException("No video samples found");
+            }
+            Mp4Box videoStsd = config.videoStsd;
+            if (videoStsd == null) {
+                // 旁路文件中没有参数集时使用码流中的
+                RecoveryInfo.Builder builder = config.info.buildUpon();
+                for (byte[] parameterSet : scanner.mParameterSets) {
+                    builder.addParameterSet(parameterSet);
+                }
+                videoStsd = SampleEntries.video(builder.build());
+            }
+
+            MoovBuilder moovBuilder = new MoovBuilder();
+            moovBuilder.setOrientation(config.orientation);
+            moovBuilder.addVideoTrack(VIDEO_TIMESCALE, scanner.mVideo, videoStsd, config.width, config.height);
+            if (scanner.mAudio != null && scanner.mAudio.getSampleCount() > 0) {
+                moovBuilder.addAudioTrack(config.sampleRate, scanner.mAudio, config.audioStsd);
+            }
+            ByteBuffer moov = moovBuilder.build(dataStart).toBuffer();
+
+            long dataEnd = scanner.mDataEnd;
+            long mdatSize = dataEnd - headerOffset;
+            boolean largeHeader = dataStart - headerOffset == 16;
+            if (!largeHeader && mdatSize > 0xFFFFFFFFL) {
+                throw new Mp4FormatException("mdat of " + mdatSize + " bytes does not fit a 32-bit header");
+            }
+
+            // 先写 moov 再改 mdat 大小，中途失败时文件仍然可以再次修复
+            raf.setLength(dataEnd);
+            writeFully(channel, moov, dataEnd);
+            channel.force(false);
+            ByteBuffer size = ByteBuffer.allocate(largeHeader ? 8 : 4);
+            if (largeHeader) {
+                size.putLong(mdatSize).flip();
+                writeFully(channel, size, headerOffset + 8);
+            } else {
+                size.putInt((int) mdatSize).flip();
+                writeFully(channel, size, headerOffset);
+            }
+            channel.force(false);
+            return new Result(scanner.mVideo.getSampleCount(),
+                    scanner.mAudio != null ? scanner.mAudio.getSampleCount() : 0,
+                    moovBuilder.getDurationMs(), scanner.mSkippedBytes, length - dataEnd);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 查找 mdat，遇到 moov 时说明文件是完整的
+     *
+     * @return mdat 头的位置与数据开始的位置，文件已有 moov 时返回null
+     * @throws Mp4FormatException 没有 mdat 或结构错误
+     */
+    private static long[] findMdat(FileChannel channel) throws IOException {
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long offset = 0;
+        long[] mdat = null;
+        while (offset + 8 <= length) {
+            header.clear();
+            Mp4Movie.readFully(channel, header, offset, length);
+            header.flip();
+            long size = header.getInt() & 0xFFFFFFFFL;
+            String type = Mp4Box.readType(header);
+            int headerSize = 8;
+            if (size == 1 && header.remaining() >= 8) {
+                size = header.getLong();
+                headerSize = 16;
+            }
+            if ("moov".equals(type)) {
+                return null;
+            }
+            if ("mdat".equals(type)) {
+                if (size < headerSize || offset + size > length || mdat != null) {
+                    // 录制中 mdat 的大小还没有写入
+                    return mdat != null ? mdat : new long[]{offset, offset + headerSize};
+                }
+                mdat = new long[]{offset, offset + headerSize};
+            } else if (size < headerSize || offset + size > length) {
+                break;
+            }
+            offset += size;
+        }
+        if (mdat == null) {
+            throw new Mp4FormatException("No mdat box");
+        }
+        return mdat;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 修复使用的编码参数
+     */
+    private static final class Config {
+        RecoveryInfo info;
+        boolean hevc;
+        int width;
+        int height;
+        int frameRate;
+        int orientation;
+        /**
+         * 为null时使用旁路文件或码流中的参数集生成
+         */
+        Mp4Box videoStsd;
+        boolean audio;
+        int sampleRate;
+        int channelCount;
+        int audioBitRate;
+        Mp4Box audioStsd;
+
+        static Config fromInfo(RecoveryInfo info) throws Mp4FormatException {
+            if (info.getVideoMime() == null) {
+                throw new Mp4FormatException("Unknown video codec, a reference file is required");
+            }
+            Config config = new Config();
+            config.info = info;
+            config.hevc = info.isHevc();
+            config.width = info.getWidth();
+            config.height = info.getHeight();
+            config.frameRate = info.getFrameRate();
+            config.orientation = info.getOrientation();
+            if (!info.getParameterSets().isEmpty()) {
+                config.videoStsd = SampleEntries.video(info);
+            }
+            if (info.hasAudio()) {
+                config.audio = true;
+                config.sampleRate = info.getAudioSampleRate();
+                config.channelCount = info.getAudioChannelCount();
+                config.audioBitRate = info.getAudioBitRate();
+                config.audioStsd = SampleEntries.audio(info);
+            }
+            return config;
+        }
+
+        static Config fromReference(RecoveryInfo info, File reference) throws IOException {
+            Mp4Info referenceInfo = Mp4IndexReader.read(reference);
+            Mp4Info.Track video = referenceInfo.getVideoTrack();
+            if (video == null) {
+                throw new Mp4FormatException("Reference has no video track");
+            }
+            Mp4Movie movie;
+            RandomAccessFile in = new RandomAccessFile(reference, "r");
+            try {
+                movie = Mp4Movie.read(in.getChannel());
+            } finally {
+                in.close();
+            }
+            Config config = new Config();
+            config.info = info;
+            String codec = video.getCodec();
+            if ("hvc1".equals(codec) || "hev1".equals(codec)) {
+                config.hevc = true;
+            } else if (!"avc1".equals(codec) && !"avc3".equals(codec)) {
+                throw new Mp4FormatException("Unsupported reference codec " + codec);
+            }
+            config.width = video.getWidth();
+            config.height = video.getHeight();
+            config.frameRate = info != null ? info.getFrameRate() : estimateFrameRate(video);
+            config.orientation = info != null ? info.getOrientation() : video.getRotation();
+            config.videoStsd = stsdOf(movie, true);
+            Mp4Info.Track audio = referenceInfo.getAudioTrack();
+            if (audio != null && "mp4a".equals(audio.getCodec()) && audio.getChannelCount() >= 1
+                    && audio.getChannelCount() <= 2) {
+                config.audio = true;
+                config.sampleRate = audio.getSampleRate();
+                config.channelCount = audio.getChannelCount();
+                config.audioStsd = stsdOf(movie, false);
+            }
+            return config;
+        }
+
+        private static int estimateFrameRate(Mp4Info.Track video) {
+            if (video.getDurationUs() <= 0) {
+                return 30;
+            }
+            return (int) Math.max(1, Math.round(video.getSampleCount() * 1000000.0 / video.getDurationUs()));
+        }
+
+        private static Mp4Box stsdOf(Mp4Movie movie, boolean video) throws Mp4FormatException {
+            for (Mp4Movie.Track track : movie.tracks) {
+                if (track.isVideo() == video && (video || "soun".equals(track.handler))) {
+                    Mp4Box stsd = track.stbl().child("stsd");
+                    if (stsd != null) {
+                        return new Mp4Box("stsd", stsd.payload.clone());
+                    }
+                }
+            }
+            throw new Mp4FormatException("Reference has no " + (video ? "video" : "audio") + " sample description");
+        }
+    }
+
+    /**
+     * 在文件上滑动的读取窗口
+     */
+    private static final class Window {
+
+        private final FileChannel mChannel;
+
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(WINDOW_SIZE);
+
+        private long mStart;
+
+        private int mLength;
+
+        Window(FileChannel channel) {
+            mChannel = channel;
+        }
+
+        int byteAt(long position) throws IOException {
+            if (position < mStart || position >= mStart + mLength) {
+                fill(position);
+            }
+            return mBuffer.get((int) (position - mStart)) & 0xFF;
+        }
+
+        long uintAt(long position) throws IOException {
+            if (position < mStart || position + 4 > mStart + mLength) {
+                fill(position);
+            }
+            return mBuffer.getInt((int) (position - mStart)) & 0xFFFFFFFFL;
+        }
+
+        /**
+         * 从指定位置稍前开始读取，向前查看少量字节时不需要重新读取
+         */
+        private void fill(long position) throws IOException {
+            mStart = Math.max(0, position - 64);
+            mBuffer.clear();
+            while (mBuffer.hasRemaining()) {
+                int read = mChannel.read(mBuffer, mStart + mBuffer.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            mLength = mBuffer.position();
+            if (position >= mStart + mLength) {
+                throw new Mp4FormatException("Read beyond end at " + position);
+            }
+        }
+    }
+
+    /**
+     * 顺序识别 mdat 中的采样
+     */
+    private static final class Scanner {
+
+        private final Window mIn;
+
+        private final Config mConfig;
+
+        private final boolean mHevc;
+
+        private final int mHeaderSize;
+
+        private final long mDataStart;
+
+        private final long mEnd;
+
+        final SampleTableBuilder mVideo = new SampleTableBuilder(false, true);
+
+        final SampleTableBuilder mAudio;
+
+        final List<byte[]> mParameterSets = new ArrayList<>();
+
+        /**
+         * 最后一个有效采样的结束位置
+         */
+        long mDataEnd;
+
+        long mSkippedBytes;
+
+        /**
+         * 上一个采样所属的轨道，0视频，1音频，-1没有
+         */
+        private int mLastTrack = -1;
+
+        private long mSampleStart = -1;
+
+        private long mSampleSize;
+
+        private boolean mSampleSync;
+
+        private boolean mSampleHasVcl;
+
+        private int mVideoDelta;
+
+        private double mAudioFrameSize;
+
+        Scanner(Window in, Config config, long dataStart, long end) {
+            mIn = in;
+            mConfig = config;
+            mHevc = config.hevc;
+            mHeaderSize = NalUnits.headerSize(mHevc);
+            mDataStart = dataStart;
+            mEnd = end;
+            mDataEnd = dataStart;
+            mVideoDelta = VIDEO_TIMESCALE / Math.max(1, config.frameRate);
+            if (config.audio) {
+                mAudio = new SampleTableBuilder(false, false);
+                int bitRate = config.audioBitRate > 0 ? config.audioBitRate : DEFAULT_AUDIO_BIT_RATE;
+                mAudioFrameSize = bitRate / 8.0 * AAC_FRAME_SAMPLES / config.sampleRate;
+            } else {
+                mAudio = null;
+            }
+        }
+
+        void scan() throws IOException {
+            long position = mDataStart;
+            while (position < mEnd) {
+                long next = videoNalEnd(position, true);
+                if (next > 0) {
+                    onNal(position, next);
+                    position = next;
+                    continue;
+                }
+                closeVideoSample();
+                if (mAudio != null) {
+                    next = scanAudioRun(position);
+                    if (next > 0) {
+                        position = next;
+                        continue;
+                    }
+                }
+                next = resync(position + 1);
+                if (next < 0) {
+                    break;
+                }
+                mSkippedBytes += next - position;
+                position = next;
+            }
+            closeVideoSample();
+        }
+
+        private void onNal(long position, long next) throws IOException {
+            int header = mIn.byteAt(position + 4);
+            int type = NalUnits.type(mHevc, header);
+            boolean vcl = NalUnits.isVcl(mHevc, type);
+            boolean startsPicture;
+            if (vcl) {
+                startsPicture = NalUnits.isFirstSlice(mIn.byteAt(position + 4 + mHeaderSize));
+            } else {
+                startsPicture = type != (mHevc ? NalUnits.HEVC_SUFFIX_SEI : -1);
+            }
+            if (mSampleStart >= 0 && mSampleHasVcl && startsPicture) {
+                closeVideoSample();
+            }
+            if (mSampleStart < 0) {
+                mSampleStart = position;
+                mSampleSize = 0;
+                mSampleSync = false;
+                mSampleHasVcl = false;
+            }
+            mSampleSize += next - position;
+            if (vcl) {
+                mSampleHasVcl = true;
+                mSampleSync |= NalUnits.isSync(mHevc, type);
+            } else if (NalUnits.isParameterSet(mHevc, type)) {
+                collectParameterSet(position + 4, next);
+            }
+        }
+
+        private void closeVideoSample() {
+            if (mSampleStart < 0) {
+                return;
+            }
+            if (mSampleHasVcl) {
+                addSample(0, mSampleStart, mSampleSize, mSampleSync);
+            } else {
+                mSkippedBytes += mSampleSize;
+            }
+            mSampleStart = -1;
+        }
+
+        private void addSample(int track, long position, long size, boolean sync) {
+            SampleTableBuilder table = track == 0 ? mVideo : mAudio;
+            if (mLastTrack != track || position != mDataEnd || table.getSampleCount() == 0) {
+                table.startChunk(position - mDataStart, 1);
+            }
+            if (track == 0) {
+                table.addSample((int) size, mVideoDelta, 0, sync);
+            } else {
+                table.addSample((int) size, AAC_FRAME_SAMPLES, 0, true);
+                mAudioFrameSize = mAudioFrameSize * 0.9 + size * 0.1;
+            }
+            mLastTrack = track;
+            mDataEnd = position + size;
+        }
+
+        private void collectParameterSet(long start, long end) throws IOException {
+            if (mParameterSets.size() >= MAX_PARAMETER_SETS || end - start > 1024) {
+                return;
+            }
+            byte[] nal = new byte[(int) (end - start)];
+            for (int i = 0; i < nal.length; i++) {
+                nal[i] = (byte) mIn.byteAt(start + i);
+            }
+            for (byte[] known : mParameterSets) {
+                if (Arrays.equals(known, nal)) {
+                    return;
+                }
+            }
+            mParameterSets.add(nal);
+        }
+
+        /**
+         * 指定位置是否像一个长度加 NAL
+         *
+         * @param chain 是否同时检查其后的数据，减少误判
+         * @return NAL 结束的位置，不像时返回-1
+         */
+        private long videoNalEnd(long position, boolean chain) throws IOException {
+            if (position + 4 + mHeaderSize > mEnd) {
+                return -1;
+            }
+            long length = mIn.uintAt(position);
+            if (length < mHeaderSize + 1 || length > MAX_NAL_SIZE) {
+                return -1;
+            }
+            int header0 = mIn.byteAt(position + 4);
+            int header1 = mHevc ? mIn.byteAt(position + 5) : 0;
+            if (!NalUnits.isValidHeader(mHevc, header0, header1)) {
+                return -1;
+            }
+            long next = position + 4 + length;
+            if (!chain) {
+                return next;
+            }
+            if (next > mEnd) {
+                // 最后一个不完整的 NAL
+                return -1;
+            }
+            if (next == mEnd || next + 8 > mEnd || isZero(next, 8)
+                    || videoNalEnd(next, false) > 0
+                    || (mAudio != null && audioStartAt(next))) {
+                return next;
+            }
+            return -1;
+        }
+
+        private boolean isZero(long position, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                if (mIn.byteAt(position + i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * raw_data_block 的第一个元素：单声道为 SCE，双声道为 CPE，element_instance_tag 为0，
+         * 并检查其后 ics_info 中固定的位
+         */
+        private boolean audioStartAt(long position) throws IOException {
+            if (position + 4 > mEnd) {
+                return false;
+            }
+            int value = (int) mIn.uintAt(position);
+            if (mConfig.channelCount == 1) {
+                // ID_SCE 000
+                return bits(value, 0, 7) == 0x00 && bits(value, 7, 8) >= MIN_GLOBAL_GAIN && isIcsInfo(value, 15, false);
+            }
+            // ID_CPE 001
+            if (bits(value, 0, 7) != 0x10) {
+                return false;
+            }
+            if (bits(value, 7, 1) != 0) {
+                // common_window，之后是共用的 ics_info
+                return isIcsInfo(value, 8, true);
+            }
+            return bits(value, 8, 8) >= MIN_GLOBAL_GAIN && isIcsInfo(value, 16, false);
+        }
+
+        /**
+         * ics_info 的保留位为0，长窗口的 max_sfb 不超过缩放因子带数且 AAC LC 没有预测；共用窗口时 ms_mask_present 不为保留值3
+         */
+        private static boolean isIcsInfo(int value, int offset, boolean commonWindow) {
+            if (bits(value, offset, 1) != 0) {
+                return false;
+            }
+            int windowSequence = bits(value, offset + 1, 2);
+            offset += 4;
+            if (windowSequence == EIGHT_SHORT_SEQUENCE) {
+                // max_sfb 与 scale_factor_grouping
+                offset += 11;
+            } else {
+                if (bits(value, offset, 6) > MAX_SFB_LONG || bits(value, offset + 6, 1) != 0) {
+                    return false;
+                }
+                offset += 7;
+            }
+            return !commonWindow || bits(value, offset, 2) != 3;
+        }
+
+        private static int bits(int value, int offset, int count) {
+            return (value >>> (32 - offset - count)) & ((1 << count) - 1);
+        }
+
+        /**
+         * 结尾是 ID_END (111) 加不超过7位的字节对齐
+         */
+        private boolean audioEndsAt(long position) throws IOException {
+            int value = mIn.byteAt(position - 2) << 8 | mIn.byteAt(position - 1);
+            if (value == 0) {
+                return false;
+            }
+            int zeros = Integer.numberOfTrailingZeros(value);
+            return zeros <= 7 && ((value >>> zeros) & 0x07) == 0x07;
+        }
+
+        /**
+         * 识别从 start 开始到下一段视频之前的连续 AAC 帧<br/>
+         * 可能的帧边界是 ID_END 结尾且后面是元素头的位置，在这些边界中选择帧长最接近平均帧长的切分方式
+         *
+         * @return 识别到的位置，不是 AAC 数据时返回-1
+         */
+        private long scanAudioRun(long start) throws IOException {
+            if (!audioStartAt(start)) {
+                return -1;
+            }
+            int maxFrame = AAC_MAX_CHANNEL_BYTES * mConfig.channelCount;
+            long limit = Math.min(mEnd, start + MAX_AUDIO_RUN);
+            long[] candidates = new long[64];
+            int count = 0;
+            candidates[count++] = start;
+            long runEnd = -1;
+            boolean reachedLimit = true;
+            int zeroRun = 0;
+            for (long position = start + MIN_AAC_FRAME; position < limit; position++) {
+                if (mIn.byteAt(position) == 0) {
+                    if (++zeroRun >= MAX_ZERO_RUN) {
+                        reachedLimit = false;
+                        break;
+                    }
+                } else {
+                    zeroRun = 0;
+                }
+                if (!audioEndsAt(position)) {
+                    continue;
+                }
+                if (videoNalEnd(position, true) > 0) {
+                    runEnd = position;
+                } else if (!audioStartAt(position)) {
+                    continue;
+                }
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                }
+                candidates[count++] = position;
+                if (runEnd > 0) {
+                    break;
+                }
+            }
+            if (runEnd < 0 && reachedLimit && limit == mEnd && audioEndsAt(mEnd)) {
+                // 最后一帧刚好写完
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count + 1);
+                }
+                candidates[count++] = mEnd;
+            }
+
+            double[] cost = new double[count];
+            int[] previous = new int[count];
+            Arrays.fill(cost, Double.MAX_VALUE);
+            cost[0] = 0;
+            for (int j = 1; j < count; j++) {
+                for (int i = j - 1; i >= 0 && candidates[j] - candidates[i] <= maxFrame; i--) {
+                    long size = candidates[j] - candidates[i];
+                    if (size < MIN_AAC_FRAME || cost[i] == Double.MAX_VALUE) {
+                        continue;
+                    }
+                    double difference = size - mAudioFrameSize;
+                    double total = cost[i] + difference * difference;
+                    if (total < cost[j]) {
+                        cost[j] = total;
+                        previous[j] = i;
+                    }
+                }
+            }
+            int last = count - 1;
+            if (runEnd < 0) {
+                // 后面不是视频时停在能切分到的最远位置，之后的数据不完整。最后一帧后面没有下一帧的元素头，无法确定结尾而丢弃
+                while (last > 0 && cost[last] == Double.MAX_VALUE) {
+                    last--;
+                }
+            }
+            if (last <= 0 || cost[last] == Double.MAX_VALUE) {
+                if (runEnd > 0) {
+                    mSkippedBytes += runEnd - start;
+                    return runEnd;
+                }
+                return -1;
+            }
+            int[] path = new int[last + 1];
+            int frames = 0;
+            for (int j = last; j > 0; j = previous[j]) {
+                path[frames++] = j;
+            }
+            long frameStart = start;
+            for (int i = frames - 1; i >= 0; i--) {
+                long frameEnd = candidates[path[i]];
+                addSample(1, frameStart, frameEnd - frameStart, true);
+                frameStart = frameEnd;
+            }
+            return frameStart;
+        }
+
+        /**
+         * 向后查找下一段视频数据
+         *
+         * @return 位置，没有找到或遇到预分配的空间时返回-1
+         */
+        private long resync(long position) throws IOException {
+            int zeroRun = 0;
+            for (; position + 4 + mHeaderSize <= mEnd; position++) {
+                if (mIn.byteAt(position) == 0) {
+                    if (++zeroRun >= MAX_ZERO_RUN) {
+                        return -1;
+                    }
+                } else {
+                    zeroRun = 0;
+                }
+                if (videoNalEnd(position, true) > 0) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+    }
+}
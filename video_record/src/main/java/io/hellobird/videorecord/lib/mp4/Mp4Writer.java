@@ -0,0 +1,303 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/*******************************************************************
+ * Mp4Writer.java  2026-10-19
+ * <P>
+ * 不依赖 MediaMuxer 的 MP4 写入，可以输出到任意 FileChannel，例如加密文件<br/>
+ * 文件结构与 MediaMuxer 相同：ftyp、mdat、moov。mdat 使用64位大小，结束时回写<br/>
+ * 视频数据由编码器输出的起始码格式转换为4字节长度格式；采样时长由相邻两帧的时间戳计算，不支持B帧<br/>
+ * 不是线程安全的<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Mp4Writer implements Closeable {
+
+    private static final int VIDEO_TIMESCALE = 90000;
+
+    private static final byte[] FTYP = {'i', 's', 'o', 'm', 0, 0, 2, 0, 'i', 's', 'o', 'm', 'i', 's', 'o', '2',
+            'a', 'v', 'c', '1', 'm', 'p', '4', '1'};
+
+    private static final class Track {
+        final boolean video;
+        final int timescale;
+        final Mp4Box stsd;
+        final int width;
+        final int height;
+        /**
+         * 没有下一帧时最后一帧的时长
+         */
+        final int defaultDuration;
+        final SampleTableBuilder samples = new SampleTableBuilder(false, true);
+        long firstTimeUs = -1;
+        long lastTicks;
+
+        Track(boolean video, int timescale, Mp4Box stsd, int width, int height, int defaultDuration) {
+            this.video = video;
+            this.timescale = timescale;
+            this.stsd = stsd;
+            this.width = width;
+            this.height = height;
+            this.defaultDuration = defaultDuration;
+        }
+    }
+
+    private final FileChannel mChannel;
+
+    private final List<Track> mTracks = new ArrayList<>();
+
+    private int mOrientation;
+
+    /**
+     * mdat 数据开始的位置，0表示还没有开始写入
+     */
+    private long mDataStart;
+
+    private long mPosition;
+
+    private int mLastTrack = -1;
+
+    private boolean mClosed;
+
+    /**
+     * 起始码转换的缓存
+     */
+    private ByteBuffer mConvertBuffer = ByteBuffer.allocate(0);
+
+    /**
+     * @param channel 输出文件，从位置0开始写入，结束时关闭
+     */
+    public Mp4Writer(FileChannel channel) {
+        mChannel = channel;
+    }
+
+    /**
+     * 设置旋转角度，与 MediaMuxer.setOrientationHint 相同
+     */
+    public void setOrientation(int degrees) {
+        mOrientation = degrees;
+    }
+
+    /**
+     * 添加视频轨，需要在写入数据前添加
+     *
+     * @param mime        video/avc 或 video/hevc
+     * @param width       宽度
+     * @param height      高度
+     * @param codecConfig 编码器输出的 csd-0、csd-1，起始码格式
+     * @return 轨道序号
+     * @throws Mp4FormatException 不支持的格式或缺少参数集
+     */
+    public int addVideoTrack(String mime, int width, int height, byte[]... codecConfig) throws Mp4FormatException {
+        boolean hevc = NalUnits.MIME_HEVC.equals(mime);
+        if (!hevc && !NalUnits.MIME_AVC.equals(mime)) {
+            throw new Mp4FormatException("Unsupported video " + mime);
+        }
+        List<byte[]> parameterSets = new ArrayList<>();
+        for (byte[] csd : codecConfig) {
+            if (csd != null) {
+                parameterSets.addAll(NalUnits.splitAnnexB(csd));
+            }
+        }
+        Mp4Box stsd = SampleEntries.video(hevc, width, height, parameterSets);
+        return addTrack(new Track(true, VIDEO_TIMESCALE, stsd, width, height, VIDEO_TIMESCALE / 30));
+    }
+
+    /**
+     * 添加 AAC 音频轨，需要在写入数据前添加
+     *
+     * @param sampleRate   采样率
+     * @param channelCount 声道数
+     * @param bitRate      码率，未知时为0
+     * @param audioConfig  AudioSpecificConfig，即编码器输出的 csd-0
+     * @return 轨道序号
+     */
+    public int addAudioTrack(int sampleRate, int channelCount, int bitRate, byte[] audioConfig) {
+        Mp4Box stsd = SampleEntries.audio(sampleRate, channelCount, bitRate, audioConfig);
+        return addTrack(new Track(false, sampleRate, stsd, 0, 0, 1024));
+    }
+
+    private int addTrack(Track track) {
+        if (mDataStart > 0) {
+            throw new IllegalStateException("Tracks must be added before writing samples");
+        }
+        mTracks.add(track);
+        return mTracks.size() - 1;
+    }
+
+    /**
+     * 写入一帧
+     *
+     * @param trackIndex         轨道序号
+     * @param data               position 到 limit 之间的数据，视频为起始码格式
+     * @param presentationTimeUs 时间戳
+     * @param sync               是否是关键帧，音频忽略
+     * @throws IOException 写入失败
+     */
+    public void writeSample(int trackIndex, ByteBuffer data, long presentationTimeUs, boolean sync) throws IOException {
+        if (mClosed) {
+            throw new IllegalStateException("Writer closed");
+        }
+        Track track = mTracks.get(trackIndex);
+        if (mDataStart == 0) {
+            writeHeader();
+        }
+        ByteBuffer sample = track.video ? toLengthPrefixed(data) : data.duplicate();
+        int size = sample.remaining();
+
+        if (track.firstTimeUs < 0) {
+            track.firstTimeUs = presentationTimeUs;
+        }
+        // 按累计时间换算，避免逐帧取整的误差累积
+        long ticks = Math.max(presentationTimeUs - track.firstTimeUs, 0) * track.timescale / 1000000;
+        SampleTableBuilder samples = track.samples;
+        int duration = track.defaultDuration;
+        if (samples.getSampleCount() > 0) {
+            samples.setLastDuration((int) Math.max(ticks - track.lastTicks, 1));
+            duration = (int) Math.max(ticks - track.lastTicks, 1);
+        }
+        track.lastTicks = ticks;
+        if (mLastTrack != trackIndex) {
+            samples.startChunk(mPosition - mDataStart, 1);
+            mLastTrack = trackIndex;
+        }
+        samples.addSample(size, duration, 0, !track.video || sync);
+        writeFully(sample);
+    }
+
+    private void writeHeader() throws IOException {
+        if (mTracks.isEmpty()) {
+            throw new IllegalStateException("No track added");
+        }
+        Mp4Box ftyp = new Mp4Box("ftyp", FTYP);
+        ByteBuffer header = ByteBuffer.allocate((int) ftyp.size() + 16);
+        ftyp.writeTo(header);
+        // 64位大小，结束时回写
+        header.putInt(1).put(new byte[]{'m', 'd', 'a', 't'}).putLong(0);
+        header.flip();
+        mPosition = 0;
+        writeFully(header);
+        mDataStart = mPosition;
+    }
+
+    /**
+     * 把起始码格式转换为长度格式，已经是长度格式时原样返回
+     */
+    private ByteBuffer toLengthPrefixed(ByteBuffer data) {
+        int start = data.position();
+        int end = data.limit();
+        if (startCodeLength(data, start, end) == 0) {
+            return data.duplicate();
+        }
+        // 3字节起始码转换后多1字节
+        int capacity = data.remaining() + data.remaining() / 3 + 4;
+        if (mConvertBuffer.capacity() < capacity) {
+            mConvertBuffer = ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer out = mConvertBuffer;
+        out.clear();
+        int nalStart = -1;
+        int i = start;
+        while (i < end) {
+            int codeLength = startCodeLength(data, i, end);
+            if (codeLength == 0) {
+                i++;
+                continue;
+            }
+            if (nalStart >= 0) {
+                putNal(out, data, nalStart, i);
+            }
+            i += codeLength;
+            nalStart = i;
+        }
+        if (nalStart >= 0) {
+            putNal(out, data, nalStart, end);
+        }
+        out.flip();
+        return out;
+    }
+
+    private static int startCodeLength(ByteBuffer data, int i, int end) {
+        if (i + 3 <= end && data.get(i) == 0 && data.get(i + 1) == 0) {
+            if (data.get(i + 2) == 1) {
+                return 3;
+            }
+            if (i + 4 <= end && data.get(i + 2) == 0 && data.get(i + 3) == 1) {
+                return 4;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 写入一个 NAL，去掉结尾属于下一个起始码或填充的0
+     */
+    private static void putNal(ByteBuffer out, ByteBuffer data, int start, int end) {
+        while (end > start && data.get(end - 1) == 0) {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        ByteBuffer nal = data.duplicate();
+        nal.limit(end).position(start);
+        out.putInt(end - start);
+        out.put(nal);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mPosition += mChannel.write(buffer, mPosition);
+        }
+    }
+
+    /**
+     * 写入 moov 并回写 mdat 大小，然后关闭文件
+     *
+     * @throws Mp4FormatException 没有写入任何数据
+     * @throws IOException        写入失败
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            if (mDataStart == 0) {
+                throw new Mp4FormatException("No samples written");
+            }
+            MoovBuilder moov = new MoovBuilder();
+            moov.setOrientation(mOrientation);
+            for (Track track : mTracks) {
+                if (track.samples.getSampleCount() == 0) {
+                    continue;
+                }
+                if (track.video) {
+                    moov.addVideoTrack(track.timescale, track.samples, track.stsd, track.width, track.height);
+                } else {
+                    moov.addAudioTrack(track.timescale, track.samples, track.stsd);
+                }
+            }
+            long mdatSize = mPosition - (mDataStart - 16);
+            writeFully(moov.build(mDataStart).toBuffer());
+            ByteBuffer size = ByteBuffer.allocate(8);
+            size.putLong(mdatSize).flip();
+            long position = mDataStart - 8;
+            while (size.hasRemaining()) {
+                position += mChannel.write(size, position);
+            }
+            mChannel.force(false);
+        } finally {
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.nio.ByteBuffer;
+
+/*******************************************************************
+ * NalParser.java  2026-10-19
+ * <P>
+ * 拆分一帧视频数据中的 NAL 单元，支持编码器输出的起始码格式与 MP4 中的4字节长度格式，按帧自动判断<br/>
+ * 不复制数据：回调给出 NAL 在原缓存中的绝对位置，数据的 position 与 limit 不变，可以直接用于 MediaCodec 的输出缓存<br/>
+ * 不分配内存，不是线程安全的<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class NalParser {
+
+    public interface Callback {
+        /**
+         * 找到一个 NAL
+         *
+         * @param data   原数据
+         * @param offset NAL 头在 data 中的绝对位置
+         * @param length NAL 长度，包括 NAL 头，不包括起始码或长度
+         * @param type   NAL 类型
+         */
+        void onNalUnit(ByteBuffer data, int offset, int length, int type);
+    }
+
+    private final boolean mHevc;
+
+    /**
+     * @param hevc 是否 H.265
+     */
+    public NalParser(boolean hevc) {
+        mHevc = hevc;
+    }
+
+    public boolean isHevc() {
+        return mHevc;
+    }
+
+    /**
+     * 拆分 position 到 limit 之间的数据
+     *
+     * @param data     一帧或多帧数据
+     * @param callback 每个 NAL 回调一次
+     * @return NAL 数量；长度格式的数据长度不合法时停止，返回已找到的数量
+     */
+    public int parse(ByteBuffer data, Callback callback) {
+        int start = data.position();
+        int end = data.limit();
+        if (startCodeAt(data, start, end)) {
+            return parseAnnexB(data, start, end, callback);
+        }
+        return parseLengthPrefixed(data, start, end, callback);
+    }
+
+    /**
+     * NAL 类型，{@link NalUnits#type(boolean, int)}
+     */
+    public int typeOf(int header) {
+        return NalUnits.type(mHevc, header);
+    }
+
+    /**
+     * 是否是可以独立解码的关键帧，H.264 为 IDR，H.265 为 IRAP
+     */
+    public boolean isSync(int type) {
+        return NalUnits.isSync(mHevc, type);
+    }
+
+    public boolean isParameterSet(int type) {
+        return NalUnits.isParameterSet(mHevc, type);
+    }
+
+    private static boolean startCodeAt(ByteBuffer data, int i, int end) {
+        if (i + 3 > end || data.get(i) != 0 || data.get(i + 1) != 0) {
+            return false;
+        }
+        int third = data.get(i + 2);
+        return third == 1 || (third == 0 && i + 4 <= end && data.get(i + 3) == 1);
+    }
+
+    private int parseAnnexB(ByteBuffer data, int start, int end, Callback callback) {
+        int count = 0;
+        int nalStart = -1;
+        int i = start;
+        // 每次检查第三个字节，大于1时起始码不可能包含当前的3个字节，直接跳过3个字节
+        while (i + 2 < end) {
+            int third = data.get(i + 2);
+            if (third > 1 || third < 0) {
+                i += 3;
+            } else if (third == 0) {
+                i++;
+            } else if (data.get(i) == 0 && data.get(i + 1) == 0) {
+                if (nalStart >= 0 && emit(data, nalStart, i, callback)) {
+                    count++;
+                }
+                i += 3;
+                nalStart = i;
+            } else {
+                i += 3;
+            }
+        }
+        if (nalStart >= 0 && emit(data, nalStart, end, callback)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 去掉结尾属于下一个4字节起始码或填充的0后回调
+     */
+    private boolean emit(ByteBuffer data, int start, int end, Callback callback) {
+        while (end > start && data.get(end - 1) == 0) {
+            end--;
+        }
+        if (end - start < NalUnits.headerSize(mHevc)) {
+            return false;
+        }
+        callback.onNalUnit(data, start, end - start, NalUnits.type(mHevc, data.get(start) & 0xFF));
+        return true;
+    }
+
+    private int parseLengthPrefixed(ByteBuffer data, int start, int end, Callback callback) {
+        int count = 0;
+        int i = start;
+        int headerSize = NalUnits.headerSize(mHevc);
+        while (i + 4 <= end) {
+            int length = data.getInt(i);
+            i += 4;
+            if (length < headerSize || length > end - i) {
+                break;
+            }
+            callback.onNalUnit(data, i, length, NalUnits.type(mHevc, data.get(i) & 0xFF));
+            count++;
+            i += length;
+        }
+        return count;
+    }
+}
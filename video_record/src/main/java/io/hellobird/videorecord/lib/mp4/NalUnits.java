@@ -0,0 +1,180 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*******************************************************************
+ * NalUnits.java  2026-10-19
+ * <P>
+ * H.264/H.265 NAL 单元的类型判断与参数集处理<br/>
+ * MP4 中的视频采样由 4 字节长度加 NAL 组成，编码器输出的 csd 使用 00 00 00 01 起始码<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class NalUnits {
+
+    static final String MIME_AVC = "video/avc";
+
+    static final String MIME_HEVC = "video/hevc";
+
+    static final int AVC_SLICE = 1;
+    static final int AVC_IDR = 5;
+    static final int AVC_SEI = 6;
+    static final int AVC_SPS = 7;
+    static final int AVC_PPS = 8;
+    static final int AVC_AUD = 9;
+
+    static final int HEVC_BLA_W_LP = 16;
+    static final int HEVC_RSV_IRAP_23 = 23;
+    static final int HEVC_VPS = 32;
+    static final int HEVC_SPS = 33;
+    static final int HEVC_PPS = 34;
+    static final int HEVC_AUD = 35;
+    static final int HEVC_PREFIX_SEI = 39;
+    static final int HEVC_SUFFIX_SEI = 40;
+
+    private NalUnits() {
+    }
+
+    /**
+     * NAL 类型
+     *
+     * @param hevc   是否 H.265
+     * @param header NAL 的第一个字节
+     */
+    static int type(boolean hevc, int header) {
+        return hevc ? (header >> 1) & 0x3F : header & 0x1F;
+    }
+
+    /**
+     * 检查 NAL 头是否合法，用于在没有索引的数据中判断是否是视频数据
+     *
+     * @param hevc    是否 H.265
+     * @param header0 第一个字节
+     * @param header1 第二个字节，只有 H.265 使用
+     */
+    static boolean isValidHeader(boolean hevc, int header0, int header1) {
+        if ((header0 & 0x80) != 0) {
+            return false;
+        }
+        int type = type(hevc, header0);
+        if (hevc) {
+            // nuh_layer_id 为0，nuh_temporal_id_plus1 不为0
+            if ((header0 & 0x01) != 0 || (header1 & 0xF8) != 0 || (header1 & 0x07) == 0) {
+                return false;
+            }
+            return type <= 9 || (type >= HEVC_BLA_W_LP && type <= 21) || (type >= HEVC_VPS && type <= HEVC_SUFFIX_SEI);
+        }
+        int refIdc = (header0 >> 5) & 0x03;
+        switch (type) {
+            case AVC_SLICE:
+            case 2:
+            case 3:
+            case 4:
+                return true;
+            case AVC_IDR:
+            case AVC_SPS:
+            case AVC_PPS:
+                return refIdc != 0;
+            case AVC_SEI:
+            case AVC_AUD:
+                return refIdc == 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 是否是图像数据
+     */
+    static boolean isVcl(boolean hevc, int type) {
+        return hevc ? type < HEVC_VPS : type >= AVC_SLICE && type <= AVC_IDR;
+    }
+
+    /**
+     * 是否是可以独立解码的关键帧
+     */
+    static boolean isSync(boolean hevc, int type) {
+        return hevc ? type >= HEVC_BLA_W_LP && type <= HEVC_RSV_IRAP_23 : type == AVC_IDR;
+    }
+
+    static boolean isParameterSet(boolean hevc, int type) {
+        return hevc ? type >= HEVC_VPS && type <= HEVC_PPS : type == AVC_SPS || type == AVC_PPS;
+    }
+
+    /**
+     * 图像数据是否是一帧的第一个 slice，H.264 的 first_mb_in_slice 为0，H.265 的 first_slice_segment_in_pic_flag 为1，
+     * 都表现为 slice header 的第一位是1
+     *
+     * @param firstPayloadByte NAL 头之后的第一个字节
+     */
+    static boolean isFirstSlice(int firstPayloadByte) {
+        return (firstPayloadByte & 0x80) != 0;
+    }
+
+    static int headerSize(boolean hevc) {
+        return hevc ? 2 : 1;
+    }
+
+    /**
+     * 按起始码拆分，例如 MediaFormat 中的 csd-0
+     *
+     * @return 不含起始码的 NAL
+     */
+    static List<byte[]> splitAnnexB(byte[] data) {
+        List<byte[]> units = new ArrayList<>();
+        int start = -1;
+        int i = 0;
+        while (i + 2 < data.length) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                if (start >= 0) {
+                    units.add(copyTrimmed(data, start, i));
+                }
+                i += 3;
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        if (start >= 0 && start < data.length) {
+            units.add(copyTrimmed(data, start, data.length));
+        } else if (start < 0 && data.length > 0) {
+            // 没有起始码时整体作为一个 NAL
+            units.add(data.clone());
+        }
+        return units;
+    }
+
+    /**
+     * 复制 [start, end)，去掉属于下一个4字节起始码的末尾0
+     */
+    private static byte[] copyTrimmed(byte[] data, int start, int end) {
+        while (end > start && data[end - 1] == 0) {
+            end--;
+        }
+        byte[] unit = new byte[end - start];
+        System.arraycopy(data, start, unit, 0, unit.length);
+        return unit;
+    }
+
+    /**
+     * 去掉防竞争字节 00 00 03 中的 03，得到 RBSP
+     */
+    static byte[] unescape(byte[] nal, int offset, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        int zeros = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int b = nal[i] & 0xFF;
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            zeros = b == 0 ? zeros + 1 : 0;
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+}
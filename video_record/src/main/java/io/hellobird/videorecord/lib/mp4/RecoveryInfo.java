@@ -0,0 +1,431 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*******************************************************************
+ * RecoveryInfo.java  2026-10-19
+ * <P>
+ * 录制开始时保存在旁路文件中的编码参数，进程异常退出后用于重建 moov<br/>
+ * 旁路文件与视频文件同名，加上 {@link #SIDECAR_SUFFIX}，正常结束录制后删除<br/>
+ * 创建后不可修改，通过 {@link Builder} 创建<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class RecoveryInfo {
+
+    public static final String MIME_AVC = NalUnits.MIME_AVC;
+
+    public static final String MIME_HEVC = NalUnits.MIME_HEVC;
+
+    /**
+     * 旁路文件的后缀
+     */
+    public static final String SIDECAR_SUFFIX = ".recovery";
+
+    private static final int MAGIC = 0x56525243; // VRRC
+
+    private static final int VERSION = 1;
+
+    /**
+     * 旁路文件的最大长度，避免读取错误文件时分配过多内存
+     */
+    private static final int MAX_SIDECAR_SIZE = 64 * 1024;
+
+    private static final int[] AAC_SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050,
+            16000, 12000, 11025, 8000, 7350};
+
+    private final String mVideoMime;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mFrameRate;
+
+    private final int mOrientation;
+
+    private final List<byte[]> mParameterSets;
+
+    private final int mAudioSampleRate;
+
+    private final int mAudioChannelCount;
+
+    private final int mAudioBitRate;
+
+    private final byte[] mAudioConfig;
+
+    private RecoveryInfo(Builder builder) {
+        mVideoMime = builder.mVideoMime;
+        mWidth = builder.mWidth;
+        mHeight = builder.mHeight;
+        mFrameRate = builder.mFrameRate;
+        mOrientation = builder.mOrientation;
+        mParameterSets = Collections.unmodifiableList(new ArrayList<>(builder.mParameterSets));
+        mAudioSampleRate = builder.mAudioSampleRate;
+        mAudioChannelCount = builder.mAudioChannelCount;
+        mAudioBitRate = builder.mAudioBitRate;
+        mAudioConfig = builder.mAudioConfig;
+    }
+
+    /**
+     * 视频文件对应的旁路文件
+     *
+     * @param video 视频文件
+     * @return
+     */
+    public static File sidecarOf(File video) {
+        return new File(video.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * 视频编码类型，{@link #MIME_AVC} 或 {@link #MIME_HEVC}，未知时为null
+     *
+     * @return
+     */
+    public String getVideoMime() {
+        return mVideoMime;
+    }
+
+    public boolean isHevc() {
+        return MIME_HEVC.equals(mVideoMime);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 输出帧数，恢复时按固定帧间隔生成时间
+     *
+     * @return
+     */
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * 视频参数集，不含起始码，H.264 为 SPS、PPS，H.265 为 VPS、SPS、PPS
+     *
+     * @return
+     */
+    public List<byte[]> getParameterSets() {
+        return mParameterSets;
+    }
+
+    /**
+     * 是否录制了 AAC 音频
+     *
+     * @return
+     */
+    public boolean hasAudio() {
+        return mAudioSampleRate > 0;
+    }
+
+    public int getAudioSampleRate() {
+        return mAudioSampleRate;
+    }
+
+    public int getAudioChannelCount() {
+        return mAudioChannelCount;
+    }
+
+    /**
+     * 音频码率，用于估计每帧大小，未知时为0
+     *
+     * @return
+     */
+    public int getAudioBitRate() {
+        return mAudioBitRate;
+    }
+
+    /**
+     * AAC 的 AudioSpecificConfig，没有保存时按 AAC-LC 生成
+     *
+     * @return 没有音频时返回null
+     */
+    public byte[] getAudioConfig() {
+        if (!hasAudio()) {
+            return null;
+        }
+        if (mAudioConfig != null) {
+            return mAudioConfig.clone();
+        }
+        int index = AAC_SAMPLE_RATES.length - 1;
+        for (int i = 0; i < AAC_SAMPLE_RATES.length; i++) {
+            if (AAC_SAMPLE_RATES[i] == mAudioSampleRate) {
+                index = i;
+                break;
+            }
+        }
+        // audioObjectType 2 (AAC-LC), samplingFrequencyIndex, channelConfiguration
+        int config = 2 << 11 | index << 7 | mAudioChannelCount << 3;
+        return new byte[]{(byte) (config >> 8), (byte) config};
+    }
+
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    /**
+     * 写入旁路文件，先写临时文件再改名，不会留下写了一半的文件
+     *
+     * @param sidecar 旁路文件
+     * @throws IOException
+     */
+    public void write(File sidecar) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(mVideoMime != null ? mVideoMime : "");
+        out.writeInt(mWidth);
+        out.writeInt(mHeight);
+        out.writeInt(mFrameRate);
+        out.writeInt(mOrientation);
+        out.writeInt(mParameterSets.size());
+        for (byte[] parameterSet : mParameterSets) {
+            out.writeInt(parameterSet.length);
+            out.write(parameterSet);
+        }
+        out.writeInt(mAudioSampleRate);
+        out.writeInt(mAudioChannelCount);
+        out.writeInt(mAudioBitRate);
+        out.writeInt(mAudioConfig != null ? mAudioConfig.length : -1);
+        if (mAudioConfig != null) {
+            out.write(mAudioConfig);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        File temp = new File(sidecar.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(temp);
+        try {
+            bytes.writeTo(file);
+        } finally {
+            file.close();
+        }
+        if (!temp.renameTo(sidecar)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + sidecar);
+        }
+    }
+
+    /**
+     * 读取旁路文件
+     *
+     * @param sidecar 旁路文件
+     * @return
+     * @throws Mp4FormatException 文件内容损坏
+     * @throws IOException        读取失败
+     */
+    public static RecoveryInfo read(File sidecar) throws IOException {
+        long length = sidecar.length();
+        if (length < 12 || length > MAX_SIDECAR_SIZE) {
+            throw new Mp4FormatException("Bad sidecar size " + length);
+        }
+        byte[] data = new byte[(int) length];
+        InputStream file = new FileInputStream(sidecar);
+        try {
+            new DataInputStream(file).readFully(data);
+        } finally {
+            file.close();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        long expected = 0;
+        for (int i = data.length - 8; i < data.length; i++) {
+            expected = expected << 8 | (data[i] & 0xFF);
+        }
+        if (crc.getValue() != expected) {
+            throw new Mp4FormatException("Sidecar checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new Mp4FormatException("Unknown sidecar format");
+            }
+            Builder builder = new Builder();
+            String mime = in.readUTF();
+            builder.setVideoMime(mime.isEmpty() ? null : mime);
+            int width = in.readInt();
+            int height = in.readInt();
+            builder.setVideoSize(width, height);
+            builder.setFrameRate(in.readInt());
+            builder.setOrientation(in.readInt());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                builder.addParameterSet(readBytes(in));
+            }
+            int sampleRate = in.readInt();
+            int channelCount = in.readInt();
+            builder.setAudio(sampleRate, channelCount, in.readInt());
+            int configLength = in.readInt();
+            if (configLength >= 0) {
+                byte[] config = new byte[configLength];
+                in.readFully(config);
+                builder.setAudioConfig(config);
+            }
+            return builder.build();
+        } catch (EOFException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new Mp4FormatException("Truncated sidecar: " + e);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_SIDECAR_SIZE) {
+            throw new Mp4FormatException("Bad length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RecoveryInfo{" + mVideoMime + " " + mWidth + "x" + mHeight + "@" + mFrameRate
+                + ", orientation " + mOrientation + ", " + mParameterSets.size() + " parameter sets"
+                + (hasAudio() ? ", audio " + mAudioSampleRate + "Hz x" + mAudioChannelCount : "") + "}";
+    }
+
+    public static final class Builder {
+
+        private String mVideoMime = MIME_AVC;
+
+        private int mWidth;
+
+        private int mHeight;
+
+        private int mFrameRate = 30;
+
+        private int mOrientation;
+
+        private final List<byte[]> mParameterSets = new ArrayList<>();
+
+        private int mAudioSampleRate;
+
+        private int mAudioChannelCount;
+
+        private int mAudioBitRate;
+
+        private byte[] mAudioConfig;
+
+        public Builder() {
+        }
+
+        private Builder(RecoveryInfo info) {
+            mVideoMime = info.mVideoMime;
+            mWidth = info.mWidth;
+            mHeight = info.mHeight;
+            mFrameRate = info.mFrameRate;
+            mOrientation = info.mOrientation;
+            mParameterSets.addAll(info.mParameterSets);
+            mAudioSampleRate = info.mAudioSampleRate;
+            mAudioChannelCount = info.mAudioChannelCount;
+            mAudioBitRate = info.mAudioBitRate;
+            mAudioConfig = info.mAudioConfig;
+        }
+
+        /**
+         * @param videoMime {@link #MIME_AVC}、{@link #MIME_HEVC}，未知时为null，恢复时需要参考文件
+         */
+        public Builder setVideoMime(String videoMime) {
+            if (videoMime != null && !MIME_AVC.equals(videoMime) && !MIME_HEVC.equals(videoMime)) {
+                throw new IllegalArgumentException("Unsupported video " + videoMime);
+            }
+            mVideoMime = videoMime;
+            return this;
+        }
+
+        public Builder setVideoSize(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            return this;
+        }
+
+        public Builder setFrameRate(int frameRate) {
+            if (frameRate <= 0) {
+                throw new IllegalArgumentException("frameRate <= 0");
+            }
+            mFrameRate = frameRate;
+            return this;
+        }
+
+        public Builder setOrientation(int orientation) {
+            mOrientation = orientation;
+            return this;
+        }
+
+        /**
+         * 添加一个不含起始码的参数集
+         */
+        public Builder addParameterSet(byte[] parameterSet) {
+            mParameterSets.add(parameterSet.clone());
+            return this;
+        }
+
+        /**
+         * 添加编码器输出的 csd，按起始码拆分为参数集
+         *
+         * @param csd 例如 MediaFormat 中的 csd-0、csd-1
+         */
+        public Builder addCodecConfig(byte[] csd) {
+            mParameterSets.addAll(NalUnits.splitAnnexB(csd));
+            return this;
+        }
+
+        /**
+         * 设置 AAC 音频参数，采样率为0时表示没有音频
+         *
+         * @param sampleRate   采样率
+         * @param channelCount 声道数
+         * @param bitRate      码率，未知时为0
+         */
+        public Builder setAudio(int sampleRate, int channelCount, int bitRate) {
+            if (sampleRate > 0 && (channelCount < 1 || channelCount > 2)) {
+                throw new IllegalArgumentException("Unsupported channel count " + channelCount);
+            }
+            mAudioSampleRate = sampleRate;
+            mAudioChannelCount = channelCount;
+            mAudioBitRate = bitRate;
+            return this;
+        }
+
+        /**
+         * @param audioConfig AudioSpecificConfig，例如 AAC 编码器输出的 csd-0
+         */
+        public Builder setAudioConfig(byte[] audioConfig) {
+            mAudioConfig = audioConfig != null ? audioConfig.clone() : null;
+            return this;
+        }
+
+        public RecoveryInfo build() {
+            return new RecoveryInfo(this);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*******************************************************************
+ * SampleEntries.java  2026-10-19
+ * <P>
+ * 由编码参数生成 stsd，视频为 avc1/avcC 或 hvc1/hvcC，音频为 mp4a/esds<br/>
+ * 字段与 MediaMuxer 生成的一致<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class SampleEntries {
+
+    private SampleEntries() {
+    }
+
+    /**
+     * 视频 stsd
+     *
+     * @throws Mp4FormatException 缺少参数集
+     */
+    static Mp4Box video(RecoveryInfo info) throws Mp4FormatException {
+        return video(info.isHevc(), info.getWidth(), info.getHeight(), info.getParameterSets());
+    }
+
+    /**
+     * 视频 stsd
+     *
+     * @param parameterSets 不含起始码的参数集
+     * @throws Mp4FormatException 缺少参数集
+     */
+    static Mp4Box video(boolean hevc, int width, int height, List<byte[]> parameterSets) throws Mp4FormatException {
+        List<byte[]> vps = new ArrayList<>();
+        List<byte[]> sps = new ArrayList<>();
+        List<byte[]> pps = new ArrayList<>();
+        for (byte[] nal : parameterSets) {
+            if (nal.length < NalUnits.headerSize(hevc)) {
+                continue;
+            }
+            int type = NalUnits.type(hevc, nal[0] & 0xFF);
+            if (type == (hevc ? NalUnits.HEVC_VPS : -1)) {
+                vps.add(nal);
+            } else if (type == (hevc ? NalUnits.HEVC_SPS : NalUnits.AVC_SPS)) {
+                sps.add(nal);
+            } else if (type == (hevc ? NalUnits.HEVC_PPS : NalUnits.AVC_PPS)) {
+                pps.add(nal);
+            }
+        }
+        if (sps.isEmpty() || pps.isEmpty() || (hevc && vps.isEmpty())) {
+            throw new Mp4FormatException("Missing parameter sets, " + parameterSets.size() + " found");
+        }
+        Mp4Box config = hevc ? hvcC(vps, sps, pps) : avcC(sps, pps);
+
+        // VisualSampleEntry
+        ByteBuffer entry = ByteBuffer.allocate(78);
+        entry.position(6);
+        entry.putShort((short) 1); // data_reference_index
+        entry.position(24);
+        entry.putShort((short) width);
+        entry.putShort((short) height);
+        entry.putInt(0x00480000); // 72 dpi
+        entry.putInt(0x00480000);
+        entry.putInt(0);
+        entry.putShort((short) 1); // frame_count
+        entry.position(entry.position() + 32); // compressorname
+        entry.putShort((short) 0x0018); // depth
+        entry.putShort((short) -1);
+        return stsd(hevc ? "hvc1" : "avc1", entry.array(), config);
+    }
+
+    /**
+     * AAC 音频 stsd
+     */
+    static Mp4Box audio(RecoveryInfo info) {
+        return audio(info.getAudioSampleRate(), info.getAudioChannelCount(), info.getAudioBitRate(), info.getAudioConfig());
+    }
+
+    /**
+     * AAC 音频 stsd
+     *
+     * @param config AudioSpecificConfig
+     */
+    static Mp4Box audio(int sampleRate, int channelCount, int bitRate, byte[] config) {
+
+        ByteArrayOutputStream esds = new ByteArrayOutputStream();
+        esds.write(0);
+        esds.write(0);
+        esds.write(0);
+        esds.write(0); // version, flags
+        // ES_Descriptor
+        int decoderConfigSize = 13 + 2 + config.length;
+        esds.write(0x03);
+        esds.write(3 + 2 + decoderConfigSize + 3);
+        esds.write(0);
+        esds.write(0); // ES_ID
+        esds.write(0); // flags
+        // DecoderConfigDescriptor
+        esds.write(0x04);
+        esds.write(decoderConfigSize);
+        esds.write(0x40); // Audio ISO/IEC 14496-3
+        esds.write(0x15); // AudioStream
+        writeInt(esds, 0, 3); // bufferSizeDB
+        writeInt(esds, bitRate, 4); // maxBitrate
+        writeInt(esds, bitRate, 4); // avgBitrate
+        // DecoderSpecificInfo
+        esds.write(0x05);
+        esds.write(config.length);
+        esds.write(config, 0, config.length);
+        // SLConfigDescriptor
+        esds.write(0x06);
+        esds.write(1);
+        esds.write(0x02);
+
+        // AudioSampleEntry
+        ByteBuffer entry = ByteBuffer.allocate(28);
+        entry.position(6);
+        entry.putShort((short) 1); // data_reference_index
+        entry.position(16);
+        entry.putShort((short) channelCount);
+        entry.putShort((short) 16); // samplesize
+        entry.putInt(0);
+        entry.putInt(sampleRate << 16);
+        return stsd("mp4a", entry.array(), new Mp4Box("esds", esds.toByteArray()));
+    }
+
+    private static Mp4Box avcC(List<byte[]> sps, List<byte[]> pps) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] first = sps.get(0);
+        out.write(1); // configurationVersion
+        out.write(first.length > 1 ? first[1] : 0); // AVCProfileIndication
+        out.write(first.length > 2 ? first[2] : 0); // profile_compatibility
+        out.write(first.length > 3 ? first[3] : 0); // AVCLevelIndication
+        out.write(0xFF); // lengthSizeMinusOne = 3
+        out.write(0xE0 | sps.size());
+        writeNals(out, sps);
+        out.write(pps.size());
+        writeNals(out, pps);
+        return new Mp4Box("avcC", out.toByteArray());
+    }
+
+    private static Mp4Box hvcC(List<byte[]> vps, List<byte[]> sps, List<byte[]> pps) {
+        // SPS 的 profile_tier_level 在 NAL 头与第一个字节之后，共12字节
+        byte[] rbsp = NalUnits.unescape(sps.get(0), 0, sps.get(0).length);
+        byte[] profileTierLevel = rbsp.length >= 15 ? Arrays.copyOfRange(rbsp, 3, 15) : new byte[12];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(1); // configurationVersion
+        out.write(profileTierLevel, 0, 12); // general profile, compatibility, constraint, level
+        out.write(0xF0);
+        out.write(0x00); // min_spatial_segmentation_idc
+        out.write(0xFC); // parallelismType
+        out.write(0xFD); // chromaFormat 4:2:0
+        out.write(0xF8); // bitDepthLumaMinus8
+        out.write(0xF8); // bitDepthChromaMinus8
+        out.write(0);
+        out.write(0); // avgFrameRate
+        out.write(0x0F); // constantFrameRate 0, numTemporalLayers 1, temporalIdNested 1, lengthSizeMinusOne 3
+        out.write(3); // numOfArrays
+        writeArray(out, NalUnits.HEVC_VPS, vps);
+        writeArray(out, NalUnits.HEVC_SPS, sps);
+        writeArray(out, NalUnits.HEVC_PPS, pps);
+        return new Mp4Box("hvcC", out.toByteArray());
+    }
+
+    private static void writeArray(ByteArrayOutputStream out, int type, List<byte[]> nals) {
+        out.write(0x80 | type); // array_completeness
+        writeInt(out, nals.size(), 2);
+        writeNals(out, nals);
+    }
+
+    private static void writeNals(ByteArrayOutputStream out, List<byte[]> nals) {
+        for (byte[] nal : nals) {
+            writeInt(out, nal.length, 2);
+            out.write(nal, 0, nal.length);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value, int bytes) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.write(value >>> (i * 8));
+        }
+    }
+
+    /**
+     * 只有一个 sample entry 的 stsd
+     */
+    private static Mp4Box stsd(String format, byte[] entryFields, Mp4Box child) {
+        Mp4Box entry = new Mp4Box(format, concat(entryFields, child.toBuffer().array()));
+        byte[] entryBytes = entry.toBuffer().array();
+        ByteBuffer stsd = ByteBuffer.allocate(8 + entryBytes.length);
+        stsd.putInt(0);
+        stsd.putInt(1);
+        stsd.put(entryBytes);
+        return new Mp4Box("stsd", stsd.array());
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
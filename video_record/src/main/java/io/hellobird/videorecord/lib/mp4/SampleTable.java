@@ -0,0 +1,253 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*******************************************************************
+ * SampleTable.java  2026-10-19
+ * <P>
+ * 一条轨道展开后的采样表，每个采样的文件位置、大小、解码时间与是否关键帧<br/>
+ * 由 stbl 中的 stts、ctts、stsc、stsz、stco/co64、stss 计算得到<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class SampleTable {
+
+    final int sampleCount;
+
+    /**
+     * 采样在文件中的位置
+     */
+    final long[] offsets;
+
+    final int[] sizes;
+
+    /**
+     * 解码时间，轨道时间单位
+     */
+    final long[] times;
+
+    /**
+     * 采样时长，轨道时间单位
+     */
+    final int[] durations;
+
+    /**
+     * 显示时间偏移，没有 ctts 时为null
+     */
+    final int[] ctsOffsets;
+
+    /**
+     * 关键帧序号，从0开始递增，没有 stss 时为null，表示全部是关键帧
+     */
+    final int[] syncSamples;
+
+    /**
+     * 采样所在的块
+     */
+    final int[] chunks;
+
+    /**
+     * 每个块使用的 sample description 序号
+     */
+    final int[] chunkDescriptions;
+
+    private SampleTable(int sampleCount, long[] offsets, int[] sizes, long[] times, int[] durations,
+                        int[] ctsOffsets, int[] syncSamples, int[] chunks, int[] chunkDescriptions) {
+        this.sampleCount = sampleCount;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.times = times;
+        this.durations = durations;
+        this.ctsOffsets = ctsOffsets;
+        this.syncSamples = syncSamples;
+        this.chunks = chunks;
+        this.chunkDescriptions = chunkDescriptions;
+    }
+
+    boolean isSync(int sample) {
+        if (syncSamples == null) {
+            return true;
+        }
+        return Arrays.binarySearch(syncSamples, sample) >= 0;
+    }
+
+    /**
+     * 不晚于指定时间的最后一个关键帧
+     *
+     * @param time 解码时间
+     * @return 采样序号，没有时返回0
+     */
+    int syncSampleAtOrBefore(long time) {
+        int result = 0;
+        for (int i = 0; i < sampleCount && times[i] <= time; i++) {
+            if (isSync(i)) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 第一个解码时间不早于指定时间的采样
+     *
+     * @param time 解码时间
+     * @return 采样序号，没有时返回采样数
+     */
+    int firstSampleAtOrAfter(long time) {
+        int low = 0;
+        int high = sampleCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    long getDuration() {
+        return sampleCount == 0 ? 0 : times[sampleCount - 1] + durations[sampleCount - 1];
+    }
+
+    static SampleTable parse(Mp4Box stbl) throws Mp4FormatException {
+        Mp4Box stsz = stbl.child("stsz");
+        Mp4Box stts = stbl.child("stts");
+        Mp4Box stsc = stbl.child("stsc");
+        Mp4Box stco = stbl.child("stco");
+        Mp4Box co64 = stbl.child("co64");
+        if (stsz == null || stts == null || stsc == null || (stco == null && co64 == null)) {
+            throw new Mp4FormatException("Incomplete sample table " + stbl);
+        }
+
+        // stsz
+        ByteBuffer buffer = fullBoxContent(stsz);
+        int constantSize = buffer.getInt();
+        int sampleCount = checkCount(buffer.getInt());
+        int[] sizes = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            sizes[i] = constantSize != 0 ? constantSize : buffer.getInt();
+        }
+
+        // stts
+        long[] times = new long[sampleCount];
+        int[] durations = new int[sampleCount];
+        buffer = fullBoxContent(stts);
+        int entryCount = checkCount(buffer.getInt());
+        int sample = 0;
+        long time = 0;
+        for (int i = 0; i < entryCount && sample < sampleCount; i++) {
+            int count = buffer.getInt();
+            int delta = buffer.getInt();
+            for (int j = 0; j < count && sample < sampleCount; j++, sample++) {
+                times[sample] = time;
+                durations[sample] = delta;
+                time += delta;
+            }
+        }
+        if (sample != sampleCount) {
+            throw new Mp4FormatException("stts covers " + sample + " of " + sampleCount + " samples");
+        }
+
+        // ctts
+        int[] ctsOffsets = null;
+        Mp4Box ctts = stbl.child("ctts");
+        if (ctts != null) {
+            ctsOffsets = new int[sampleCount];
+            buffer = fullBoxContent(ctts);
+            entryCount = checkCount(buffer.getInt());
+            sample = 0;
+            for (int i = 0; i < entryCount && sample < sampleCount; i++) {
+                int count = buffer.getInt();
+                int offset = buffer.getInt();
+                for (int j = 0; j < count && sample < sampleCount; j++, sample++) {
+                    ctsOffsets[sample] = offset;
+                }
+            }
+        }
+
+        // stss
+        int[] syncSamples = null;
+        Mp4Box stss = stbl.child("stss");
+        if (stss != null) {
+            buffer = fullBoxContent(stss);
+            entryCount = checkCount(buffer.getInt());
+            syncSamples = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                syncSamples[i] = buffer.getInt() - 1;
+            }
+        }
+
+        // stco / co64
+        long[] chunkOffsets;
+        if (stco != null) {
+            buffer = fullBoxContent(stco);
+            entryCount = checkCount(buffer.getInt());
+            chunkOffsets = new long[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                chunkOffsets[i] = buffer.getInt() & 0xFFFFFFFFL;
+            }
+        } else {
+            buffer = fullBoxContent(co64);
+            entryCount = checkCount(buffer.getInt());
+            chunkOffsets = new long[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                chunkOffsets[i] = buffer.getLong();
+            }
+        }
+        int chunkCount = chunkOffsets.length;
+
+        // stsc，展开每个采样的块与位置
+        buffer = fullBoxContent(stsc);
+        entryCount = checkCount(buffer.getInt());
+        int[] firstChunks = new int[entryCount];
+        int[] samplesPerChunk = new int[entryCount];
+        int[] descriptions = new int[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            firstChunks[i] = buffer.getInt() - 1;
+            samplesPerChunk[i] = buffer.getInt();
+            descriptions[i] = buffer.getInt();
+        }
+        long[] offsets = new long[sampleCount];
+        int[] chunks = new int[sampleCount];
+        int[] chunkDescriptions = new int[chunkCount];
+        sample = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int lastChunk = i + 1 < entryCount ? firstChunks[i + 1] : chunkCount;
+            for (int chunk = firstChunks[i]; chunk < lastChunk && chunk < chunkCount; chunk++) {
+                chunkDescriptions[chunk] = descriptions[i];
+                long offset = chunkOffsets[chunk];
+                for (int j = 0; j < samplesPerChunk[i] && sample < sampleCount; j++, sample++) {
+                    offsets[sample] = offset;
+                    chunks[sample] = chunk;
+                    offset += sizes[sample];
+                }
+            }
+        }
+        if (sample != sampleCount) {
+            throw new Mp4FormatException("stsc covers " + sample + " of " + sampleCount + " samples");
+        }
+        return new SampleTable(sampleCount, offsets, sizes, times, durations, ctsOffsets, syncSamples,
+                chunks, chunkDescriptions);
+    }
+
+    /**
+     * 跳过 version 与 flags 后的内容
+     */
+    private static ByteBuffer fullBoxContent(Mp4Box box) {
+        ByteBuffer buffer = box.content();
+        buffer.position(4);
+        return buffer;
+    }
+
+    private static int checkCount(int count) throws Mp4FormatException {
+        if (count < 0) {
+            throw new Mp4FormatException("Bad entry count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,279 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*******************************************************************
+ * SampleTableBuilder.java  2026-10-19
+ * <P>
+ * 逐个添加采样，生成 stts、ctts、stss、stsc、stsz、stco/co64<br/>
+ * 块的位置相对于 mdat 数据开始处，生成时加上 mdat 在文件中的位置<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+final class SampleTableBuilder {
+
+    private final boolean mWithCtts;
+
+    private final boolean mWithStss;
+
+    private int mSampleCount;
+
+    private int[] mSizes = new int[256];
+
+    private int[] mDurations = new int[256];
+
+    private int[] mCtsOffsets;
+
+    private int mSyncCount;
+
+    private int[] mSyncSamples = new int[16];
+
+    private int mChunkCount;
+
+    private long[] mChunkOffsets = new long[16];
+
+    private int[] mChunkSamples = new int[16];
+
+    private int[] mChunkDescriptions = new int[16];
+
+    private long mDuration;
+
+    /**
+     * @param withCtts 是否生成 ctts
+     * @param withStss 是否生成 stss，不生成时表示全部是关键帧
+     */
+    SampleTableBuilder(boolean withCtts, boolean withStss) {
+        mWithCtts = withCtts;
+        mWithStss = withStss;
+        if (withCtts) {
+            mCtsOffsets = new int[256];
+        }
+    }
+
+    /**
+     * 开始新的块，之后添加的采样在文件中连续存放
+     *
+     * @param offset      块相对 mdat 数据的位置
+     * @param description sample description 序号，从1开始
+     */
+    void startChunk(long offset, int description) {
+        if (mChunkCount == mChunkOffsets.length) {
+            int capacity = mChunkCount * 2;
+            mChunkOffsets = Arrays.copyOf(mChunkOffsets, capacity);
+            mChunkSamples = Arrays.copyOf(mChunkSamples, capacity);
+            mChunkDescriptions = Arrays.copyOf(mChunkDescriptions, capacity);
+        }
+        mChunkOffsets[mChunkCount] = offset;
+        mChunkSamples[mChunkCount] = 0;
+        mChunkDescriptions[mChunkCount] = description;
+        mChunkCount++;
+    }
+
+    /**
+     * 向当前块添加采样
+     */
+    void addSample(int size, int duration, int ctsOffset, boolean sync) {
+        if (mChunkCount == 0) {
+            throw new IllegalStateException("startChunk first");
+        }
+        if (mSampleCount == mSizes.length) {
+            int capacity = mSampleCount * 2;
+            mSizes = Arrays.copyOf(mSizes, capacity);
+            mDurations = Arrays.copyOf(mDurations, capacity);
+            if (mCtsOffsets != null) {
+                mCtsOffsets = Arrays.copyOf(mCtsOffsets, capacity);
+            }
+        }
+        mSizes[mSampleCount] = size;
+        mDurations[mSampleCount] = duration;
+        if (mCtsOffsets != null) {
+            mCtsOffsets[mSampleCount] = ctsOffset;
+        }
+        if (sync) {
+            if (mSyncCount == mSyncSamples.length) {
+                mSyncSamples = Arrays.copyOf(mSyncSamples, mSyncCount * 2);
+            }
+            mSyncSamples[mSyncCount++] = mSampleCount;
+        }
+        mChunkSamples[mChunkCount - 1]++;
+        mSampleCount++;
+        mDuration += duration;
+    }
+
+    /**
+     * 修改最后一个采样的时长，时长要等下一个采样到来才知道时使用
+     */
+    void setLastDuration(int duration) {
+        if (mSampleCount > 0) {
+            mDuration += duration - mDurations[mSampleCount - 1];
+            mDurations[mSampleCount - 1] = duration;
+        }
+    }
+
+    int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * 所有采样时长之和，轨道时间单位
+     */
+    long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * 最后一个块的结束位置，相对 mdat 数据
+     */
+    long getDataEnd() {
+        if (mChunkCount == 0) {
+            return 0;
+        }
+        long end = mChunkOffsets[mChunkCount - 1];
+        int sample = mSampleCount - mChunkSamples[mChunkCount - 1];
+        for (int i = sample; i < mSampleCount; i++) {
+            end += mSizes[i];
+        }
+        return end;
+    }
+
+    /**
+     * 生成采样表的各个 box，顺序与常见编码器一致
+     *
+     * @param stsd       原样保留的 sample description
+     * @param dataOffset mdat 数据在文件中的位置
+     * @return stbl
+     */
+    Mp4Box build(Mp4Box stsd, long dataOffset) {
+        long maxOffset = mChunkCount == 0 ? 0 : dataOffset + mChunkOffsets[mChunkCount - 1];
+        List<Mp4Box> children = new ArrayList<>();
+        children.add(stsd);
+        children.add(buildStts());
+        if (mWithCtts) {
+            children.add(buildCtts());
+        }
+        if (mWithStss) {
+            children.add(buildStss());
+        }
+        children.add(buildStsc());
+        children.add(buildStsz());
+        children.add(buildChunkOffsets(dataOffset, maxOffset > 0xFFFFFFFFL));
+        return new Mp4Box("stbl", children);
+    }
+
+    private Mp4Box buildStts() {
+        int entries = countRuns(mDurations);
+        ByteBuffer out = fullBox(4 + entries * 8, 0);
+        out.putInt(entries);
+        writeRuns(out, mDurations);
+        return new Mp4Box("stts", out.array());
+    }
+
+    private Mp4Box buildCtts() {
+        int entries = countRuns(mCtsOffsets);
+        boolean negative = false;
+        for (int i = 0; i < mSampleCount; i++) {
+            if (mCtsOffsets[i] < 0) {
+                negative = true;
+                break;
+            }
+        }
+        ByteBuffer out = fullBox(4 + entries * 8, negative ? 1 : 0);
+        out.putInt(entries);
+        writeRuns(out, mCtsOffsets);
+        return new Mp4Box("ctts", out.array());
+    }
+
+    private Mp4Box buildStss() {
+        ByteBuffer out = fullBox(4 + mSyncCount * 4, 0);
+        out.putInt(mSyncCount);
+        for (int i = 0; i < mSyncCount; i++) {
+            out.putInt(mSyncSamples[i] + 1);
+        }
+        return new Mp4Box("stss", out.array());
+    }
+
+    private Mp4Box buildStsc() {
+        int entries = 0;
+        for (int i = 0; i < mChunkCount; i++) {
+            if (i == 0 || mChunkSamples[i] != mChunkSamples[i - 1]
+                    || mChunkDescriptions[i] != mChunkDescriptions[i - 1]) {
+                entries++;
+            }
+        }
+        ByteBuffer out = fullBox(4 + entries * 12, 0);
+        out.putInt(entries);
+        for (int i = 0; i < mChunkCount; i++) {
+            if (i == 0 || mChunkSamples[i] != mChunkSamples[i - 1]
+                    || mChunkDescriptions[i] != mChunkDescriptions[i - 1]) {
+                out.putInt(i + 1);
+                out.putInt(mChunkSamples[i]);
+                out.putInt(mChunkDescriptions[i]);
+            }
+        }
+        return new Mp4Box("stsc", out.array());
+    }
+
+    private Mp4Box buildStsz() {
+        boolean constant = mSampleCount > 0;
+        for (int i = 1; i < mSampleCount && constant; i++) {
+            constant = mSizes[i] == mSizes[0];
+        }
+        ByteBuffer out = fullBox(8 + (constant ? 0 : mSampleCount * 4), 0);
+        out.putInt(constant ? mSizes[0] : 0);
+        out.putInt(mSampleCount);
+        if (!constant) {
+            for (int i = 0; i < mSampleCount; i++) {
+                out.putInt(mSizes[i]);
+            }
+        }
+        return new Mp4Box("stsz", out.array());
+    }
+
+    private Mp4Box buildChunkOffsets(long dataOffset, boolean co64) {
+        ByteBuffer out = fullBox(4 + mChunkCount * (co64 ? 8 : 4), 0);
+        out.putInt(mChunkCount);
+        for (int i = 0; i < mChunkCount; i++) {
+            long offset = dataOffset + mChunkOffsets[i];
+            if (co64) {
+                out.putLong(offset);
+            } else {
+                out.putInt((int) offset);
+            }
+        }
+        return new Mp4Box(co64 ? "co64" : "stco", out.array());
+    }
+
+    private int countRuns(int[] values) {
+        int runs = 0;
+        for (int i = 0; i < mSampleCount; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    private void writeRuns(ByteBuffer out, int[] values) {
+        int i = 0;
+        while (i < mSampleCount) {
+            int j = i + 1;
+            while (j < mSampleCount && values[j] == values[i]) {
+                j++;
+            }
+            out.putInt(j - i);
+            out.putInt(values[i]);
+            i = j;
+        }
+    }
+
+    private static ByteBuffer fullBox(int contentSize, int version) {
+        ByteBuffer out = ByteBuffer.allocate(4 + contentSize);
+        out.putInt(version << 24);
+        return out;
+    }
+}
@@ -0,0 +1,188 @@
+package io.hellobird.videorecord.lib.snapshot;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hellobird.videorecord.lib.camera.FrameSource;
+
+/*******************************************************************
+ * SnapshotFrameSource.java  2026-10-19
+ * <P>
+ * 在帧来源与它的使用者之间取快照：有等待的快照时把下一帧复制进 {@link SnapshotQueue}，再照常交给使用者，
+ * 连拍时每帧取一张<br/>
+ * 没有使用者时只在有等待的快照时用一个自己的缓存接收预览帧，取完即停止；MediaRecorder 录制时相机已解锁，收不到预览帧<br/>
+ * 快照数量受 {@link SnapshotQueue} 容量限制，队列已满时 {@link #requestSnapshot(File)} 返回false，
+ * 帧回调线程只做一次内存复制，不等待编码<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class SnapshotFrameSource implements FrameSource, FrameSource.FrameCallback {
+
+    private final FrameSource mSource;
+
+    private final SnapshotQueue mQueue;
+
+    private final int mOrientation;
+
+    /**
+     * 等待取帧的快照
+     */
+    private final ArrayDeque<File> mPending = new ArrayDeque<>();
+
+    private FrameCallback mCallback;
+
+    /**
+     * 没有使用者时是否正在用自己的缓存接收预览帧
+     */
+    private boolean mSampling;
+
+    /**
+     * 停止接收后留下的缓存，下次接收时复用
+     */
+    private byte[] mSpareBuffer;
+
+    private boolean mCancelled;
+
+    /**
+     * @param source      帧来源
+     * @param queue       快照队列
+     * @param orientation 画面需要顺时针旋转的角度
+     */
+    public SnapshotFrameSource(FrameSource source, SnapshotQueue queue, int orientation) {
+        mSource = source;
+        mQueue = queue;
+        mOrientation = orientation;
+    }
+
+    @Override
+    public int getWidth() {
+        return mSource.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mSource.getHeight();
+    }
+
+    @Override
+    public synchronized void setFrameCallback(@Nullable FrameCallback callback) {
+        mCallback = callback;
+        if (callback != null) {
+            mSampling = false;
+            mSource.setFrameCallback(this);
+            return;
+        }
+        mSource.setFrameCallback(null);
+        if (!mPending.isEmpty()) {
+            startSampling();
+        }
+    }
+
+    @Override
+    public void addBuffer(byte[] buffer) {
+        mSource.addBuffer(buffer);
+    }
+
+    /**
+     * 请求一张快照，从下一帧取得
+     *
+     * @param output 输出文件
+     * @return 队列已满或已取消时返回false
+     */
+    public boolean requestSnapshot(File output) {
+        if (!mQueue.tryAcquire()) {
+            return false;
+        }
+        synchronized (this) {
+            if (mCancelled) {
+                mQueue.release();
+                return false;
+            }
+            mPending.add(output);
+            if (mCallback == null && !mSampling) {
+                try {
+                    startSampling();
+                } catch (RuntimeException e) {
+                    // 相机已经释放
+                    mPending.removeLast();
+                    mQueue.release();
+                    mSampling = false;
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 取消等待中的快照并停止接收，已经取得帧的快照照常写入
+     *
+     * @return 被取消的快照
+     */
+    public List<File> cancel() {
+        List<File> cancelled;
+        synchronized (this) {
+            mCancelled = true;
+            cancelled = new ArrayList<>(mPending);
+            mPending.clear();
+            if (mSampling) {
+                mSampling = false;
+                try {
+                    mSource.setFrameCallback(null);
+                } catch (RuntimeException ignored) {
+                    // 相机已经释放
+                }
+            }
+        }
+        for (int i = 0; i < cancelled.size(); i++) {
+            mQueue.release();
+        }
+        return cancelled;
+    }
+
+    private void startSampling() {
+        mSampling = true;
+        byte[] buffer = mSpareBuffer;
+        mSpareBuffer = null;
+        if (buffer == null) {
+            buffer = new byte[mSource.getWidth() * mSource.getHeight() * 3 / 2];
+        }
+        mSource.setFrameCallback(this);
+        mSource.addBuffer(buffer);
+    }
+
+    @Override
+    public void onFrame(byte[] data, long timestampUs) {
+        File output;
+        FrameCallback callback;
+        synchronized (this) {
+            output = mPending.poll();
+            callback = mCallback;
+        }
+        if (output != null) {
+            mQueue.submitFrame(data, mSource.getWidth(), mSource.getHeight(), mOrientation, output);
+        }
+        if (callback != null) {
+            callback.onFrame(data, timestampUs);
+            return;
+        }
+        synchronized (this) {
+            if (!mSampling) {
+                return;
+            }
+            if (mPending.isEmpty()) {
+                mSampling = false;
+                mSpareBuffer = data;
+                mSource.setFrameCallback(null);
+            } else {
+                mSource.addBuffer(data);
+            }
+        }
+    }
+}
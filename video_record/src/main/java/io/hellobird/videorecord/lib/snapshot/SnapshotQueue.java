@@ -0,0 +1,262 @@
+package io.hellobird.videorecord.lib.snapshot;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************************
+ * SnapshotQueue.java  2026-10-19
+ * <P>
+ * 在单个低优先级工作线程上编码并写入快照，容量固定：先用 {@link #tryAcquire()} 占用一个位置，
+ * 没有空位时立即返回false，调用方放弃这次快照，采集线程与编码线程不会因为连拍而等待或丢帧<br/>
+ * 预览帧复制到复用的缓存后立即归还给帧来源，缓存数量不超过容量；文件先写入 .tmp 再改名，读到的文件总是完整的<br/>
+ * 工作线程空闲一段时间后退出，不需要关闭；回调在工作线程<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class SnapshotQueue {
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * 工作线程空闲多久后退出，单位秒
+     */
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private final int mCapacity;
+
+    private final Semaphore mPermits;
+
+    private final Encoder mEncoder;
+
+    /**
+     * 空闲的帧缓存
+     */
+    private final ArrayDeque<byte[]> mFreeBuffers = new ArrayDeque<>();
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private volatile Callback mCallback;
+
+    /**
+     * @param capacity 同时等待编码的快照数
+     * @param encoder  编码与写入
+     */
+    public SnapshotQueue(int capacity, Encoder encoder) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+        mCapacity = capacity;
+        mPermits = new Semaphore(capacity);
+        mEncoder = encoder;
+        // 数量由 mPermits 限制，队列本身不需要有界
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SnapshotQueue");
+                // 让出 CPU 给采集与视频编码
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setCallback(@Nullable Callback callback) {
+        mCallback = callback;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * 已占用的位置数，包括正在编码的快照
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return mCapacity - mPermits.availablePermits();
+    }
+
+    /**
+     * 占用一个位置，不等待
+     *
+     * @return 队列已满时返回false
+     */
+    public boolean tryAcquire() {
+        return mPermits.tryAcquire();
+    }
+
+    /**
+     * 放弃已占用的位置，快照不再提交时调用
+     */
+    public void release() {
+        mPermits.release();
+    }
+
+    /**
+     * 提交一帧 NV21 数据，需要先占用位置。数据在调用线程复制，返回后即可归还给帧来源
+     *
+     * @param nv21        帧数据
+     * @param width       宽度
+     * @param height      高度
+     * @param orientation 画面需要顺时针旋转的角度，写入文件信息
+     * @param output      输出文件
+     */
+    public void submitFrame(byte[] nv21, final int width, final int height, final int orientation,
+                            final File output) {
+        int size = width * height * 3 / 2;
+        if (nv21.length < size) {
+            release();
+            throw new IllegalArgumentException("Frame too small: " + nv21.length);
+        }
+        final byte[] copy = obtainBuffer(size);
+        System.arraycopy(nv21, 0, copy, 0, size);
+        execute(output, new Task() {
+            @Override
+            public void write(File temp) throws IOException {
+                try {
+                    mEncoder.encodeFrame(copy, width, height, orientation, temp);
+                } finally {
+                    recycleBuffer(copy);
+                }
+            }
+        });
+    }
+
+    /**
+     * 提交已经编码的 JPEG，需要先占用位置。数据不复制，提交后调用方不能再修改
+     *
+     * @param jpeg        JPEG 数据
+     * @param orientation 画面需要顺时针旋转的角度，写入文件信息
+     * @param output      输出文件
+     */
+    public void submitJpeg(final byte[] jpeg, final int orientation, final File output) {
+        execute(output, new Task() {
+            @Override
+            public void write(File temp) throws IOException {
+                mEncoder.writeJpeg(jpeg, orientation, temp);
+            }
+        });
+    }
+
+    private interface Task {
+        void write(File temp) throws IOException;
+    }
+
+    private void execute(final File output, final Task task) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File temp = new File(output.getPath() + TEMP_EXTENSION);
+                try {
+                    task.write(temp);
+                    if (!temp.renameTo(output)) {
+                        throw new IOException("Cannot rename " + temp + " to " + output);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    temp.delete();
+                    mPermits.release();
+                    Callback callback = mCallback;
+                    if (callback != null) {
+                        callback.onSnapshotFailed(output, e);
+                    }
+                    return;
+                }
+                mPermits.release();
+                Callback callback = mCallback;
+                if (callback != null) {
+                    callback.onSnapshotTaken(output);
+                }
+            }
+        });
+    }
+
+    /**
+     * 取一个空闲缓存，帧尺寸变化后丢弃旧的缓存
+     */
+    private synchronized byte[] obtainBuffer(int size) {
+        byte[] buffer;
+        while ((buffer = mFreeBuffers.poll()) != null) {
+            if (buffer.length == size) {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    private synchronized void recycleBuffer(byte[] buffer) {
+        if (mFreeBuffers.size() < mCapacity) {
+            mFreeBuffers.add(buffer);
+        }
+    }
+
+    public interface Encoder {
+        /**
+         * 把 NV21 帧编码为 JPEG 写入文件，在工作线程调用
+         *
+         * @param nv21        帧数据
+         * @param width       宽度
+         * @param height      高度
+         * @param orientation 画面需要顺时针旋转的角度
+         * @param output      输出文件
+         * @throws IOException 写入失败
+         */
+        void encodeFrame(byte[] nv21, int width, int height, int orientation, File output) throws IOException;
+
+        /**
+         * 把已经编码的 JPEG 写入文件，在工作线程调用
+         *
+         * @param jpeg        JPEG 数据
+         * @param orientation 画面需要顺时针旋转的角度
+         * @param output      输出文件
+         * @throws IOException 写入失败
+         */
+        void writeJpeg(byte[] jpeg, int orientation, File output) throws IOException;
+    }
+
+    public interface Callback {
+        /**
+         * 快照已写入，在工作线程回调
+         *
+         * @param file 输出文件
+         */
+        void onSnapshotTaken(File file);
+
+        /**
+         * 快照失败，没有写入文件，在工作线程回调
+         *
+         * @param file 输出文件
+         * @param e    错误
+         */
+        void onSnapshotFailed(File file, Exception e);
+    }
+
+    /**
+     * 把数据原样写入文件
+     *
+     * @param data   数据
+     * @param output 输出文件
+     * @throws IOException 写入失败
+     */
+    static void writeFully(byte[] data, File output) throws IOException {
+        FileOutputStream out = new FileOutputStream(output);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
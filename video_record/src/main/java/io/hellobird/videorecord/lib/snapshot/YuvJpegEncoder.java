@@ -0,0 +1,73 @@
+package io.hellobird.videorecord.lib.snapshot;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.ExifInterface;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*******************************************************************
+ * YuvJpegEncoder.java  2026-10-19
+ * <P>
+ * 用 {@link YuvImage} 把预览帧编码为 JPEG，旋转角度写入 EXIF，不旋转像素<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class YuvJpegEncoder implements SnapshotQueue.Encoder {
+
+    private final int mQuality;
+
+    /**
+     * @param quality JPEG 质量，0-100
+     */
+    public YuvJpegEncoder(int quality) {
+        mQuality = quality;
+    }
+
+    @Override
+    public void encodeFrame(byte[] nv21, int width, int height, int orientation, File output) throws IOException {
+        YuvImage image = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            if (!image.compressToJpeg(new Rect(0, 0, width, height), mQuality, out)) {
+                throw new IOException("Cannot compress " + width + "x" + height + " frame");
+            }
+        } finally {
+            out.close();
+        }
+        writeOrientation(output, orientation);
+    }
+
+    @Override
+    public void writeJpeg(byte[] jpeg, int orientation, File output) throws IOException {
+        SnapshotQueue.writeFully(jpeg, output);
+        writeOrientation(output, orientation);
+    }
+
+    private static void writeOrientation(File file, int orientation) throws IOException {
+        int value;
+        switch ((orientation % 360 + 360) % 360) {
+            case 90:
+                value = ExifInterface.ORIENTATION_ROTATE_90;
+                break;
+            case 180:
+                value = ExifInterface.ORIENTATION_ROTATE_180;
+                break;
+            case 270:
+                value = ExifInterface.ORIENTATION_ROTATE_270;
+                break;
+            default:
+                return;
+        }
+        ExifInterface exif = new ExifInterface(file.getPath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(value));
+        exif.saveAttributes();
+    }
+}
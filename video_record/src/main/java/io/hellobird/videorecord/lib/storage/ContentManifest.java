@@ -0,0 +1,173 @@
+package io.hellobird.videorecord.lib.storage;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*******************************************************************
+ * ContentManifest.java  2026-10-19
+ * <P>
+ * 文件内容摘要，用于断点续传与去重上传<br/>
+ * 文件按固定大小分块，每块计算 SHA-256，最后一块可以不满；整个文件的摘要是所有分块摘要依次拼接后的 SHA-256<br/>
+ * 整个文件的摘要不是文件本身的 SHA-256：MP4 结束时要回写文件头，文件头之后的数据已经计算过，
+ * 逐字节的摘要只能重新读取整个文件；按分块计算时只需要重新读取被回写的分块<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class ContentManifest {
+
+    public static final String ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long mLength;
+
+    private final int mChunkSize;
+
+    private final List<byte[]> mChunkDigests;
+
+    private final byte[] mContentHash;
+
+    ContentManifest(long length, int chunkSize, List<byte[]> chunkDigests) {
+        mLength = length;
+        mChunkSize = chunkSize;
+        mChunkDigests = Collections.unmodifiableList(new ArrayList<>(chunkDigests));
+        MessageDigest digest = newDigest();
+        for (byte[] chunkDigest : chunkDigests) {
+            digest.update(chunkDigest);
+        }
+        mContentHash = digest.digest();
+    }
+
+    /**
+     * 读取整个文件计算摘要，用于 MediaRecorder 录制的文件或者校验
+     *
+     * @param file      文件
+     * @param chunkSize 分块大小
+     * @return
+     * @throws IOException 读取失败
+     */
+    @NonNull
+    public static ContentManifest compute(@NonNull File file, int chunkSize) throws IOException {
+        checkChunkSize(chunkSize);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            List<byte[]> digests = new ArrayList<>();
+            MessageDigest digest = newDigest();
+            for (long offset = 0; offset < length; offset += chunkSize) {
+                digests.add(digestRange(channel, offset, Math.min(offset + chunkSize, length), digest));
+            }
+            return new ContentManifest(length, chunkSize, digests);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 计算文件中一段数据的摘要
+     */
+    static byte[] digestRange(FileChannel channel, long from, long to, MessageDigest digest) throws IOException {
+        digest.reset();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, to - from));
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+        return digest.digest();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+
+    static void checkChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+    }
+
+    /**
+     * 文件长度
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * 分块大小，最后一块可能更小
+     */
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public int getChunkCount() {
+        return mChunkDigests.size();
+    }
+
+    /**
+     * 分块的 SHA-256
+     *
+     * @param index 分块序号
+     * @return 32字节摘要的副本
+     */
+    @NonNull
+    public byte[] getChunkDigest(int index) {
+        return mChunkDigests.get(index).clone();
+    }
+
+    /**
+     * 整个文件的摘要：所有分块摘要依次拼接后的 SHA-256
+     *
+     * @return 32字节摘要的副本
+     */
+    @NonNull
+    public byte[] getContentHash() {
+        return mContentHash.clone();
+    }
+
+    /**
+     * 转换为小写十六进制字符串
+     */
+    @NonNull
+    public static String toHex(@NonNull byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return "ContentManifest{length=" + mLength + ", chunkSize=" + mChunkSize + ", chunks=" + mChunkDigests.size()
+                + ", contentHash=" + toHex(mContentHash) + "}";
+    }
+}
@@ -0,0 +1,434 @@
+package io.hellobird.videorecord.lib.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/*******************************************************************
+ * EncryptedFileChannel.java  2026-10-19
+ * <P>
+ * 使用 AES-CTR 加密的文件，写入时直接加密，磁盘上不会出现明文<br/>
+ * CTR 模式下任意位置都可以单独加解密，因此可以像普通文件一样随机读写，
+ * 例如 MP4 结束时回写 mdat 大小，或者播放时跳转<br/>
+ * 文件开头是一页大小的明文头：魔数、版本、16字节初始计数器、8字节密钥校验值，其余补0，之后是与原文件等长的密文<br/>
+ * 头部补齐到一页，密文的写入位置与明文文件的页对齐情况相同，不会因为偏移增加写入开销<br/>
+ * 只保证机密性，不校验密文是否被修改；同一位置重复写入会泄露两次明文的异或，只应用于回写文件头等少量数据<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class EncryptedFileChannel extends FileChannel {
+
+    private static final int MAGIC = 0x56524543; // VREC
+
+    private static final int VERSION = 1;
+
+    /**
+     * 明文头长度，数据的位置都相对于头之后
+     */
+    public static final int HEADER_SIZE = 4096;
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int KEY_CHECK_SIZE = 8;
+
+    /**
+     * 一次加解密的数据量
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String TRANSFORMATION = "AES/CTR/NoPadding";
+
+    private final FileChannel mChannel;
+
+    private final SecretKey mKey;
+
+    private final byte[] mIv;
+
+    private final boolean mWritable;
+
+    /**
+     * 顺序读写时复用同一个 Cipher，记录它下一次处理的位置，-1表示需要重新初始化
+     */
+    private Cipher mWriteCipher;
+
+    private long mWriteCipherPosition = -1;
+
+    private Cipher mReadCipher;
+
+    private long mReadCipherPosition = -1;
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private long mPosition;
+
+    private EncryptedFileChannel(FileChannel channel, SecretKey key, byte[] iv, boolean writable) {
+        mChannel = channel;
+        mKey = key;
+        mIv = iv;
+        mWritable = writable;
+    }
+
+    /**
+     * 创建新的加密文件，已有的文件会被清空
+     *
+     * @param file 文件
+     * @param key  AES 密钥。使用 AndroidKeyStore 中的密钥时每次加密都要跨进程，速度达不到要求，
+     *             应当用它加密保存一个数据密钥
+     * @return
+     * @throws IOException 文件无法创建，或者密钥不可用
+     */
+    public static EncryptedFileChannel create(File file, SecretKey key) throws IOException {
+        return create(new RandomAccessFile(file, "rw").getChannel(), key);
+    }
+
+    /**
+     * 在已打开的文件上创建加密文件，已有的内容会被清空，例如经过 {@link HashingFileChannel} 计算密文摘要
+     *
+     * @param channel 可读写的文件，关闭时一起关闭
+     * @param key     AES 密钥
+     * @return
+     * @throws IOException 文件无法写入，或者密钥不可用
+     */
+    public static EncryptedFileChannel create(FileChannel channel, SecretKey key) throws IOException {
+        byte[] iv = new byte[BLOCK_SIZE];
+        new SecureRandom().nextBytes(iv);
+        try {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).put(iv).put(keyCheck(key, iv));
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            return new EncryptedFileChannel(channel, key, iv, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已有的加密文件
+     *
+     * @param file     文件
+     * @param key      AES 密钥
+     * @param writable 是否可写
+     * @return
+     * @throws IOException 不是加密文件或密钥错误
+     */
+    public static EncryptedFileChannel open(File file, SecretKey key, boolean writable) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            FileChannel channel = raf.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not an encrypted file: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an encrypted file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of " + file);
+            }
+            byte[] iv = new byte[BLOCK_SIZE];
+            header.get(iv);
+            byte[] check = new byte[KEY_CHECK_SIZE];
+            header.get(check);
+            if (!Arrays.equals(check, keyCheck(key, iv))) {
+                throw new IOException("Wrong key for " + file);
+            }
+            return new EncryptedFileChannel(channel, key, iv, writable);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 密钥校验值：最高位取反的初始计数器加密得到的密钥流，与数据使用的计数器不重叠
+     */
+    private static byte[] keyCheck(SecretKey key, byte[] iv) throws IOException {
+        byte[] counter = iv.clone();
+        counter[0] ^= 0x80;
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(counter));
+            return cipher.doFinal(new byte[KEY_CHECK_SIZE]);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-CTR not available", e);
+        }
+    }
+
+    /**
+     * 初始化到数据中的指定位置
+     */
+    private Cipher initCipher(Cipher cipher, long position) throws IOException {
+        byte[] counter = mIv.clone();
+        // 计数器按128位大端整数加上块序号
+        long block = position / BLOCK_SIZE;
+        for (int i = BLOCK_SIZE - 1; i >= 0 && block != 0; i--) {
+            long sum = (counter[i] & 0xFF) + (block & 0xFF);
+            counter[i] = (byte) sum;
+            block = (block >>> 8) + (sum >>> 8);
+        }
+        try {
+            if (cipher == null) {
+                cipher = Cipher.getInstance(TRANSFORMATION);
+            }
+            cipher.init(Cipher.ENCRYPT_MODE, mKey, new IvParameterSpec(counter));
+            int skip = (int) (position % BLOCK_SIZE);
+            if (skip > 0) {
+                cipher.update(new byte[skip]);
+            }
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot init cipher", e);
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        int total = 0;
+        while (dst.hasRemaining()) {
+            mBuffer.clear();
+            mBuffer.limit(Math.min(mBuffer.capacity(), dst.remaining()));
+            int read = mChannel.read(mBuffer, HEADER_SIZE + position);
+            if (read <= 0) {
+                if (total == 0 && read < 0) {
+                    return -1;
+                }
+                break;
+            }
+            mBuffer.flip();
+            if (mReadCipherPosition != position) {
+                mReadCipher = initCipher(mReadCipher, position);
+            }
+            try {
+                mReadCipher.update(mBuffer.array(), 0, read, mBuffer.array(), 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cipher failed", e);
+            }
+            mReadCipherPosition = position + read;
+            dst.put(mBuffer);
+            position += read;
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        ensureOpen();
+        if (!mWritable) {
+            throw new IOException("Channel is read only");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        int total = 0;
+        while (src.hasRemaining()) {
+            int count = Math.min(mBuffer.capacity(), src.remaining());
+            if (mWriteCipherPosition != position) {
+                mWriteCipher = initCipher(mWriteCipher, position);
+            }
+            byte[] buffer = mBuffer.array();
+            try {
+                if (src.hasArray()) {
+                    mWriteCipher.update(src.array(), src.arrayOffset() + src.position(), count, buffer, 0);
+                    src.position(src.position() + count);
+                } else {
+                    src.get(buffer, 0, count);
+                    mWriteCipher.update(buffer, 0, count, buffer, 0);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cipher failed", e);
+            }
+            mWriteCipherPosition = position + count;
+            mBuffer.clear();
+            mBuffer.limit(count);
+            long filePosition = HEADER_SIZE + position;
+            while (mBuffer.hasRemaining()) {
+                filePosition += mChannel.write(mBuffer, filePosition);
+            }
+            position += count;
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, mPosition);
+        if (read > 0) {
+            mPosition += read;
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (!dsts[i].hasRemaining()) {
+                continue;
+            }
+            int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        int written = write(src, mPosition);
+        mPosition += written;
+        return written;
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += write(srcs[i]);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return mPosition;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        mPosition = newPosition;
+        return this;
+    }
+
+    /**
+     * 明文的长度
+     */
+    @Override
+    public long size() throws IOException {
+        return Math.max(0, mChannel.size() - HEADER_SIZE);
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long size) throws IOException {
+        if (!mWritable) {
+            throw new IOException("Channel is read only");
+        }
+        if (size < size()) {
+            mChannel.truncate(HEADER_SIZE + size);
+        }
+        mPosition = Math.min(mPosition, size);
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        mChannel.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 0)));
+        long total = 0;
+        while (total < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count - total));
+            int read = read(buffer, position + total);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 0)));
+        long total = 0;
+        while (total < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count - total));
+            int read = src.read(buffer);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            write(buffer, position + total);
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * 密文不能直接映射
+     */
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        throw new UnsupportedOperationException("Encrypted channel cannot be mapped");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return mChannel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return mChannel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        mChannel.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
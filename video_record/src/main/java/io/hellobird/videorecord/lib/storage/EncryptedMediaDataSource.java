@@ -0,0 +1,54 @@
+package io.hellobird.videorecord.lib.storage;
+
+import android.media.MediaDataSource;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.crypto.SecretKey;
+
+/*******************************************************************
+ * EncryptedMediaDataSource.java  2026-10-19
+ * <P>
+ * 读取 {@link EncryptedFileChannel} 加密的文件，交给 MediaPlayer、MediaExtractor 播放<br/>
+ * 随机读取时只解密读取的部分，不需要先解密整个文件<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+@RequiresApi(23)
+public final class EncryptedMediaDataSource extends MediaDataSource {
+
+    private final EncryptedFileChannel mChannel;
+
+    /**
+     * @param file 加密文件
+     * @param key  加密时使用的密钥
+     * @throws IOException 文件无法打开或密钥不正确
+     */
+    public EncryptedMediaDataSource(File file, SecretKey key) throws IOException {
+        mChannel = EncryptedFileChannel.open(file, key, false);
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        return mChannel.read(ByteBuffer.wrap(buffer, offset, size), position);
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mChannel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
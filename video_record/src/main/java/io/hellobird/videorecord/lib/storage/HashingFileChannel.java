@@ -0,0 +1,331 @@
+package io.hellobird.videorecord.lib.storage;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/*******************************************************************
+ * HashingFileChannel.java  2026-10-19
+ * <P>
+ * 写入时计算 {@link ContentManifest}，上传前不需要再读取整个文件<br/>
+ * 从文件开头连续写入的数据直接计算分块摘要；回写已经计算过的位置时记下所在分块，关闭时只重新读取这些分块，
+ * 例如 MP4 结束时回写的 mdat 大小。跳过一段位置写入时，之后的数据改为关闭时读取<br/>
+ * 关闭时计算完成，之后通过 {@link #getManifest()} 获取<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class HashingFileChannel extends FileChannel {
+
+    /**
+     * 默认分块大小
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel mChannel;
+
+    private final int mChunkSize;
+
+    /**
+     * 当前分块的摘要
+     */
+    private final MessageDigest mDigest = ContentManifest.newDigest();
+
+    /**
+     * 已完成分块的摘要
+     */
+    private final List<byte[]> mChunkDigests = new ArrayList<>();
+
+    /**
+     * 计算到的位置，之前的数据都已经计算过
+     */
+    private long mHashedLength;
+
+    /**
+     * 写入位置不连续，之后的数据在关闭时读取
+     */
+    private boolean mDeferred;
+
+    /**
+     * 计算后又被修改的分块
+     */
+    private final BitSet mDirtyChunks = new BitSet();
+
+    private long mPosition;
+
+    private ContentManifest mManifest;
+
+    /**
+     * @param channel   可读写的文件，从位置0开始计算，关闭时一起关闭
+     * @param chunkSize 分块大小
+     */
+    public HashingFileChannel(FileChannel channel, int chunkSize) {
+        ContentManifest.checkChunkSize(chunkSize);
+        mChannel = channel;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * 获取文件摘要
+     *
+     * @return 关闭前或关闭时计算失败返回null
+     */
+    @Nullable
+    public synchronized ContentManifest getManifest() {
+        return mManifest;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        ensureOpen();
+        ByteBuffer written = src.duplicate();
+        int count = mChannel.write(src, position);
+        written.limit(written.position() + count);
+        onWritten(written, position);
+        return count;
+    }
+
+    private void onWritten(ByteBuffer data, long position) {
+        long end = position + data.remaining();
+        if (position < mHashedLength) {
+            long dirtyEnd = Math.min(end, mHashedLength);
+            mDirtyChunks.set(chunkOf(position), chunkOf(dirtyEnd - 1) + 1);
+            data.position(data.position() + (int) (dirtyEnd - position));
+            position = dirtyEnd;
+        }
+        if (!data.hasRemaining() || mDeferred) {
+            return;
+        }
+        if (position > mHashedLength) {
+            // 中间的数据还没有写入
+            mDeferred = true;
+            return;
+        }
+        update(data);
+    }
+
+    /**
+     * 计算从 mHashedLength 开始的数据
+     */
+    private void update(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            int room = (int) (mChunkSize - mHashedLength % mChunkSize);
+            int count = Math.min(room, data.remaining());
+            ByteBuffer part = data.duplicate();
+            part.limit(part.position() + count);
+            mDigest.update(part);
+            data.position(data.position() + count);
+            mHashedLength += count;
+            if (count == room) {
+                mChunkDigests.add(mDigest.digest());
+            }
+        }
+    }
+
+    private int chunkOf(long position) {
+        return (int) (position / mChunkSize);
+    }
+
+    /**
+     * 退回到 length 所在分块的开头，之后的数据在关闭时读取
+     */
+    private void rewind(long length) {
+        int chunk = chunkOf(length);
+        if (chunk < mChunkDigests.size()) {
+            mChunkDigests.subList(chunk, mChunkDigests.size()).clear();
+        }
+        mDigest.reset();
+        mHashedLength = (long) chunk * mChunkSize;
+        mDirtyChunks.clear(chunk, Math.max(chunk, mDirtyChunks.length()));
+        mDeferred = true;
+    }
+
+    private ContentManifest buildManifest() throws IOException {
+        long length = mChannel.size();
+        if (length < mHashedLength) {
+            rewind(length);
+        }
+        if (length > mHashedLength) {
+            // 不连续写入之后的数据
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, length - mHashedLength));
+            while (mHashedLength < length) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), length - mHashedLength));
+                if (mChannel.read(buffer, mHashedLength) < 0) {
+                    throw new IOException("Unexpected end of file at " + mHashedLength);
+                }
+                buffer.flip();
+                update(buffer);
+            }
+        }
+        if (mHashedLength % mChunkSize != 0) {
+            mChunkDigests.add(mDigest.digest());
+        }
+        MessageDigest digest = ContentManifest.newDigest();
+        for (int chunk = mDirtyChunks.nextSetBit(0); chunk >= 0 && chunk < mChunkDigests.size();
+             chunk = mDirtyChunks.nextSetBit(chunk + 1)) {
+            long from = (long) chunk * mChunkSize;
+            mChunkDigests.set(chunk, ContentManifest.digestRange(mChannel, from, Math.min(from + mChunkSize, length), digest));
+        }
+        return new ContentManifest(length, mChunkSize, mChunkDigests);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        return mChannel.read(dst, position);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, mPosition);
+        if (read > 0) {
+            mPosition += read;
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (!dsts[i].hasRemaining()) {
+                continue;
+            }
+            int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        int written = write(src, mPosition);
+        mPosition += written;
+        return written;
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += write(srcs[i]);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return mPosition;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        mPosition = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return mChannel.size();
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long size) throws IOException {
+        ensureOpen();
+        mChannel.truncate(size);
+        if (size < mHashedLength) {
+            rewind(size);
+        }
+        mPosition = Math.min(mPosition, size);
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        mChannel.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return mChannel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 0)));
+        long total = 0;
+        while (total < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count - total));
+            int read = src.read(buffer);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                write(buffer, position + total + buffer.position());
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * 映射后的写入无法计算
+     */
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        throw new UnsupportedOperationException("Hashing channel cannot be mapped");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return mChannel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return mChannel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected synchronized void implCloseChannel() throws IOException {
+        try {
+            mManifest = buildManifest();
+        } finally {
+            mChannel.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package io.hellobird.videorecord.lib.storage;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import io.hellobird.videorecord.lib.mp4.KeyframeIndex;
+import io.hellobird.videorecord.lib.mp4.Mp4Recovery;
+import io.hellobird.videorecord.lib.mp4.RecoveryInfo;
+
+/*******************************************************************
+ * OutputFileManager.java  2026-10-19
+ * <P>
+ * 录制输出文件管理，每次录制生成不重名的文件，不会覆盖上一次的录制<br/>
+ * 开始录制前检查剩余空间，并可以按预估大小预分配磁盘空间，结束后截掉未使用的部分<br/>
+ * 超过配额的旧文件在后台线程删除，正在使用的文件不会被删除<br/>
+ * 录制中可以在文件旁保存修复信息，进程退出后通过 {@link #listRecoverable()} 找到需要修复的文件<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class OutputFileManager {
+
+    private static final String TAG = "OutputFileManager";
+
+    /**
+     * 默认配额，超过后删除最旧的文件
+     */
+    public static final long DEFAULT_QUOTA_BYTES = 500L * 1024 * 1024;
+
+    /**
+     * 默认保留的剩余空间，录制后剩余空间低于此值时不开始录制
+     */
+    public static final long DEFAULT_RESERVED_BYTES = 50L * 1024 * 1024;
+
+    /**
+     * 容器与音频的额外开销
+     */
+    private static final double SIZE_OVERHEAD = 1.1;
+
+    private static HandlerThread sCleanupThread;
+
+    private final File mDirectory;
+
+    private final String mPrefix;
+
+    private final String mExtension;
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+
+    /**
+     * 正在录制的文件，不参与清理
+     */
+    private final Set<String> mActiveFiles = new HashSet<>();
+
+    private final Handler mCleanupHandler;
+
+    private volatile long mQuotaBytes = DEFAULT_QUOTA_BYTES;
+
+    private volatile long mReservedBytes = DEFAULT_RESERVED_BYTES;
+
+    /**
+     * @param directory 输出目录，不存在时自动创建
+     */
+    public OutputFileManager(@NonNull File directory) {
+        this(directory, "VID_", ".mp4");
+    }
+
+    /**
+     * @param directory 输出目录，不存在时自动创建
+     * @param prefix    文件名前缀，清理时只处理带此前缀的文件
+     * @param extension 扩展名，包含点号
+     */
+    public OutputFileManager(@NonNull File directory, @NonNull String prefix, @NonNull String extension) {
+        mDirectory = directory;
+        mPrefix = prefix;
+        mExtension = extension;
+        mCleanupHandler = new Handler(getCleanupLooper());
+    }
+
+    private static synchronized Looper getCleanupLooper() {
+        if (sCleanupThread == null) {
+            sCleanupThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            sCleanupThread.start();
+        }
+        return sCleanupThread.getLooper();
+    }
+
+    /**
+     * 设置配额，超过后在后台删除最旧的文件
+     *
+     * @param quotaBytes 字节数，<=0表示不限制
+     */
+    public void setQuotaBytes(long quotaBytes) {
+        mQuotaBytes = quotaBytes;
+    }
+
+    public long getQuotaBytes() {
+        return mQuotaBytes;
+    }
+
+    /**
+     * 设置录制后至少保留的剩余空间
+     *
+     * @param reservedBytes 字节数
+     */
+    public void setReservedBytes(long reservedBytes) {
+        mReservedBytes = Math.max(reservedBytes, 0);
+    }
+
+    public long getReservedBytes() {
+        return mReservedBytes;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * 生成新的输出文件并标记为使用中，文件已经创建，名称在目录内唯一
+     *
+     * @return 输出文件，目录无法创建时返回null
+     */
+    @Nullable
+    public synchronized File newSessionFile() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Cannot create directory " + mDirectory);
+            return null;
+        }
+        String base = mPrefix + mDateFormat.format(new Date());
+        File file = new File(mDirectory, base + mExtension);
+        try {
+            for (int i = 1; !file.createNewFile(); i++) {
+                file = new File(mDirectory, base + '_' + i + mExtension);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot create output file in " + mDirectory, e);
+            return null;
+        }
+        mActiveFiles.add(file.getAbsolutePath());
+        return file;
+    }
+
+    /**
+     * 生成输出文件的附属文件并标记为使用中，例如代理文件，已有的同名文件会被清空<br/>
+     * 结束时同样调用 {@link #finishSession(File, boolean)}
+     *
+     * @param sessionFile 输出文件
+     * @param suffix      加在扩展名前的后缀
+     * @return 附属文件，无法创建时返回null
+     */
+    @Nullable
+    public synchronized File newCompanionFile(@NonNull File sessionFile, @NonNull String suffix) {
+        File file = companionOf(sessionFile, suffix);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot create " + file, e);
+            return null;
+        }
+        mActiveFiles.add(file.getAbsolutePath());
+        return file;
+    }
+
+    /**
+     * 附属文件的路径：在扩展名前加上后缀
+     *
+     * @param file   输出文件
+     * @param suffix 后缀
+     * @return
+     */
+    @NonNull
+    public static File companionOf(@NonNull File file, @NonNull String suffix) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String companion = dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix;
+        return new File(file.getParentFile(), companion);
+    }
+
+    /**
+     * 录制结束，文件不再标记为使用中，并在后台按配额清理
+     *
+     * @param file    输出文件
+     * @param discard 是否删除该文件，例如开始录制失败
+     */
+    public void finishSession(@NonNull File file, boolean discard) {
+        finishSession(file, discard, null);
+    }
+
+    /**
+     * 录制结束，文件不再标记为使用中，并在后台按配额清理
+     *
+     * @param file       输出文件
+     * @param discard    是否删除该文件，例如开始录制失败
+     * @param onFinished 截掉预分配空间后在后台线程执行，之后文件不再变化
+     */
+    public void finishSession(@NonNull final File file, final boolean discard, @Nullable final Runnable onFinished) {
+        mCleanupHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (discard) {
+                    file.delete();
+                    KeyframeIndex.sidecarOf(file).delete();
+                } else {
+                    trimToContent(file);
+                }
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+                RecoveryInfo.sidecarOf(file).delete();
+                synchronized (OutputFileManager.this) {
+                    mActiveFiles.remove(file.getAbsolutePath());
+                }
+                cleanup();
+            }
+        });
+    }
+
+    /**
+     * 录制被中断，文件没有正常结束，例如媒体服务断开。在后台截掉预分配空间后按修复信息补写索引，
+     * 修复失败时保留修复信息，之后可以通过 {@link #listRecoverable()} 找到并使用参考文件修复
+     *
+     * @param file       输出文件
+     * @param onFinished 修复后在后台线程执行，之后文件不再变化
+     */
+    public void finishInterruptedSession(@NonNull final File file, @Nullable final Runnable onFinished) {
+        mCleanupHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                trimToContent(file);
+                boolean recovered = recoverQuietly(file);
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+                if (recovered) {
+                    RecoveryInfo.sidecarOf(file).delete();
+                }
+                synchronized (OutputFileManager.this) {
+                    mActiveFiles.remove(file.getAbsolutePath());
+                }
+                cleanup();
+            }
+        });
+    }
+
+    /**
+     * @return 文件是否完整，没有数据或无法修复时返回false
+     */
+    private static boolean recoverQuietly(File file) {
+        try {
+            if (!file.isFile() || !Mp4Recovery.needsRecovery(file)) {
+                return file.isFile();
+            }
+            if (!RecoveryInfo.sidecarOf(file).isFile()) {
+                return false;
+            }
+            Mp4Recovery.Result result = Mp4Recovery.recover(file);
+            Log.i(TAG, "Recovered interrupted " + file.getName() + ": " + result);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot recover " + file + ", left for listRecoverable()", e);
+            return false;
+        }
+    }
+
+    /**
+     * 保存录制文件的修复信息，在开始录制后调用，文件正常结束时由 {@link #finishSession(File, boolean)} 删除
+     *
+     * @param file 输出文件
+     * @param info 修复信息
+     * @return 是否成功
+     */
+    public boolean writeRecoveryInfo(@NonNull File file, @NonNull RecoveryInfo info) {
+        File sidecar = RecoveryInfo.sidecarOf(file);
+        try {
+            info.write(sidecar);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + sidecar, e);
+            return false;
+        }
+    }
+
+    /**
+     * 查找上次录制中进程退出留下的文件，可以用 {@link Mp4Recovery#recover(File)} 修复<br/>
+     * 已经完整的文件会删除多余的修复信息。需要读取文件头，不要在主线程调用
+     *
+     * @return 需要修复的文件，不包括正在录制的文件
+     */
+    @NonNull
+    public List<File> listRecoverable() {
+        List<File> result = new ArrayList<>();
+        File[] sidecars = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(RecoveryInfo.SIDECAR_SUFFIX);
+            }
+        });
+        if (sidecars == null) {
+            return result;
+        }
+        Set<String> active;
+        synchronized (this) {
+            active = new HashSet<>(mActiveFiles);
+        }
+        for (File sidecar : sidecars) {
+            String path = sidecar.getAbsolutePath();
+            File file = new File(path.substring(0, path.length() - RecoveryInfo.SIDECAR_SUFFIX.length()));
+            if (active.contains(file.getAbsolutePath())) {
+                continue;
+            }
+            try {
+                if (file.isFile() && Mp4Recovery.needsRecovery(file)) {
+                    result.add(file);
+                    continue;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot read " + file, e);
+                continue;
+            }
+            sidecar.delete();
+        }
+        return result;
+    }
+
+    /**
+     * 在后台按配额清理旧文件
+     */
+    public void scheduleCleanup() {
+        mCleanupHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                cleanup();
+            }
+        });
+    }
+
+    /**
+     * 预估录制文件大小
+     *
+     * @param bitRate    视频码率，单位 bit/s
+     * @param durationMs 时长
+     * @return 字节数
+     */
+    public static long estimateSize(int bitRate, long durationMs) {
+        return (long) ((double) bitRate / 8 * durationMs / 1000 * SIZE_OVERHEAD);
+    }
+
+    /**
+     * 剩余空间是否足够写入预估大小并保留 {@link #setReservedBytes(long)}
+     *
+     * @param expectedBytes 预估大小，未知时传0
+     * @return
+     */
+    public boolean hasFreeSpace(long expectedBytes) {
+        File dir = mDirectory.isDirectory() ? mDirectory : mDirectory.getParentFile();
+        if (dir == null) {
+            return true;
+        }
+        long usable = dir.getUsableSpace();
+        // 无法获取时不阻止录制
+        return usable == 0 || usable - expectedBytes >= mReservedBytes;
+    }
+
+    /**
+     * 保留 {@link #setReservedBytes(long)} 后还可以写入的字节数
+     *
+     * @return 无法获取时返回-1
+     */
+    public long getWritableBytes() {
+        File dir = mDirectory.isDirectory() ? mDirectory : mDirectory.getParentFile();
+        long usable = dir != null ? dir.getUsableSpace() : 0;
+        if (usable == 0) {
+            return -1;
+        }
+        return Math.max(usable - mReservedBytes, 0);
+    }
+
+    /**
+     * 预分配磁盘空间，避免录制中途因空间不足或碎片化导致写入变慢<br/>
+     * 支持时使用 posix_fallocate 真正占用磁盘块，否则只设置文件长度<br/>
+     * 录制结束后需要调用 {@link #finishSession(File, boolean)} 截掉未写入的部分
+     *
+     * @param file  输出文件
+     * @param bytes 预分配大小
+     * @return 是否成功
+     */
+    public boolean preallocate(@NonNull File file, long bytes) {
+        if (bytes <= 0) {
+            return false;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                try {
+                    Os.posix_fallocate(raf.getFD(), 0, bytes);
+                    return true;
+                } catch (ErrnoException e) {
+                    Log.i(TAG, "posix_fallocate not supported, fall back to setLength", e);
+                }
+            }
+            raf.setLength(bytes);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Preallocate " + bytes + " bytes failed", e);
+            return false;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 截掉 MP4 文件末尾预分配但未写入的部分<br/>
+     * 依次跳过顶层 box，遇到全零的 box 头时认为是预分配的空间
+     *
+     * @param file MP4 文件
+     */
+    static void trimToContent(File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            long length = raf.length();
+            long end = findContentEnd(raf, length);
+            if (end > 0 && end < length) {
+                raf.setLength(end);
+                Log.i(TAG, "Trimmed " + (length - end) + " preallocated bytes from " + file.getName());
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Trim failed " + file, e);
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return 第一个全零 box 头的位置，没有找到或文件结构异常时返回-1
+     */
+    static long findContentEnd(RandomAccessFile raf, long length) throws IOException {
+        long offset = 0;
+        while (offset + 8 <= length) {
+            raf.seek(offset);
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            int type = raf.readInt();
+            if (size == 0 && type == 0) {
+                return offset;
+            }
+            if (size == 1) {
+                size = raf.readLong();
+            } else if (size == 0) {
+                // 最后一个 box 延伸到文件末尾
+                return -1;
+            }
+            if (size < 8) {
+                return -1;
+            }
+            offset += size;
+        }
+        return -1;
+    }
+
+    /**
+     * 删除空文件与没有对应文件的修复信息，并从最旧的文件开始删除直到总大小不超过配额，在清理线程执行
+     */
+    private void cleanup() {
+        deleteOrphanSidecars();
+        File[] files = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(mPrefix) && name.endsWith(mExtension);
+            }
+        });
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Set<String> active;
+        synchronized (this) {
+            active = new HashSet<>(mActiveFiles);
+        }
+        long[] lastModified = new long[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            if (active.contains(file.getAbsolutePath())) {
+                continue;
+            }
+            long length = file.length();
+            if (length == 0) {
+                // 开始录制失败或进程被杀留下的空文件
+                delete(file);
+                files[i] = null;
+                continue;
+            }
+            lastModified[i] = file.lastModified();
+            total += length;
+        }
+        long quota = mQuotaBytes;
+        if (quota <= 0 || total <= quota) {
+            return;
+        }
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final long[] times = lastModified;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(times[a], times[b]);
+            }
+        });
+        for (int i = 0; i < order.length && total > quota; i++) {
+            File file = files[order[i]];
+            if (file == null || active.contains(file.getAbsolutePath())) {
+                continue;
+            }
+            long length = file.length();
+            if (delete(file)) {
+                total -= length;
+                Log.i(TAG, "Deleted " + file.getName() + " over quota");
+            }
+        }
+    }
+
+    /**
+     * 删除文件及其修复信息、关键帧索引
+     */
+    private static boolean delete(File file) {
+        RecoveryInfo.sidecarOf(file).delete();
+        KeyframeIndex.sidecarOf(file).delete();
+        return file.delete();
+    }
+
+    private void deleteOrphanSidecars() {
+        File[] sidecars = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.endsWith(RecoveryInfo.SIDECAR_SUFFIX) || name.endsWith(KeyframeIndex.SIDECAR_SUFFIX);
+            }
+        });
+        if (sidecars == null) {
+            return;
+        }
+        for (File sidecar : sidecars) {
+            String path = sidecar.getAbsolutePath();
+            String suffix = path.endsWith(RecoveryInfo.SIDECAR_SUFFIX)
+                    ? RecoveryInfo.SIDECAR_SUFFIX : KeyframeIndex.SIDECAR_SUFFIX;
+            if (!new File(path.substring(0, path.length() - suffix.length())).exists()) {
+                sidecar.delete();
+            }
+        }
+    }
+
+    private static void closeQuietly(@Nullable RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.hellobird.videorecord.lib.storage;
+
+import java.io.File;
+
+/*******************************************************************
+ * Segment.java  2026-10-19
+ * <P>
+ * 循环录制的一个分段<br/>
+ * 由 {@link SegmentIndex} 管理，状态只在持有索引锁时修改<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class Segment {
+
+    /**
+     * 时长未知，分段还在录制或录制中途进程退出
+     */
+    public static final long UNFINISHED = -1;
+
+    private final long mSequence;
+
+    private final File mFile;
+
+    private final long mStartTimeMs;
+
+    private long mDurationMs = UNFINISHED;
+
+    private long mSizeBytes;
+
+    private boolean mProtected;
+
+    Segment(long sequence, File file, long startTimeMs) {
+        mSequence = sequence;
+        mFile = file;
+        mStartTimeMs = startTimeMs;
+    }
+
+    /**
+     * 序号，按录制顺序递增
+     *
+     * @return
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * 开始录制的系统时间
+     *
+     * @return 毫秒
+     */
+    public long getStartTimeMs() {
+        return mStartTimeMs;
+    }
+
+    /**
+     * 时长
+     *
+     * @return 毫秒，未完成时为 {@link #UNFINISHED}
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    public long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * 是否受保护，受保护的分段不会因配额被删除
+     *
+     * @return
+     */
+    public boolean isProtected() {
+        return mProtected;
+    }
+
+    public boolean isFinished() {
+        return mDurationMs != UNFINISHED;
+    }
+
+    void finish(long durationMs, long sizeBytes) {
+        mDurationMs = durationMs;
+        mSizeBytes = sizeBytes;
+    }
+
+    void setSizeBytes(long sizeBytes) {
+        mSizeBytes = sizeBytes;
+    }
+
+    void setProtected(boolean isProtected) {
+        mProtected = isProtected;
+    }
+
+    Segment copy() {
+        Segment segment = new Segment(mSequence, mFile, mStartTimeMs);
+        segment.mDurationMs = mDurationMs;
+        segment.mSizeBytes = mSizeBytes;
+        segment.mProtected = mProtected;
+        return segment;
+    }
+
+    @Override
+    public String toString() {
+        return "Segment{" + mSequence
+                + ", start=" + mStartTimeMs
+                + ", duration=" + mDurationMs
+                + ", size=" + mSizeBytes
+                + (mProtected ? ", protected" : "") + '}';
+    }
+}
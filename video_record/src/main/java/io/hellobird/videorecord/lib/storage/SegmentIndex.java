@@ -0,0 +1,495 @@
+package io.hellobird.videorecord.lib.storage;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/*******************************************************************
+ * SegmentIndex.java  2026-10-19
+ * <P>
+ * 循环录制的分段索引，保存在目录下的追加日志中<br/>
+ * 每次变化只追加一条定长记录并 fsync，记录带 CRC，进程在写入中途退出时丢弃不完整的末尾记录<br/>
+ * 日志长度超过存活分段的数倍时写临时文件后 rename 压缩，均摊每个分段 O(1)<br/>
+ * 内存中只保留存活的分段，数量受配额限制，长时间运行不会增长<br/>
+ * 打开后分配序号不经过日志的锁，编码线程切换分段时不会等待其他线程的 fsync、删除或压缩<br/>
+ * </p>
+ *
+ * @author:zhoupeng
+ *
+ ******************************************************************/
+public final class SegmentIndex {
+
+    private static final String TAG = "SegmentIndex";
+
+    private static final String JOURNAL_NAME = "segments.journal";
+
+    private static final String PREFIX = "SEG_";
+
+    private static final String EXTENSION = ".mp4";
+
+    /**
+     * 记录长度：op(4) + seq(8) + a(8) + b(8) + crc(4)
+     */
+    private static final int RECORD_SIZE = 32;
+
+    /**
+     * 开始分段，a 为开始时间
+     */
+    private static final int OP_BEGIN = 1;
+
+    /**
+     * 分段完成，a 为时长，b 为大小
+     */
+    private static final int OP_FINISH = 2;
+
+    /**
+     * 保护分段
+     */
+    private static final int OP_PROTECT = 3;
+
+    /**
+     * 删除分段
+     */
+    private static final int OP_REMOVE = 4;
+
+    /**
+     * 日志记录数超过存活分段数的倍数时压缩
+     */
+    private static final int COMPACT_FACTOR = 4;
+
+    private static final int COMPACT_MIN_RECORDS = 64;
+
+    private final File mDirectory;
+
+    private final File mJournalFile;
+
+    /**
+     * 按序号排列的存活分段
+     */
+    private final LinkedHashMap<Long, Segment> mSegments = new LinkedHashMap<>();
+
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+
+    private final CRC32 mCrc = new CRC32();
+
+    private RandomAccessFile mJournal;
+
+    private int mJournalRecords;
+
+    /**
+     * 读取日志与核对目录时得到的下一个序号
+     */
+    private long mReplayNextSequence;
+
+    /**
+     * 下一个分配的序号，打开完成后设置，未打开时为-1
+     */
+    private final AtomicLong mNextSequence = new AtomicLong(-1);
+
+    private long mTotalBytes;
+
+    /**
+     * @param directory 分段目录
+     */
+    public SegmentIndex(File directory) {
+        mDirectory = directory;
+        mJournalFile = new File(directory, JOURNAL_NAME);
+    }
+
+    /**
+     * 读取日志并与目录中的文件核对，进程异常退出后留下的分段会被收录为未完成
+     *
+     * @throws IOException 目录或日志无法读写
+     */
+    public synchronized void open() throws IOException {
+        if (mJournal != null) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create directory " + mDirectory);
+        }
+        long validLength = replay();
+        mJournal = new RandomAccessFile(mJournalFile, "rw");
+        if (mJournal.length() > validLength) {
+            Log.w(TAG, "Drop " + (mJournal.length() - validLength) + " bytes of torn journal");
+            mJournal.setLength(validLength);
+        }
+        mJournal.seek(validLength);
+        reconcile();
+        compactIfNeeded();
+        mNextSequence.set(mReplayNextSequence);
+    }
+
+    /**
+     * 关闭日志并清空内存中的分段，之后可以重新打开
+     */
+    public synchronized void close() {
+        if (mJournal != null) {
+            try {
+                mJournal.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Journal failed to close", e);
+            }
+            mJournal = null;
+        }
+        mSegments.clear();
+        mTotalBytes = 0;
+        mJournalRecords = 0;
+        mReplayNextSequence = 0;
+        mNextSequence.set(-1);
+    }
+
+    /**
+     * 分配下一个分段，不写日志也不取得日志的锁，可以在编码线程调用<br/>
+     * 只有索引还没打开时才会在调用线程打开，之后不会等待磁盘
+     *
+     * @param startTimeMs 开始时间
+     * @return 分段
+     * @throws IOException 索引无法打开
+     */
+    public Segment allocate(long startTimeMs) throws IOException {
+        long sequence;
+        while ((sequence = mNextSequence.get()) < 0 || !mNextSequence.compareAndSet(sequence, sequence + 1)) {
+            if (sequence < 0) {
+                open();
+            }
+        }
+        return new Segment(sequence, fileOf(sequence), startTimeMs);
+    }
+
+    /**
+     * 记录分段开始
+     *
+     * @param segment {@link #allocate(long)} 分配的分段
+     * @throws IOException
+     */
+    public synchronized void begin(Segment segment) throws IOException {
+        append(OP_BEGIN, segment.getSequence(), segment.getStartTimeMs(), 0);
+        mSegments.put(segment.getSequence(), segment);
+    }
+
+    /**
+     * 记录分段完成
+     *
+     * @param sequence   序号
+     * @param durationMs 时长
+     * @throws IOException
+     */
+    public synchronized void finish(long sequence, long durationMs) throws IOException {
+        Segment segment = mSegments.get(sequence);
+        if (segment == null) {
+            return;
+        }
+        long size = segment.getFile().length();
+        append(OP_FINISH, sequence, durationMs, size);
+        mTotalBytes += size - segment.getSizeBytes();
+        segment.finish(durationMs, size);
+        compactIfNeeded();
+    }
+
+    /**
+     * 保护分段，受保护的分段不会因配额被删除
+     *
+     * @param sequence 序号
+     * @return 分段是否存在
+     * @throws IOException
+     */
+    public synchronized boolean protect(long sequence) throws IOException {
+        Segment segment = mSegments.get(sequence);
+        if (segment == null) {
+            return false;
+        }
+        if (!segment.isProtected()) {
+            append(OP_PROTECT, sequence, 0, 0);
+            segment.setProtected(true);
+        }
+        return true;
+    }
+
+    /**
+     * 从最旧的分段开始删除，直到总大小不超过配额，跳过受保护的分段与正在录制的分段
+     *
+     * @param quotaBytes 配额
+     * @param activeSeq  正在录制的分段序号，没有时传-1
+     * @return 删除的分段数量
+     * @throws IOException
+     */
+    public synchronized int evict(long quotaBytes, long activeSeq) throws IOException {
+        int evicted = 0;
+        Iterator<Segment> iterator = mSegments.values().iterator();
+        while (mTotalBytes > quotaBytes && iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment.isProtected() || segment.getSequence() == activeSeq) {
+                continue;
+            }
+            File file = segment.getFile();
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Cannot delete " + file);
+                continue;
+            }
+            // 先删除文件再记录，中途退出时下次打开会发现文件不存在
+            append(OP_REMOVE, segment.getSequence(), 0, 0);
+            iterator.remove();
+            mTotalBytes -= segment.getSizeBytes();
+            evicted++;
+        }
+        if (mTotalBytes > quotaBytes) {
+            Log.w(TAG, "Over quota with protected segments, total " + mTotalBytes);
+        }
+        if (evicted > 0) {
+            compactIfNeeded();
+        }
+        return evicted;
+    }
+
+    /**
+     * 获取分段
+     *
+     * @param sequence 序号
+     * @return 副本，不存在时返回null
+     */
+    @Nullable
+    public synchronized Segment get(long sequence) {
+        Segment segment = mSegments.get(sequence);
+        return segment == null ? null : segment.copy();
+    }
+
+    /**
+     * 获取所有存活分段的副本，按录制顺序排列
+     *
+     * @return
+     */
+    public synchronized List<Segment> getSegments() {
+        List<Segment> segments = new ArrayList<>(mSegments.size());
+        for (Segment segment : mSegments.values()) {
+            segments.add(segment.copy());
+        }
+        return segments;
+    }
+
+    /**
+     * 已完成分段的总大小
+     *
+     * @return
+     */
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    private File fileOf(long sequence) {
+        return new File(mDirectory, PREFIX + String.format(Locale.US, "%010d", sequence) + EXTENSION);
+    }
+
+    /**
+     * 读取日志，遇到不完整或校验失败的记录时停止
+     *
+     * @return 有效日志长度
+     */
+    private long replay() throws IOException {
+        if (!mJournalFile.exists()) {
+            return 0;
+        }
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long validLength = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)));
+        try {
+            while (true) {
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                mCrc.reset();
+                mCrc.update(record, 0, RECORD_SIZE - 4);
+                buffer.clear();
+                int op = buffer.getInt();
+                long sequence = buffer.getLong();
+                long a = buffer.getLong();
+                long b = buffer.getLong();
+                if ((int) mCrc.getValue() != buffer.getInt()) {
+                    break;
+                }
+                apply(op, sequence, a, b);
+                validLength += RECORD_SIZE;
+                mJournalRecords++;
+            }
+        } finally {
+            in.close();
+        }
+        return validLength;
+    }
+
+    private void apply(int op, long sequence, long a, long b) {
+        Segment segment = mSegments.get(sequence);
+        switch (op) {
+            case OP_BEGIN:
+                if (segment == null) {
+                    mSegments.put(sequence, new Segment(sequence, fileOf(sequence), a));
+                }
+                mReplayNextSequence = Math.max(mReplayNextSequence, sequence + 1);
+                break;
+            case OP_FINISH:
+                if (segment != null) {
+                    mTotalBytes += b - segment.getSizeBytes();
+                    segment.finish(a, b);
+                }
+                break;
+            case OP_PROTECT:
+                if (segment != null) {
+                    segment.setProtected(true);
+                }
+                break;
+            case OP_REMOVE:
+                if (segment != null) {
+                    mSegments.remove(sequence);
+                    mTotalBytes -= segment.getSizeBytes();
+                }
+                break;
+            default:
+                Log.w(TAG, "Unknown journal op " + op);
+                break;
+        }
+    }
+
+    /**
+     * 核对日志与目录：文件已删除的分段移除，未记录的分段文件与未完成的分段按文件大小收录
+     */
+    private void reconcile() throws IOException {
+        Iterator<Segment> iterator = mSegments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (!segment.getFile().exists()) {
+                append(OP_REMOVE, segment.getSequence(), 0, 0);
+                iterator.remove();
+                mTotalBytes -= segment.getSizeBytes();
+            } else if (!segment.isFinished()) {
+                long size = segment.getFile().length();
+                mTotalBytes += size - segment.getSizeBytes();
+                segment.setSizeBytes(size);
+            }
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long sequence = parseSequence(file.getName());
+            if (sequence < 0 || mSegments.containsKey(sequence)) {
+                continue;
+            }
+            // 开始记录写入前进程退出
+            Segment segment = new Segment(sequence, file, file.lastModified());
+            segment.setSizeBytes(file.length());
+            append(OP_BEGIN, sequence, segment.getStartTimeMs(), 0);
+            mSegments.put(sequence, segment);
+            mTotalBytes += segment.getSizeBytes();
+            mReplayNextSequence = Math.max(mReplayNextSequence, sequence + 1);
+            Log.i(TAG, "Adopted orphan segment " + file.getName());
+        }
+    }
+
+    /**
+     * 根据分段文件获取序号
+     *
+     * @param file 分段文件
+     * @return 不是分段文件时返回-1
+     */
+    public static long sequenceOf(File file) {
+        return parseSequence(file.getName());
+    }
+
+    private static long parseSequence(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(EXTENSION)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void append(int op, long sequence, long a, long b) throws IOException {
+        if (mJournal == null) {
+            throw new IOException("Segment index not open");
+        }
+        writeRecord(mJournal.getChannel(), op, sequence, a, b);
+        mJournal.getChannel().force(false);
+        mJournalRecords++;
+    }
+
+    private void writeRecord(FileChannel channel, int op, long sequence, long a, long b) throws IOException {
+        mRecord.clear();
+        mRecord.putInt(op).putLong(sequence).putLong(a).putLong(b);
+        mCrc.reset();
+        mCrc.update(mRecord.array(), 0, RECORD_SIZE - 4);
+        mRecord.putInt((int) mCrc.getValue());
+        mRecord.flip();
+        while (mRecord.hasRemaining()) {
+            channel.write(mRecord);
+        }
+    }
+
+    /**
+     * 日志过长时写入只包含存活分段的新日志，再原子替换
+     */
+    private void compactIfNeeded() throws IOException {
+        if (mJournalRecords < Math.max(COMPACT_MIN_RECORDS, mSegments.size() * COMPACT_FACTOR)) {
+            return;
+        }
+        File tmp = new File(mDirectory, JOURNAL_NAME + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        int records = 0;
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            for (Segment segment : mSegments.values()) {
+                writeRecord(channel, OP_BEGIN, segment.getSequence(), segment.getStartTimeMs(), 0);
+                records++;
+                if (segment.isFinished()) {
+                    writeRecord(channel, OP_FINISH, segment.getSequence(), segment.getDurationMs(), segment.getSizeBytes());
+                    records++;
+                }
+                if (segment.isProtected()) {
+                    writeRecord(channel, OP_PROTECT, segment.getSequence(), 0, 0);
+                    records++;
+                }
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+        mJournal.close();
+        if (!tmp.renameTo(mJournalFile)) {
+            mJournal = new RandomAccessFile(mJournalFile, "rw");
+            mJournal.seek(mJournal.length());
+            throw new IOException("Cannot replace journal " + mJournalFile);
+        }
+        mJournal = new RandomAccessFile(mJournalFile, "rw");
+        mJournal.seek(mJournal.length());
+        mJournalRecords = records;
+        Log.i(TAG, "Compacted journal to " + records + " records");
+    }
+}
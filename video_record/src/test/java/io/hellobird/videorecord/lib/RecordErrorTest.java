@@ -0,0 +1,46 @@
+package io.hellobird.videorecord.lib;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 相机错误码、MediaRecorder 错误码与异常的归类
+ */
+public class RecordErrorTest {
+
+    @Test
+    public void classifiesCameraErrors() {
+        assertEquals(RecordError.Type.CAMERA_DISCONNECTED,
+                RecordError.typeOfCameraError(RecordError.CAMERA_ERROR_SERVER_DIED));
+        assertEquals(RecordError.Type.CAMERA_IN_USE, RecordError.typeOfCameraError(RecordError.CAMERA_ERROR_EVICTED));
+        assertEquals(RecordError.Type.PERMISSION_DENIED,
+                RecordError.typeOfCameraError(RecordError.CAMERA_ERROR_DISABLED));
+        assertEquals(RecordError.Type.CAMERA_FAILURE, RecordError.typeOfCameraError(RecordError.CAMERA_ERROR_UNKNOWN));
+    }
+
+    @Test
+    public void classifiesRecorderErrors() {
+        assertEquals(RecordError.Type.RECORDER_FAILURE,
+                RecordError.typeOfRecorderError(RecordError.MEDIA_ERROR_SERVER_DIED, 0));
+        assertEquals(RecordError.Type.RECORDER_FAILURE, RecordError.typeOfRecorderError(1, -1007));
+        assertEquals(RecordError.Type.STORAGE_FULL, RecordError.typeOfRecorderError(1, -28));
+    }
+
+    @Test
+    public void classifiesExceptionsThroughCauses() {
+        assertEquals(RecordError.Type.PERMISSION_DENIED,
+                RecordError.typeOfException(new SecurityException("camera"), RecordError.Type.CAMERA_FAILURE));
+        assertEquals(RecordError.Type.CAMERA_IN_USE,
+                RecordError.typeOfException(new RuntimeException("Fail to connect to camera service"),
+                        RecordError.Type.CAMERA_FAILURE));
+        IOException noSpace = new IOException("write failed: ENOSPC (No space left on device)");
+        assertEquals(RecordError.Type.STORAGE_FULL,
+                RecordError.typeOfException(new IllegalStateException("Failed to write", noSpace),
+                        RecordError.Type.ENCODER_FAILURE));
+        assertEquals(RecordError.Type.ENCODER_FAILURE,
+                RecordError.typeOfException(new IllegalStateException(), RecordError.Type.ENCODER_FAILURE));
+    }
+}
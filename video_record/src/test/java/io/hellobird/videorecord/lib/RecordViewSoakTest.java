@@ -0,0 +1,271 @@
+package io.hellobird.videorecord.lib;
+
+import android.Manifest;
+import android.app.Application;
+import android.hardware.Camera;
+import android.media.MediaRecorder;
+import android.os.Looper;
+import android.view.SurfaceHolder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowCamera;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowMediaRecorder;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.hellobird.videorecord.lib.camera.CameraArbiter;
+import io.hellobird.videorecord.lib.camera.open.CameraFacing;
+import io.hellobird.videorecord.lib.storage.OutputFileManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 反复执行 打开 → 开始录制 → 结束录制 → 切换相机 → 关闭，检查相机、MediaRecorder 与线程没有泄漏
+ * <p>
+ * 使用 Robolectric 的相机与 MediaRecorder，每个循环结束时相机已释放、录制器已释放、相机已重新锁定；
+ * 全部循环后录制器可以被回收，线程数不增长，堆增长不超过每个循环的上限。输出每个循环的耗时与堆增长。
+ * 默认 200 个循环，长时间运行：
+ * <pre>
+ * ./gradlew :video_record:testDebugUnitTest --tests '*RecordViewSoakTest' -Dsoak.cycles=5000
+ * </pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, shadows = {RecordViewSoakTest.ShadowLockableCamera.class,
+        RecordViewSoakTest.ShadowFlattenableParameters.class})
+@LooperMode(LooperMode.Mode.PAUSED)
+public class RecordViewSoakTest {
+
+    private static final int CYCLES = Integer.getInteger("soak.cycles", 200);
+
+    /**
+     * 预热循环，按需创建的线程与缓存在这之后才统计
+     */
+    private static final int WARMUP_CYCLES = 10;
+
+    /**
+     * 允许增长的线程数，AsyncTask 线程池等按需创建的线程
+     */
+    private static final int THREAD_SLACK = 2;
+
+    /**
+     * 每个循环允许的堆增长，泄漏一个相机或录制器及其参数就会超过
+     */
+    private static final long MAX_HEAP_GROWTH_PER_CYCLE = 512;
+
+    /**
+     * 与循环数无关的堆增长，GC 时机不同带来的波动
+     */
+    private static final long HEAP_SLACK = 256 * 1024;
+
+    /**
+     * 等待所有线程空闲的最长时间
+     */
+    private static final long SETTLE_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(5);
+
+    private RecordView mView;
+
+    private CameraArbiter mArbiter;
+
+    private Field mRecorderField;
+
+    private final List<WeakReference<MediaRecorder>> mRecorders = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        Application application = RuntimeEnvironment.application;
+        shadowOf(application).grantPermissions(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO);
+        ShadowCamera.clearCameraInfo();
+        addCamera(0, Camera.CameraInfo.CAMERA_FACING_BACK, 90);
+        addCamera(1, Camera.CameraInfo.CAMERA_FACING_FRONT, 270);
+        mArbiter = CameraArbiter.getInstance(application);
+        // 释放后立即关闭，每个循环都真正打开与关闭相机
+        mArbiter.setKeepAliveMs(0);
+        mView = new RecordView(application);
+        mView.setOutputFileManager(new OutputFileManager(new File(application.getCacheDir(), "soak")));
+        for (SurfaceHolder.Callback callback : shadowOf(mView).getFakeSurfaceHolder().getCallbacks()) {
+            callback.surfaceCreated(mView.getHolder());
+        }
+        mRecorderField = RecordView.class.getDeclaredField("mVideoRecorder");
+        mRecorderField.setAccessible(true);
+    }
+
+    @After
+    public void tearDown() {
+        if (mView != null) {
+            mView.closeCamera();
+        }
+        if (mArbiter != null) {
+            mArbiter.closeNow();
+        }
+        settle();
+    }
+
+    @Test
+    public void openRecordSwitchCloseCycles() throws Exception {
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            runCycle(i % 2 == 0 ? CameraFacing.BACK : CameraFacing.FRONT);
+        }
+        int baseThreads = liveThreads();
+        long baseHeap = usedHeap();
+        long[] latencies = new long[CYCLES];
+        for (int i = 0; i < CYCLES; i++) {
+            long start = System.nanoTime();
+            runCycle(i % 2 == 0 ? CameraFacing.BACK : CameraFacing.FRONT);
+            latencies[i] = System.nanoTime() - start;
+        }
+        long heapGrowth = usedHeap() - baseHeap;
+        int threadGrowth = liveThreads() - baseThreads;
+        Arrays.sort(latencies);
+        System.out.printf("Soak %d cycles: p50 %.2f ms, p95 %.2f ms, max %.2f ms; heap %+d KB (%+.1f B/cycle); threads %+d%n",
+                CYCLES, latencies[CYCLES / 2] / 1e6, latencies[CYCLES * 95 / 100] / 1e6,
+                latencies[CYCLES - 1] / 1e6, heapGrowth / 1024, heapGrowth / (double) CYCLES, threadGrowth);
+
+        assertTrue("Leaked threads: " + threadGrowth, threadGrowth <= THREAD_SLACK);
+        assertTrue("Heap grew " + heapGrowth + " bytes in " + CYCLES + " cycles",
+                heapGrowth <= HEAP_SLACK + CYCLES * MAX_HEAP_GROWTH_PER_CYCLE);
+        int reachable = 0;
+        for (WeakReference<MediaRecorder> recorder : mRecorders) {
+            if (recorder.get() != null) {
+                reachable++;
+            }
+        }
+        assertEquals("MediaRecorder still reachable", 0, reachable);
+    }
+
+    /**
+     * 打开 → 开始录制 → 结束录制 → 切换到另一个相机 → 关闭
+     */
+    private void runCycle(CameraFacing facing) throws IllegalAccessException {
+        // Robolectric 保存所有日志，不计入堆增长
+        ShadowLog.clear();
+        mView.setCameraFacing(facing);
+        mView.openCamera();
+        settle();
+        assertEquals(RecordState.PREVIEWING, mView.getRecordState());
+        Camera camera = mArbiter.getCameraManager().getCamera();
+        assertNotNull(camera);
+
+        assertTrue(mView.startRecord());
+        settle();
+        assertEquals(RecordState.RECORDING, mView.getRecordState());
+        MediaRecorder recorder = (MediaRecorder) mRecorderField.get(mView);
+        assertNotNull(recorder);
+        assertFalse(shadowOf(camera).isLocked());
+        mRecorders.add(new WeakReference<>(recorder));
+
+        mView.stopRecord();
+        settle();
+        assertEquals(RecordState.PREVIEWING, mView.getRecordState());
+        assertEquals(ShadowMediaRecorder.STATE_RELEASED, shadowOf(recorder).getState());
+        assertTrue("Camera not locked after stop", shadowOf(camera).isLocked());
+
+        mView.setCameraFacing(facing == CameraFacing.BACK ? CameraFacing.FRONT : CameraFacing.BACK);
+        mView.openCamera();
+        settle();
+        assertEquals(RecordState.PREVIEWING, mView.getRecordState());
+        Camera switched = mArbiter.getCameraManager().getCamera();
+        assertNotSame(camera, switched);
+        assertTrue("Camera leaked after switch", shadowOf(camera).isReleased());
+
+        mView.closeCamera();
+        settle();
+        assertEquals(RecordState.IDLE, mView.getRecordState());
+        assertFalse(mArbiter.getCameraManager().isOpen());
+        assertTrue("Camera leaked after close", shadowOf(switched).isReleased());
+    }
+
+    /**
+     * 执行主线程、相机线程与文件清理线程中所有待处理的消息，直到都空闲
+     */
+    private static void settle() {
+        List<String> busy = new ArrayList<>();
+        // 后台线程执行完任务后要回到等待状态才算空闲，按时间而不是次数等待
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT_NS;
+        while (System.nanoTime() < deadline) {
+            busy.clear();
+            for (Looper looper : ShadowLooper.getAllLoopers()) {
+                ShadowLooper shadow = shadowOf(looper);
+                if (!shadow.isIdle()) {
+                    busy.add(looper.getThread().getName());
+                    shadow.idle();
+                }
+            }
+            if (busy.isEmpty()) {
+                return;
+            }
+            Thread.yield();
+        }
+        fail("Loopers did not settle: " + busy);
+    }
+
+    private static void addCamera(int id, int facing, int orientation) {
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        info.facing = facing;
+        info.orientation = orientation;
+        ShadowCamera.addCameraInfo(id, info);
+    }
+
+    private static int liveThreads() {
+        return Thread.getAllStackTraces().size();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Robolectric 的相机没有实现 lock，结束录制后重新锁定不会反映到 isLocked
+     */
+    @Implements(Camera.class)
+    public static class ShadowLockableCamera extends ShadowCamera {
+
+        @Implementation
+        protected void lock() {
+            reconnect();
+        }
+    }
+
+    /**
+     * Robolectric 的相机参数没有键值表，打开相机时保存原参数的 flatten 会抛出空指针
+     */
+    @Implements(Camera.Parameters.class)
+    public static class ShadowFlattenableParameters extends ShadowCamera.ShadowParameters {
+
+        @Implementation
+        protected String flatten() {
+            return "";
+        }
+
+        @Implementation
+        protected void unflatten(String flattened) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.hellobird.videorecord.lib.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 合成帧来源：时间戳、缓存归还与画面内容
+ */
+public class SyntheticFrameSourceTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void timestampsFollowFrameIndex() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 30);
+        final List<Long> timestamps = new ArrayList<>();
+        source.setFrameCallback(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(byte[] data, long timestampUs) {
+                timestamps.add(timestampUs);
+            }
+        });
+        source.setStartTimestampUs(5000000);
+        for (int i = 0; i < 31; i++) {
+            source.addBuffer(new byte[WIDTH * HEIGHT * 3 / 2]);
+            assertTrue(source.emitFrame());
+        }
+        assertEquals(5000000L, (long) timestamps.get(0));
+        assertEquals(5033333L, (long) timestamps.get(1));
+        assertEquals(5100000L, (long) timestamps.get(3));
+        // 按帧序号计算，30帧后正好1秒
+        assertEquals(6000000L, (long) timestamps.get(30));
+    }
+
+    @Test
+    public void dropsFramesWithoutBuffer() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 30);
+        final List<byte[]> received = new ArrayList<>();
+        source.setFrameCallback(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(byte[] data, long timestampUs) {
+                received.add(data);
+            }
+        });
+        byte[] buffer = new byte[WIDTH * HEIGHT * 3 / 2];
+        source.addBuffer(buffer);
+        assertEquals(1, source.emitFrames(3));
+        assertEquals(2, source.getDroppedFrames());
+        assertEquals(3, source.getFrameCount());
+        assertSame(buffer, received.get(0));
+
+        // 清除回调时丢弃已添加的缓存，之后只前进时间
+        source.addBuffer(buffer);
+        source.setFrameCallback(null);
+        assertFalse(source.emitFrame());
+        assertEquals(2, source.getDroppedFrames());
+        assertEquals(4, source.getFrameCount());
+    }
+
+    @Test
+    public void patternIsDeterministicAndMoves() {
+        byte[] first = new byte[WIDTH * HEIGHT * 3 / 2];
+        byte[] again = new byte[WIDTH * HEIGHT * 3 / 2];
+        byte[] next = new byte[WIDTH * HEIGHT * 3 / 2];
+        SyntheticFrameSource.drawPattern(first, WIDTH, HEIGHT, 7);
+        SyntheticFrameSource.drawPattern(again, WIDTH, HEIGHT, 7);
+        SyntheticFrameSource.drawPattern(next, WIDTH, HEIGHT, 8);
+        assertArrayEquals(first, again);
+        assertFalse(Arrays.equals(first, next));
+        // 色度不随时间变化
+        assertArrayEquals(Arrays.copyOfRange(first, WIDTH * HEIGHT, first.length),
+                Arrays.copyOfRange(next, WIDTH * HEIGHT, next.length));
+    }
+
+    @Test
+    public void realtimeOutputOnOwnThread() throws InterruptedException {
+        final SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 100);
+        final CountDownLatch latch = new CountDownLatch(20);
+        final AtomicInteger frames = new AtomicInteger();
+        final Thread testThread = Thread.currentThread();
+        final List<Thread> threads = new ArrayList<>();
+        source.setFrameCallback(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(byte[] data, long timestampUs) {
+                if (frames.getAndIncrement() == 0) {
+                    threads.add(Thread.currentThread());
+                }
+                source.addBuffer(data);
+                latch.countDown();
+            }
+        });
+        source.addBuffer(new byte[WIDTH * HEIGHT * 3 / 2]);
+        long start = System.nanoTime();
+        source.start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        source.stop();
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertFalse(source.isRunning());
+        assertNotSame(testThread, threads.get(0));
+        // 100帧每秒，第20帧不早于190ms
+        assertTrue("Too fast: " + elapsedMs, elapsedMs >= 190);
+        assertEquals(0, source.getDroppedFrames());
+        int stopped = frames.get();
+        Thread.sleep(50);
+        assertEquals(stopped, frames.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSize() {
+        new SyntheticFrameSource(63, HEIGHT, 30);
+    }
+}
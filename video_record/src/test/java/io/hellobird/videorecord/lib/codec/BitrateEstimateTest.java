@@ -0,0 +1,114 @@
+package io.hellobird.videorecord.lib.codec;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 自动码率：每像素比特数模型与预览画面复杂度估计
+ */
+public class BitrateEstimateTest {
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    @Test
+    public void scalesWithPixelsAndComplexity() {
+        BitrateEstimate still = BitrateEstimate.compute(1280, 720, 30, 0f, 0);
+        assertEquals(0.07f, still.getBitsPerPixel(), 1e-4);
+        assertEquals(1935360, still.getBitRate(), 1);
+
+        BitrateEstimate medium = BitrateEstimate.compute(1280, 720, 30, 0.5f, 0);
+        BitrateEstimate busy = BitrateEstimate.compute(1280, 720, 30, 1f, 0);
+        assertEquals(2 * still.getBitRate(), medium.getBitRate(), 2);
+        assertEquals(4 * still.getBitRate(), busy.getBitRate(), 4);
+
+        BitrateEstimate fullHd = BitrateEstimate.compute(1920, 1080, 30, 0f, 0);
+        assertEquals(2.25, fullHd.getBitRate() / (double) still.getBitRate(), 1e-3);
+    }
+
+    @Test
+    public void higherFrameRateNeedsFewerBitsPerFrame() {
+        BitrateEstimate at30 = BitrateEstimate.compute(1280, 720, 30, 0.5f, 0);
+        BitrateEstimate at60 = BitrateEstimate.compute(1280, 720, 60, 0.5f, 0);
+        assertTrue(at60.getBitRate() > at30.getBitRate());
+        assertTrue(at60.getBitRate() < 2 * at30.getBitRate());
+        assertEquals(Math.pow(0.5, 0.25), at60.getBitsPerPixel() / at30.getBitsPerPixel(), 1e-4);
+    }
+
+    @Test
+    public void clampsComplexityAndMinimum() {
+        assertEquals(BitrateEstimate.compute(640, 480, 30, 1f, 0).getBitRate(),
+                BitrateEstimate.compute(640, 480, 30, 3f, 0).getBitRate());
+        assertEquals(64000, BitrateEstimate.compute(16, 16, 1, 0f, 0).getBitRate());
+        assertEquals(4194304, BitrateEstimate.compute(640, 480, 30, 0f, 4194304).getReferenceBitRate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSize() {
+        BitrateEstimate.compute(0, 480, 30, 0f, 0);
+    }
+
+    @Test
+    public void defaultComplexityWithoutFrames() {
+        SceneComplexity complexity = new SceneComplexity();
+        assertEquals(SceneComplexity.DEFAULT_COMPLEXITY, complexity.getComplexity(), 0);
+        complexity.update(flatFrame(128), WIDTH, HEIGHT);
+        assertEquals(SceneComplexity.DEFAULT_COMPLEXITY, complexity.getComplexity(), 0);
+    }
+
+    @Test
+    public void flatStaticSceneIsSimple() {
+        SceneComplexity complexity = new SceneComplexity();
+        byte[] frame = flatFrame(128);
+        for (int i = 0; i < 10; i++) {
+            complexity.update(frame, WIDTH, HEIGHT);
+        }
+        assertEquals(0f, complexity.getComplexity(), 1e-6);
+    }
+
+    @Test
+    public void texturedStaticSceneIsBelowMovingScene() {
+        Random random = new Random(42);
+        byte[] texture = noiseFrame(random);
+        SceneComplexity still = new SceneComplexity();
+        for (int i = 0; i < 10; i++) {
+            still.update(texture, WIDTH, HEIGHT);
+        }
+        SceneComplexity moving = new SceneComplexity();
+        for (int i = 0; i < 10; i++) {
+            moving.update(noiseFrame(random), WIDTH, HEIGHT);
+        }
+        // 只有空间细节时最多为0.4
+        assertEquals(0.4f, still.getComplexity(), 1e-3);
+        assertEquals(1f, moving.getComplexity(), 1e-3);
+    }
+
+    @Test
+    public void resetsWhenSizeChanges() {
+        SceneComplexity complexity = new SceneComplexity();
+        complexity.update(flatFrame(128), WIDTH, HEIGHT);
+        complexity.update(flatFrame(128), WIDTH, HEIGHT);
+        assertEquals(2, complexity.getFrameCount());
+        complexity.update(new byte[160 * 120 * 3 / 2], 160, 120);
+        assertEquals(1, complexity.getFrameCount());
+    }
+
+    private static byte[] flatFrame(int luma) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            frame[i] = (byte) luma;
+        }
+        return frame;
+    }
+
+    private static byte[] noiseFrame(Random random) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        random.nextBytes(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,164 @@
+package io.hellobird.videorecord.lib.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 码率调整的判断：拥塞降低、冷却、空闲恢复、阈值之间保持以及温度上限
+ */
+public class BitrateGovernorTest {
+
+    private static final int MIN = 1000000;
+
+    private static final int MAX = 8000000;
+
+    /**
+     * 30fps 时帧间隔约33ms，低于1/8为空闲，高于1/2为拥塞
+     */
+    private static final long IDLE_LATENCY_US = 1000;
+
+    private static final long CONGESTED_LATENCY_US = 30000;
+
+    private static final long BETWEEN_LATENCY_US = 10000;
+
+    private long mElapsedUs;
+
+    @Test
+    public void congestionLowersBitRateImmediately() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 4000000, 30);
+        BitrateAdjustment adjustment = window(governor, CONGESTED_LATENCY_US, 1, 0);
+        assertNotNull(adjustment);
+        assertEquals(BitrateAdjustment.REASON_CONGESTION, adjustment.getReason());
+        assertEquals(4000000, adjustment.getFromBitRate());
+        assertEquals(3000000, adjustment.getToBitRate());
+        assertEquals(3000000, governor.getBitRate());
+    }
+
+    @Test
+    public void droppedFramesAndQueueDepthCountAsCongestion() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 4000000, 30);
+        assertEquals(BitrateAdjustment.REASON_CONGESTION, window(governor, IDLE_LATENCY_US, 1, 2).getReason());
+        governor = new BitrateGovernor(MIN, MAX, 4000000, 30);
+        assertEquals(BitrateAdjustment.REASON_CONGESTION, window(governor, IDLE_LATENCY_US, 5, 0).getReason());
+    }
+
+    @Test
+    public void cooldownAfterDecrease() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 4000000, 30);
+        assertNotNull(window(governor, CONGESTED_LATENCY_US, 1, 0));
+        // 编码器中还是原来码率的帧，等待两个周期
+        assertNull(window(governor, CONGESTED_LATENCY_US, 1, 0));
+        assertNull(window(governor, CONGESTED_LATENCY_US, 1, 0));
+        BitrateAdjustment adjustment = window(governor, CONGESTED_LATENCY_US, 1, 0);
+        assertNotNull(adjustment);
+        assertEquals(2250000, adjustment.getToBitRate());
+    }
+
+    @Test
+    public void neverBelowMinimum() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 1200000, 30);
+        assertEquals(MIN, window(governor, CONGESTED_LATENCY_US, 1, 0).getToBitRate());
+        for (int i = 0; i < 10; i++) {
+            assertNull(window(governor, CONGESTED_LATENCY_US, 1, 0));
+        }
+        assertEquals(MIN, governor.getBitRate());
+    }
+
+    @Test
+    public void recoversAfterConsecutiveIdleWindows() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 2000000, 30);
+        for (int i = 0; i < 4; i++) {
+            assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+        }
+        BitrateAdjustment adjustment = window(governor, IDLE_LATENCY_US, 1, 0);
+        assertNotNull(adjustment);
+        assertEquals(BitrateAdjustment.REASON_RECOVERY, adjustment.getReason());
+        assertEquals(2200000, adjustment.getToBitRate());
+        // 恢复后重新计数
+        assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+    }
+
+    @Test
+    public void holdsBetweenThresholds() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 2000000, 30);
+        for (int i = 0; i < 4; i++) {
+            assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+        }
+        // 中间状态打断连续空闲计数
+        assertNull(window(governor, BETWEEN_LATENCY_US, 3, 0));
+        for (int i = 0; i < 4; i++) {
+            assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+        }
+        assertNotNull(window(governor, IDLE_LATENCY_US, 1, 0));
+    }
+
+    @Test
+    public void neverAboveMaximum() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 7500000, 30);
+        BitrateAdjustment adjustment = null;
+        for (int i = 0; i < 5; i++) {
+            adjustment = window(governor, IDLE_LATENCY_US, 1, 0);
+        }
+        assertNotNull(adjustment);
+        assertEquals(MAX, adjustment.getToBitRate());
+        for (int i = 0; i < 10; i++) {
+            assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+        }
+    }
+
+    @Test
+    public void thermalStatusCapsBitRate() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, MAX, 30);
+        governor.setThermalStatus(BitrateGovernor.THERMAL_STATUS_MODERATE);
+        BitrateAdjustment adjustment = window(governor, IDLE_LATENCY_US, 1, 0);
+        assertNotNull(adjustment);
+        assertEquals(BitrateAdjustment.REASON_THERMAL, adjustment.getReason());
+        assertEquals(BitrateGovernor.THERMAL_STATUS_MODERATE, adjustment.getThermalStatus());
+        assertEquals(4500000, adjustment.getToBitRate());
+
+        governor.setThermalStatus(BitrateGovernor.THERMAL_STATUS_SEVERE);
+        assertEquals(MIN, window(governor, IDLE_LATENCY_US, 1, 0).getToBitRate());
+
+        // 温度略高时不恢复
+        governor.setThermalStatus(BitrateGovernor.THERMAL_STATUS_LIGHT);
+        for (int i = 0; i < 10; i++) {
+            assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+        }
+        governor.setThermalStatus(BitrateGovernor.THERMAL_STATUS_NONE);
+        for (int i = 0; i < 4; i++) {
+            assertNull(window(governor, IDLE_LATENCY_US, 1, 0));
+        }
+        assertEquals(BitrateAdjustment.REASON_RECOVERY, window(governor, IDLE_LATENCY_US, 1, 0).getReason());
+    }
+
+    @Test
+    public void onFrameAveragesOverWindow() {
+        BitrateGovernor governor = new BitrateGovernor(MIN, MAX, 4000000, 30);
+        long totalWriteNs = 0;
+        long totalWrites = 0;
+        BitrateAdjustment adjustment = null;
+        // 30帧写入耗时40ms，一个周期结束时降低
+        for (int frame = 0; frame <= 30 && adjustment == null; frame++) {
+            totalWriteNs += 40000000L;
+            totalWrites++;
+            adjustment = governor.onFrame(frame * 33334L, false, 1, totalWriteNs, totalWrites);
+        }
+        assertNotNull(adjustment);
+        assertEquals(40000, adjustment.getWriteLatencyUs());
+        assertEquals(1, adjustment.getQueueDepth());
+        assertEquals(3000000, adjustment.getToBitRate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRange() {
+        new BitrateGovernor(MAX, MIN, MIN, 30);
+    }
+
+    private BitrateAdjustment window(BitrateGovernor governor, long writeLatencyUs, int queueDepth, int droppedFrames) {
+        mElapsedUs += BitrateGovernor.WINDOW_US;
+        return governor.evaluate(mElapsedUs, writeLatencyUs, queueDepth, droppedFrames);
+    }
+}
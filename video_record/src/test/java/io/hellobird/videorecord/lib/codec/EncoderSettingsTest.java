@@ -0,0 +1,134 @@
+package io.hellobird.videorecord.lib.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * 编码参数换成设备支持的最接近参数
+ */
+public class EncoderSettingsTest {
+
+    private static final int BASELINE = 0x01;
+    private static final int MAIN = 0x02;
+    private static final int HIGH = 0x08;
+    private static final int CONSTRAINED_HIGH = 0x80000;
+
+    private static final int LEVEL_31 = 0x200;
+    private static final int LEVEL_41 = 0x1000;
+    private static final int LEVEL_51 = 0x4000;
+
+    private static final int ALL_MODES = (1 << EncoderSettings.BITRATE_MODE_CQ)
+            | (1 << EncoderSettings.BITRATE_MODE_VBR) | (1 << EncoderSettings.BITRATE_MODE_CBR);
+
+    @Test
+    public void keepsSupportedMode() {
+        EncoderSupport support = support(28, ALL_MODES);
+        for (int mode = EncoderSettings.BITRATE_MODE_CQ; mode <= EncoderSettings.BITRATE_MODE_CBR; mode++) {
+            assertEquals(mode, mode(mode).resolve(support).getBitrateMode());
+        }
+    }
+
+    @Test
+    public void fallsBackToClosestMode() {
+        int vbrOnly = 1 << EncoderSettings.BITRATE_MODE_VBR;
+        int cbrOnly = 1 << EncoderSettings.BITRATE_MODE_CBR;
+        assertEquals(EncoderSettings.BITRATE_MODE_VBR, mode(EncoderSettings.BITRATE_MODE_CQ).resolve(support(28, vbrOnly)).getBitrateMode());
+        assertEquals(EncoderSettings.BITRATE_MODE_CBR, mode(EncoderSettings.BITRATE_MODE_CQ).resolve(support(28, cbrOnly)).getBitrateMode());
+        assertEquals(EncoderSettings.BITRATE_MODE_CBR, mode(EncoderSettings.BITRATE_MODE_VBR).resolve(support(28, cbrOnly)).getBitrateMode());
+        assertEquals(EncoderSettings.BITRATE_MODE_VBR, mode(EncoderSettings.BITRATE_MODE_CBR).resolve(support(28, vbrOnly)).getBitrateMode());
+        assertEquals(EncoderSettings.BITRATE_MODE_DEFAULT, mode(EncoderSettings.BITRATE_MODE_CBR).resolve(support(28, 0)).getBitrateMode());
+    }
+
+    @Test
+    public void constantQualityNeedsQualityKey() {
+        // API 28 以下不能设置 KEY_QUALITY
+        assertEquals(EncoderSettings.BITRATE_MODE_VBR, mode(EncoderSettings.BITRATE_MODE_CQ).resolve(support(27, ALL_MODES)).getBitrateMode());
+        assertEquals(EncoderSettings.BITRATE_MODE_DEFAULT, mode(EncoderSettings.BITRATE_MODE_CBR).resolve(support(20, ALL_MODES)).getBitrateMode());
+    }
+
+    @Test
+    public void clampsQuality() {
+        EncoderSupport support = support(28, ALL_MODES);
+        EncoderSettings.Builder builder = new EncoderSettings.Builder().setBitrateMode(EncoderSettings.BITRATE_MODE_CQ);
+        assertEquals(50, builder.build().resolve(support).getQuality());
+        assertEquals(100, builder.setQuality(120).build().resolve(support).getQuality());
+        assertEquals(30, builder.setQuality(30).build().resolve(support).getQuality());
+        // 不是恒定质量时不设置
+        assertEquals(EncoderSettings.UNSPECIFIED, mode(EncoderSettings.BITRATE_MODE_CQ).resolve(support(27, ALL_MODES)).getQuality());
+    }
+
+    @Test
+    public void roundsIFrameIntervalBeforeFloatSupport() {
+        EncoderSettings settings = new EncoderSettings.Builder().setIFrameInterval(0.5f).build();
+        assertEquals(0.5f, settings.resolve(support(25, ALL_MODES)).getIFrameInterval(), 0);
+        assertEquals(1f, settings.resolve(support(24, ALL_MODES)).getIFrameInterval(), 0);
+        EncoderSettings allKeyFrames = new EncoderSettings.Builder().setIFrameInterval(0).build();
+        assertEquals(0f, allKeyFrames.resolve(support(18, ALL_MODES)).getIFrameInterval(), 0);
+    }
+
+    @Test
+    public void fallsBackToLowerProfile() {
+        EncoderSupport support = new EncoderSupport(28, ALL_MODES,
+                new int[]{BASELINE, MAIN, CONSTRAINED_HIGH}, new int[]{LEVEL_51, LEVEL_41, LEVEL_31}, 0, 100);
+        assertEquals(MAIN, profile(MAIN, 0).resolve(support).getProfile());
+        // High 不支持时 Constrained High 排名相同
+        assertEquals(CONSTRAINED_HIGH, profile(HIGH, 0).resolve(support).getProfile());
+
+        EncoderSupport noHigh = new EncoderSupport(28, ALL_MODES,
+                new int[]{BASELINE, MAIN}, new int[]{LEVEL_51, LEVEL_41}, 0, 100);
+        assertEquals(MAIN, profile(HIGH, 0).resolve(noHigh).getProfile());
+        EncoderSupport baselineOnly = new EncoderSupport(28, ALL_MODES,
+                new int[]{BASELINE}, new int[]{LEVEL_31}, 0, 100);
+        assertEquals(BASELINE, profile(HIGH, 0).resolve(baselineOnly).getProfile());
+        EncoderSupport highOnly = new EncoderSupport(28, ALL_MODES,
+                new int[]{HIGH}, new int[]{LEVEL_51}, 0, 100);
+        assertEquals(EncoderSettings.UNSPECIFIED, profile(BASELINE, 0).resolve(highOnly).getProfile());
+        assertEquals(EncoderSettings.UNSPECIFIED, profile(MAIN, 0).resolve(support(20, ALL_MODES)).getProfile());
+    }
+
+    @Test
+    public void clampsLevelToProfile() {
+        EncoderSupport support = new EncoderSupport(28, ALL_MODES,
+                new int[]{BASELINE, MAIN}, new int[]{LEVEL_51, LEVEL_31}, 0, 100);
+        EncoderSettings resolved = profile(MAIN, LEVEL_41).resolve(support);
+        assertEquals(MAIN, resolved.getProfile());
+        assertEquals(LEVEL_31, resolved.getLevel());
+        assertEquals(LEVEL_41, profile(BASELINE, LEVEL_41).resolve(support).getLevel());
+        // API 23 以下不能设置 level
+        EncoderSupport old = new EncoderSupport(22, ALL_MODES,
+                new int[]{BASELINE, MAIN}, new int[]{LEVEL_51, LEVEL_31}, 0, 100);
+        assertEquals(EncoderSettings.UNSPECIFIED, profile(BASELINE, LEVEL_41).resolve(old).getLevel());
+    }
+
+    @Test
+    public void buildUponKeepsValues() {
+        EncoderSettings settings = new EncoderSettings.Builder()
+                .setBitrateMode(EncoderSettings.BITRATE_MODE_VBR)
+                .setIFrameInterval(2)
+                .setProfileLevel(HIGH, LEVEL_41)
+                .build();
+        assertEquals(settings, settings.buildUpon().build());
+        assertEquals(settings.hashCode(), settings.buildUpon().build().hashCode());
+        assertNotEquals(settings, settings.buildUpon().setQuality(10).build());
+        assertEquals(EncoderSettings.DEFAULT, new EncoderSettings.Builder().build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownMode() {
+        new EncoderSettings.Builder().setBitrateMode(3);
+    }
+
+    private static EncoderSupport support(int sdkInt, int bitrateModes) {
+        return new EncoderSupport(sdkInt, bitrateModes, new int[0], new int[0], 0, 100);
+    }
+
+    private static EncoderSettings mode(int bitrateMode) {
+        return new EncoderSettings.Builder().setBitrateMode(bitrateMode).build();
+    }
+
+    private static EncoderSettings profile(int profile, int level) {
+        return new EncoderSettings.Builder().setProfileLevel(profile, level).build();
+    }
+}
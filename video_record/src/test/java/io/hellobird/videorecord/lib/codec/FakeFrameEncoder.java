@@ -0,0 +1,117 @@
+package io.hellobird.videorecord.lib.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.hellobird.videorecord.lib.mp4.Mp4Writer;
+
+/**
+ * 不需要硬件的编码器，每帧输出一个起始码格式的 H.264 NAL，直接写入 {@link Mp4Writer}
+ * <p>
+ * 每 keyFrameInterval 帧一个 IDR，其余为 P 帧；NAL 大小按码率与帧数计算，内容取自输入帧的亮度，
+ * 不会出现起始码。写入耗时与帧数按 {@link VideoEncoder} 的方式统计，编码器没有积压。
+ */
+final class FakeFrameEncoder implements FrameEncoder {
+
+    static final byte[] AVC_SPS = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xC0, 0x1E, (byte) 0xDA, 0x02, (byte) 0x80, (byte) 0xBF, (byte) 0xE5};
+
+    static final byte[] AVC_PPS = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final Mp4Writer mWriter;
+
+    private final int mKeyFrameInterval;
+
+    private int mTrack = -1;
+
+    private int mFrameRate;
+
+    private int mBitRate;
+
+    private EncoderSettings mSettings;
+
+    private long mFrames;
+
+    private long mWriteTimeNs;
+
+    private long mWrittenSamples;
+
+    private ByteBuffer mSample;
+
+    FakeFrameEncoder(int width, int height, Mp4Writer writer, int keyFrameInterval) {
+        mWidth = width;
+        mHeight = height;
+        mWriter = writer;
+        mKeyFrameInterval = keyFrameInterval;
+    }
+
+    @Override
+    public void prepare(int frameRate, int bitRate, EncoderSettings settings) throws IOException {
+        mFrameRate = frameRate;
+        mBitRate = bitRate;
+        mSettings = settings;
+        mTrack = mWriter.addVideoTrack(VideoEncoder.MIME_TYPE, mWidth, mHeight, AVC_SPS, AVC_PPS);
+    }
+
+    @Override
+    public EncoderSettings getSettings() {
+        return mSettings;
+    }
+
+    @Override
+    public boolean encodeFrame(byte[] nv21, long presentationTimeUs) {
+        boolean sync = mFrames++ % mKeyFrameInterval == 0;
+        // 关键帧是平均大小的4倍
+        int size = Math.max(mBitRate / 8 / mFrameRate * (sync ? 4 : 1), 16);
+        if (mSample == null || mSample.capacity() < size + 4) {
+            mSample = ByteBuffer.allocate(size + 4);
+        }
+        mSample.clear();
+        mSample.putInt(1).put((byte) (sync ? 0x65 : 0x41));
+        int step = Math.max(mWidth * mHeight / size, 1);
+        for (int i = 1; i < size; i++) {
+            mSample.put((byte) (nv21[(i * step) % (mWidth * mHeight)] | 0x80));
+        }
+        mSample.flip();
+        long start = System.nanoTime();
+        try {
+            mWriter.writeSample(mTrack, mSample, presentationTimeUs, sync);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        mWriteTimeNs += System.nanoTime() - start;
+        mWrittenSamples++;
+        return true;
+    }
+
+    @Override
+    public void signalEndOfStream(long presentationTimeUs) {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public void setBitRate(int bitRate) {
+        mBitRate = bitRate;
+    }
+
+    @Override
+    public int getPendingFrames() {
+        return 0;
+    }
+
+    @Override
+    public long getWriteTimeNs() {
+        return mWriteTimeNs;
+    }
+
+    @Override
+    public long getWrittenSamples() {
+        return mWrittenSamples;
+    }
+}
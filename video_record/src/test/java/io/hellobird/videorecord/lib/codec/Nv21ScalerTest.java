@@ -0,0 +1,109 @@
+package io.hellobird.videorecord.lib.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 代理文件使用的 NV21 缩小：尺寸计算、平面位置与像素取值
+ */
+public class Nv21ScalerTest {
+
+    @Test
+    public void constantPlanesStayConstant() {
+        int width = 640;
+        int height = 480;
+        byte[] src = frame(width, height, 100, 40, 200);
+        Nv21Scaler scaler = new Nv21Scaler(width, height, 320, 240);
+        byte[] dst = new byte[scaler.getDstSize()];
+        scaler.scale(src, dst);
+
+        int lumaSize = 320 * 240;
+        for (int i = 0; i < lumaSize; i++) {
+            assertEquals(100, dst[i] & 0xFF);
+        }
+        for (int i = lumaSize; i < dst.length; i += 2) {
+            assertEquals(40, dst[i] & 0xFF);
+            assertEquals(200, dst[i + 1] & 0xFF);
+        }
+    }
+
+    @Test
+    public void horizontalGradientIsPreserved() {
+        int width = 256;
+        int height = 64;
+        byte[] src = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                src[y * width + x] = (byte) x;
+            }
+        }
+        Nv21Scaler scaler = new Nv21Scaler(width, height, 128, 32);
+        byte[] dst = new byte[scaler.getDstSize()];
+        scaler.scale(src, dst);
+
+        for (int y = 0; y < 32; y++) {
+            int previous = -1;
+            for (int x = 0; x < 128; x++) {
+                int value = dst[y * 128 + x] & 0xFF;
+                // 每个目标像素覆盖源的两列
+                assertEquals(2 * x + 0.5, value, 1);
+                assertTrue(value > previous);
+                previous = value;
+            }
+        }
+    }
+
+    @Test
+    public void sameSizeCopiesChroma() {
+        int width = 16;
+        int height = 16;
+        byte[] src = new byte[width * height * 3 / 2];
+        for (int i = width * height; i < src.length; i++) {
+            src[i] = (byte) i;
+        }
+        Nv21Scaler scaler = new Nv21Scaler(width, height, width, height);
+        byte[] dst = new byte[scaler.getDstSize()];
+        scaler.scale(src, dst);
+
+        byte[] srcChroma = new byte[width * height / 2];
+        byte[] dstChroma = new byte[width * height / 2];
+        System.arraycopy(src, width * height, srcChroma, 0, srcChroma.length);
+        System.arraycopy(dst, width * height, dstChroma, 0, dstChroma.length);
+        assertArrayEquals(srcChroma, dstChroma);
+    }
+
+    @Test
+    public void fitShortEdgeKeepsAspectAndAlignment() {
+        assertArrayEquals(new int[]{640, 352}, Nv21Scaler.fitShortEdge(1920, 1080, 360));
+        assertArrayEquals(new int[]{352, 640}, Nv21Scaler.fitShortEdge(1080, 1920, 360));
+        assertArrayEquals(new int[]{480, 352}, Nv21Scaler.fitShortEdge(640, 480, 360));
+        // 不放大
+        assertArrayEquals(new int[]{640, 480}, Nv21Scaler.fitShortEdge(640, 480, 720));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUpscale() {
+        new Nv21Scaler(320, 240, 640, 480);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSize() {
+        new Nv21Scaler(640, 480, 321, 240);
+    }
+
+    private static byte[] frame(int width, int height, int luma, int v, int u) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        int lumaSize = width * height;
+        for (int i = 0; i < lumaSize; i++) {
+            frame[i] = (byte) luma;
+        }
+        for (int i = lumaSize; i < frame.length; i += 2) {
+            frame[i] = (byte) v;
+            frame[i + 1] = (byte) u;
+        }
+        return frame;
+    }
+}
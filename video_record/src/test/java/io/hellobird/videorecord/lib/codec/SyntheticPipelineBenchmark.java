@@ -0,0 +1,206 @@
+package io.hellobird.videorecord.lib.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.hellobird.videorecord.lib.camera.FrameSource;
+import io.hellobird.videorecord.lib.camera.SyntheticFrameSource;
+import io.hellobird.videorecord.lib.mp4.Mp4Writer;
+
+/**
+ * 用合成帧来源测量录制流程的吞吐量与延迟，不需要相机，可以在 CI 中重复运行
+ * <p>
+ * 每帧经过画面复杂度估计、缩放到代理尺寸、假编码器与 {@link Mp4Writer} 写入主文件和代理文件。
+ * 第一部分在调用线程尽快输出，测量每秒处理的帧数；第二部分按帧数实时输出，与 {@link CodecRecorder} 一样
+ * 用3个缓存交给独立线程处理，统计丢帧数与采集到写入完成的延迟。不是单元测试，直接运行 main：
+ * <pre>
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; io.hellobird.videorecord.lib.codec.SyntheticPipelineBenchmark [宽] [高] [帧数] [秒]
+ * </pre>
+ */
+public class SyntheticPipelineBenchmark {
+
+    private static final int BUFFER_COUNT = 3;
+
+    private static final int BIT_RATE = 4 * 1024 * 1024;
+
+    private static final int WARMUP_FRAMES = 60;
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1280;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 720;
+        int frameRate = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        System.out.printf("%dx%d@%d, proxy short edge 360%n", width, height, frameRate);
+        measureThroughput(width, height, frameRate, seconds * frameRate);
+        measureRealtime(width, height, frameRate, seconds);
+    }
+
+    private static void measureThroughput(int width, int height, int frameRate, int frames) throws IOException {
+        final SyntheticFrameSource source = new SyntheticFrameSource(width, height, frameRate);
+        final Pipeline pipeline = new Pipeline(width, height, frameRate);
+        source.setFrameCallback(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(byte[] data, long timestampUs) {
+                pipeline.process(data, timestampUs);
+                source.addBuffer(data);
+            }
+        });
+        source.addBuffer(new byte[width * height * 3 / 2]);
+        try {
+            source.emitFrames(WARMUP_FRAMES);
+            long start = System.nanoTime();
+            source.emitFrames(frames);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Throughput: %.1f fps (%.2f ms/frame)%n",
+                    frames * 1e9 / elapsed, elapsed / 1e6 / frames);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private static void measureRealtime(int width, int height, int frameRate, int seconds) throws Exception {
+        final SyntheticFrameSource source = new SyntheticFrameSource(width, height, frameRate);
+        final Pipeline pipeline = new Pipeline(width, height, frameRate);
+        final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        final long[] latencies = new long[seconds * frameRate * 2];
+        final int[] processed = {0};
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Frame frame = queue.take();
+                        if (frame.data == null) {
+                            return;
+                        }
+                        pipeline.process(frame.data, frame.timestampUs);
+                        if (processed[0] < latencies.length) {
+                            latencies[processed[0]++] = System.nanoTime() - frame.captureNs;
+                        }
+                        source.addBuffer(frame.data);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "PipelineWorker");
+        worker.start();
+        source.setFrameCallback(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(byte[] data, long timestampUs) {
+                queue.add(new Frame(data, timestampUs, System.nanoTime()));
+            }
+        });
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            source.addBuffer(new byte[width * height * 3 / 2]);
+        }
+        try {
+            source.start();
+            TimeUnit.SECONDS.sleep(seconds);
+            source.stop();
+            queue.put(new Frame(null, 0, 0));
+            worker.join();
+        } finally {
+            pipeline.close();
+        }
+        long[] sorted = Arrays.copyOf(latencies, processed[0]);
+        Arrays.sort(sorted);
+        System.out.printf("Realtime: %d frames, %d dropped%n", source.getFrameCount(), source.getDroppedFrames());
+        if (sorted.length > 0) {
+            System.out.printf("Latency ms: p50 %.2f, p95 %.2f, p99 %.2f, max %.2f%n",
+                    percentile(sorted, 0.5), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min((int) (sorted.length * fraction), sorted.length - 1)] / 1e6;
+    }
+
+    private static final class Frame {
+
+        final byte[] data;
+
+        final long timestampUs;
+
+        final long captureNs;
+
+        Frame(byte[] data, long timestampUs, long captureNs) {
+            this.data = data;
+            this.timestampUs = timestampUs;
+            this.captureNs = captureNs;
+        }
+    }
+
+    /**
+     * 复杂度估计、缩放、编码与写入，写入临时文件
+     */
+    private static final class Pipeline {
+
+        private final File mFile;
+
+        private final File mProxyFile;
+
+        private final Mp4Writer mMaster;
+
+        private final Mp4Writer mProxy;
+
+        private final FakeFrameEncoder mMasterEncoder;
+
+        private final FakeFrameEncoder mProxyEncoder;
+
+        private final Nv21Scaler mScaler;
+
+        private final byte[] mProxyFrame;
+
+        private final SceneComplexity mComplexity = new SceneComplexity();
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private long mFirstTimestampUs = -1;
+
+        Pipeline(int width, int height, int frameRate) throws IOException {
+            mWidth = width;
+            mHeight = height;
+            int[] proxySize = Nv21Scaler.fitShortEdge(width, height, 360);
+            mFile = File.createTempFile("pipebench", ".mp4");
+            mProxyFile = File.createTempFile("pipebench_proxy", ".mp4");
+            mMaster = new Mp4Writer(new RandomAccessFile(mFile, "rw").getChannel());
+            mProxy = new Mp4Writer(new RandomAccessFile(mProxyFile, "rw").getChannel());
+            mMasterEncoder = new FakeFrameEncoder(width, height, mMaster, frameRate);
+            mProxyEncoder = new FakeFrameEncoder(proxySize[0], proxySize[1], mProxy, frameRate);
+            mMasterEncoder.prepare(frameRate, BIT_RATE, EncoderSettings.DEFAULT);
+            mProxyEncoder.prepare(frameRate, BIT_RATE / 4, EncoderSettings.DEFAULT);
+            mScaler = new Nv21Scaler(width, height, proxySize[0], proxySize[1]);
+            mProxyFrame = new byte[mScaler.getDstSize()];
+        }
+
+        void process(byte[] data, long timestampUs) {
+            if (mFirstTimestampUs < 0) {
+                mFirstTimestampUs = timestampUs;
+            }
+            long presentationTimeUs = timestampUs - mFirstTimestampUs;
+            mComplexity.update(data, mWidth, mHeight);
+            mMasterEncoder.encodeFrame(data, presentationTimeUs);
+            mScaler.scale(data, mProxyFrame);
+            mProxyEncoder.encodeFrame(mProxyFrame, presentationTimeUs);
+        }
+
+        void close() throws IOException {
+            try {
+                mMaster.close();
+                mProxy.close();
+            } finally {
+                mFile.delete();
+                mProxyFile.delete();
+            }
+        }
+    }
+}
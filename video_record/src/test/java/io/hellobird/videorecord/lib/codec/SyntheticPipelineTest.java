@@ -0,0 +1,160 @@
+package io.hellobird.videorecord.lib.codec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hellobird.videorecord.lib.camera.FrameSource;
+import io.hellobird.videorecord.lib.camera.SyntheticFrameSource;
+import io.hellobird.videorecord.lib.mp4.Mp4IndexReader;
+import io.hellobird.videorecord.lib.mp4.Mp4Info;
+import io.hellobird.videorecord.lib.mp4.Mp4Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用合成帧来源驱动预览消费者、抽帧、缩放、编码与写入，不需要相机与编码器
+ */
+public class SyntheticPipelineTest {
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    private static final int FRAME_RATE = 30;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("pipeline", ".mp4");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void movingPatternIsComplex() {
+        float first = measureComplexity();
+        assertTrue("Complexity " + first, first > 0.3f && first < 1f);
+        // 相同输入得到相同结果
+        assertEquals(first, measureComplexity(), 0);
+    }
+
+    @Test
+    public void decimatesAtCaptureInterval() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, FRAME_RATE);
+        source.setStartTimestampUs(123456789);
+        final FrameDecimator decimator = new FrameDecimator(1000, FRAME_RATE);
+        final List<Long> output = new ArrayList<>();
+        source.setFrameCallback(new RecyclingCallback(source) {
+            @Override
+            void process(byte[] data, long timestampUs) {
+                long presentationTimeUs = decimator.accept(timestampUs);
+                if (presentationTimeUs != FrameDecimator.DROP) {
+                    output.add(presentationTimeUs);
+                }
+            }
+        });
+        source.addBuffer(new byte[WIDTH * HEIGHT * 3 / 2]);
+        source.emitFrames(10 * FRAME_RATE);
+        // 每秒一帧，按30帧输出
+        assertEquals(10, output.size());
+        assertEquals(0L, (long) output.get(0));
+        assertEquals(33333L, (long) output.get(1));
+        assertEquals(300000L, (long) output.get(9));
+    }
+
+    @Test
+    public void recordsMasterAndProxy() throws IOException {
+        File proxyFile = File.createTempFile("pipeline_proxy", ".mp4");
+        try {
+            SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, FRAME_RATE);
+            Mp4Writer master = new Mp4Writer(new RandomAccessFile(mFile, "rw").getChannel());
+            Mp4Writer proxy = new Mp4Writer(new RandomAccessFile(proxyFile, "rw").getChannel());
+            final FakeFrameEncoder masterEncoder = new FakeFrameEncoder(WIDTH, HEIGHT, master, FRAME_RATE);
+            final FakeFrameEncoder proxyEncoder = new FakeFrameEncoder(WIDTH / 2, HEIGHT / 2, proxy, FRAME_RATE);
+            masterEncoder.prepare(FRAME_RATE, 800000, EncoderSettings.DEFAULT);
+            proxyEncoder.prepare(FRAME_RATE, 200000, EncoderSettings.DEFAULT);
+            final Nv21Scaler scaler = new Nv21Scaler(WIDTH, HEIGHT, WIDTH / 2, HEIGHT / 2);
+            final byte[] proxyFrame = new byte[scaler.getDstSize()];
+            final long[] firstTimestamp = {-1};
+            source.setStartTimestampUs(42000000);
+            source.setFrameCallback(new RecyclingCallback(source) {
+                @Override
+                void process(byte[] data, long timestampUs) {
+                    if (firstTimestamp[0] < 0) {
+                        firstTimestamp[0] = timestampUs;
+                    }
+                    long presentationTimeUs = timestampUs - firstTimestamp[0];
+                    masterEncoder.encodeFrame(data, presentationTimeUs);
+                    scaler.scale(data, proxyFrame);
+                    proxyEncoder.encodeFrame(proxyFrame, presentationTimeUs);
+                }
+            });
+            for (int i = 0; i < 3; i++) {
+                source.addBuffer(new byte[WIDTH * HEIGHT * 3 / 2]);
+            }
+            assertEquals(3 * FRAME_RATE, source.emitFrames(3 * FRAME_RATE));
+            master.close();
+            proxy.close();
+
+            Mp4Info.Track video = Mp4IndexReader.read(mFile).getVideoTrack();
+            assertEquals(WIDTH, video.getWidth());
+            assertEquals(3 * FRAME_RATE, video.getSampleCount());
+            assertEquals(3, video.getKeyframeCount());
+            assertEquals(1000000L, video.getKeyframeTimesUs()[1], 1000);
+            assertEquals(3000000L, video.getDurationUs(), 40000);
+            Mp4Info.Track proxyVideo = Mp4IndexReader.read(proxyFile).getVideoTrack();
+            assertEquals(WIDTH / 2, proxyVideo.getWidth());
+            assertEquals(3 * FRAME_RATE, proxyVideo.getSampleCount());
+            assertTrue(proxyFile.length() < mFile.length());
+        } finally {
+            proxyFile.delete();
+        }
+    }
+
+    private static float measureComplexity() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, FRAME_RATE);
+        final SceneComplexity complexity = new SceneComplexity();
+        source.setFrameCallback(new RecyclingCallback(source) {
+            @Override
+            void process(byte[] data, long timestampUs) {
+                complexity.update(data, WIDTH, HEIGHT);
+            }
+        });
+        source.addBuffer(new byte[WIDTH * HEIGHT * 3 / 2]);
+        source.emitFrames(30);
+        assertEquals(30, complexity.getFrameCount());
+        return complexity.getComplexity();
+    }
+
+    /**
+     * 处理完立即归还缓存
+     */
+    private abstract static class RecyclingCallback implements FrameSource.FrameCallback {
+
+        private final FrameSource mSource;
+
+        RecyclingCallback(FrameSource source) {
+            mSource = source;
+        }
+
+        @Override
+        public void onFrame(byte[] data, long timestampUs) {
+            process(data, timestampUs);
+            mSource.addBuffer(data);
+        }
+
+        abstract void process(byte[] data, long timestampUs);
+    }
+}
@@ -0,0 +1,81 @@
+package io.hellobird.videorecord.lib.hls;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 测量 1080p60 码率下 TS 封装与分段写入的吞吐量，以及每帧分配的内存
+ * <p>
+ * 不是单元测试，直接运行 main：
+ * <pre>
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; io.hellobird.videorecord.lib.hls.HlsSegmenterBenchmark [秒数] [码率Mbps]
+ * </pre>
+ */
+public class HlsSegmenterBenchmark {
+
+    private static final int FRAME_RATE = 60;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int megabits = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int frameCount = seconds * FRAME_RATE;
+        // 平均帧大小，关键帧为普通帧的8倍，每秒一个关键帧
+        int averageFrame = megabits * 1000000 / 8 / FRAME_RATE;
+        int deltaFrame = averageFrame * FRAME_RATE / (FRAME_RATE + 7);
+        Random random = new Random(1);
+        ByteBuffer keyFrame = ByteBuffer.wrap(TsWriterTest.frame(random, 5, deltaFrame * 8));
+        ByteBuffer frame = ByteBuffer.wrap(TsWriterTest.frame(random, 1, deltaFrame));
+        File dir = File.createTempFile("hlsbench", "");
+        dir.delete();
+        try {
+            // 预热
+            run(dir, keyFrame, frame, FRAME_RATE * 10);
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long allocatedBefore = allocatedBytes(threads);
+            long start = System.nanoTime();
+            long bytes = run(dir, keyFrame, frame, frameCount);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes(threads) - allocatedBefore;
+            double fps = frameCount / (elapsed / 1e9);
+            System.out.printf("%d s of 1080p60 at %d Mbps: %.1f ms, %.0f fps (%.1fx realtime), %.1f MB/s%n",
+                    seconds, megabits, elapsed / 1e6, fps, fps / FRAME_RATE, bytes / (elapsed / 1e3));
+            if (allocatedBefore >= 0) {
+                System.out.printf("allocated %.1f bytes/frame%n", allocated / (double) frameCount);
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private static long run(File dir, ByteBuffer keyFrame, ByteBuffer frame, int frameCount) throws IOException {
+        // 2 秒分段，保留 5 个分段
+        HlsSegmenter segmenter = new HlsSegmenter(dir, "bench", 2000, 5);
+        segmenter.setVideoTrack(false, TsWriterTest.CSD_0, TsWriterTest.CSD_1);
+        long bytes = 0;
+        for (int i = 0; i < frameCount; i++) {
+            boolean sync = i % FRAME_RATE == 0;
+            ByteBuffer data = sync ? keyFrame : frame;
+            segmenter.writeSample(data, i * 1000000L / FRAME_RATE, sync);
+            bytes += data.remaining();
+        }
+        segmenter.close();
+        return bytes;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,277 @@
+package io.hellobird.videorecord.lib.hls;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按关键帧切分、滚动播放列表，以及录制过程中通过 HTTP 读取到的文件总是完整的
+ */
+public class HlsSegmenterTest {
+
+    private static final int FRAME_US = 40000;
+
+    /**
+     * 每秒一个关键帧
+     */
+    private static final int GOP = 25;
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("hls", "");
+        mDir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void splitsOnKeyframesAfterDuration() throws IOException {
+        HlsSegmenter segmenter = new HlsSegmenter(mDir, "live", 2000, GOP * FRAME_US / 1000, 0);
+        segmenter.setVideoTrack(false, TsWriterTest.CSD_0, TsWriterTest.CSD_1);
+        Random random = new Random(1);
+        // 第一个关键帧之前的帧被丢弃
+        segmenter.writeSample(ByteBuffer.wrap(TsWriterTest.frame(random, 1, 300)), 0, false);
+        int frames = 300;
+        for (int i = 1; i <= frames; i++) {
+            boolean sync = i % GOP == 1;
+            segmenter.writeSample(ByteBuffer.wrap(TsWriterTest.frame(random, sync ? 5 : 1, 2000)), (long) i * FRAME_US, sync);
+        }
+        segmenter.close();
+
+        List<String> lines = readLines(segmenter.getPlaylistFile());
+        assertEquals("#EXTM3U", lines.get(0));
+        assertTrue(lines.contains("#EXT-X-PLAYLIST-TYPE:EVENT"));
+        // 分段时长加一个关键帧间隔
+        assertTrue(lines.contains("#EXT-X-TARGETDURATION:3"));
+        assertEquals("#EXT-X-ENDLIST", lines.get(lines.size() - 1));
+        List<String> segments = segmentNames(lines);
+        // 每段 50 帧，正好是 2 个关键帧间隔
+        assertEquals(6, segments.size());
+        int[] counters = TsFixture.newCounters();
+        int pesCount = 0;
+        for (String name : segments) {
+            TsFixture ts = TsFixture.parse(readFile(new File(mDir, name)), counters);
+            assertTrue(ts.pes.get(0).randomAccess);
+            assertEquals(2, ts.patCount);
+            pesCount += ts.pes.size();
+        }
+        assertEquals(frames, pesCount);
+        assertTrue(lines.contains("#EXTINF:2.000,"));
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void targetDurationStaysConstant() throws IOException {
+        HlsSegmenter segmenter = new HlsSegmenter(mDir, "live", 500, 1000, 0);
+        segmenter.setVideoTrack(false, TsWriterTest.CSD_0, TsWriterTest.CSD_1);
+        Random random = new Random(4);
+        // 实际关键帧间隔 4 秒，比声明的长
+        int gop = 4 * GOP;
+        for (int i = 0; i < 3 * gop; i++) {
+            boolean sync = i % gop == 0;
+            segmenter.writeSample(ByteBuffer.wrap(TsWriterTest.frame(random, sync ? 5 : 1, 200)), (long) i * FRAME_US, sync);
+            if (i == gop) {
+                assertTrue(readLines(segmenter.getPlaylistFile()).contains("#EXT-X-TARGETDURATION:2"));
+            }
+        }
+        segmenter.close();
+        List<String> lines = readLines(segmenter.getPlaylistFile());
+        assertTrue(lines.contains("#EXT-X-TARGETDURATION:2"));
+        assertTrue(lines.contains("#EXTINF:4.000,"));
+        assertEquals(3, segmentNames(lines).size());
+    }
+
+    @Test
+    public void rollingWindowDropsOldSegments() throws IOException {
+        HlsSegmenter segmenter = new HlsSegmenter(mDir, "live", 500, 3);
+        segmenter.setVideoTrack(false, TsWriterTest.CSD_0, TsWriterTest.CSD_1);
+        Random random = new Random(2);
+        for (int i = 0; i < 20 * GOP; i++) {
+            boolean sync = i % GOP == 0;
+            segmenter.writeSample(ByteBuffer.wrap(TsWriterTest.frame(random, sync ? 5 : 1, 200)), (long) i * FRAME_US, sync);
+        }
+        List<String> lines = readLines(segmenter.getPlaylistFile());
+        assertFalse(lines.contains("#EXT-X-ENDLIST"));
+        assertFalse(lines.contains("#EXT-X-PLAYLIST-TYPE:EVENT"));
+        // 19 个分段已经结束，列表保留最后 3 个
+        assertEquals(3, segmentNames(lines).size());
+        assertTrue(lines.contains("#EXT-X-MEDIA-SEQUENCE:16"));
+        assertEquals("live-16.ts", segmentNames(lines).get(0));
+        // 移出列表的分段再保留一个窗口
+        assertTrue(new File(mDir, "live-13.ts").exists());
+        assertFalse(new File(mDir, "live-12.ts").exists());
+        segmenter.close();
+        assertEquals(3, segmentNames(readLines(segmenter.getPlaylistFile())).size());
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void serverOnlySeesCompleteFiles() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                File file = new File(mDir, exchange.getRequestURI().getPath().substring(1));
+                byte[] body;
+                try {
+                    body = readFile(file);
+                } catch (IOException e) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        final HlsSegmenter segmenter = new HlsSegmenter(mDir, "live", 500, 0);
+        segmenter.setVideoTrack(false, TsWriterTest.CSD_0, TsWriterTest.CSD_1);
+        final AtomicReference<Throwable> writeError = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(3);
+                try {
+                    for (int i = 0; i < 60 * GOP; i++) {
+                        boolean sync = i % GOP == 0;
+                        segmenter.writeSample(ByteBuffer.wrap(TsWriterTest.frame(random, sync ? 5 : 1, 8000)),
+                                (long) i * FRAME_US, sync);
+                    }
+                    segmenter.close();
+                } catch (Throwable e) {
+                    writeError.set(e);
+                }
+            }
+        });
+        writer.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        Set<String> checked = new HashSet<>();
+        try {
+            boolean ended = false;
+            while (!ended) {
+                byte[] playlist = fetch(base + "live.m3u8");
+                if (playlist == null) {
+                    Thread.yield();
+                    continue;
+                }
+                List<String> lines = lines(new String(playlist, "UTF-8"));
+                assertEquals("#EXTM3U", lines.get(0));
+                ended = lines.contains("#EXT-X-ENDLIST");
+                for (String name : segmentNames(lines)) {
+                    if (checked.add(name)) {
+                        byte[] segment = fetch(base + name);
+                        assertTrue("Listed segment missing " + name, segment != null);
+                        TsFixture ts = TsFixture.parse(segment, TsFixture.newCounters());
+                        assertTrue(ts.pes.get(0).randomAccess);
+                    }
+                }
+            }
+        } finally {
+            writer.join();
+            server.stop(0);
+        }
+        assertNull(writeError.get());
+        assertEquals(60, checked.size());
+    }
+
+    private void assertNoTempFiles() {
+        for (String name : mDir.list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+
+    private static byte[] fetch(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            if (connection.getResponseCode() != 200) {
+                return null;
+            }
+            return readFully(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static List<String> segmentNames(List<String> lines) {
+        List<String> names = new ArrayList<>();
+        for (String line : lines) {
+            if (line.endsWith(HlsSegmenter.SEGMENT_EXTENSION)) {
+                names.add(line);
+            }
+        }
+        return names;
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return lines(new String(readFile(file), "UTF-8"));
+    }
+
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
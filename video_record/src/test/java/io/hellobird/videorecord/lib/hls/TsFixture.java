@@ -0,0 +1,111 @@
+package io.hellobird.videorecord.lib.hls;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试用的 TS 解析：检查包结构、连续计数与 PSI 校验，取出视频 PES
+ */
+final class TsFixture {
+
+    static final class Pes {
+        long pts;
+        boolean randomAccess;
+        long pcr = -1;
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+        byte[] data() {
+            return payload.toByteArray();
+        }
+    }
+
+    int streamType = -1;
+
+    int patCount;
+
+    final List<Pes> pes = new ArrayList<>();
+
+    /**
+     * 解析并检查
+     *
+     * @param data        完整的 TS 数据
+     * @param firstCounts 每个 PID 的起始连续计数，-1 表示不检查第一个包；解析后更新为最后一个计数
+     */
+    static TsFixture parse(byte[] data, int[] firstCounts) {
+        TsFixture ts = new TsFixture();
+        assertEquals("Not packet aligned", 0, data.length % TsWriter.PACKET_SIZE);
+        Pes current = null;
+        for (int offset = 0; offset < data.length; offset += TsWriter.PACKET_SIZE) {
+            assertEquals(TsWriter.SYNC_BYTE, data[offset] & 0xFF);
+            boolean start = (data[offset + 1] & 0x40) != 0;
+            int pid = ((data[offset + 1] & 0x1F) << 8) | (data[offset + 2] & 0xFF);
+            int control = (data[offset + 3] >> 4) & 0x03;
+            int counter = data[offset + 3] & 0x0F;
+            int slot = pid == TsWriter.PID_PAT ? 0 : pid == TsWriter.PID_PMT ? 1 : 2;
+            if (firstCounts[slot] >= 0) {
+                assertEquals("Continuity of pid " + pid, (firstCounts[slot] + 1) & 0x0F, counter);
+            }
+            firstCounts[slot] = counter;
+            int payload = offset + 4;
+            long pcr = -1;
+            boolean randomAccess = false;
+            if ((control & 0x02) != 0) {
+                int length = data[payload] & 0xFF;
+                assertTrue(length <= 183);
+                if (length > 0) {
+                    int flags = data[payload + 1] & 0xFF;
+                    randomAccess = (flags & 0x40) != 0;
+                    if ((flags & 0x10) != 0) {
+                        pcr = ((data[payload + 2] & 0xFFL) << 25) | ((data[payload + 3] & 0xFFL) << 17)
+                                | ((data[payload + 4] & 0xFFL) << 9) | ((data[payload + 5] & 0xFFL) << 1)
+                                | ((data[payload + 6] & 0x80) >> 7);
+                    }
+                }
+                payload += length + 1;
+            }
+            int end = offset + TsWriter.PACKET_SIZE;
+            if (pid == TsWriter.PID_PAT || pid == TsWriter.PID_PMT) {
+                assertTrue(start);
+                int section = payload + 1 + (data[payload] & 0xFF);
+                int sectionLength = ((data[section + 1] & 0x0F) << 8) | (data[section + 2] & 0xFF);
+                assertEquals("CRC of pid " + pid, 0, TsWriter.crc32(data, section, sectionLength + 3));
+                if (pid == TsWriter.PID_PAT) {
+                    ts.patCount++;
+                } else {
+                    ts.streamType = data[section + 12] & 0xFF;
+                }
+                continue;
+            }
+            assertEquals(TsWriter.PID_VIDEO, pid);
+            if (start) {
+                assertEquals(0, data[payload]);
+                assertEquals(0, data[payload + 1]);
+                assertEquals(1, data[payload + 2]);
+                int headerLength = data[payload + 8] & 0xFF;
+                long pts = ((data[payload + 9] & 0x0EL) << 29) | ((data[payload + 10] & 0xFFL) << 22)
+                        | ((data[payload + 11] & 0xFEL) << 14) | ((data[payload + 12] & 0xFFL) << 7)
+                        | ((data[payload + 13] & 0xFEL) >> 1);
+                current = new Pes();
+                current.pts = pts;
+                current.randomAccess = randomAccess;
+                current.pcr = pcr;
+                ts.pes.add(current);
+                payload += 9 + headerLength;
+            }
+            assertTrue("Payload before PES start", current != null);
+            current.payload.write(data, payload, end - payload);
+        }
+        return ts;
+    }
+
+    static int[] newCounters() {
+        return new int[]{-1, -1, -1};
+    }
+
+    private TsFixture() {
+    }
+}
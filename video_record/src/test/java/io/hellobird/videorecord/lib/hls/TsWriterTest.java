@@ -0,0 +1,140 @@
+package io.hellobird.videorecord.lib.hls;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写入起始码格式的帧，解析 TS 包检查结构、时间戳与还原的数据
+ */
+public class TsWriterTest {
+
+    static final byte[] CSD_0 = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xC0, 0x1E, (byte) 0xDA, 0x02, (byte) 0x80, (byte) 0xBF};
+
+    static final byte[] CSD_1 = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private static final byte[] AUD = {0, 0, 0, 1, 0x09, (byte) 0xF0};
+
+    private static final int FRAME_US = 33333;
+
+    /**
+     * 起始码加指定类型的 NAL，其余为随机数据
+     */
+    static byte[] frame(Random random, int nalType, int size) {
+        byte[] frame = new byte[size];
+        random.nextBytes(frame);
+        frame[0] = 0;
+        frame[1] = 0;
+        frame[2] = 0;
+        frame[3] = 1;
+        frame[4] = (byte) (0x60 | nalType);
+        return frame;
+    }
+
+    @Test
+    public void writesKeyframesWithTablesAndParameterSets() throws IOException {
+        Random random = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TsWriter writer = new TsWriter(Channels.newChannel(out));
+        writer.setVideoTrack(false, CSD_0, CSD_1);
+        // 覆盖刚好装满、差一个字节与多个包的大小
+        int[] sizes = {5000, 170, 171, 183, 184, 1, 40000, 300};
+        byte[][] frames = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            boolean sync = i % 4 == 0;
+            frames[i] = frame(random, sync ? 5 : 1, Math.max(sizes[i], 6));
+            writer.writeSample(ByteBuffer.wrap(frames[i]), 1000000 + i * FRAME_US, sync);
+        }
+        writer.flush();
+        assertEquals(out.size(), writer.getBytesWritten());
+
+        TsFixture ts = TsFixture.parse(out.toByteArray(), TsFixture.newCounters());
+        assertEquals(TsWriter.STREAM_TYPE_AVC, ts.streamType);
+        assertEquals(2, ts.patCount);
+        assertEquals(frames.length, ts.pes.size());
+        for (int i = 0; i < frames.length; i++) {
+            TsFixture.Pes pes = ts.pes.get(i);
+            boolean sync = i % 4 == 0;
+            assertEquals(sync, pes.randomAccess);
+            assertEquals(63000 + (long) i * FRAME_US * 9 / 100, pes.pts);
+            if (sync) {
+                assertEquals(pes.pts - 63000, pes.pcr);
+            }
+            byte[] expected = sync ? concat(AUD, CSD_0, CSD_1, frames[i]) : concat(AUD, frames[i]);
+            assertArrayEquals("Frame " + i, expected, pes.data());
+        }
+    }
+
+    @Test
+    public void keepsExistingAudAndParameterSets() throws IOException {
+        Random random = new Random(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TsWriter writer = new TsWriter(Channels.newChannel(out));
+        writer.setVideoTrack(false, CSD_0, CSD_1);
+        byte[] withSps = concat(CSD_0, frame(random, 5, 500));
+        byte[] withAud = concat(AUD, frame(random, 1, 500));
+        writer.writeSample(ByteBuffer.wrap(withSps), 0, true);
+        writer.writeSample(ByteBuffer.wrap(withAud), FRAME_US, false);
+        writer.flush();
+
+        TsFixture ts = TsFixture.parse(out.toByteArray(), TsFixture.newCounters());
+        assertArrayEquals(concat(AUD, withSps), ts.pes.get(0).data());
+        assertArrayEquals(withAud, ts.pes.get(1).data());
+    }
+
+    @Test
+    public void keepsPositionAndContinuityAcrossChannels() throws IOException {
+        Random random = new Random(3);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        TsWriter writer = new TsWriter(Channels.newChannel(first));
+        writer.setVideoTrack(true, new byte[]{0, 0, 0, 1, 0x40, 0x01, 0x0C});
+        // 有效数据在缓存中间，前后的数据不能写入
+        byte[] array = new byte[2000];
+        random.nextBytes(array);
+        System.arraycopy(new byte[]{0, 0, 0, 1, 0x26, 0x01}, 0, array, 100, 6);
+        ByteBuffer data = ByteBuffer.wrap(array, 100, 1400);
+        writer.writeSample(data, 0, true);
+        assertEquals(100, data.position());
+        assertEquals(1500, data.limit());
+        writer.setChannel(Channels.newChannel(second));
+        writer.writeSample(data, FRAME_US, true);
+        writer.flush();
+
+        int[] counters = TsFixture.newCounters();
+        TsFixture.parse(first.toByteArray(), counters);
+        TsFixture ts = TsFixture.parse(second.toByteArray(), counters);
+        assertEquals(TsWriter.STREAM_TYPE_HEVC, ts.streamType);
+        byte[] payload = ts.pes.get(0).data();
+        assertEquals(0x46, payload[4] & 0xFF);
+        assertTrue(ts.pes.get(0).randomAccess);
+        assertArrayEquals(Arrays.copyOfRange(array, 100, 1500),
+                Arrays.copyOfRange(payload, payload.length - 1400, payload.length));
+    }
+
+    @Test
+    public void psiChecksumMatchesReference() {
+        // 标准 CRC-32/MPEG-2 的校验值
+        byte[] check = "123456789".getBytes();
+        assertEquals(0x0376E6E7, TsWriter.crc32(check, 0, check.length));
+        assertFalse(TsWriter.crc32(check, 0, 8) == 0x0376E6E7);
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
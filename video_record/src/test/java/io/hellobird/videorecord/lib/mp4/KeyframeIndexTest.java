@@ -0,0 +1,166 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写入关键帧索引再读取，检查时间、偏移、参数集去重与不完整文件的读取
+ */
+public class KeyframeIndexTest {
+
+    private static final byte[] SPS = {0x67, 0x42, (byte) 0xC0, 0x1E, (byte) 0xDA, 0x02, (byte) 0x80, (byte) 0xBF};
+
+    private static final byte[] SPS_2 = {0x67, 0x42, (byte) 0xC0, 0x1F, (byte) 0xDA, 0x01, 0x40, 0x16};
+
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private static final int FRAME_US = 33333;
+
+    private File mVideo;
+
+    @Before
+    public void setUp() throws IOException {
+        mVideo = File.createTempFile("keyframes", ".mp4");
+    }
+
+    @After
+    public void tearDown() {
+        KeyframeIndex.sidecarOf(mVideo).delete();
+        mVideo.delete();
+    }
+
+    /**
+     * 起始码格式的一帧，关键帧可以带参数集
+     */
+    static ByteBuffer frame(boolean sync, int size, byte[]... parameterSets) {
+        ByteBuffer frame = ByteBuffer.allocate(size + 64);
+        for (byte[] parameterSet : parameterSets) {
+            frame.putInt(1).put(parameterSet);
+        }
+        frame.putInt(1).put((byte) (sync ? 0x65 : 0x41));
+        while (frame.position() < size) {
+            frame.put((byte) 0x5A);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    public void indexesKeyframesAndParameterSets() throws IOException {
+        KeyframeIndexWriter writer = KeyframeIndexWriter.create(mVideo, false);
+        writer.addCodecConfig(annexB(SPS, PPS));
+        long offset = 0;
+        long[] expectedOffsets = new long[4];
+        for (int i = 0; i < 120; i++) {
+            boolean sync = i % 30 == 0;
+            // 第二个关键帧重复 csd 中的参数集，第三个关键帧换了 SPS
+            ByteBuffer frame = i == 30 ? frame(true, 3000, SPS, PPS)
+                    : i == 60 ? frame(true, 3000, SPS_2, PPS)
+                    : frame(sync, sync ? 3000 : 500);
+            if (sync) {
+                expectedOffsets[i / 30] = offset;
+            }
+            assertEquals(sync, writer.addSample(frame, (long) i * FRAME_US));
+            assertEquals(0, frame.position());
+            offset += frame.remaining();
+        }
+        writer.close();
+
+        KeyframeIndex index = KeyframeIndex.read(KeyframeIndex.sidecarOf(mVideo));
+        assertFalse(index.isHevc());
+        assertEquals(4, index.getKeyframeCount());
+        for (int i = 0; i < 4; i++) {
+            assertEquals((long) i * 30 * FRAME_US, index.getTimeUs(i));
+            assertEquals(expectedOffsets[i], index.getOffset(i));
+            assertEquals(i * 30, index.getSampleIndex(i));
+        }
+        assertEquals(3, index.getParameterSets().size());
+        assertArrayEquals(SPS, index.getParameterSets().get(0));
+        assertArrayEquals(PPS, index.getParameterSets().get(1));
+        assertArrayEquals(SPS_2, index.getParameterSets().get(2));
+
+        assertEquals(-1, index.findKeyframe(-1));
+        assertEquals(0, index.findKeyframe(0));
+        assertEquals(1, index.findKeyframe(59L * FRAME_US));
+        assertEquals(2, index.findKeyframe(60L * FRAME_US));
+        assertEquals(3, index.findKeyframe(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void ignoresTruncatedRecord() throws IOException {
+        KeyframeIndexWriter writer = KeyframeIndexWriter.create(mVideo, true);
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer frame = ByteBuffer.allocate(20);
+            // H.265 IDR_W_RADL
+            frame.putInt(1).put((byte) 0x26).put((byte) 0x01).position(20);
+            frame.flip();
+            assertTrue(writer.addSample(frame, i * 1000000L));
+        }
+        // 录制中途，没有关闭
+        File sidecar = KeyframeIndex.sidecarOf(mVideo);
+        RandomAccessFile file = new RandomAccessFile(sidecar, "rw");
+        try {
+            file.setLength(file.length() - 5);
+        } finally {
+            file.close();
+        }
+        KeyframeIndex index = KeyframeIndex.read(sidecar);
+        assertTrue(index.isHevc());
+        assertEquals(2, index.getKeyframeCount());
+        assertEquals(1000000L, index.getTimeUs(1));
+        assertEquals(20, index.getOffset(1));
+        writer.close();
+    }
+
+    @Test(expected = Mp4FormatException.class)
+    public void rejectsUnknownFile() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(KeyframeIndex.sidecarOf(mVideo), "rw");
+        try {
+            file.write(new byte[32]);
+        } finally {
+            file.close();
+        }
+        KeyframeIndex.read(KeyframeIndex.sidecarOf(mVideo));
+    }
+
+    @Test
+    public void keepsBoundedParameterSetTable() throws IOException {
+        KeyframeIndexWriter writer = KeyframeIndexWriter.create(mVideo, false);
+        // 每个关键帧带不同的 PPS，超过去重表大小后仍然每次写入
+        int count = KeyframeIndexWriter.MAX_PARAMETER_SETS * 3;
+        for (int i = 0; i < count; i++) {
+            byte[] pps = {0x68, (byte) i, 0x3C, (byte) 0x80};
+            writer.addSample(frame(true, 200, pps), i * 1000000L);
+            writer.addSample(frame(true, 200, pps), i * 1000000L + FRAME_US);
+        }
+        writer.close();
+        KeyframeIndex index = KeyframeIndex.read(KeyframeIndex.sidecarOf(mVideo));
+        assertEquals(count * 2, index.getKeyframeCount());
+        assertEquals(count, index.getParameterSets().size());
+    }
+
+    /**
+     * 拼接起始码格式的 csd
+     */
+    private static byte[] annexB(byte[]... units) {
+        ByteBuffer csd = ByteBuffer.allocate(256);
+        for (byte[] unit : units) {
+            csd.putInt(1).put(unit);
+        }
+        byte[] bytes = new byte[csd.position()];
+        csd.flip();
+        csd.get(bytes);
+        return bytes;
+    }
+}
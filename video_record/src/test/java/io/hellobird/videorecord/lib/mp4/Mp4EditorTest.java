@@ -0,0 +1,201 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用合成的 MP4 验证按关键帧裁剪与分割
+ * <p>
+ * 视频轨 30 帧，每 10 帧一个关键帧；音频轨 10 帧，见 {@link Mp4Fixture}。
+ */
+public class Mp4EditorTest {
+
+    private static final int VIDEO_SAMPLES = 30;
+
+    private static final int AUDIO_SAMPLES = 10;
+
+    private File mDir;
+
+    private File mSource;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("mp4editor", "");
+        assertTrue(mDir.delete());
+        assertTrue(mDir.mkdir());
+        mSource = new File(mDir, "source.mp4");
+        new Mp4Fixture().write(mSource);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void fixtureIsReadable() throws IOException {
+        Mp4Movie movie = read(mSource);
+        assertEquals(2, movie.tracks.size());
+        assertTrue(movie.tracks.get(0).isVideo());
+        assertEquals(VIDEO_SAMPLES, movie.tracks.get(0).samples.sampleCount);
+        assertEquals(AUDIO_SAMPLES, movie.tracks.get(1).samples.sampleCount);
+        assertSamples(mSource, 0, 0, VIDEO_SAMPLES);
+        assertSamples(mSource, 1, 0, AUDIO_SAMPLES);
+    }
+
+    @Test
+    public void trimStartsOnPrecedingKeyframe() throws IOException {
+        File target = new File(mDir, "trim.mp4");
+        Mp4Editor.Result result = Mp4Editor.trim(mSource, target, 400000, 750000);
+
+        // 0.4s 是第 12 帧，向前对齐到第 10 帧；0.75s 之后的第一帧是第 23 帧
+        assertEquals(333333, result.getStartUs());
+        assertEquals(766666, result.getEndUs());
+        assertEquals(target.length(), result.getBytes());
+
+        Mp4Movie movie = read(target);
+        SampleTable video = movie.tracks.get(0).samples;
+        assertEquals(13, video.sampleCount);
+        assertTrue(video.isSync(0));
+        assertTrue(Arrays.equals(new int[]{0, 10}, video.syncSamples));
+        assertEquals(0, video.times[0]);
+        assertSamples(target, 0, 10, 13);
+
+        // 音频取 [333ms, 766ms) 内的采样
+        SampleTable audio = movie.tracks.get(1).samples;
+        assertEquals(4, audio.sampleCount);
+        assertSamples(target, 1, 4, 4);
+
+        assertEquals(13000, read(target).tracks.get(0).samples.getDuration());
+        assertNull(movie.tracks.get(0).trak.child("edts"));
+    }
+
+    @Test
+    public void trimWritesMoovBeforeMdat() throws IOException {
+        File target = new File(mDir, "faststart.mp4");
+        Mp4Editor.trim(mSource, target, 0, 500000);
+        RandomAccessFile file = new RandomAccessFile(target, "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            long offset = 0;
+            List<String> types = new ArrayList<>();
+            while (offset < file.length()) {
+                header.clear();
+                file.getChannel().read(header, offset);
+                header.flip();
+                long size = header.getInt() & 0xFFFFFFFFL;
+                types.add(Mp4Box.readType(header));
+                offset += size;
+            }
+            assertEquals(Arrays.asList("ftyp", "moov", "mdat"), types);
+            assertEquals(file.length(), offset);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void splitCoversWholeFile() throws IOException {
+        File first = new File(mDir, "first.mp4");
+        File second = new File(mDir, "second.mp4");
+        Mp4Editor.Result[] results = Mp4Editor.split(mSource, first, second, 700000);
+
+        // 0.7s 是第 21 帧，对齐到第 20 帧
+        assertEquals(0, results[0].getStartUs());
+        assertEquals(666666, results[0].getEndUs());
+        assertEquals(666666, results[1].getStartUs());
+        assertEquals(1000000, results[1].getEndUs());
+
+        Mp4Movie a = read(first);
+        Mp4Movie b = read(second);
+        assertEquals(VIDEO_SAMPLES, a.tracks.get(0).samples.sampleCount + b.tracks.get(0).samples.sampleCount);
+        assertEquals(AUDIO_SAMPLES, a.tracks.get(1).samples.sampleCount + b.tracks.get(1).samples.sampleCount);
+        assertSamples(first, 0, 0, 20);
+        assertSamples(second, 0, 20, 10);
+        assertSamples(first, 1, 0, 7);
+        assertSamples(second, 1, 7, 3);
+    }
+
+    @Test
+    public void rejectsFileWithoutMoov() throws IOException {
+        File broken = new File(mDir, "broken.mp4");
+        FileOutputStream out = new FileOutputStream(broken);
+        try {
+            out.write(new byte[]{0, 0, 0, 16, 'm', 'd', 'a', 't', 1, 2, 3, 4, 5, 6, 7, 8});
+        } finally {
+            out.close();
+        }
+        try {
+            Mp4Editor.trim(broken, new File(mDir, "out.mp4"), 0, 1000000);
+            fail();
+        } catch (Mp4FormatException expected) {
+            assertNotNull(expected.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsEmptyRange() throws IOException {
+        try {
+            Mp4Editor.trim(mSource, new File(mDir, "out.mp4"), 2000000, 3000000);
+            fail();
+        } catch (Mp4FormatException expected) {
+            assertFalse(new File(mDir, "out.mp4").exists());
+        }
+    }
+
+    private static Mp4Movie read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return Mp4Movie.read(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 检查轨道的采样内容依次是原文件中从 firstOriginal 开始的 count 个采样
+     */
+    private static void assertSamples(File file, int track, int firstOriginal, int count) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            SampleTable samples = Mp4Movie.read(channel).tracks.get(track).samples;
+            assertEquals(count, samples.sampleCount);
+            for (int i = 0; i < count; i++) {
+                int original = firstOriginal + i;
+                assertEquals(Mp4Fixture.sampleSize(track, original), samples.sizes[i]);
+                ByteBuffer data = ByteBuffer.allocate(samples.sizes[i]);
+                channel.read(data, samples.offsets[i]);
+                for (int j = 0; j < data.capacity(); j++) {
+                    assertEquals("track " + track + " sample " + original, Mp4Fixture.sampleByte(track, original), data.get(j));
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 生成测试用的 MP4 文件
+ * <p>
+ * 视频轨帧时长 1000/30000，音频轨帧时长 100/1000；视频每块 5 帧，之后跟 2 帧音频，剩余的音频放在最后一块。
+ * 每个采样的内容填充为 轨道号 * 64 + 采样序号，用来检查复制的数据是否正确。
+ */
+final class Mp4Fixture {
+
+    static final int VIDEO_TIMESCALE = 30000;
+
+    static final int VIDEO_DELTA = 1000;
+
+    static final int AUDIO_TIMESCALE = 1000;
+
+    static final int AUDIO_DELTA = 100;
+
+    int videoSamples = 30;
+
+    int audioSamples = 10;
+
+    int keyframeInterval = 10;
+
+    /**
+     * 所有视频帧相同的显示时间偏移，0 时不生成 ctts
+     */
+    int ctsOffset;
+
+    int rotation;
+
+    int width = 640;
+
+    int height = 480;
+
+    /**
+     * moov 在 mdat 之前，否则与 MediaMuxer 一样写在最后
+     */
+    boolean moovFirst = true;
+
+    static int sampleSize(int track, int sample) {
+        return track == 0 ? 100 + (sample % 50) * 3 : 20;
+    }
+
+    static byte sampleByte(int track, int sample) {
+        return (byte) (track * 64 + sample);
+    }
+
+    /**
+     * 一块连续存放的采样
+     */
+    private static final class Chunk {
+        final int track;
+        final int firstSample;
+        int count;
+
+        Chunk(int track, int firstSample) {
+            this.track = track;
+            this.firstSample = firstSample;
+        }
+    }
+
+    void write(File file) throws IOException {
+        SampleTableBuilder video = new SampleTableBuilder(ctsOffset != 0, true);
+        SampleTableBuilder audio = new SampleTableBuilder(false, false);
+        List<Chunk> chunks = new ArrayList<>();
+        long dataSize = 0;
+        int audioSample = 0;
+        Chunk chunk = null;
+        for (int v = 0; v < videoSamples; v++) {
+            if (v % 5 == 0) {
+                video.startChunk(dataSize, 1);
+                chunk = new Chunk(0, v);
+                chunks.add(chunk);
+            }
+            video.addSample(sampleSize(0, v), VIDEO_DELTA, ctsOffset, v % keyframeInterval == 0);
+            chunk.count++;
+            dataSize += sampleSize(0, v);
+            if (v % 5 == 4 || v == videoSamples - 1) {
+                for (int a = 0; a < 2 && audioSample < audioSamples; a++, audioSample++) {
+                    if (a == 0) {
+                        audio.startChunk(dataSize, 1);
+                        chunk = new Chunk(1, audioSample);
+                        chunks.add(chunk);
+                    }
+                    audio.addSample(sampleSize(1, audioSample), AUDIO_DELTA, 0, true);
+                    chunk.count++;
+                    dataSize += sampleSize(1, audioSample);
+                }
+            }
+        }
+        if (audioSample < audioSamples) {
+            audio.startChunk(dataSize, 1);
+            chunk = new Chunk(1, audioSample);
+            chunks.add(chunk);
+            for (; audioSample < audioSamples; audioSample++) {
+                audio.addSample(sampleSize(1, audioSample), AUDIO_DELTA, 0, true);
+                chunk.count++;
+                dataSize += sampleSize(1, audioSample);
+            }
+        }
+
+        Mp4Box ftyp = new Mp4Box("ftyp", new byte[]{'i', 's', 'o', 'm', 0, 0, 2, 0, 'i', 's', 'o', 'm', 'm', 'p', '4', '1'});
+        long dataOffset;
+        Mp4Box moov;
+        if (moovFirst) {
+            moov = moov(video, audio, 0);
+            dataOffset = ftyp.size() + moov.size() + 8;
+            moov = moov(video, audio, dataOffset);
+        } else {
+            dataOffset = ftyp.size() + 8;
+            moov = moov(video, audio, dataOffset);
+        }
+
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            writeFully(channel, ftyp.toBuffer());
+            if (moovFirst) {
+                writeFully(channel, moov.toBuffer());
+            }
+            ByteBuffer mdat = ByteBuffer.allocate(8);
+            mdat.putInt((int) (dataSize + 8)).put(new byte[]{'m', 'd', 'a', 't'}).flip();
+            writeFully(channel, mdat);
+            ByteBuffer data = ByteBuffer.allocate(64 * 1024);
+            for (Chunk c : chunks) {
+                for (int i = c.firstSample; i < c.firstSample + c.count; i++) {
+                    int size = sampleSize(c.track, i);
+                    if (data.remaining() < size) {
+                        data.flip();
+                        writeFully(channel, data);
+                        data.clear();
+                    }
+                    for (int j = 0; j < size; j++) {
+                        data.put(sampleByte(c.track, i));
+                    }
+                }
+            }
+            data.flip();
+            writeFully(channel, data);
+            if (!moovFirst) {
+                writeFully(channel, moov.toBuffer());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private Mp4Box moov(SampleTableBuilder video, SampleTableBuilder audio, long dataOffset) {
+        long movieDuration = Math.max(video.getDuration() * 1000 / VIDEO_TIMESCALE, audio.getDuration());
+        List<Mp4Box> children = new ArrayList<>();
+        children.add(new Mp4Box("mvhd", header(100, 1000, movieDuration)));
+        children.add(track(1, "vide", VIDEO_TIMESCALE, video, dataOffset, movieDuration));
+        if (audioSamples > 0) {
+            children.add(track(2, "soun", AUDIO_TIMESCALE, audio, dataOffset, movieDuration));
+        }
+        return new Mp4Box("moov", children);
+    }
+
+    private Mp4Box track(int id, String handler, int timescale, SampleTableBuilder samples,
+                         long dataOffset, long movieDuration) {
+        boolean video = "vide".equals(handler);
+        ByteBuffer tkhd = ByteBuffer.allocate(84);
+        tkhd.putInt(3).putInt(0).putInt(0).putInt(id).putInt(0).putInt((int) movieDuration);
+        tkhd.position(40);
+        for (int value : matrix(video ? rotation : 0)) {
+            tkhd.putInt(value);
+        }
+        tkhd.putInt(video ? width << 16 : 0).putInt(video ? height << 16 : 0);
+
+        ByteBuffer hdlr = ByteBuffer.allocate(25);
+        hdlr.putInt(0).putInt(0).put(handler.getBytes());
+
+        ByteBuffer stsd;
+        if (video) {
+            // VisualSampleEntry
+            stsd = ByteBuffer.allocate(8 + 86);
+            stsd.putInt(0).putInt(1).putInt(86).put(new byte[]{'a', 'v', 'c', '1'});
+            stsd.position(8 + 8 + 24);
+            stsd.putShort((short) width).putShort((short) height);
+        } else {
+            // AudioSampleEntry
+            stsd = ByteBuffer.allocate(8 + 36);
+            stsd.putInt(0).putInt(1).putInt(36).put(new byte[]{'m', 'p', '4', 'a'});
+            stsd.position(8 + 8 + 16);
+            stsd.putShort((short) 2).putShort((short) 16).putInt(0).putInt(44100 << 16);
+        }
+
+        ByteBuffer elst = ByteBuffer.allocate(20);
+        elst.putInt(0).putInt(1).putInt((int) movieDuration).putInt(0).putInt(0x00010000);
+        Mp4Box edts = new Mp4Box("edts", new ArrayList<>(Arrays.asList(new Mp4Box("elst", elst.array()))));
+
+        Mp4Box stbl = samples.build(new Mp4Box("stsd", stsd.array()), dataOffset);
+        Mp4Box minf = new Mp4Box("minf", new ArrayList<>(Arrays.asList(stbl)));
+        Mp4Box mdia = new Mp4Box("mdia", new ArrayList<>(Arrays.asList(
+                new Mp4Box("mdhd", header(24, timescale, samples.getDuration())),
+                new Mp4Box("hdlr", hdlr.array()),
+                minf)));
+        return new Mp4Box("trak", new ArrayList<>(Arrays.asList(new Mp4Box("tkhd", tkhd.array()), edts, mdia)));
+    }
+
+    /**
+     * 与 MediaMuxer.setOrientationHint 相同的变换矩阵
+     */
+    private static int[] matrix(int rotation) {
+        int one = 0x00010000;
+        switch (rotation) {
+            case 90:
+                return new int[]{0, one, 0, -one, 0, 0, 0, 0, 0x40000000};
+            case 180:
+                return new int[]{-one, 0, 0, 0, -one, 0, 0, 0, 0x40000000};
+            case 270:
+                return new int[]{0, -one, 0, one, 0, 0, 0, 0, 0x40000000};
+            default:
+                return new int[]{one, 0, 0, 0, one, 0, 0, 0, 0x40000000};
+        }
+    }
+
+    /**
+     * version 0 的 mvhd、mdhd
+     */
+    private static byte[] header(int size, int timescale, long duration) {
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.putInt(0).putInt(0).putInt(0).putInt(timescale).putInt((int) duration);
+        return header.array();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 比较只读 moov 与展开整个采样表的耗时，并测量批量扫描的吞吐量
+ * <p>
+ * 不是单元测试，直接运行 main：
+ * <pre>
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; io.hellobird.videorecord.lib.mp4.Mp4IndexReaderBenchmark [分钟数] [文件数]
+ * </pre>
+ */
+public class Mp4IndexReaderBenchmark {
+
+    private static final int WARMUP = 20;
+
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int minutes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int clips = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        File dir = File.createTempFile("mp4bench", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            // 30fps 视频，每秒一个关键帧，moov 与 MediaMuxer 一样写在最后
+            Mp4Fixture fixture = new Mp4Fixture();
+            fixture.videoSamples = minutes * 60 * 30;
+            fixture.audioSamples = minutes * 60 * 10;
+            fixture.keyframeInterval = 30;
+            fixture.ctsOffset = 2000;
+            fixture.moovFirst = false;
+            final File large = new File(dir, "large.mp4");
+            fixture.write(large);
+            System.out.println("Fixture: " + minutes + " min, " + large.length() / 1024 + " KB");
+
+            report("Mp4IndexReader.read", measure(new Task() {
+                @Override
+                public void run() throws IOException {
+                    Mp4IndexReader.read(large);
+                }
+            }));
+            report("Mp4Movie.read (full sample table)", measure(new Task() {
+                @Override
+                public void run() throws IOException {
+                    RandomAccessFile in = new RandomAccessFile(large, "r");
+                    try {
+                        Mp4Movie.read(in.getChannel());
+                    } finally {
+                        in.close();
+                    }
+                }
+            }));
+
+            // 相册规模的批量扫描，每个文件约 10 秒
+            Mp4Fixture clip = new Mp4Fixture();
+            clip.videoSamples = 300;
+            clip.audioSamples = 100;
+            clip.keyframeInterval = 30;
+            clip.moovFirst = false;
+            List<File> files = new ArrayList<>(clips);
+            for (int i = 0; i < clips; i++) {
+                File file = new File(dir, "clip" + i + ".mp4");
+                clip.write(file);
+                files.add(file);
+            }
+            int[] threadCounts = {1, 2, 4, Runtime.getRuntime().availableProcessors()};
+            for (int threads : threadCounts) {
+                Mp4IndexReader.readAll(files, threads);
+                long start = System.nanoTime();
+                Mp4IndexReader.readAll(files, threads);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("readAll %d clips, %d threads: %.1f ms, %.0f clips/s%n",
+                        clips, threads, elapsed / 1e6, clips / (elapsed / 1e9));
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static long[] measure(Task task) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static void report(String name, long[] sorted) {
+        System.out.printf("%-36s median %8.3f ms, p90 %8.3f ms%n", name,
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 9 / 10] / 1e6);
+    }
+}
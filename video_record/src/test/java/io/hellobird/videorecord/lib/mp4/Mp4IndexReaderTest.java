@@ -0,0 +1,159 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用 {@link Mp4Fixture} 生成的文件验证只读 moov 得到的信息
+ */
+public class Mp4IndexReaderTest {
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("mp4index", "");
+        assertTrue(mDir.delete());
+        assertTrue(mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void readsMoovAtEnd() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture();
+        fixture.moovFirst = false;
+        fixture.rotation = 90;
+        fixture.ctsOffset = 2000;
+        File file = new File(mDir, "muxer.mp4");
+        fixture.write(file);
+
+        Mp4Info info = Mp4IndexReader.read(file);
+        assertEquals(file.length(), info.getFileSize());
+        assertEquals(1000000, info.getDurationUs());
+        assertEquals(640, info.getWidth());
+        assertEquals(480, info.getHeight());
+        assertEquals(90, info.getRotation());
+        assertEquals(2, info.getTracks().size());
+
+        Mp4Info.Track video = info.getVideoTrack();
+        assertEquals(1, video.getId());
+        assertEquals("avc1", video.getCodec());
+        assertEquals(Mp4Fixture.VIDEO_TIMESCALE, video.getTimescale());
+        assertEquals(30, video.getSampleCount());
+        assertEquals(1000000, video.getDurationUs());
+        // 解码时间 0、10000、20000 加上显示偏移 2000
+        assertTrue(Arrays.toString(video.getKeyframeTimesUs()),
+                Arrays.equals(new long[]{66666, 400000, 733333}, video.getKeyframeTimesUs()));
+
+        Mp4Info.Track audio = info.getAudioTrack();
+        assertEquals("mp4a", audio.getCodec());
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals(2, audio.getChannelCount());
+        assertEquals(10, audio.getSampleCount());
+        assertEquals(0, audio.getKeyframeCount());
+        assertEquals(0, audio.getRotation());
+    }
+
+    @Test
+    public void rotationFromMatrix() throws IOException {
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            Mp4Fixture fixture = new Mp4Fixture();
+            fixture.rotation = rotation;
+            File file = new File(mDir, "rotation" + rotation + ".mp4");
+            fixture.write(file);
+            assertEquals(rotation, Mp4IndexReader.read(file).getRotation());
+        }
+    }
+
+    @Test
+    public void matchesFullSampleTable() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture();
+        fixture.videoSamples = 1000;
+        fixture.audioSamples = 333;
+        fixture.keyframeInterval = 30;
+        File file = new File(mDir, "long.mp4");
+        fixture.write(file);
+
+        Mp4Info info = Mp4IndexReader.read(file);
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            SampleTable samples = Mp4Movie.read(in.getChannel()).tracks.get(0).samples;
+            long[] keyframes = info.getVideoTrack().getKeyframeTimesUs();
+            assertEquals(samples.syncSamples.length, keyframes.length);
+            for (int i = 0; i < keyframes.length; i++) {
+                long time = samples.times[samples.syncSamples[i]];
+                assertEquals(time * 1000000 / Mp4Fixture.VIDEO_TIMESCALE, keyframes[i]);
+            }
+            assertEquals(samples.sampleCount, info.getVideoTrack().getSampleCount());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedMoov() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture();
+        fixture.moovFirst = false;
+        File file = new File(mDir, "truncated.mp4");
+        fixture.write(file);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(file.length() - 100);
+        } finally {
+            out.close();
+        }
+        try {
+            Mp4IndexReader.read(file);
+            fail();
+        } catch (Mp4FormatException expected) {
+            assertNotNull(expected.getMessage());
+        }
+    }
+
+    @Test
+    public void readAllKeepsOrder() throws IOException, InterruptedException {
+        File[] files = new File[20];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(mDir, "clip" + i + ".mp4");
+            Mp4Fixture fixture = new Mp4Fixture();
+            fixture.videoSamples = 30 + i;
+            fixture.write(files[i]);
+        }
+        File missing = new File(mDir, "missing.mp4");
+        files[7] = missing;
+
+        List<Mp4Info> infos = Mp4IndexReader.readAll(Arrays.asList(files), 4);
+        assertEquals(files.length, infos.size());
+        for (int i = 0; i < files.length; i++) {
+            if (i == 7) {
+                assertNull(infos.get(i));
+            } else {
+                assertEquals(files[i], infos.get(i).getFile());
+                assertEquals(30 + i, infos.get(i).getVideoTrack().getSampleCount());
+            }
+        }
+    }
+}
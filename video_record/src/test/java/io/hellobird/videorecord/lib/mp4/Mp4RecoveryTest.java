@@ -0,0 +1,495 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用模拟进程退出留下的文件验证修复：只有 ftyp 与大小未写入的 mdat，末尾截断或带预分配的全零数据
+ */
+public class Mp4RecoveryTest {
+
+    private static final byte[] AVC_SPS = {0x67, 0x42, (byte) 0xC0, 0x1E, (byte) 0xDA, 0x02, (byte) 0x80, (byte) 0xBF, (byte) 0xE5};
+
+    private static final byte[] AVC_PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private static final byte[] HEVC_VPS = {0x40, 0x01, 0x0C, 0x01, (byte) 0xFF, (byte) 0xFF, 0x01, 0x60, 0x00, 0x00, 0x03};
+
+    private static final byte[] HEVC_SPS = {0x42, 0x01, 0x01, 0x01, 0x60, 0x00, 0x00, 0x03, 0x00, (byte) 0x90, 0x00,
+            0x00, 0x03, 0x00, 0x00, 0x03, 0x00, 0x5D, (byte) 0xA0, 0x02, (byte) 0x80, (byte) 0x80};
+
+    private static final byte[] HEVC_PPS = {0x44, 0x01, (byte) 0xC1, 0x72, (byte) 0xB4, 0x62, 0x40};
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("mp4recovery", "");
+        assertTrue(mDir.delete());
+        assertTrue(mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void recoversTruncatedAvcWithAudio() throws IOException {
+        Recording recording = new Recording(false, 90, true);
+        File file = new File(mDir, "avc.mp4");
+        recording.write(file);
+        // 截断在倒数第5帧的第一个 NAL 中间
+        int complete = recording.frames - 5;
+        long cut = recording.videoStart(complete) + 10;
+        truncate(file, cut);
+        recording.info(true).write(RecoveryInfo.sidecarOf(file));
+
+        assertTrue(Mp4Recovery.needsRecovery(file));
+        Mp4Recovery.Result result = Mp4Recovery.recover(file);
+        assertFalse(RecoveryInfo.sidecarOf(file).exists());
+        assertFalse(Mp4Recovery.needsRecovery(file));
+        assertEquals(complete, result.getVideoSamples());
+        assertEquals(recording.audioFramesBefore(cut), result.getAudioSamples());
+        assertEquals(0, result.getSkippedBytes());
+        assertEquals(cut - recording.audioEndBefore(cut), result.getDiscardedBytes());
+
+        Mp4Info info = Mp4IndexReader.read(file);
+        assertEquals(90, info.getRotation());
+        assertEquals(640, info.getWidth());
+        assertEquals(480, info.getHeight());
+        Mp4Info.Track video = info.getVideoTrack();
+        assertEquals("avc1", video.getCodec());
+        assertEquals(complete, video.getSampleCount());
+        assertEquals(complete * 1000000L / 30, video.getDurationUs());
+        assertEquals((complete + recording.gop - 1) / recording.gop, video.getKeyframeCount());
+        Mp4Info.Track audio = info.getAudioTrack();
+        assertEquals("mp4a", audio.getCodec());
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals(2, audio.getChannelCount());
+
+        assertSamples(file, recording, complete, cut);
+    }
+
+    @Test
+    public void recoversHevcWithPreallocatedTail() throws IOException {
+        Recording recording = new Recording(true, 40, false);
+        recording.slicesPerFrame = 2;
+        recording.mdatSize = 0x3F3F3F3F;
+        File file = new File(mDir, "hevc.mp4");
+        recording.write(file);
+        long end = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(end + 256 * 1024);
+        raf.close();
+        recording.info(true).write(RecoveryInfo.sidecarOf(file));
+
+        Mp4Recovery.Result result = Mp4Recovery.recover(file);
+        assertEquals(40, result.getVideoSamples());
+        assertEquals(0, result.getAudioSamples());
+        assertEquals(256 * 1024, result.getDiscardedBytes());
+
+        Mp4Info info = Mp4IndexReader.read(file);
+        assertNull(info.getAudioTrack());
+        Mp4Info.Track video = info.getVideoTrack();
+        assertEquals("hvc1", video.getCodec());
+        assertEquals(40, video.getSampleCount());
+        assertEquals(4, video.getKeyframeCount());
+        assertSamples(file, recording, 40, end);
+    }
+
+    @Test
+    public void usesInBandParameterSets() throws IOException {
+        Recording recording = new Recording(false, 20, true);
+        File file = new File(mDir, "inband.mp4");
+        recording.write(file);
+
+        Mp4Recovery.Result result = Mp4Recovery.recover(file, recording.info(false), null);
+        assertEquals(20, result.getVideoSamples());
+        assertEquals(recording.audioSizes.size(), result.getAudioSamples());
+        assertEquals(0, result.getDiscardedBytes());
+
+        Mp4Movie movie = readMovie(file);
+        byte[] stsd = movie.tracks.get(0).stbl().child("stsd").payload;
+        assertTrue(indexOf(stsd, AVC_SPS) > 0);
+        assertTrue(indexOf(stsd, AVC_PPS) > 0);
+    }
+
+    @Test
+    public void usesReferenceWhenCodecUnknown() throws IOException {
+        Recording first = new Recording(false, 30, true);
+        File reference = new File(mDir, "reference.mp4");
+        first.write(reference);
+        Mp4Recovery.recover(reference, first.info(true), null);
+
+        Recording second = new Recording(false, 60, true);
+        second.seed = 7;
+        File file = new File(mDir, "default.mp4");
+        second.write(file);
+        RecoveryInfo unknown = new RecoveryInfo.Builder().setVideoMime(null).setOrientation(90).build();
+        try {
+            Mp4Recovery.recover(file, unknown, null);
+            fail();
+        } catch (Mp4FormatException expected) {
+            // MediaRecorder 默认编码器，没有参考文件时无法修复
+        }
+        assertTrue(Mp4Recovery.needsRecovery(file));
+
+        Mp4Recovery.Result result = Mp4Recovery.recover(file, unknown, reference);
+        assertEquals(60, result.getVideoSamples());
+        assertEquals(second.audioSizes.size(), result.getAudioSamples());
+        Mp4Info info = Mp4IndexReader.read(file);
+        assertEquals(640, info.getWidth());
+        assertEquals(44100, info.getAudioTrack().getSampleRate());
+        assertEquals(60 * 1000000L / 30, info.getVideoTrack().getDurationUs());
+        assertSamples(file, second, 60, second.end);
+    }
+
+    @Test
+    public void rejectsCompleteFile() throws IOException {
+        File file = new File(mDir, "complete.mp4");
+        new Mp4Fixture().write(file);
+        long length = file.length();
+        assertFalse(Mp4Recovery.needsRecovery(file));
+        try {
+            Mp4Recovery.recover(file, new Recording(false, 1, false).info(true), null);
+            fail();
+        } catch (Mp4FormatException expected) {
+            // 已经有 moov
+        }
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    public void sidecarRoundTrip() throws IOException {
+        File sidecar = new File(mDir, "a.mp4" + RecoveryInfo.SIDECAR_SUFFIX);
+        RecoveryInfo info = new RecoveryInfo.Builder()
+                .setVideoMime(RecoveryInfo.MIME_HEVC)
+                .setVideoSize(1920, 1080)
+                .setFrameRate(60)
+                .setOrientation(270)
+                .addCodecConfig(annexB(HEVC_VPS, HEVC_SPS, HEVC_PPS))
+                .setAudio(48000, 1, 128000)
+                .build();
+        info.write(sidecar);
+
+        RecoveryInfo read = RecoveryInfo.read(sidecar);
+        assertEquals(RecoveryInfo.MIME_HEVC, read.getVideoMime());
+        assertEquals(1920, read.getWidth());
+        assertEquals(1080, read.getHeight());
+        assertEquals(60, read.getFrameRate());
+        assertEquals(270, read.getOrientation());
+        assertEquals(3, read.getParameterSets().size());
+        assertArrayEquals(HEVC_SPS, read.getParameterSets().get(1));
+        assertEquals(48000, read.getAudioSampleRate());
+        assertEquals(1, read.getAudioChannelCount());
+        // AAC LC，48000 的序号为3，单声道
+        assertArrayEquals(new byte[]{0x11, (byte) 0x88}, read.getAudioConfig());
+
+        RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+        raf.seek(20);
+        int value = raf.read();
+        raf.seek(20);
+        raf.write(value ^ 0x01);
+        raf.close();
+        try {
+            RecoveryInfo.read(sidecar);
+            fail();
+        } catch (Mp4FormatException expected) {
+            // 校验失败
+        }
+    }
+
+    /**
+     * 逐个比较修复后的采样位置与大小
+     */
+    private static void assertSamples(File file, Recording recording, int videoSamples, long end) throws IOException {
+        Mp4Movie movie = readMovie(file);
+        SampleTable video = movie.tracks.get(0).samples;
+        assertEquals(videoSamples, video.sampleCount);
+        for (int i = 0; i < videoSamples; i++) {
+            assertEquals("video " + i, recording.videoStart(i), video.offsets[i]);
+            assertEquals("video " + i, recording.videoSizes.get(i).intValue(), video.sizes[i]);
+            assertEquals("video " + i, i % recording.gop == 0, video.isSync(i));
+        }
+        int audioSamples = recording.audioFramesBefore(end);
+        if (audioSamples == 0) {
+            assertEquals(1, movie.tracks.size());
+            return;
+        }
+        // AAC 帧边界是推测的，相邻帧可能切分错误，但覆盖的数据与帧数不变
+        SampleTable audio = movie.tracks.get(1).samples;
+        assertEquals(audioSamples, audio.sampleCount);
+        long expectedBytes = 0;
+        long actualBytes = 0;
+        int exact = 0;
+        for (int i = 0; i < audioSamples; i++) {
+            expectedBytes += recording.audioSizes.get(i);
+            actualBytes += audio.sizes[i];
+            if (recording.audioStarts.get(i) == audio.offsets[i] && recording.audioSizes.get(i) == audio.sizes[i]) {
+                exact++;
+            }
+        }
+        assertEquals(recording.audioStarts.get(0).longValue(), audio.offsets[0]);
+        assertEquals(expectedBytes, actualBytes);
+        assertTrue(exact + " of " + audioSamples, exact >= audioSamples * 9 / 10);
+    }
+
+    private static Mp4Movie readMovie(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return Mp4Movie.read(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length);
+        raf.close();
+    }
+
+    private static byte[] annexB(byte[]... nals) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] nal : nals) {
+            out.write(0);
+            out.write(0);
+            out.write(0);
+            out.write(1);
+            out.write(nal, 0, nal.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 没有 moov 的录制文件，与 MediaMuxer 一样交错写入：每3帧视频之后是2到3帧 AAC
+     * <p>
+     * 视频采样为4字节长度加 NAL，关键帧前带参数集；AAC 帧以 CPE 元素头开始、ID_END 结尾，长度在平均帧长上下10%内，内容随机。
+     */
+    private static final class Recording {
+
+        static final int AUDIO_FRAME_SIZE = 96000 / 8 * 1024 / 44100;
+
+        final boolean hevc;
+
+        final int frames;
+
+        final boolean audio;
+
+        int gop = 10;
+
+        int slicesPerFrame = 1;
+
+        /**
+         * mdat 头中的大小，录制中没有写入
+         */
+        int mdatSize;
+
+        long seed = 1;
+
+        /**
+         * mdat 数据的开始位置
+         */
+        long dataStart;
+
+        /**
+         * 写入的数据结束位置
+         */
+        long end;
+
+        final List<Long> videoStarts = new ArrayList<>();
+
+        final List<Integer> videoSizes = new ArrayList<>();
+
+        final List<Long> audioStarts = new ArrayList<>();
+
+        final List<Integer> audioSizes = new ArrayList<>();
+
+        Recording(boolean hevc, int frames, boolean audio) {
+            this.hevc = hevc;
+            this.frames = frames;
+            this.audio = audio;
+        }
+
+        RecoveryInfo info(boolean withParameterSets) {
+            RecoveryInfo.Builder builder = new RecoveryInfo.Builder()
+                    .setVideoMime(hevc ? RecoveryInfo.MIME_HEVC : RecoveryInfo.MIME_AVC)
+                    .setVideoSize(640, 480)
+                    .setFrameRate(30)
+                    .setOrientation(90);
+            if (withParameterSets) {
+                builder.addCodecConfig(hevc ? annexB(HEVC_VPS, HEVC_SPS, HEVC_PPS) : annexB(AVC_SPS, AVC_PPS));
+            }
+            if (audio) {
+                builder.setAudio(44100, 2, 96000);
+            }
+            return builder.build();
+        }
+
+        long videoStart(int frame) {
+            return videoStarts.get(frame);
+        }
+
+        /**
+         * 文件在 end 处截断时能修复的音频帧数。最后一帧之后不是下一帧 AAC 时无法确定结尾，不会被修复
+         */
+        int audioFramesBefore(long end) {
+            int count = 0;
+            while (count < audioStarts.size() && audioStarts.get(count) + audioSizes.get(count) <= end) {
+                count++;
+            }
+            if (count > 0) {
+                long lastEnd = audioStarts.get(count - 1) + audioSizes.get(count - 1);
+                boolean nextAudio = count < audioStarts.size() && audioStarts.get(count) == lastEnd && lastEnd + 4 <= end;
+                boolean nextVideo = videoStarts.contains(lastEnd)
+                        && lastEnd + videoSizes.get(videoStarts.indexOf(lastEnd)) <= end;
+                if (lastEnd != end && !nextAudio && !nextVideo) {
+                    count--;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 截断位置之前最后一个完整采样的结束位置
+         */
+        long audioEndBefore(long end) {
+            long result = dataStart;
+            for (int i = 0; i < videoStarts.size(); i++) {
+                long sampleEnd = videoStarts.get(i) + videoSizes.get(i);
+                if (sampleEnd <= end) {
+                    result = Math.max(result, sampleEnd);
+                }
+            }
+            int audioFrames = audioFramesBefore(end);
+            if (audioFrames > 0) {
+                result = Math.max(result, audioStarts.get(audioFrames - 1) + audioSizes.get(audioFrames - 1));
+            }
+            return result;
+        }
+
+        void write(File file) throws IOException {
+            Random random = new Random(seed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Mp4Box ftyp = new Mp4Box("ftyp", new byte[]{'i', 's', 'o', 'm', 0, 0, 2, 0, 'i', 's', 'o', 'm', 'm', 'p', '4', '1'});
+            out.write(ftyp.toBuffer().array(), 0, (int) ftyp.size());
+            writeInt(out, mdatSize);
+            out.write('m');
+            out.write('d');
+            out.write('a');
+            out.write('t');
+            dataStart = out.size();
+            for (int v = 0; v < frames; v++) {
+                long start = out.size();
+                boolean sync = v % gop == 0;
+                if (sync) {
+                    if (hevc) {
+                        writeNal(out, HEVC_VPS);
+                        writeNal(out, HEVC_SPS);
+                        writeNal(out, HEVC_PPS);
+                    } else {
+                        writeNal(out, AVC_SPS);
+                        writeNal(out, AVC_PPS);
+                    }
+                }
+                for (int s = 0; s < slicesPerFrame; s++) {
+                    writeNal(out, slice(random, sync, s == 0));
+                }
+                videoStarts.add(start);
+                videoSizes.add((int) (out.size() - start));
+                if (audio && v % 3 == 2) {
+                    int count = 2 + random.nextInt(2);
+                    for (int a = 0; a < count; a++) {
+                        byte[] frame = aacFrame(random);
+                        audioStarts.add((long) out.size());
+                        audioSizes.add(frame.length);
+                        out.write(frame, 0, frame.length);
+                    }
+                }
+            }
+            end = out.size();
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+                raf.write(out.toByteArray());
+            } finally {
+                raf.close();
+            }
+        }
+
+        private byte[] slice(Random random, boolean sync, boolean first) {
+            byte[] nal = new byte[200 + random.nextInt(400)];
+            random.nextBytes(nal);
+            int payload;
+            if (hevc) {
+                // IDR_W_RADL 19、TRAIL_R 1，temporal_id_plus1 为1
+                nal[0] = (byte) ((sync ? 19 : 1) << 1);
+                nal[1] = 0x01;
+                payload = 2;
+            } else {
+                nal[0] = (byte) (sync ? 0x65 : 0x41);
+                payload = 1;
+            }
+            nal[payload] = (byte) (first ? nal[payload] | 0x80 : nal[payload] & 0x7F);
+            return nal;
+        }
+
+        private static byte[] aacFrame(Random random) {
+            int size = AUDIO_FRAME_SIZE * 9 / 10 + random.nextInt(AUDIO_FRAME_SIZE / 5);
+            byte[] frame = new byte[size];
+            random.nextBytes(frame);
+            // CPE，common_window 为1；ics_info 为长窗口、max_sfb 40、没有预测，ms_mask_present 为1
+            frame[0] = 0x21;
+            frame[1] = 0x0A;
+            frame[2] = (byte) (0x08 | frame[2] & 0x07);
+            // ID_END 加字节对齐
+            frame[size - 1] = (byte) 0xE0;
+            return frame;
+        }
+
+        private static void writeNal(ByteArrayOutputStream out, byte[] nal) {
+            writeInt(out, nal.length);
+            out.write(nal, 0, nal.length);
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int value) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.hellobird.videorecord.lib.storage.EncryptedFileChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 写入起始码格式的视频与 AAC 音频，再用读取端检查采样表与数据
+ */
+public class Mp4WriterTest {
+
+    private static final byte[] AVC_SPS = {0x67, 0x42, (byte) 0xC0, 0x1E, (byte) 0xDA, 0x02, (byte) 0x80, (byte) 0xBF, (byte) 0xE5};
+
+    private static final byte[] AVC_PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private static final byte[] AUDIO_CONFIG = {0x12, 0x10};
+
+    private static final int FRAME_US = 33333;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("mp4writer", ".mp4");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void writesAvcWithAudio() throws IOException {
+        List<byte[]> expected = new ArrayList<>();
+        Mp4Writer writer = new Mp4Writer(new RandomAccessFile(mFile, "rw").getChannel());
+        writeMovie(writer, expected);
+
+        Mp4Info info = Mp4IndexReader.read(mFile);
+        Mp4Info.Track video = info.getVideoTrack();
+        assertNotNull(video);
+        assertEquals("avc1", video.getCodec());
+        assertEquals(640, video.getWidth());
+        assertEquals(480, video.getHeight());
+        assertEquals(90, info.getRotation());
+        assertEquals(30, video.getSampleCount());
+        assertEquals(3, video.getKeyframeCount());
+        assertEquals(30 * FRAME_US, video.getDurationUs(), 1000);
+        Mp4Info.Track audio = info.getAudioTrack();
+        assertNotNull(audio);
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals(15, audio.getSampleCount());
+
+        try (FileChannel channel = new RandomAccessFile(mFile, "r").getChannel()) {
+            checkVideoSamples(channel, expected);
+        }
+    }
+
+    @Test
+    public void writesEncryptedFile() throws IOException {
+        SecretKey key = new SecretKeySpec(new byte[16], "AES");
+        List<byte[]> expected = new ArrayList<>();
+        writeMovie(new Mp4Writer(EncryptedFileChannel.create(mFile, key)), expected);
+
+        try {
+            Mp4IndexReader.read(mFile);
+            fail("Ciphertext parsed as MP4");
+        } catch (IOException expectedError) {
+            // 密文不能直接读取
+        }
+        try (FileChannel channel = EncryptedFileChannel.open(mFile, key, false)) {
+            checkVideoSamples(channel, expected);
+        }
+    }
+
+    @Test
+    public void passesThroughLengthPrefixedSamples() throws IOException {
+        Mp4Writer writer = new Mp4Writer(new RandomAccessFile(mFile, "rw").getChannel());
+        int track = writer.addVideoTrack(NalUnits.MIME_AVC, 320, 240, annexB(AVC_SPS), annexB(AVC_PPS));
+        byte[] sample = {0, 0, 0, 3, 0x65, 0x11, 0x22};
+        writer.writeSample(track, ByteBuffer.wrap(sample), 0, true);
+        writer.close();
+
+        try (FileChannel channel = new RandomAccessFile(mFile, "r").getChannel()) {
+            SampleTable samples = Mp4Movie.read(channel).tracks.get(0).samples;
+            assertEquals(1, samples.sampleCount);
+            assertArrayEquals(sample, read(channel, samples.offsets[0], samples.sizes[0]));
+        }
+    }
+
+    @Test
+    public void rejectsTrackAfterStart() throws IOException {
+        Mp4Writer writer = new Mp4Writer(new RandomAccessFile(mFile, "rw").getChannel());
+        int track = writer.addVideoTrack(NalUnits.MIME_AVC, 320, 240, annexB(AVC_SPS), annexB(AVC_PPS));
+        writer.writeSample(track, ByteBuffer.wrap(annexB(new byte[]{0x65, 0x11})), 0, true);
+        try {
+            writer.addAudioTrack(44100, 1, 0, AUDIO_CONFIG);
+            fail("Track added after start");
+        } catch (IllegalStateException expected) {
+            // 已经开始写入
+        }
+        writer.close();
+    }
+
+    @Test
+    public void rejectsEmptyMovie() throws IOException {
+        Mp4Writer writer = new Mp4Writer(new RandomAccessFile(mFile, "rw").getChannel());
+        writer.addVideoTrack(NalUnits.MIME_AVC, 320, 240, annexB(AVC_SPS), annexB(AVC_PPS));
+        try {
+            writer.close();
+            fail("Empty movie written");
+        } catch (Mp4FormatException expected) {
+            // 没有数据
+        }
+    }
+
+    /**
+     * 写入30帧视频，每10帧一个关键帧，每帧是两个 NAL；每两帧视频后写一帧音频
+     *
+     * @param expected 保存转换为长度格式后的视频帧
+     */
+    private static void writeMovie(Mp4Writer writer, List<byte[]> expected) throws IOException {
+        Random random = new Random(38);
+        writer.setOrientation(90);
+        int video = writer.addVideoTrack(NalUnits.MIME_AVC, 640, 480, concat(annexB(AVC_SPS), annexB(AVC_PPS)));
+        int audio = writer.addAudioTrack(44100, 2, 128000, AUDIO_CONFIG);
+        for (int i = 0; i < 30; i++) {
+            boolean sync = i % 10 == 0;
+            byte[] sei = randomNal(random, 0x06, 20);
+            byte[] slice = randomNal(random, sync ? 0x65 : 0x41, 200 + random.nextInt(2000));
+            // 3字节与4字节起始码混用，结尾带填充的0
+            byte[] data = concat(new byte[]{0, 0, 1}, sei, annexB(slice), new byte[]{0, 0});
+            ByteBuffer buffer = ByteBuffer.allocate(data.length + 10);
+            buffer.position(10);
+            buffer.put(data).flip().position(10);
+            writer.writeSample(video, buffer, 1000000L + i * FRAME_US, sync);
+            expected.add(concat(lengthPrefixed(sei), lengthPrefixed(slice)));
+            if (i % 2 == 1) {
+                byte[] frame = new byte[100 + random.nextInt(300)];
+                random.nextBytes(frame);
+                writer.writeSample(audio, ByteBuffer.wrap(frame), 1000000L + i / 2 * 23220, false);
+            }
+        }
+        writer.close();
+    }
+
+    private static void checkVideoSamples(FileChannel channel, List<byte[]> expected) throws IOException {
+        Mp4Movie movie = Mp4Movie.read(channel);
+        Mp4Movie.Track video = movie.tracks.get(0);
+        assertTrue(video.isVideo());
+        SampleTable samples = video.samples;
+        assertEquals(expected.size(), samples.sampleCount);
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("Sample " + i, expected.get(i), read(channel, samples.offsets[i], samples.sizes[i]));
+            assertEquals(i % 10 == 0, samples.isSync(i));
+        }
+        // 33333us 换算后按累计时间取整，单帧相差不超过1
+        assertEquals(3000, samples.durations[0], 1);
+    }
+
+    private static byte[] read(FileChannel channel, long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        Mp4Movie.readFully(channel, buffer, offset, channel.size());
+        return buffer.array();
+    }
+
+    /**
+     * NAL 内容不以0结尾，避免与结尾填充混淆
+     */
+    private static byte[] randomNal(Random random, int header, int size) {
+        byte[] nal = new byte[size];
+        random.nextBytes(nal);
+        nal[0] = (byte) header;
+        for (int i = 1; i < size; i++) {
+            // 避免出现起始码
+            if (nal[i] == 0) {
+                nal[i] = 1;
+            }
+        }
+        return nal;
+    }
+
+    private static byte[] annexB(byte[] nal) {
+        return concat(new byte[]{0, 0, 0, 1}, nal);
+    }
+
+    private static byte[] lengthPrefixed(byte[] nal) {
+        return ByteBuffer.allocate(nal.length + 4).putInt(nal.length).put(nal).array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] part : parts) {
+            buffer.put(part);
+        }
+        return buffer.array();
+    }
+}
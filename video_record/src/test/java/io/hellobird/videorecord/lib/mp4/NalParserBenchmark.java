@@ -0,0 +1,179 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 测量 NAL 拆分与关键帧索引的吞吐量和每帧分配的内存，堆内与堆外缓存分别测量
+ * <p>
+ * 不是单元测试，直接运行 main：
+ * <pre>
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; io.hellobird.videorecord.lib.mp4.NalParserBenchmark [码率Mbps]
+ * </pre>
+ */
+public class NalParserBenchmark {
+
+    private static final int WARMUP = 20;
+
+    private static final int ITERATIONS = 50;
+
+    private static final int FRAME_RATE = 60;
+
+    /**
+     * 每次测量处理 10 秒的数据
+     */
+    private static final int FRAMES = FRAME_RATE * 10;
+
+    private static int sNalCount;
+
+    public static void main(String[] args) throws Exception {
+        int megabits = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int frameSize = megabits * 1000000 / 8 / FRAME_RATE;
+        ByteBuffer heap = newStream(frameSize, false);
+        ByteBuffer direct = newStream(frameSize, true);
+        System.out.printf("%d frames of %d bytes, 4 slices per frame%n", FRAMES, frameSize);
+
+        final NalParser parser = new NalParser(false);
+        final NalParser.Callback counter = new NalParser.Callback() {
+            @Override
+            public void onNalUnit(ByteBuffer data, int offset, int length, int type) {
+                sNalCount++;
+            }
+        };
+        for (final ByteBuffer stream : new ByteBuffer[]{heap, direct}) {
+            String kind = stream.isDirect() ? "direct" : "heap";
+            report("NalParser.parse (" + kind + ")", frameSize, measure(new Task() {
+                @Override
+                public void run() throws IOException {
+                    forEachFrame(stream, frameSize, new FrameTask() {
+                        @Override
+                        public void run(ByteBuffer frame, int index) {
+                            parser.parse(frame, counter);
+                        }
+                    });
+                }
+            }));
+            report("KeyframeIndexWriter (" + kind + ")", frameSize, measure(new Task() {
+                @Override
+                public void run() throws IOException {
+                    final KeyframeIndexWriter writer = new KeyframeIndexWriter(new NullChannel(), false);
+                    forEachFrame(stream, frameSize, new FrameTask() {
+                        @Override
+                        public void run(ByteBuffer frame, int index) throws IOException {
+                            writer.addSample(frame, index * 1000000L / FRAME_RATE);
+                        }
+                    });
+                    writer.close();
+                }
+            }));
+        }
+        System.out.println("NAL units seen: " + sNalCount);
+    }
+
+    /**
+     * 每秒一个关键帧，关键帧带 SPS、PPS；每帧4个 slice，数据中没有起始码
+     */
+    private static ByteBuffer newStream(int frameSize, boolean direct) {
+        Random random = new Random(1);
+        ByteBuffer stream = direct ? ByteBuffer.allocateDirect(frameSize * FRAMES) : ByteBuffer.allocate(frameSize * FRAMES);
+        byte[] payload = new byte[frameSize];
+        for (int i = 0; i < FRAMES; i++) {
+            int start = i * frameSize;
+            stream.position(start);
+            boolean sync = i % FRAME_RATE == 0;
+            if (sync) {
+                stream.putInt(1).put(new byte[]{0x67, 0x42, (byte) 0xC0, 0x28, (byte) 0xDA, 0x01, (byte) 0xE0});
+                stream.putInt(1).put(new byte[]{0x68, (byte) 0xCE, 0x3C, (byte) 0x80});
+            }
+            int sliceSize = (frameSize - (stream.position() - start)) / 4;
+            for (int slice = 0; slice < 4; slice++) {
+                int sliceStart = stream.position();
+                stream.putInt(1).put((byte) (sync ? 0x65 : 0x41));
+                random.nextBytes(payload);
+                for (int j = 0; j < payload.length; j++) {
+                    // 避免出现起始码
+                    if (payload[j] == 0 || payload[j] == 1) {
+                        payload[j] = 2;
+                    }
+                }
+                int end = slice == 3 ? start + frameSize : sliceStart + sliceSize;
+                stream.put(payload, 0, end - stream.position());
+            }
+        }
+        stream.clear();
+        return stream;
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private interface FrameTask {
+        void run(ByteBuffer frame, int index) throws IOException;
+    }
+
+    private static void forEachFrame(ByteBuffer stream, int frameSize, FrameTask task) throws IOException {
+        for (int i = 0; i < FRAMES; i++) {
+            stream.limit((i + 1) * frameSize).position(i * frameSize);
+            task.run(stream, i);
+        }
+        stream.clear();
+    }
+
+    private static long[] measure(Task task) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        long[] times = new long[ITERATIONS + 1];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = allocatedBytes(threads);
+        Arrays.sort(times, 0, ITERATIONS);
+        // 最后一项为每次测量分配的内存
+        times[ITERATIONS] = allocatedBefore >= 0 ? (allocatedAfter - allocatedBefore) / ITERATIONS : -1;
+        return times;
+    }
+
+    private static void report(String name, int frameSize, long[] result) {
+        long median = result[ITERATIONS / 2];
+        double megabytes = (double) frameSize * FRAMES / (1 << 20);
+        System.out.printf("%-36s median %8.3f ms, p90 %8.3f ms, %8.0f MB/s, %8.0f fps, %6.1f bytes/frame%n", name,
+                median / 1e6, result[ITERATIONS * 9 / 10] / 1e6, megabytes / (median / 1e9), FRAMES / (median / 1e9),
+                result[ITERATIONS] / (double) FRAMES);
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static final class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int remaining = src.remaining();
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.hellobird.videorecord.lib.mp4;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 起始码与长度格式的拆分，回调位置指向原缓存
+ */
+public class NalParserTest {
+
+    private static final class Recorder implements NalParser.Callback {
+        final List<int[]> units = new ArrayList<>();
+        ByteBuffer data;
+
+        @Override
+        public void onNalUnit(ByteBuffer data, int offset, int length, int type) {
+            this.data = data;
+            units.add(new int[]{offset, length, type});
+        }
+    }
+
+    @Test
+    public void splitsAnnexBWithMixedStartCodes() {
+        byte[] bytes = {
+                0, 0, 0, 1, 0x67, 0x42, 0x00,
+                0, 0, 1, 0x68, (byte) 0xCE,
+                0, 0, 0, 1, 0x65, (byte) 0x88, 0, 0, 3, 0, 1, (byte) 0x84, 0, 0};
+        Recorder recorder = new Recorder();
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        assertEquals(3, new NalParser(false).parse(data, recorder));
+
+        assertEquals(4, recorder.units.get(0)[0]);
+        // SPS 末尾的0属于下一个起始码之前的填充
+        assertEquals(2, recorder.units.get(0)[1]);
+        assertEquals(NalUnits.AVC_SPS, recorder.units.get(0)[2]);
+        assertEquals(10, recorder.units.get(1)[0]);
+        assertEquals(NalUnits.AVC_PPS, recorder.units.get(1)[2]);
+        // 防竞争字节不是起始码，结尾的0被去掉
+        assertEquals(16, recorder.units.get(2)[0]);
+        assertEquals(8, recorder.units.get(2)[1]);
+        assertEquals(NalUnits.AVC_IDR, recorder.units.get(2)[2]);
+        assertTrue(recorder.data == data);
+        assertEquals(0, data.position());
+        assertEquals(bytes.length, data.limit());
+    }
+
+    @Test
+    public void splitsLengthPrefixed() {
+        ByteBuffer data = ByteBuffer.allocate(64);
+        data.position(5);
+        data.putInt(3).put(new byte[]{0x40, 0x01, 0x0C});
+        data.putInt(4).put(new byte[]{0x26, 0x01, (byte) 0xAF, 0x00});
+        data.limit(data.position()).position(5);
+        Recorder recorder = new Recorder();
+        NalParser parser = new NalParser(true);
+        assertEquals(2, parser.parse(data, recorder));
+        assertEquals(9, recorder.units.get(0)[0]);
+        assertEquals(NalUnits.HEVC_VPS, recorder.units.get(0)[2]);
+        assertTrue(parser.isParameterSet(recorder.units.get(0)[2]));
+        assertEquals(16, recorder.units.get(1)[0]);
+        assertEquals(4, recorder.units.get(1)[1]);
+        assertTrue(parser.isSync(recorder.units.get(1)[2]));
+        assertEquals(5, data.position());
+    }
+
+    @Test
+    public void stopsAtInvalidLength() {
+        ByteBuffer data = ByteBuffer.allocate(16);
+        data.putInt(2).put(new byte[]{0x41, 0x01}).putInt(100).flip();
+        Recorder recorder = new Recorder();
+        assertEquals(1, new NalParser(false).parse(data, recorder));
+        assertFalse(recorder.units.isEmpty());
+    }
+
+    @Test
+    public void findsStartCodesAtEveryAlignment() {
+        // 起始码出现在跳读步长的每一种偏移上
+        for (int gap = 1; gap <= 7; gap++) {
+            byte[] bytes = new byte[4 + 3 * (gap + 4)];
+            int position = 0;
+            for (int i = 0; i < 3; i++) {
+                bytes[position + 2] = 1;
+                bytes[position + 3] = 0x41;
+                for (int j = 0; j < gap; j++) {
+                    bytes[position + 4 + j] = (byte) (0x10 + j);
+                }
+                position += 4 + gap;
+            }
+            Recorder recorder = new Recorder();
+            int count = new NalParser(false).parse(ByteBuffer.wrap(bytes, 0, position), recorder);
+            assertEquals("gap " + gap, 3, count);
+            for (int[] unit : recorder.units) {
+                assertEquals(1 + gap, unit[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.hellobird.videorecord.lib.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import io.hellobird.videorecord.lib.camera.FrameSource;
+import io.hellobird.videorecord.lib.camera.SyntheticFrameSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用合成帧来源检查快照取帧：有使用者时不影响它收到的帧，没有使用者时只在需要时接收
+ */
+public class SnapshotFrameSourceTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 48;
+
+    private static final int FRAME_RATE = 30;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("snapshot", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private File file(String name) {
+        return new File(mDirectory, name);
+    }
+
+    /**
+     * 按输出文件名记录收到的帧内容，只写一个空文件
+     */
+    private static final class HashingEncoder implements SnapshotQueue.Encoder {
+        final Map<String, Integer> hashes = new ConcurrentHashMap<>();
+        final CountDownLatch gate;
+
+        HashingEncoder(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void encodeFrame(byte[] nv21, int width, int height, int orientation, File output)
+                throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            // 写入的是临时文件
+            String name = output.getName();
+            hashes.put(name.substring(0, name.lastIndexOf('.')),
+                    Arrays.hashCode(Arrays.copyOf(nv21, width * height * 3 / 2)));
+            SnapshotQueue.writeFully(new byte[0], output);
+        }
+
+        @Override
+        public void writeJpeg(byte[] jpeg, int orientation, File output) {
+        }
+    }
+
+    private static int patternHash(long index) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        SyntheticFrameSource.drawPattern(frame, WIDTH, HEIGHT, index);
+        return Arrays.hashCode(frame);
+    }
+
+    @Test
+    public void burstDoesNotDropConsumerFrames() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        HashingEncoder encoder = new HashingEncoder(gate);
+        SnapshotQueue queue = new SnapshotQueue(2, encoder);
+        SnapshotQueueTest.Results results = new SnapshotQueueTest.Results(2);
+        queue.setCallback(results);
+        final SyntheticFrameSource camera = new SyntheticFrameSource(WIDTH, HEIGHT, FRAME_RATE);
+        final SnapshotFrameSource source = new SnapshotFrameSource(camera, queue, 90);
+        final int[] consumed = new int[1];
+        // 与 CodecRecorder 相同：先加缓存，再设置回调，处理完归还
+        source.addBuffer(new byte[WIDTH * HEIGHT * 3 / 2]);
+        source.setFrameCallback(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(byte[] data, long timestampUs) {
+                consumed[0]++;
+                source.addBuffer(data);
+            }
+        });
+
+        assertTrue(source.requestSnapshot(file("a.jpg")));
+        assertTrue(source.requestSnapshot(file("b.jpg")));
+        // 编码被阻塞，第三张被拒绝
+        assertFalse(source.requestSnapshot(file("c.jpg")));
+        assertEquals(10, camera.emitFrames(10));
+        assertEquals(10, consumed[0]);
+        assertEquals(0, camera.getDroppedFrames());
+
+        gate.countDown();
+        results.await();
+        assertEquals(2, results.taken);
+        assertTrue(file("a.jpg").exists());
+        // 连拍的两张来自连续的两帧
+        assertEquals(patternHash(0), (int) encoder.hashes.get("a.jpg"));
+        assertEquals(patternHash(1), (int) encoder.hashes.get("b.jpg"));
+        assertTrue(source.requestSnapshot(file("c.jpg")));
+    }
+
+    @Test
+    public void samplesOnlyWhileSnapshotPending() throws Exception {
+        HashingEncoder encoder = new HashingEncoder(new CountDownLatch(0));
+        SnapshotQueue queue = new SnapshotQueue(2, encoder);
+        SnapshotQueueTest.Results results = new SnapshotQueueTest.Results(2);
+        queue.setCallback(results);
+        SyntheticFrameSource camera = new SyntheticFrameSource(WIDTH, HEIGHT, FRAME_RATE);
+        SnapshotFrameSource source = new SnapshotFrameSource(camera, queue, 0);
+
+        // 没有使用者也没有快照时不接收帧
+        assertFalse(camera.emitFrame());
+        assertTrue(source.requestSnapshot(file("a.jpg")));
+        assertTrue(source.requestSnapshot(file("b.jpg")));
+        assertTrue(camera.emitFrame());
+        assertTrue(camera.emitFrame());
+        // 取完后停止接收
+        assertFalse(camera.emitFrame());
+        results.await();
+        assertEquals(2, results.taken);
+        assertEquals(patternHash(1), (int) encoder.hashes.get("a.jpg"));
+        assertEquals(patternHash(2), (int) encoder.hashes.get("b.jpg"));
+
+        // 再次请求时复用缓存
+        assertTrue(source.requestSnapshot(file("c.jpg")));
+        assertTrue(camera.emitFrame());
+        assertFalse(camera.emitFrame());
+    }
+
+    @Test
+    public void cancelReleasesPendingSnapshots() {
+        SnapshotQueue queue = new SnapshotQueue(2, new HashingEncoder(new CountDownLatch(0)));
+        SyntheticFrameSource camera = new SyntheticFrameSource(WIDTH, HEIGHT, FRAME_RATE);
+        SnapshotFrameSource source = new SnapshotFrameSource(camera, queue, 0);
+        assertTrue(source.requestSnapshot(file("a.jpg")));
+        assertTrue(source.requestSnapshot(file("b.jpg")));
+
+        List<File> cancelled = source.cancel();
+        assertEquals(2, cancelled.size());
+        assertEquals(0, queue.getPendingCount());
+        assertFalse(camera.emitFrame());
+        assertFalse(source.requestSnapshot(file("c.jpg")));
+        assertEquals(0, queue.getPendingCount());
+    }
+}
@@ -0,0 +1,188 @@
+package io.hellobird.videorecord.lib.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 快照队列的容量限制、写入与失败处理
+ */
+public class SnapshotQueueTest {
+
+    private static final int WIDTH = 16;
+
+    private static final int HEIGHT = 8;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("snapshot", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    /**
+     * 写出帧数据的第一个字节与旋转角度，可以阻塞到放行
+     */
+    static final class FakeEncoder implements SnapshotQueue.Encoder {
+        final CountDownLatch gate;
+
+        FakeEncoder(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void encodeFrame(byte[] nv21, int width, int height, int orientation, File output) throws IOException {
+            await();
+            SnapshotQueue.writeFully(new byte[]{nv21[0], (byte) (orientation / 90)}, output);
+        }
+
+        @Override
+        public void writeJpeg(byte[] jpeg, int orientation, File output) throws IOException {
+            await();
+            if (jpeg.length == 0) {
+                throw new IOException("Empty picture");
+            }
+            SnapshotQueue.writeFully(jpeg, output);
+        }
+
+        private void await() throws IOException {
+            try {
+                if (!gate.await(5, TimeUnit.SECONDS)) {
+                    throw new IOException("Gate timed out");
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * 记录结果，全部完成后放行
+     */
+    static final class Results implements SnapshotQueue.Callback {
+        final CountDownLatch done;
+        volatile int taken;
+        volatile int failed;
+
+        Results(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onSnapshotTaken(File file) {
+            taken++;
+            done.countDown();
+        }
+
+        @Override
+        public void onSnapshotFailed(File file, Exception e) {
+            failed++;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void rejectsWhenFullWithoutBlocking() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        SnapshotQueue queue = new SnapshotQueue(2, new FakeEncoder(gate));
+        Results results = new Results(2);
+        queue.setCallback(results);
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < 2; i++) {
+            assertTrue(queue.tryAcquire());
+            frame[0] = (byte) i;
+            queue.submitFrame(frame, WIDTH, HEIGHT, 90, new File(mDirectory, i + ".jpg"));
+        }
+        // 编码被阻塞，队列已满
+        assertEquals(2, queue.getPendingCount());
+        assertFalse(queue.tryAcquire());
+        // 提交时已经复制，调用方可以立即复用帧
+        frame[0] = 9;
+        gate.countDown();
+        results.await();
+        assertEquals(2, results.taken);
+        assertEquals(0, queue.getPendingCount());
+        assertArrayEquals(new byte[]{0, 1}, read(new File(mDirectory, "0.jpg")));
+        assertArrayEquals(new byte[]{1, 1}, read(new File(mDirectory, "1.jpg")));
+        assertTrue(queue.tryAcquire());
+    }
+
+    @Test
+    public void releasesSlotAndDeletesTempFileOnFailure() throws Exception {
+        CountDownLatch gate = new CountDownLatch(0);
+        SnapshotQueue queue = new SnapshotQueue(1, new FakeEncoder(gate));
+        Results results = new Results(2);
+        queue.setCallback(results);
+        File failed = new File(mDirectory, "failed.jpg");
+        assertTrue(queue.tryAcquire());
+        queue.submitJpeg(new byte[0], 0, failed);
+        File written = new File(mDirectory, "written.jpg");
+        // 等待上一张释放位置
+        while (!queue.tryAcquire()) {
+            Thread.sleep(1);
+        }
+        queue.submitJpeg(new byte[]{1, 2, 3}, 0, written);
+        results.await();
+        assertEquals(1, results.failed);
+        assertEquals(1, results.taken);
+        assertFalse(failed.exists());
+        assertArrayEquals(new byte[]{1, 2, 3}, read(written));
+        // 没有留下临时文件
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void releasingReservationFreesSlot() {
+        SnapshotQueue queue = new SnapshotQueue(1, new FakeEncoder(new CountDownLatch(0)));
+        assertTrue(queue.tryAcquire());
+        assertFalse(queue.tryAcquire());
+        queue.release();
+        assertTrue(queue.tryAcquire());
+    }
+
+    static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += count;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,127 @@
+package io.hellobird.videorecord.lib.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 比较明文写入与 AES-CTR 加密写入的吞吐量，目标是加密开销低于10%
+ * <p>
+ * 按编码器输出的帧顺序写入，帧大小在平均值的一半到1.5倍之间随机，与录制时相同；每轮写完后 force，计入落盘时间。
+ * 同时输出只做加密的吞吐量：存储写入速度低于它的十分之一时，开销在10%以内。
+ * 不是单元测试，直接运行 main：
+ * <pre>
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; io.hellobird.videorecord.lib.storage.EncryptedFileChannelBenchmark [MB] [平均帧大小KB]
+ * </pre>
+ */
+public class EncryptedFileChannelBenchmark {
+
+    private static final int WARMUP = 3;
+
+    private static final int ITERATIONS = 15;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int frameSize = (args.length > 1 ? Integer.parseInt(args[1]) : 40) * 1024;
+        Random random = new Random(38);
+        byte[] frame = new byte[frameSize * 3 / 2];
+        random.nextBytes(frame);
+        int[] sizes = new int[megabytes * 1024 * 1024 / frameSize];
+        long bytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = frameSize / 2 + random.nextInt(frameSize);
+            bytes += sizes[i];
+        }
+        final SecretKey key = new SecretKeySpec(new byte[16], "AES");
+        final File file = File.createTempFile("encbench", ".bin");
+        try {
+            Task plainTask = new Task() {
+                @Override
+                public FileChannel open() throws IOException {
+                    return new RandomAccessFile(file, "rw").getChannel();
+                }
+            };
+            Task encryptedTask = new Task() {
+                @Override
+                public FileChannel open() throws IOException {
+                    return EncryptedFileChannel.create(file, key);
+                }
+            };
+            // 交替运行，减少磁盘回写等状态变化对某一方的影响
+            long[] plain = new long[ITERATIONS];
+            long[] encrypted = new long[ITERATIONS];
+            for (int i = -WARMUP; i < ITERATIONS; i++) {
+                long plainTime = write(plainTask, frame, sizes);
+                long encryptedTime = write(encryptedTask, frame, sizes);
+                if (i >= 0) {
+                    plain[i] = plainTime;
+                    encrypted[i] = encryptedTime;
+                }
+            }
+            Arrays.sort(plain);
+            Arrays.sort(encrypted);
+            report("FileChannel", plain, bytes);
+            report("EncryptedFileChannel", encrypted, bytes);
+            report("Cipher only", measureCipher(key, frame, sizes), bytes);
+            double overhead = (double) encrypted[encrypted.length / 2] / plain[plain.length / 2] - 1;
+            System.out.printf("Overhead %.1f%% (target < 10%%)%n", overhead * 100);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private interface Task {
+        FileChannel open() throws IOException;
+    }
+
+    private static long[] measureCipher(SecretKey key, byte[] frame, int[] sizes) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(new byte[16]));
+        byte[] out = new byte[frame.length];
+        long[] times = new long[WARMUP + ITERATIONS];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            for (int size : sizes) {
+                cipher.update(frame, 0, size, out, 0);
+            }
+            times[i] = System.nanoTime() - start;
+        }
+        times = Arrays.copyOfRange(times, WARMUP, times.length);
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static long write(Task task, byte[] frame, int[] sizes) throws IOException {
+        long start = System.nanoTime();
+        FileChannel channel = task.open();
+        try {
+            channel.truncate(0);
+            long position = 0;
+            for (int size : sizes) {
+                ByteBuffer buffer = ByteBuffer.wrap(frame, 0, size);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long[] sorted, long bytes) {
+        long median = sorted[sorted.length / 2];
+        System.out.printf("%-22s median %8.1f ms, %7.1f MB/s%n", name, median / 1e6,
+                bytes / 1048576.0 / (median / 1e9));
+    }
+}
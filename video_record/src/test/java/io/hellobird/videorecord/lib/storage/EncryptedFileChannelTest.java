@@ -0,0 +1,144 @@
+package io.hellobird.videorecord.lib.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * 随机位置读写与明文文件对比，检查计数器在任意偏移处都正确
+ */
+public class EncryptedFileChannelTest {
+
+    private File mFile;
+
+    private SecretKey mKey;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("encrypted", ".bin");
+        byte[] key = new byte[16];
+        new Random(1).nextBytes(key);
+        mKey = new SecretKeySpec(key, "AES");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void randomAccessRoundTrip() throws IOException {
+        Random random = new Random(38);
+        byte[] plain = new byte[300000];
+        try (FileChannel channel = EncryptedFileChannel.create(mFile, mKey)) {
+            // 顺序写入不对齐的块，再随机覆盖一部分
+            int position = 0;
+            while (position < plain.length) {
+                int size = Math.min(1 + random.nextInt(100000), plain.length - position);
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                write(channel, data, position);
+                System.arraycopy(data, 0, plain, position, size);
+                position += size;
+            }
+            for (int i = 0; i < 50; i++) {
+                int offset = random.nextInt(plain.length - 100);
+                byte[] data = new byte[1 + random.nextInt(Math.min(5000, plain.length - offset))];
+                random.nextBytes(data);
+                write(channel, data, offset);
+                System.arraycopy(data, 0, plain, offset, data.length);
+            }
+            assertEquals(plain.length, channel.size());
+        }
+        assertEquals(plain.length + EncryptedFileChannel.HEADER_SIZE, mFile.length());
+
+        try (FileChannel channel = EncryptedFileChannel.open(mFile, mKey, false)) {
+            for (int i = 0; i < 100; i++) {
+                int offset = random.nextInt(plain.length);
+                int size = 1 + random.nextInt(Math.min(70000, plain.length - offset));
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                assertEquals(size, channel.read(buffer, offset));
+                assertArrayEquals(Arrays.copyOfRange(plain, offset, offset + size), buffer.array());
+            }
+            ByteBuffer all = ByteBuffer.allocate(plain.length);
+            while (all.hasRemaining() && channel.read(all) > 0) {
+                // 按当前位置顺序读取
+            }
+            assertArrayEquals(plain, all.array());
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1), plain.length));
+        }
+    }
+
+    @Test
+    public void storesCiphertext() throws IOException {
+        byte[] plain = new byte[4096];
+        try (FileChannel channel = EncryptedFileChannel.create(mFile, mKey)) {
+            write(channel, plain, 0);
+        }
+        byte[] stored = new byte[plain.length];
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            file.seek(EncryptedFileChannel.HEADER_SIZE);
+            file.readFully(stored);
+        }
+        assertFalse(Arrays.equals(plain, stored));
+    }
+
+    @Test
+    public void rejectsWrongKey() throws IOException {
+        try (FileChannel channel = EncryptedFileChannel.create(mFile, mKey)) {
+            write(channel, new byte[100], 0);
+        }
+        try {
+            EncryptedFileChannel.open(mFile, new SecretKeySpec(new byte[16], "AES"), false).close();
+            fail("Opened with wrong key");
+        } catch (IOException expected) {
+            // 密钥校验失败
+        }
+    }
+
+    @Test
+    public void rejectsPlainFile() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.write(new byte[64]);
+        }
+        try {
+            EncryptedFileChannel.open(mFile, mKey, true).close();
+            fail("Opened plain file");
+        } catch (IOException expected) {
+            // 没有文件头
+        }
+    }
+
+    @Test
+    public void truncatesPlaintextLength() throws IOException {
+        try (FileChannel channel = EncryptedFileChannel.create(mFile, mKey)) {
+            write(channel, new byte[1000], 0);
+            channel.truncate(10);
+            assertEquals(10, channel.size());
+        }
+        assertEquals(10 + EncryptedFileChannel.HEADER_SIZE, mFile.length());
+    }
+
+    private static void write(FileChannel channel, byte[] data, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
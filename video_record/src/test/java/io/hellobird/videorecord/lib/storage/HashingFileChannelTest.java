@@ -0,0 +1,184 @@
+package io.hellobird.videorecord.lib.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import io.hellobird.videorecord.lib.mp4.Mp4Writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 写入时计算的摘要与重新读取整个文件计算的结果比较，包括回写、跳过位置写入与截断
+ */
+public class HashingFileChannelTest {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private File mFile;
+
+    private Random mRandom;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("hashing", ".bin");
+        mRandom = new Random(39);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void sequentialWrites() throws IOException {
+        HashingFileChannel channel = open();
+        long position = 0;
+        while (position < 10500) {
+            position += write(channel, 1 + mRandom.nextInt(1500), position);
+        }
+        assertNull(channel.getManifest());
+        channel.close();
+        ContentManifest manifest = checkManifest(channel);
+        assertEquals((position + CHUNK_SIZE - 1) / CHUNK_SIZE, manifest.getChunkCount());
+        assertEquals(position, manifest.getLength());
+    }
+
+    @Test
+    public void rewritesHashedChunk() throws IOException {
+        HashingFileChannel channel = open();
+        write(channel, 5500, 0);
+        // 与 MP4 回写 mdat 大小相同
+        write(channel, 8, 32);
+        write(channel, 10, 5495);
+        write(channel, 100, 5505);
+        channel.close();
+        checkManifest(channel);
+    }
+
+    @Test
+    public void writesWithGap() throws IOException {
+        HashingFileChannel channel = open();
+        write(channel, 1500, 0);
+        write(channel, 2000, 4000);
+        write(channel, 2500, 1500);
+        channel.close();
+        checkManifest(channel);
+    }
+
+    @Test
+    public void truncateRewinds() throws IOException {
+        HashingFileChannel channel = open();
+        write(channel, 5000, 0);
+        channel.truncate(2500);
+        write(channel, 1200, 2500);
+        channel.close();
+        assertEquals(4, checkManifest(channel).getChunkCount());
+    }
+
+    @Test
+    public void emptyFile() throws Exception {
+        HashingFileChannel channel = open();
+        channel.close();
+        ContentManifest manifest = checkManifest(channel);
+        assertEquals(0, manifest.getChunkCount());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(), manifest.getContentHash());
+    }
+
+    @Test
+    public void contentHashCoversChunkDigests() throws Exception {
+        HashingFileChannel channel = open();
+        write(channel, 2500, 0);
+        channel.close();
+        ContentManifest manifest = checkManifest(channel);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] data = new byte[2500];
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            file.readFully(data);
+        }
+        for (int i = 0; i < 3; i++) {
+            byte[] chunk = MessageDigest.getInstance("SHA-256").digest(
+                    Arrays.copyOfRange(data, i * CHUNK_SIZE, Math.min((i + 1) * CHUNK_SIZE, data.length)));
+            assertArrayEquals(chunk, manifest.getChunkDigest(i));
+            digest.update(chunk);
+        }
+        assertArrayEquals(digest.digest(), manifest.getContentHash());
+    }
+
+    @Test
+    public void hashesMp4WriterOutput() throws IOException {
+        HashingFileChannel channel = open();
+        writeMovie(channel);
+        checkManifest(channel);
+    }
+
+    @Test
+    public void hashesEncryptedOutput() throws IOException {
+        HashingFileChannel channel = open();
+        writeMovie(EncryptedFileChannel.create(channel, new SecretKeySpec(new byte[16], "AES")));
+        checkManifest(channel);
+    }
+
+    private HashingFileChannel open() throws IOException {
+        return new HashingFileChannel(new RandomAccessFile(mFile, "rw").getChannel(), CHUNK_SIZE);
+    }
+
+    private int write(FileChannel channel, int size, long position) throws IOException {
+        byte[] data = new byte[size];
+        mRandom.nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        return size;
+    }
+
+    private void writeMovie(FileChannel channel) throws IOException {
+        Mp4Writer writer = new Mp4Writer(channel);
+        byte[] sps = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xC0, 0x1E, (byte) 0xDA, 0x02, (byte) 0x80, (byte) 0xBF, (byte) 0xE5};
+        byte[] pps = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+        int track = writer.addVideoTrack("video/avc", 320, 240, sps, pps);
+        for (int i = 0; i < 20; i++) {
+            byte[] frame = new byte[100 + mRandom.nextInt(900)];
+            mRandom.nextBytes(frame);
+            frame[0] = 0;
+            frame[1] = 0;
+            frame[2] = 0;
+            frame[3] = 1;
+            frame[4] = (byte) (i % 10 == 0 ? 0x65 : 0x41);
+            frame[frame.length - 1] = 1;
+            writer.writeSample(track, ByteBuffer.wrap(frame), i * 33333L, i % 10 == 0);
+        }
+        writer.close();
+    }
+
+    /**
+     * 与重新读取文件计算的结果相同
+     */
+    private ContentManifest checkManifest(HashingFileChannel channel) throws IOException {
+        ContentManifest manifest = channel.getManifest();
+        assertNotNull(manifest);
+        ContentManifest expected = ContentManifest.compute(mFile, CHUNK_SIZE);
+        assertEquals(expected.getLength(), manifest.getLength());
+        assertEquals(expected.getChunkCount(), manifest.getChunkCount());
+        for (int i = 0; i < expected.getChunkCount(); i++) {
+            assertArrayEquals("Chunk " + i, expected.getChunkDigest(i), manifest.getChunkDigest(i));
+        }
+        assertArrayEquals(expected.getContentHash(), manifest.getContentHash());
+        return manifest;
+    }
+}
@@ -0,0 +1,262 @@
+package io.hellobird.videorecord.lib.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 日志重放、压缩与目录核对后重新打开的索引与关闭前一致，配额删除跳过受保护与正在录制的分段
+ * <p>
+ * 使用 Robolectric 只是为了 {@link android.util.Log}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SegmentIndexTest {
+
+    private static final String JOURNAL_NAME = "segments.journal";
+
+    private File mDirectory;
+
+    private SegmentIndex mIndex;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("segments", "");
+        assertTrue(mDirectory.delete());
+        mIndex = new SegmentIndex(mDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        mIndex.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void tornTailIsDroppedOnReplay() throws IOException {
+        Segment first = record(0, 1000, 100);
+        Segment second = record(1000, 1000, 200);
+        mIndex.close();
+
+        File journal = new File(mDirectory, JOURNAL_NAME);
+        long validLength = journal.length();
+        // 写入中途退出，只留下半条记录
+        FileOutputStream out = new FileOutputStream(journal, true);
+        try {
+            out.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+
+        mIndex.open();
+        assertEquals(validLength, journal.length());
+        List<Segment> segments = mIndex.getSegments();
+        assertEquals(2, segments.size());
+        assertSegment(first, segments.get(0));
+        assertSegment(second, segments.get(1));
+        assertEquals(300, mIndex.getTotalBytes());
+        // 截断后追加的记录仍能读回
+        Segment third = record(2000, 1000, 300);
+        mIndex.close();
+        mIndex.open();
+        assertSegment(third, mIndex.get(third.getSequence()));
+        assertEquals(third.getSequence() + 1, mIndex.allocate(3000).getSequence());
+    }
+
+    @Test
+    public void corruptRecordEndsReplay() throws IOException {
+        record(0, 1000, 100);
+        mIndex.close();
+
+        File journal = new File(mDirectory, JOURNAL_NAME);
+        long validLength = journal.length();
+        byte[] record = new byte[32];
+        record[3] = 2;
+        FileOutputStream out = new FileOutputStream(journal, true);
+        try {
+            out.write(record);
+        } finally {
+            out.close();
+        }
+
+        mIndex.open();
+        assertEquals(validLength, journal.length());
+        assertEquals(1, mIndex.getSegments().size());
+    }
+
+    @Test
+    public void compactionRoundTrip() throws IOException {
+        Segment kept = null;
+        long protectedSeq = -1;
+        // 每个分段 2 条记录，删除后只剩少数存活，日志超过阈值后被压缩
+        for (int i = 0; i < 60; i++) {
+            Segment segment = record(i * 1000, 1000, 100);
+            if (i == 10) {
+                assertTrue(mIndex.protect(segment.getSequence()));
+                protectedSeq = segment.getSequence();
+            }
+            mIndex.evict(300, -1);
+            kept = segment;
+        }
+        Segment unfinished = mIndex.allocate(60000);
+        write(unfinished.getFile(), 50);
+        mIndex.begin(unfinished);
+        List<Segment> before = mIndex.getSegments();
+        long totalBefore = mIndex.getTotalBytes();
+        mIndex.close();
+
+        File journal = new File(mDirectory, JOURNAL_NAME);
+        // 60 个分段 120 条以上记录，压缩后只剩存活分段的记录
+        assertTrue(journal.length() < 64 * 32);
+        assertFalse(new File(mDirectory, JOURNAL_NAME + ".tmp").exists());
+
+        mIndex.open();
+        List<Segment> after = mIndex.getSegments();
+        assertEquals(before.size(), after.size());
+        // 最后一个是未完成的分段，单独检查
+        for (int i = 0; i < before.size() - 1; i++) {
+            assertSegment(before.get(i), after.get(i));
+        }
+        assertTrue(mIndex.get(protectedSeq).isProtected());
+        assertSegment(kept, mIndex.get(kept.getSequence()));
+        // 未完成的分段按文件大小收录
+        assertEquals(totalBefore + 50, mIndex.getTotalBytes());
+        Segment reopened = mIndex.get(unfinished.getSequence());
+        assertNotNull(reopened);
+        assertFalse(reopened.isFinished());
+        assertEquals(50, reopened.getSizeBytes());
+        assertEquals(unfinished.getSequence() + 1, mIndex.allocate(0).getSequence());
+    }
+
+    @Test
+    public void reconcileAdoptsOrphanAndDropsMissing() throws IOException {
+        Segment missing = record(0, 1000, 100);
+        Segment present = record(1000, 1000, 200);
+        mIndex.close();
+
+        assertTrue(missing.getFile().delete());
+        // 开始记录写入前进程退出，文件存在但日志中没有
+        File orphan = new File(mDirectory, "SEG_0000000005.mp4");
+        write(orphan, 70);
+        write(new File(mDirectory, "notes.txt"), 10);
+
+        mIndex.open();
+        List<Segment> segments = mIndex.getSegments();
+        assertEquals(2, segments.size());
+        assertSegment(present, segments.get(0));
+        Segment adopted = segments.get(1);
+        assertEquals(5, adopted.getSequence());
+        assertEquals(orphan, adopted.getFile());
+        assertFalse(adopted.isFinished());
+        assertEquals(70, adopted.getSizeBytes());
+        assertNull(mIndex.get(missing.getSequence()));
+        assertEquals(270, mIndex.getTotalBytes());
+        assertEquals(6, mIndex.allocate(0).getSequence());
+
+        // 核对结果已写入日志，再次打开不需要重新核对
+        mIndex.close();
+        mIndex.open();
+        assertEquals(2, mIndex.getSegments().size());
+        assertEquals(270, mIndex.getTotalBytes());
+    }
+
+    @Test
+    public void evictSkipsProtectedAndActiveSegments() throws IOException {
+        Segment oldest = record(0, 1000, 100);
+        Segment protectedSegment = record(1000, 1000, 100);
+        Segment evictable = record(2000, 1000, 100);
+        Segment newest = record(3000, 1000, 100);
+        assertTrue(mIndex.protect(protectedSegment.getSequence()));
+        Segment active = mIndex.allocate(4000);
+        write(active.getFile(), 0);
+        mIndex.begin(active);
+
+        // oldest 作为正在录制的分段传入时跳过，删除下一个可删除的分段
+        assertEquals(1, mIndex.evict(300, oldest.getSequence()));
+        assertNotNull(mIndex.get(oldest.getSequence()));
+        assertNull(mIndex.get(evictable.getSequence()));
+        assertFalse(evictable.getFile().exists());
+        assertEquals(300, mIndex.getTotalBytes());
+
+        assertEquals(2, mIndex.evict(0, active.getSequence()));
+        assertNull(mIndex.get(oldest.getSequence()));
+        assertNull(mIndex.get(newest.getSequence()));
+        assertFalse(oldest.getFile().exists());
+        assertFalse(newest.getFile().exists());
+        // 受保护的分段超出配额也保留
+        assertEquals(0, mIndex.evict(0, active.getSequence()));
+        assertEquals(100, mIndex.getTotalBytes());
+        assertTrue(mIndex.get(protectedSegment.getSequence()).isProtected());
+        assertTrue(protectedSegment.getFile().exists());
+        assertNotNull(mIndex.get(active.getSequence()));
+        assertTrue(active.getFile().exists());
+
+        // 删除已写入日志
+        mIndex.close();
+        mIndex.open();
+        assertEquals(2, mIndex.getSegments().size());
+        assertEquals(100, mIndex.getTotalBytes());
+    }
+
+    @Test
+    public void allocateOpensIndexAndIncrements() throws IOException {
+        Segment first = mIndex.allocate(0);
+        Segment second = mIndex.allocate(0);
+        assertEquals(0, first.getSequence());
+        assertEquals(1, second.getSequence());
+        assertTrue(mDirectory.isDirectory());
+        // 分配不写日志，没有开始的序号不会保留
+        mIndex.close();
+        assertEquals(0, mIndex.allocate(0).getSequence());
+    }
+
+    /**
+     * 录制一个完成的分段
+     */
+    private Segment record(long startTimeMs, long durationMs, int size) throws IOException {
+        Segment segment = mIndex.allocate(startTimeMs);
+        mIndex.begin(segment);
+        write(segment.getFile(), size);
+        mIndex.finish(segment.getSequence(), durationMs);
+        return mIndex.get(segment.getSequence());
+    }
+
+    private static void write(File file, int size) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertSegment(Segment expected, Segment actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getSequence(), actual.getSequence());
+        assertEquals(expected.getFile(), actual.getFile());
+        assertEquals(expected.getStartTimeMs(), actual.getStartTimeMs());
+        assertEquals(expected.getDurationMs(), actual.getDurationMs());
+        assertEquals(expected.getSizeBytes(), actual.getSizeBytes());
+        assertEquals(expected.isProtected(), actual.isProtected());
+    }
+}